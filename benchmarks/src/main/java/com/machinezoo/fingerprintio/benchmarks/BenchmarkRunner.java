@@ -0,0 +1,19 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.benchmarks;
+
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/*
+ * Same as JMH's own main class except that GC profiler is always enabled to report allocation rate.
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,78 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.benchmarks;
+
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.ansi378v2004.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.ansi378v2009am1.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.fingerprintio.iso19794p2v2011.*;
+import com.machinezoo.noexception.*;
+
+/*
+ * Sample templates shipped with tests are small and some of them are invalid.
+ * Benchmarks instead use valid synthetic templates of configurable size.
+ * Templates are generated in ANSI 378-2009 format and converted to other formats.
+ */
+class SyntheticTemplates {
+	static byte[] generate(TemplateFormat format, int fingerprints, int minutiae) {
+		Random random = new Random(fingerprints * 1000 + minutiae);
+		Ansi378v2009Template template = new Ansi378v2009Template();
+		for (int i = 0; i < fingerprints; ++i) {
+			Ansi378v2009Fingerprint fp = new Ansi378v2009Fingerprint();
+			/*
+			 * Fingerprints must have unique finger position. Ten fingers are enough for benchmarks.
+			 */
+			fp.position = Ansi378v2009Position.values()[1 + i % 10];
+			fp.view = i / 10;
+			fp.quality = 60;
+			fp.width = 400;
+			fp.height = 500;
+			for (int j = 0; j < minutiae; ++j) {
+				Ansi378v2009Minutia minutia = new Ansi378v2009Minutia();
+				minutia.type = random.nextBoolean() ? Ansi378v2009MinutiaType.ENDING : Ansi378v2009MinutiaType.BIFURCATION;
+				minutia.positionX = random.nextInt(fp.width);
+				minutia.positionY = random.nextInt(fp.height);
+				minutia.angle = random.nextInt(180);
+				minutia.quality = 40 + random.nextInt(61);
+				fp.minutiae.add(minutia);
+			}
+			template.fingerprints.add(fp);
+		}
+		/*
+		 * Keep fingerprints with the same position together and sorted by view as required by all formats.
+		 */
+		template.fingerprints.sort(Comparator.comparingInt((Ansi378v2009Fingerprint fp) -> fp.position.ordinal()).thenComparingInt(fp -> fp.view));
+		return TemplateConverter.convert(template.toByteArray(), format);
+	}
+	static Object parse(TemplateFormat format, byte[] template, ExceptionHandler handler) {
+		switch (format) {
+		case ANSI_378_2004:
+			return new Ansi378v2004Template(template, handler);
+		case ANSI_378_2009:
+			return new Ansi378v2009Template(template, handler);
+		case ANSI_378_2009_AM1:
+			return new Ansi378v2009Am1Template(template, handler);
+		case ISO_19794_2_2005:
+			return new Iso19794p2v2005Template(template, handler);
+		case ISO_19794_2_2011:
+			return new Iso19794p2v2011Template(template, handler);
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+	static byte[] serialize(Object template, boolean validate) {
+		if (template instanceof Ansi378v2004Template)
+			return ((Ansi378v2004Template)template).toByteArray(validate);
+		if (template instanceof Ansi378v2009Template)
+			return ((Ansi378v2009Template)template).toByteArray(validate);
+		if (template instanceof Ansi378v2009Am1Template)
+			return ((Ansi378v2009Am1Template)template).toByteArray(validate);
+		if (template instanceof Iso19794p2v2005Template)
+			return ((Iso19794p2v2005Template)template).toByteArray(validate);
+		if (template instanceof Iso19794p2v2011Template)
+			return ((Iso19794p2v2011Template)template).toByteArray(validate);
+		throw new IllegalArgumentException();
+	}
+}
@@ -0,0 +1,38 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.benchmarks;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.noexception.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmarks {
+	@Benchmark
+	public TemplateFormat identify(TemplateState state) {
+		return TemplateFormat.identify(state.serialized);
+	}
+	@Benchmark
+	public Object parseStrict(TemplateState state) {
+		return SyntheticTemplates.parse(state.format, state.serialized, Exceptions.propagate());
+	}
+	@Benchmark
+	public Object parseLenient(TemplateState state) {
+		return SyntheticTemplates.parse(state.format, state.serialized, Exceptions.silence());
+	}
+	@Benchmark
+	public byte[] serialize(TemplateState state) {
+		return SyntheticTemplates.serialize(state.parsed, true);
+	}
+	/*
+	 * Validation is not exposed separately. Its cost is the difference between validated and unvalidated serialization.
+	 */
+	@Benchmark
+	public byte[] serializeUnvalidated(TemplateState state) {
+		return SyntheticTemplates.serialize(state.parsed, false);
+	}
+}
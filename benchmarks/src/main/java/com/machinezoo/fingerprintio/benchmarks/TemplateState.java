@@ -0,0 +1,26 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.noexception.*;
+
+/*
+ * Shared benchmark parameters. Every benchmark runs for every combination of format, fingerprint count, and minutia count.
+ */
+@State(Scope.Benchmark)
+public class TemplateState {
+	@Param
+	public TemplateFormat format;
+	@Param({ "1", "4", "10" })
+	public int fingerprints;
+	@Param({ "16", "64", "255" })
+	public int minutiae;
+	public byte[] serialized;
+	public Object parsed;
+	@Setup
+	public void setup() {
+		serialized = SyntheticTemplates.generate(format, fingerprints, minutiae);
+		parsed = SyntheticTemplates.parse(format, serialized, Exceptions.propagate());
+	}
+}
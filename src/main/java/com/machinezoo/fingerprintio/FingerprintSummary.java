@@ -0,0 +1,38 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+/**
+ * Summary of one fingerprint in a template.
+ * Fields hold raw codes as they appear in the template, so that the summary is the same for all template formats.
+ *
+ * @see TemplateSummary
+ */
+public class FingerprintSummary {
+	/**
+	 * Finger position code.
+	 * Codes 0 through 10 (unknown, right thumb through right little, left thumb through left little) are the same in all formats.
+	 */
+	public int position;
+	/**
+	 * Finger view number.
+	 */
+	public int view;
+	/**
+	 * Fingerprint quality in range 0 through 100.
+	 * For ISO 19794-2:2011 templates, this is the quality from the first quality record
+	 * or 255 (failure to measure quality) if there are no quality records.
+	 */
+	public int quality;
+	/**
+	 * Number of minutiae in the fingerprint.
+	 */
+	public int minutiaCount;
+	/**
+	 * Image width. For formats that store image dimensions only in template header, this is copied from the template header.
+	 */
+	public int width;
+	/**
+	 * Image height. For formats that store image dimensions only in template header, this is copied from the template header.
+	 */
+	public int height;
+}
@@ -0,0 +1,118 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Read-only random-access view of template archive written by {@link TemplateArchiveWriter}.
+ * Archive stores many templates in one file, which is much faster to load than one file per template.
+ * Archive file is usually memory-mapped via {@link #map(Path)}, so opening it takes constant time regardless of archive size
+ * and templates are paged in by the operating system as they are accessed.
+ * <p>
+ * Templates are returned as read-only slices of the archive buffer without copying.
+ * The slices can be passed directly to template parsers, for example {@link com.machinezoo.fingerprintio.iso19794p2v2011.Iso19794p2v2011Template#Iso19794p2v2011Template(ByteBuffer)},
+ * or to {@link TemplateFormat#identify(ByteBuffer)}. Archive can hold templates in any format, including a mix of formats.
+ * <p>
+ * Archive starts with 8-byte header (magic {@code FIOA} and format version), followed by concatenated templates.
+ * Templates are followed by index of N + 1 8-byte template offsets, where the last offset marks the end of the last template.
+ * Archive ends with 16-byte trailer holding template count, offset of the index, and the magic again.
+ * All numbers are big-endian. Only the header and the trailer are checked when the archive is opened.
+ * Index entries are checked when the corresponding template is accessed.
+ * <p>
+ * Memory-mapped archive cannot be larger than 2GB. This class is thread-safe.
+ *
+ * @see TemplateArchiveWriter
+ */
+public class TemplateArchive {
+	static final byte[] MAGIC = new byte[] { 'F', 'I', 'O', 'A' };
+	static final int VERSION = 1;
+	static final int HEADER = 8;
+	static final int TRAILER = 16;
+	private final ByteBuffer buffer;
+	private final int count;
+	private final int index;
+	/**
+	 * Opens template archive stored in a buffer.
+	 * Archive is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * Templates returned by {@link #get(int)} share content with the buffer.
+	 *
+	 * @param archive
+	 *            buffer holding template archive
+	 * @throws TemplateFormatException
+	 *             if the buffer does not contain template archive
+	 */
+	public TemplateArchive(ByteBuffer archive) {
+		buffer = archive.slice().order(ByteOrder.BIG_ENDIAN).asReadOnlyBuffer();
+		int length = buffer.limit();
+		if (length < HEADER + 8 + TRAILER || !magic(0) || !magic(length - 4))
+			throw new TemplateFormatException("This is not a template archive.");
+		if (buffer.getInt(4) != VERSION)
+			throw new TemplateFormatException("Unsupported template archive version.");
+		count = buffer.getInt(length - TRAILER);
+		long index = buffer.getLong(length - TRAILER + 4);
+		if (count < 0 || index < HEADER || index + 8L * (count + 1L) != length - TRAILER)
+			throw new TemplateFormatException("Template archive trailer is corrupted.");
+		this.index = (int)index;
+	}
+	private boolean magic(int offset) {
+		for (int i = 0; i < MAGIC.length; ++i)
+			if (buffer.get(offset + i) != MAGIC[i])
+				return false;
+		return true;
+	}
+	/**
+	 * Opens template archive file by mapping it into memory.
+	 * File is mapped read-only. It stays mapped until the returned archive and all template slices are garbage-collected.
+	 *
+	 * @param path
+	 *            path to the archive file
+	 * @return archive backed by the memory-mapped file
+	 * @throws IOException
+	 *             if the file cannot be opened or mapped
+	 * @throws TemplateFormatException
+	 *             if the file is not a template archive or it is larger than 2GB
+	 */
+	public static TemplateArchive map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new TemplateFormatException("Memory-mapped template archive cannot be larger than 2GB.");
+			return new TemplateArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	/**
+	 * Returns the number of templates in the archive.
+	 *
+	 * @return number of templates
+	 */
+	public int size() {
+		return count;
+	}
+	/**
+	 * Returns template at the specified index.
+	 * Returned buffer is a read-only slice of the archive. Its position is zero and its limit is template length.
+	 * Template is not copied or parsed.
+	 *
+	 * @param n
+	 *            index of the template, zero-based
+	 * @return read-only buffer holding the template
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code n} is negative or not less than {@link #size()}
+	 * @throws TemplateFormatException
+	 *             if archive index is corrupted
+	 */
+	public ByteBuffer get(int n) {
+		Objects.checkIndex(n, count);
+		long start = buffer.getLong(index + 8 * n);
+		long end = buffer.getLong(index + 8 * n + 8);
+		if (start < HEADER || start > end || end > index)
+			throw new TemplateFormatException("Template archive index is corrupted.");
+		ByteBuffer slice = buffer.duplicate();
+		slice.position((int)start);
+		slice.limit((int)end);
+		return slice.slice();
+	}
+}
@@ -0,0 +1,147 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Writes template archive that can be read with {@link TemplateArchive}.
+ * Templates are written sequentially as they are added. Archive index is kept in memory (8 bytes per template)
+ * and it is written at the end of the archive when the writer is closed.
+ * Archive is incomplete and unreadable until {@link #close()} is called.
+ * <p>
+ * Templates are stored as they are, without validation or format detection. Templates in different formats can be mixed in one archive.
+ * This class is not thread-safe.
+ *
+ * @see TemplateArchive
+ */
+public class TemplateArchiveWriter implements Closeable {
+	private final OutputStream stream;
+	private final boolean owned;
+	private long[] offsets = new long[64];
+	private int count;
+	private long position;
+	private boolean closed;
+	/**
+	 * Creates writer that writes template archive into a stream.
+	 * The stream is not closed when the writer is closed.
+	 * Callers should wrap unbuffered streams in {@link BufferedOutputStream}.
+	 *
+	 * @param stream
+	 *            stream to receive the archive
+	 * @throws IOException
+	 *             if the stream throws
+	 */
+	public TemplateArchiveWriter(OutputStream stream) throws IOException {
+		this(stream, false);
+	}
+	/**
+	 * Creates writer that writes template archive into a file.
+	 * Existing file is overwritten. The file is closed when the writer is closed.
+	 *
+	 * @param path
+	 *            path to the archive file
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public TemplateArchiveWriter(Path path) throws IOException {
+		this(new BufferedOutputStream(Files.newOutputStream(path)), true);
+	}
+	private TemplateArchiveWriter(OutputStream stream, boolean owned) throws IOException {
+		this.stream = Objects.requireNonNull(stream);
+		this.owned = owned;
+		stream.write(TemplateArchive.MAGIC);
+		writeInt(TemplateArchive.VERSION);
+		position = TemplateArchive.HEADER;
+	}
+	/**
+	 * Appends template to the archive.
+	 *
+	 * @param template
+	 *            serialized template in any format
+	 * @throws IOException
+	 *             if the stream throws
+	 * @throws IllegalStateException
+	 *             if the writer is already closed or if the template would make the archive larger than 2GB
+	 */
+	public void add(byte[] template) throws IOException {
+		add(template, 0, template.length);
+	}
+	/**
+	 * Appends template stored in a buffer to the archive.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in any format
+	 * @throws IOException
+	 *             if the stream throws
+	 * @throws IllegalStateException
+	 *             if the writer is already closed or if the template would make the archive larger than 2GB
+	 */
+	public void add(ByteBuffer template) throws IOException {
+		if (template.hasArray())
+			add(template.array(), template.arrayOffset() + template.position(), template.remaining());
+		else {
+			byte[] copy = new byte[template.remaining()];
+			template.duplicate().get(copy);
+			add(copy, 0, copy.length);
+		}
+	}
+	private void add(byte[] template, int offset, int length) throws IOException {
+		if (closed)
+			throw new IllegalStateException();
+		/*
+		 * Archive is read via ByteBuffer, which is limited to 2GB. Index and trailer must fit too, including index entry for this template.
+		 */
+		if (position + length + 8L * (count + 2L) + TemplateArchive.TRAILER > Integer.MAX_VALUE)
+			throw new IllegalStateException("Template archive cannot be larger than 2GB.");
+		if (count + 1 == offsets.length)
+			offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+		offsets[count] = position;
+		stream.write(template, offset, length);
+		++count;
+		position += length;
+	}
+	/**
+	 * Writes archive index and trailer. Closes the file if the writer was created with {@link #TemplateArchiveWriter(Path)}.
+	 * Calling this method more than once has no effect.
+	 *
+	 * @throws IOException
+	 *             if the stream throws
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			offsets[count] = position;
+			/*
+			 * Index is written in chunks to avoid both per-entry writes and allocation proportional to archive size.
+			 */
+			ByteBuffer chunk = ByteBuffer.allocate(8 * Math.min(count + 1, 1024));
+			for (int i = 0; i <= count; ++i) {
+				chunk.putLong(offsets[i]);
+				if (!chunk.hasRemaining() || i == count) {
+					stream.write(chunk.array(), 0, chunk.position());
+					chunk.clear();
+				}
+			}
+			writeInt(count);
+			writeLong(position);
+			stream.write(TemplateArchive.MAGIC);
+			stream.flush();
+		} finally {
+			if (owned)
+				stream.close();
+		}
+	}
+	private void writeInt(int value) throws IOException {
+		stream.write(ByteBuffer.allocate(4).putInt(value).array());
+	}
+	private void writeLong(long value) throws IOException {
+		stream.write(ByteBuffer.allocate(8).putLong(value).array());
+	}
+}
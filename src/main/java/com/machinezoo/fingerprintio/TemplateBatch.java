@@ -0,0 +1,150 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+import com.machinezoo.fingerprintio.ansi378v2004.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.ansi378v2009am1.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.fingerprintio.iso19794p2v2011.*;
+
+/**
+ * Decodes large collections of templates in parallel.
+ * Templates are decoded on the common fork-join pool or on caller-supplied {@link Executor}.
+ * Results are returned in input order.
+ * <p>
+ * Decoding failures do not abort the batch. Every {@link TemplateFormatException} is instead recorded in {@link TemplateBatchResult#exception}.
+ * Other exceptions indicate bugs or invalid input (e.g. {@code null} template) and they are propagated to the caller.
+ * <p>
+ * Decoder is typically a template constructor, for example {@code Iso19794p2v2011Template::new}.
+ * Methods without decoder parameter identify template format and parse the template with format-specific template class.
+ *
+ * @see TemplateBatchResult
+ */
+public class TemplateBatch {
+	/*
+	 * Tasks submitted to Executor cover several templates each to amortize scheduling overhead.
+	 * Several tasks per CPU core are created, so that cores do not idle when some tasks take longer.
+	 */
+	private static final int TASKS_PER_CORE = 4;
+	private static <T> TemplateBatchResult<T> decode(byte[] template, Function<byte[], T> decoder) {
+		Objects.requireNonNull(template);
+		TemplateBatchResult<T> result = new TemplateBatchResult<>();
+		try {
+			result.template = decoder.apply(template);
+		} catch (TemplateFormatException ex) {
+			result.exception = ex;
+		}
+		return result;
+	}
+	private static Object decodeAny(byte[] template) {
+		TemplateFormat format = TemplateFormat.identify(template);
+		if (format == null)
+			throw new TemplateFormatException("Unsupported template format.");
+		switch (format) {
+		case ANSI_378_2004:
+			return new Ansi378v2004Template(template);
+		case ANSI_378_2009:
+			return new Ansi378v2009Template(template);
+		case ANSI_378_2009_AM1:
+			return new Ansi378v2009Am1Template(template);
+		case ISO_19794_2_2005:
+			return new Iso19794p2v2005Template(template);
+		case ISO_19794_2_2011:
+			return new Iso19794p2v2011Template(template);
+		default:
+			throw new IllegalStateException();
+		}
+	}
+	/**
+	 * Identifies and decodes templates in parallel on the common fork-join pool.
+	 * Every template is parsed and validated by format-specific template class like {@link Iso19794p2v2011Template}.
+	 *
+	 * @param templates
+	 *            serialized templates in any supported format
+	 * @return results in input order
+	 * @see TemplateFormat#identify(byte[])
+	 */
+	public static List<TemplateBatchResult<Object>> decode(Collection<byte[]> templates) {
+		return decode(templates, TemplateBatch::decodeAny);
+	}
+	/**
+	 * Decodes templates in parallel on the common fork-join pool.
+	 *
+	 * @param <T>
+	 *            type of decoded template
+	 * @param templates
+	 *            serialized templates
+	 * @param decoder
+	 *            function that decodes one template, for example template constructor
+	 * @return results in input order
+	 */
+	public static <T> List<TemplateBatchResult<T>> decode(Collection<byte[]> templates, Function<byte[], T> decoder) {
+		Objects.requireNonNull(decoder);
+		return templates.parallelStream()
+			.map(t -> decode(t, decoder))
+			.collect(Collectors.toList());
+	}
+	/**
+	 * Decodes templates provided by a {@link Spliterator} in parallel on the common fork-join pool.
+	 * Results follow encounter order of the spliterator if it is {@link Spliterator#ORDERED}.
+	 *
+	 * @param <T>
+	 *            type of decoded template
+	 * @param templates
+	 *            spliterator providing serialized templates
+	 * @param decoder
+	 *            function that decodes one template, for example template constructor
+	 * @return results in encounter order
+	 */
+	public static <T> List<TemplateBatchResult<T>> decode(Spliterator<byte[]> templates, Function<byte[], T> decoder) {
+		Objects.requireNonNull(decoder);
+		return StreamSupport.stream(templates, true)
+			.map(t -> decode(t, decoder))
+			.collect(Collectors.toList());
+	}
+	/**
+	 * Decodes templates in parallel on the supplied {@link Executor}.
+	 * This method blocks until all templates are decoded.
+	 *
+	 * @param <T>
+	 *            type of decoded template
+	 * @param templates
+	 *            serialized templates
+	 * @param decoder
+	 *            function that decodes one template, for example template constructor
+	 * @param executor
+	 *            executor that runs decoding tasks
+	 * @return results in input order
+	 */
+	public static <T> List<TemplateBatchResult<T>> decode(Collection<byte[]> templates, Function<byte[], T> decoder, Executor executor) {
+		Objects.requireNonNull(decoder);
+		Objects.requireNonNull(executor);
+		List<byte[]> input = templates instanceof RandomAccess && templates instanceof List ? (List<byte[]>)templates : new ArrayList<>(templates);
+		@SuppressWarnings("unchecked")
+		TemplateBatchResult<T>[] results = new TemplateBatchResult[input.size()];
+		int tasks = Math.min(input.size(), TASKS_PER_CORE * Runtime.getRuntime().availableProcessors());
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+		for (int i = 0; i < tasks; ++i) {
+			int start = (int)((long)i * input.size() / tasks);
+			int end = (int)((long)(i + 1) * input.size() / tasks);
+			futures[i] = CompletableFuture.runAsync(() -> {
+				for (int j = start; j < end; ++j)
+					results[j] = decode(input.get(j), decoder);
+			}, executor);
+		}
+		try {
+			CompletableFuture.allOf(futures).join();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException)ex.getCause();
+			if (ex.getCause() instanceof Error)
+				throw (Error)ex.getCause();
+			throw ex;
+		}
+		return Arrays.asList(results);
+	}
+}
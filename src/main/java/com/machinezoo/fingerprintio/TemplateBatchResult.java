@@ -0,0 +1,21 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+/**
+ * Outcome of decoding one template in a batch.
+ * Exactly one of the fields is non-null.
+ *
+ * @param <T>
+ *            type of decoded template
+ * @see TemplateBatch
+ */
+public class TemplateBatchResult<T> {
+	/**
+	 * Decoded template or {@code null} if decoding failed.
+	 */
+	public T template;
+	/**
+	 * Exception thrown while decoding the template or {@code null} if decoding succeeded.
+	 */
+	public TemplateFormatException exception;
+}
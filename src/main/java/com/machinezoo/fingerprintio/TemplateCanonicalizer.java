@@ -0,0 +1,121 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Computes canonical binary form and content hash of templates, which is useful for template deduplication.
+ * Canonicalization works directly on template bytes without constructing template objects
+ * like {@link com.machinezoo.fingerprintio.ansi378v2004.Ansi378v2004Template}.
+ * <p>
+ * Canonical form erases encoding choices that do not change template content.
+ * Length fields are recomputed, ANSI 378-2004 uses the short length field whenever possible, reserved bytes are cleared,
+ * and extension blocks are sorted. In ISO 19794-2:2011 templates, minutia quality is included only when some minutia reports it
+ * and certificate count is always present. Capture datetime is kept as stored.
+ * Order of fingerprints and minutiae is preserved, because it is referenced by ridge count extension.
+ * Templates that are equal after canonicalization encode the same content.
+ * <p>
+ * Templates are not validated. Parse them with format-specific template class if validation is needed.
+ * Canonical form is specific to template format. Templates must be converted to common format
+ * with {@link TemplateConverter} before they can be compared across formats.
+ *
+ * @see TemplateFormat
+ * @see TemplateConverter
+ */
+public class TemplateCanonicalizer {
+	/**
+	 * Computes canonical form of template in any supported format.
+	 *
+	 * @param template
+	 *            serialized template in any supported format
+	 * @return canonical form of the template in the same format
+	 * @throws TemplateFormatException
+	 *             if template format is not supported or the template is malformed
+	 */
+	public static byte[] canonicalize(byte[] template) {
+		return canonicalize(ByteBuffer.wrap(template));
+	}
+	/**
+	 * Computes canonical form of template in any supported format stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in any supported format
+	 * @return canonical form of the template in the same format
+	 * @throws TemplateFormatException
+	 *             if template format is not supported or the template is malformed
+	 */
+	public static byte[] canonicalize(ByteBuffer template) {
+		TemplateFormat format = TemplateFormat.identify(template);
+		if (format == null)
+			throw new TemplateFormatException("Unsupported template format.");
+		return canonicalize(format, template);
+	}
+	/**
+	 * Computes canonical form of template in known format stored in a buffer. This skips format detection.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param format
+	 *            format of the template
+	 * @param template
+	 *            buffer holding serialized template in the specified format
+	 * @return canonical form of the template in the same format
+	 * @throws TemplateFormatException
+	 *             if the template is malformed
+	 */
+	public static byte[] canonicalize(TemplateFormat format, ByteBuffer template) {
+		Objects.requireNonNull(format);
+		return TemplateUtils.decodeBytesTo(template, "Unexpected end of template data.", in -> CanonicalTemplate.canonicalize(format, in));
+	}
+	/**
+	 * Computes 64-bit hash of canonical form of template in any supported format.
+	 * Templates with equal canonical form have equal hash. Templates with different hash certainly differ in content.
+	 * Hash is not cryptographically secure. Templates with equal hash should be compared with {@link #canonicalize(byte[])}
+	 * if collisions matter.
+	 *
+	 * @param template
+	 *            serialized template in any supported format
+	 * @return 64-bit hash of template's canonical form
+	 * @throws TemplateFormatException
+	 *             if template format is not supported or the template is malformed
+	 */
+	public static long hash(byte[] template) {
+		return hash(ByteBuffer.wrap(template));
+	}
+	/**
+	 * Computes 64-bit hash of canonical form of template in any supported format stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in any supported format
+	 * @return 64-bit hash of template's canonical form
+	 * @throws TemplateFormatException
+	 *             if template format is not supported or the template is malformed
+	 * @see #hash(byte[])
+	 */
+	public static long hash(ByteBuffer template) {
+		TemplateFormat format = TemplateFormat.identify(template);
+		if (format == null)
+			throw new TemplateFormatException("Unsupported template format.");
+		return hash(format, template);
+	}
+	/**
+	 * Computes 64-bit hash of canonical form of template in known format stored in a buffer. This skips format detection.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param format
+	 *            format of the template
+	 * @param template
+	 *            buffer holding serialized template in the specified format
+	 * @return 64-bit hash of template's canonical form
+	 * @throws TemplateFormatException
+	 *             if the template is malformed
+	 * @see #hash(byte[])
+	 */
+	public static long hash(TemplateFormat format, ByteBuffer template) {
+		Objects.requireNonNull(format);
+		return TemplateUtils.decodeBytesTo(template, "Unexpected end of template data.", in -> CanonicalTemplate.hash(format, in));
+	}
+}
@@ -0,0 +1,83 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Converts templates between supported template formats.
+ * Conversion reads the source template and writes the target template in one pass
+ * without constructing template objects like {@link com.machinezoo.fingerprintio.ansi378v2004.Ansi378v2004Template}.
+ * <p>
+ * Finger positions, scan types, quality scales, minutia and core/delta angle units, image dimensions, resolution,
+ * ridge count extension, and core/delta extension are translated to the target format.
+ * Fields that do not exist in the target format are dropped and fields missing in the source format are set to defaults.
+ * Angles are rounded when converting between ANSI (2-degree units) and ISO (256ths of a circle) formats.
+ * Scan types that do not exist in target format are mapped to the closest equivalent.
+ * Zonal quality, certificates, and vendor-specific extensions are dropped.
+ * <p>
+ * Source template is not validated. Parse it with format-specific template class if validation is needed.
+ * Templates converted to the same format are returned unchanged.
+ *
+ * @see TemplateFormat
+ */
+public class TemplateConverter {
+	/**
+	 * Converts template in any supported format to the specified format.
+	 *
+	 * @param template
+	 *            serialized template in any supported format
+	 * @param target
+	 *            format of the returned template
+	 * @return serialized template in target format
+	 * @throws TemplateFormatException
+	 *             if source format is not supported, the template is truncated, or it cannot be represented in target format
+	 */
+	public static byte[] convert(byte[] template, TemplateFormat target) {
+		return convert(ByteBuffer.wrap(template), target);
+	}
+	/**
+	 * Converts template in any supported format stored in a buffer to the specified format.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in any supported format
+	 * @param target
+	 *            format of the returned template
+	 * @return serialized template in target format
+	 * @throws TemplateFormatException
+	 *             if source format is not supported, the template is truncated, or it cannot be represented in target format
+	 */
+	public static byte[] convert(ByteBuffer template, TemplateFormat target) {
+		TemplateFormat source = TemplateFormat.identify(template);
+		if (source == null)
+			throw new TemplateFormatException("Unsupported template format.");
+		return convert(source, template, target);
+	}
+	/**
+	 * Converts template in known format stored in a buffer to the specified format. This skips format detection.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param source
+	 *            format of the source template
+	 * @param template
+	 *            buffer holding serialized template in source format
+	 * @param target
+	 *            format of the returned template
+	 * @return serialized template in target format
+	 * @throws TemplateFormatException
+	 *             if the template is truncated or it cannot be represented in target format
+	 */
+	public static byte[] convert(TemplateFormat source, ByteBuffer template, TemplateFormat target) {
+		Objects.requireNonNull(source);
+		Objects.requireNonNull(target);
+		if (source == target) {
+			byte[] copy = new byte[template.remaining()];
+			template.duplicate().get(copy);
+			return copy;
+		}
+		ConvertTemplate.NeutralTemplate neutral = TemplateUtils.decodeBytesTo(template, "Unexpected end of template data.", in -> ConvertTemplate.decode(source, in));
+		return ConvertTemplate.encode(neutral, target);
+	}
+}
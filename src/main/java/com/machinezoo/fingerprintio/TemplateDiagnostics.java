@@ -0,0 +1,126 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Exception handler that tolerates recoverable validation errors like {@link Exceptions#silence()} and counts them per rule.
+ * It can be passed to any template constructor that accepts {@link ExceptionHandler}.
+ * Parsers report violations to it directly via {@link #report(TemplateRule, int, int, Supplier)}
+ * without creating {@link TemplateFormatException}, which makes lenient parsing of dirty data nearly as fast as parsing of valid templates.
+ * Structural validation of the decoded template is an exception. It creates one exception when it finds a violated constraint.
+ * <p>
+ * Violations are counted per {@link TemplateRule}, which is stable across library versions, so it can be used as a key in monitoring dashboards.
+ * Optional {@link TemplateViolationListener} additionally receives every violation together with fingerprint and minutia index and error message.
+ * Unrecoverable errors are still thrown as {@link TemplateFormatException} and they are not counted.
+ * <p>
+ * One instance can be shared by any number of threads. Counts are aggregated across all templates parsed with the handler.
+ *
+ * @see TemplateFormatException
+ */
+public final class TemplateDiagnostics extends ExceptionHandler {
+	private static final TemplateRule[] RULES = TemplateRule.values();
+	private final LongAdder[] counts = new LongAdder[RULES.length];
+	private final TemplateViolationListener listener;
+	/**
+	 * Creates new diagnostics handler with no recorded violations.
+	 */
+	public TemplateDiagnostics() {
+		this(null);
+	}
+	/**
+	 * Creates new diagnostics handler that forwards every violation to the listener.
+	 *
+	 * @param listener
+	 *            listener receiving every reported violation or {@code null} to just count violations
+	 */
+	public TemplateDiagnostics(TemplateViolationListener listener) {
+		this.listener = listener;
+		for (int i = 0; i < counts.length; ++i)
+			counts[i] = new LongAdder();
+	}
+	/**
+	 * Records violation of a rule. Parsers call this method instead of {@link #handle(Throwable)}.
+	 *
+	 * @param rule
+	 *            category of the violated rule
+	 * @param fingerprint
+	 *            index of the fingerprint that violates the rule or -1 if the violation is not specific to one fingerprint
+	 * @param minutia
+	 *            index of the minutia within the fingerprint or -1 if the violation is not specific to one minutia
+	 * @param message
+	 *            supplier of error message describing the violated rule, which is called only if there is a listener that requests it
+	 */
+	public void report(TemplateRule rule, int fingerprint, int minutia, Supplier<String> message) {
+		counts[rule.ordinal()].increment();
+		if (listener != null)
+			listener.violated(rule, fingerprint, minutia, message);
+	}
+	/**
+	 * Records exception as rule violation.
+	 * This method is used when recoverable exception already exists, for example when it was thrown by nested parser.
+	 * Rule, fingerprint, and minutia are taken from {@link TemplateFormatException}.
+	 * Other exceptions are recorded as {@link TemplateRule#STRUCTURE} violations.
+	 *
+	 * @param exception
+	 *            recoverable exception
+	 * @return always {@code true} to indicate that the exception is tolerated
+	 */
+	@Override
+	public boolean handle(Throwable exception) {
+		if (exception instanceof TemplateFormatException) {
+			var specific = (TemplateFormatException)exception;
+			if (specific.rule() != null) {
+				report(specific.rule(), specific.fingerprint(), specific.minutia(), specific::getMessage);
+				return true;
+			}
+		}
+		report(TemplateRule.STRUCTURE, -1, -1, exception::getMessage);
+		return true;
+	}
+	/**
+	 * Returns snapshot of violation counts per rule. Rules that were never violated are not included.
+	 *
+	 * @return map from rule to number of violations
+	 */
+	public Map<TemplateRule, Long> counts() {
+		Map<TemplateRule, Long> snapshot = new EnumMap<>(TemplateRule.class);
+		for (TemplateRule rule : RULES) {
+			long count = counts[rule.ordinal()].sum();
+			if (count > 0)
+				snapshot.put(rule, count);
+		}
+		return snapshot;
+	}
+	/**
+	 * Returns number of violations of the specified rule.
+	 *
+	 * @param rule
+	 *            category of the rule
+	 * @return number of recorded violations of the rule
+	 */
+	public long count(TemplateRule rule) {
+		return counts[rule.ordinal()].sum();
+	}
+	/**
+	 * Returns total number of recorded violations of all rules.
+	 *
+	 * @return total number of violations
+	 */
+	public long total() {
+		long total = 0;
+		for (LongAdder count : counts)
+			total += count.sum();
+		return total;
+	}
+	/**
+	 * Discards all recorded violations.
+	 */
+	public void clear() {
+		for (LongAdder count : counts)
+			count.reset();
+	}
+}
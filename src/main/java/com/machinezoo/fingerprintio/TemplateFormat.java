@@ -1,11 +1,13 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio;
 
+import java.nio.*;
 import com.machinezoo.fingerprintio.ansi378v2004.*;
 import com.machinezoo.fingerprintio.ansi378v2009.*;
 import com.machinezoo.fingerprintio.ansi378v2009am1.*;
 import com.machinezoo.fingerprintio.iso19794p2v2005.*;
 import com.machinezoo.fingerprintio.iso19794p2v2011.*;
+import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.stagean.*;
 
 /**
@@ -63,16 +65,39 @@ public enum TemplateFormat {
 	 * @return format of the template or {@code null} if template's format is not supported
 	 */
 	public static TemplateFormat identify(byte[] template) {
-		if (Ansi378v2004Template.accepts(template))
-			return ANSI_378_2004;
-		if (Ansi378v2009Template.accepts(template))
-			return ANSI_378_2009;
-		if (Ansi378v2009Am1Template.accepts(template))
+		return identify(ByteBuffer.wrap(template));
+	}
+	/**
+	 * Detects template format used to encode template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * Both heap and direct (including memory-mapped) buffers are supported.
+	 * Slice of a larger array can be passed in via {@link ByteBuffer#wrap(byte[], int, int)}.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in unknown format
+	 * @return format of the template or {@code null} if template's format is not supported
+	 */
+	public static TemplateFormat identify(ByteBuffer template) {
+		/*
+		 * All supported formats start with 8-byte magic 'FMR\0' followed by 3-byte version and another zero byte.
+		 * We dispatch on the version and then only do format-specific disambiguation once.
+		 */
+		if (template.remaining() < 8)
+			return null;
+		if (IdentifyTemplate.uint16(template, 0) != ('F' << 8 | 'M') || IdentifyTemplate.uint16(template, 2) != ('R' << 8) || IdentifyTemplate.uint8(template, 7) != 0)
+			return null;
+		int version = (IdentifyTemplate.uint16(template, 4) << 8) | IdentifyTemplate.uint8(template, 6);
+		switch (version) {
+		case ' ' << 16 | '2' << 8 | '0':
+			if (template.remaining() < 12)
+				return null;
+			return IdentifyTemplate.ansi378v2004(template) ? ANSI_378_2004 : ISO_19794_2_2005;
+		case '0' << 16 | '3' << 8 | '0':
+			return IdentifyTemplate.iso19794p2v2011(template) ? ISO_19794_2_2011 : ANSI_378_2009;
+		case '0' << 16 | '3' << 8 | '5':
 			return ANSI_378_2009_AM1;
-		if (Iso19794p2v2005Template.accepts(template))
-			return ISO_19794_2_2005;
-		if (Iso19794p2v2011Template.accepts(template))
-			return ISO_19794_2_2011;
-		return null;
+		default:
+			return null;
+		}
 	}
 }
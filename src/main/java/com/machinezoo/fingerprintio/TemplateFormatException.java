@@ -3,9 +3,23 @@ package com.machinezoo.fingerprintio;
 
 /**
  * Exception thrown when fingerprint template does not match format specification.
+ * Exceptions describing recoverable rule violations, which are passed to exception handlers during lenient parsing,
+ * additionally carry category of the violated rule and location of the violation in the template.
  */
 public class TemplateFormatException extends RuntimeException {
 	private static final long serialVersionUID = 1L;
+	/**
+	 * Category of the violated rule or {@code null} if this exception does not describe recoverable rule violation.
+	 */
+	private final TemplateRule rule;
+	/**
+	 * Index of the fingerprint that violates the rule or -1 if the violation is not specific to one fingerprint.
+	 */
+	private final int fingerprint;
+	/**
+	 * Index of the minutia within the fingerprint or -1 if the violation is not specific to one minutia.
+	 */
+	private final int minutia;
 	/**
 	 * Creates new {@code TemplateFormatException} with the specified message.
 	 * 
@@ -13,7 +27,7 @@ public class TemplateFormatException extends RuntimeException {
 	 *            informative message (possibly {@code null}) that can be later retrieved via {@link Throwable#getMessage()}
 	 */
 	public TemplateFormatException(String message) {
-		super(message);
+		this(null, -1, -1, message, null);
 	}
 	/**
 	 * Creates new {@code TemplateFormatException} with the specified cause.
@@ -22,7 +36,7 @@ public class TemplateFormatException extends RuntimeException {
 	 *            cause of this exception (possibly {@code null}) that can be later retrieved via {@link Throwable#getCause()}
 	 */
 	public TemplateFormatException(Throwable cause) {
-		super("Malformed template.", cause);
+		this(null, -1, -1, "Malformed template.", cause);
 	}
 	/**
 	 * Creates new {@code TemplateFormatException} with the specified message and cause.
@@ -33,6 +47,50 @@ public class TemplateFormatException extends RuntimeException {
 	 *            cause of this exception (possibly {@code null}) that can be later retrieved via {@link Throwable#getCause()}
 	 */
 	public TemplateFormatException(String message, Throwable cause) {
+		this(null, -1, -1, message, cause);
+	}
+	/**
+	 * Creates new {@code TemplateFormatException} describing recoverable rule violation.
+	 * 
+	 * @param rule
+	 *            category of the violated rule (possibly {@code null}) that can be later retrieved via {@link #rule()}
+	 * @param fingerprint
+	 *            index of the fingerprint that violates the rule or -1 if the violation is not specific to one fingerprint
+	 * @param minutia
+	 *            index of the minutia within the fingerprint or -1 if the violation is not specific to one minutia
+	 * @param message
+	 *            informative message (possibly {@code null}) that can be later retrieved via {@link Throwable#getMessage()}
+	 * @param cause
+	 *            cause of this exception (possibly {@code null}) that can be later retrieved via {@link Throwable#getCause()}
+	 */
+	public TemplateFormatException(TemplateRule rule, int fingerprint, int minutia, String message, Throwable cause) {
 		super(message, cause);
+		this.rule = rule;
+		this.fingerprint = fingerprint;
+		this.minutia = minutia;
+	}
+	/**
+	 * Returns category of the violated rule.
+	 * 
+	 * @return category of the violated rule or {@code null} if this exception does not describe recoverable rule violation
+	 */
+	public TemplateRule rule() {
+		return rule;
+	}
+	/**
+	 * Returns index of the fingerprint that violates the rule.
+	 * 
+	 * @return fingerprint index or -1 if the violation is not specific to one fingerprint
+	 */
+	public int fingerprint() {
+		return fingerprint;
+	}
+	/**
+	 * Returns index of the minutia within the fingerprint that violates the rule.
+	 * 
+	 * @return minutia index or -1 if the violation is not specific to one minutia
+	 */
+	public int minutia() {
+		return minutia;
 	}
 }
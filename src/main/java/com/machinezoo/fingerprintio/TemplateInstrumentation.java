@@ -0,0 +1,83 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Receives notifications about every template parsed or serialized by the library.
+ * Notifications are sent by template constructors that parse templates, for example {@link com.machinezoo.fingerprintio.iso19794p2v2011.Iso19794p2v2011Template#Iso19794p2v2011Template(byte[])},
+ * and by their {@code toByteArray()} methods. All methods have empty default implementation.
+ * <p>
+ * Instrumentation is global. It is disabled by default, which costs only one field read per parsed or serialized template.
+ * Use {@link #install(TemplateInstrumentation)} to enable it. {@link TemplateMetrics} is a ready-to-use implementation.
+ * <p>
+ * Implementations are called synchronously on the thread that parses or serializes the template,
+ * so they must be thread-safe and fast. Exceptions thrown by implementations propagate to the caller.
+ *
+ * @see TemplateMetrics
+ */
+public interface TemplateInstrumentation {
+	/**
+	 * Called after template is parsed or after parsing fails.
+	 * Counts of fingerprints and minutiae are zero when parsing fails.
+	 * <p>
+	 * Lenient parsing with an exception handler that tolerates some errors, for example {@link com.machinezoo.noexception.Exceptions#silence()}
+	 * or {@link TemplateDiagnostics}, can succeed even though the template violates some rules.
+	 * Such templates are reported as successfully parsed with non-zero {@code violations}.
+	 *
+	 * @param format
+	 *            format of the template
+	 * @param bytes
+	 *            size of the serialized template
+	 * @param fingerprints
+	 *            number of fingerprints in the template
+	 * @param minutiae
+	 *            total number of minutiae in all fingerprints
+	 * @param nanos
+	 *            time spent parsing the template in nanoseconds
+	 * @param success
+	 *            {@code true} if the template was successfully parsed, {@code false} if parsing threw an exception
+	 * @param violations
+	 *            number of rule violations tolerated by the exception handler, zero for fully compliant templates
+	 * @param violation
+	 *            category of the first tolerated rule violation or {@code null} if there was none
+	 */
+	default void parsed(TemplateFormat format, int bytes, int fingerprints, int minutiae, long nanos, boolean success, int violations, TemplateRule violation) {
+	}
+	/**
+	 * Called after template is serialized or after serialization fails.
+	 * Size of the template and counts of fingerprints and minutiae are zero when serialization fails.
+	 *
+	 * @param format
+	 *            format of the template
+	 * @param bytes
+	 *            size of the serialized template
+	 * @param fingerprints
+	 *            number of fingerprints in the template
+	 * @param minutiae
+	 *            total number of minutiae in all fingerprints
+	 * @param nanos
+	 *            time spent validating and serializing the template in nanoseconds
+	 * @param success
+	 *            {@code true} if the template was successfully serialized, {@code false} if validation or serialization threw an exception
+	 */
+	default void serialized(TemplateFormat format, int bytes, int fingerprints, int minutiae, long nanos, boolean success) {
+	}
+	/**
+	 * Enables instrumentation globally. Previously installed instrumentation is replaced.
+	 *
+	 * @param instrumentation
+	 *            instrumentation that will receive notifications or {@code null} to disable instrumentation
+	 */
+	static void install(TemplateInstrumentation instrumentation) {
+		InstrumentTemplate.installed = instrumentation;
+	}
+	/**
+	 * Returns currently installed instrumentation.
+	 *
+	 * @return installed instrumentation or {@code null} if instrumentation is disabled
+	 */
+	static TemplateInstrumentation installed() {
+		return InstrumentTemplate.installed;
+	}
+}
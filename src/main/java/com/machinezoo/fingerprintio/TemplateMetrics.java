@@ -0,0 +1,244 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Lock-free {@link TemplateInstrumentation} that aggregates counters and histograms per template format.
+ * Parsing and serialization are tracked separately. Every update is a few {@link LongAdder} increments,
+ * so metrics can be safely installed in high-throughput applications.
+ * <p>
+ * Counters are meant to be periodically scraped into external monitoring system.
+ * They are cumulative since creation of the metrics object or since the last call to {@link #clear()}.
+ *
+ * @see TemplateInstrumentation#install(TemplateInstrumentation)
+ */
+public class TemplateMetrics implements TemplateInstrumentation {
+	/**
+	 * Counters and histograms for one operation (parsing or serialization) on one template format.
+	 * Histograms have 64 buckets. Bucket 0 counts zero values and bucket N counts values in range [2^(N-1), 2^N).
+	 */
+	public static class Counters {
+		private final LongAdder successes = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder tolerated = new LongAdder();
+		private final LongAdder violations = new LongAdder();
+		private final LongAdder[] rules = rules();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAdder fingerprints = new LongAdder();
+		private final LongAdder minutiae = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder[] latency = buckets();
+		private final LongAdder[] sizes = buckets();
+		private Counters() {
+		}
+		private static LongAdder[] buckets() {
+			LongAdder[] buckets = new LongAdder[64];
+			for (int i = 0; i < buckets.length; ++i)
+				buckets[i] = new LongAdder();
+			return buckets;
+		}
+		private static LongAdder[] rules() {
+			LongAdder[] rules = new LongAdder[TemplateRule.values().length];
+			for (int i = 0; i < rules.length; ++i)
+				rules[i] = new LongAdder();
+			return rules;
+		}
+		private static int bucket(long value) {
+			return Math.min(63, 64 - Long.numberOfLeadingZeros(Math.max(0, value)));
+		}
+		private static long[] snapshot(LongAdder[] buckets) {
+			long[] snapshot = new long[buckets.length];
+			for (int i = 0; i < buckets.length; ++i)
+				snapshot[i] = buckets[i].sum();
+			return snapshot;
+		}
+		private void record(int bytes, int fingerprints, int minutiae, long nanos, boolean success, int violations, TemplateRule violation) {
+			if (violations > 0) {
+				if (success)
+					tolerated.increment();
+				this.violations.add(violations);
+				if (violation != null)
+					rules[violation.ordinal()].increment();
+			}
+			record(bytes, fingerprints, minutiae, nanos, success);
+		}
+		private void record(int bytes, int fingerprints, int minutiae, long nanos, boolean success) {
+			if (success) {
+				successes.increment();
+				this.bytes.add(bytes);
+				this.fingerprints.add(fingerprints);
+				this.minutiae.add(minutiae);
+				sizes[bucket(bytes)].increment();
+			} else
+				failures.increment();
+			this.nanos.add(nanos);
+			latency[bucket(nanos)].increment();
+		}
+		private void clear() {
+			successes.reset();
+			failures.reset();
+			tolerated.reset();
+			violations.reset();
+			for (LongAdder rule : rules)
+				rule.reset();
+			bytes.reset();
+			fingerprints.reset();
+			minutiae.reset();
+			nanos.reset();
+			for (int i = 0; i < 64; ++i) {
+				latency[i].reset();
+				sizes[i].reset();
+			}
+		}
+		/**
+		 * Returns the number of successful operations.
+		 *
+		 * @return number of successfully parsed or serialized templates
+		 */
+		public long successes() {
+			return successes.sum();
+		}
+		/**
+		 * Returns the number of failed operations.
+		 *
+		 * @return number of templates that failed parsing or serialization
+		 */
+		public long failures() {
+			return failures.sum();
+		}
+		/**
+		 * Returns the number of templates that were successfully parsed only because the exception handler tolerated some rule violations.
+		 * These templates are also included in {@link #successes()}. It is always zero for serialization.
+		 *
+		 * @return number of successfully parsed templates with tolerated rule violations
+		 */
+		public long tolerated() {
+			return tolerated.sum();
+		}
+		/**
+		 * Returns total number of rule violations tolerated by the exception handler during parsing.
+		 * It is always zero for serialization.
+		 *
+		 * @return total number of tolerated rule violations
+		 */
+		public long violations() {
+			return violations.sum();
+		}
+		/**
+		 * Returns how many times each rule was the first tolerated rule violation in a template.
+		 * Rules that were never the first violation are not included.
+		 *
+		 * @return snapshot of counts of templates keyed by the first violated rule
+		 */
+		public Map<TemplateRule, Long> violatedRules() {
+			Map<TemplateRule, Long> snapshot = new EnumMap<>(TemplateRule.class);
+			for (TemplateRule rule : TemplateRule.values()) {
+				long count = rules[rule.ordinal()].sum();
+				if (count > 0)
+					snapshot.put(rule, count);
+			}
+			return snapshot;
+		}
+		/**
+		 * Returns total size of successfully parsed or serialized templates.
+		 *
+		 * @return total size in bytes
+		 */
+		public long bytes() {
+			return bytes.sum();
+		}
+		/**
+		 * Returns total number of fingerprints in successfully parsed or serialized templates.
+		 *
+		 * @return total number of fingerprints
+		 */
+		public long fingerprints() {
+			return fingerprints.sum();
+		}
+		/**
+		 * Returns total number of minutiae in successfully parsed or serialized templates.
+		 *
+		 * @return total number of minutiae
+		 */
+		public long minutiae() {
+			return minutiae.sum();
+		}
+		/**
+		 * Returns total time spent in successful and failed operations.
+		 *
+		 * @return total time in nanoseconds
+		 */
+		public long nanos() {
+			return nanos.sum();
+		}
+		/**
+		 * Returns histogram of operation duration in nanoseconds, including failed operations.
+		 *
+		 * @return 64-bucket histogram of duration
+		 */
+		public long[] latencyHistogram() {
+			return snapshot(latency);
+		}
+		/**
+		 * Returns histogram of template size in bytes. Only successful operations are included.
+		 *
+		 * @return 64-bucket histogram of size
+		 */
+		public long[] sizeHistogram() {
+			return snapshot(sizes);
+		}
+	}
+	private final Map<TemplateFormat, Counters> parsing = new EnumMap<>(TemplateFormat.class);
+	private final Map<TemplateFormat, Counters> serialization = new EnumMap<>(TemplateFormat.class);
+	/**
+	 * Creates new metrics with all counters set to zero.
+	 */
+	public TemplateMetrics() {
+		/*
+		 * Maps are fully populated up front and never modified, so they can be read concurrently without locking.
+		 */
+		for (TemplateFormat format : TemplateFormat.values()) {
+			parsing.put(format, new Counters());
+			serialization.put(format, new Counters());
+		}
+	}
+	@Override
+	public void parsed(TemplateFormat format, int bytes, int fingerprints, int minutiae, long nanos, boolean success, int violations, TemplateRule violation) {
+		parsing.get(format).record(bytes, fingerprints, minutiae, nanos, success, violations, violation);
+	}
+	@Override
+	public void serialized(TemplateFormat format, int bytes, int fingerprints, int minutiae, long nanos, boolean success) {
+		serialization.get(format).record(bytes, fingerprints, minutiae, nanos, success);
+	}
+	/**
+	 * Returns counters for parsing of templates in the specified format.
+	 *
+	 * @param format
+	 *            template format
+	 * @return live counters for parsing
+	 */
+	public Counters parsing(TemplateFormat format) {
+		return parsing.get(Objects.requireNonNull(format));
+	}
+	/**
+	 * Returns counters for serialization of templates in the specified format.
+	 *
+	 * @param format
+	 *            template format
+	 * @return live counters for serialization
+	 */
+	public Counters serialization(TemplateFormat format) {
+		return serialization.get(Objects.requireNonNull(format));
+	}
+	/**
+	 * Resets all counters to zero. Operations running concurrently with this method may be partially counted.
+	 */
+	public void clear() {
+		for (TemplateFormat format : TemplateFormat.values()) {
+			parsing.get(format).clear();
+			serialization.get(format).clear();
+		}
+	}
+}
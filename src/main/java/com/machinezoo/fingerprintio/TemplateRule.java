@@ -0,0 +1,45 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+/**
+ * Category of recoverable rule violation found while parsing a template.
+ * Lenient parsing reports every violation with one of these codes, so that violations can be counted per rule
+ * without parsing error messages. Exact wording of the violated rule is available from the accompanying message.
+ *
+ * @see TemplateDiagnostics
+ * @see TemplateFormatException#rule()
+ */
+public enum TemplateRule {
+	/**
+	 * Template declares a different format or format variant than the one it is being parsed as,
+	 * for example ANSI INCITS 378-2009/AM1 template parsed as ANSI INCITS 378-2009 template.
+	 */
+	FORMAT,
+	/**
+	 * Length field is inconsistent with the amount of data, for example total length indicating trimmed template.
+	 */
+	LENGTH,
+	/**
+	 * Unexpected data follows the end of the template, of a record, or of an extension block.
+	 */
+	TRAILING_DATA,
+	/**
+	 * Reserved bits or flags have unrecognized value.
+	 */
+	RESERVED,
+	/**
+	 * Enumerated field has unrecognized code, for example unknown finger position or minutia type.
+	 * Parsed object has {@code null} in place of such field.
+	 */
+	CODE,
+	/**
+	 * Extension block could not be decoded. It is then kept as generic extension block.
+	 */
+	EXTENSION,
+	/**
+	 * Decoded template violates some constraint of the format, for example field value out of range or non-unique finger views.
+	 * Structural validation stops at the first violated constraint, so only that one is reported.
+	 * Such violations are reported without fingerprint and minutia index.
+	 */
+	STRUCTURE
+}
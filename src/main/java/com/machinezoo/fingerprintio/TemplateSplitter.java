@@ -0,0 +1,190 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.stream.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Splits stream of concatenated templates into individual templates.
+ * Templates can be in any format listed in {@link TemplateFormat} and formats can be mixed in one stream.
+ * Length of every template is read from its header, so only one template is held in memory at a time
+ * and the stream is never read past the end of the last returned template.
+ * <p>
+ * Templates are not parsed or validated. Only the header is examined to find template length.
+ * Returned templates can be identified with {@link TemplateFormat#identify(byte[])} and parsed with format-specific template class.
+ * Unsupported template header, template length exceeding the limit, and stream ending in the middle of template
+ * cause {@link TemplateFormatException}. Exceptions thrown by the underlying stream are wrapped in {@link UncheckedIOException}.
+ * <p>
+ * The splitter does not close the stream. This class is not thread-safe.
+ *
+ * @see TemplateArchive
+ */
+public class TemplateSplitter implements Iterator<byte[]> {
+	/**
+	 * Default limit on template length. No realistic template is larger.
+	 */
+	public static final int DEFAULT_LIMIT = 16 * 1024 * 1024;
+	private final InputStream stream;
+	private final int limit;
+	private final byte[] header = new byte[14];
+	private byte[] next;
+	/**
+	 * Creates splitter that reads concatenated templates from a stream.
+	 * Templates larger than {@link #DEFAULT_LIMIT} are rejected.
+	 *
+	 * @param stream
+	 *            stream of concatenated templates
+	 */
+	public TemplateSplitter(InputStream stream) {
+		this(stream, DEFAULT_LIMIT);
+	}
+	/**
+	 * Creates splitter that reads concatenated templates from a stream.
+	 * Limit on template length bounds memory used by the splitter when the stream contains malformed length field.
+	 *
+	 * @param stream
+	 *            stream of concatenated templates
+	 * @param limit
+	 *            maximum length of a single template in bytes
+	 */
+	public TemplateSplitter(InputStream stream, int limit) {
+		this.stream = Objects.requireNonNull(stream);
+		if (limit <= 0)
+			throw new IllegalArgumentException();
+		this.limit = limit;
+	}
+	/**
+	 * Creates splitter that reads concatenated templates from a blocking channel.
+	 * Templates larger than {@link #DEFAULT_LIMIT} are rejected.
+	 *
+	 * @param channel
+	 *            blocking channel providing concatenated templates
+	 */
+	public TemplateSplitter(ReadableByteChannel channel) {
+		this(channel, DEFAULT_LIMIT);
+	}
+	/**
+	 * Creates splitter that reads concatenated templates from a blocking channel.
+	 * Limit on template length bounds memory used by the splitter when the channel provides malformed length field.
+	 *
+	 * @param channel
+	 *            blocking channel providing concatenated templates
+	 * @param limit
+	 *            maximum length of a single template in bytes
+	 */
+	public TemplateSplitter(ReadableByteChannel channel, int limit) {
+		this(Channels.newInputStream(channel), limit);
+	}
+	/**
+	 * Creates stream of templates read from concatenated templates in {@link InputStream}.
+	 * Templates are read lazily as the returned stream is consumed.
+	 *
+	 * @param stream
+	 *            stream of concatenated templates
+	 * @return sequential stream of individual templates
+	 */
+	public static Stream<byte[]> split(InputStream stream) {
+		return new TemplateSplitter(stream).stream();
+	}
+	/**
+	 * Creates stream of templates read from concatenated templates in a blocking channel.
+	 * Templates are read lazily as the returned stream is consumed.
+	 *
+	 * @param channel
+	 *            blocking channel providing concatenated templates
+	 * @return sequential stream of individual templates
+	 */
+	public static Stream<byte[]> split(ReadableByteChannel channel) {
+		return new TemplateSplitter(channel).stream();
+	}
+	/**
+	 * Returns remaining templates as a stream. Templates are read lazily as the returned stream is consumed.
+	 *
+	 * @return sequential stream of the remaining templates
+	 */
+	public Stream<byte[]> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+	/**
+	 * Checks whether there is another template in the stream. This reads the whole next template.
+	 *
+	 * @return {@code true} if there is another template, {@code false} if the stream ended after the last template
+	 * @throws TemplateFormatException
+	 *             if the next template has unsupported header or it is truncated
+	 * @throws UncheckedIOException
+	 *             if the stream throws
+	 */
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = read();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+		return next != null;
+	}
+	/**
+	 * Returns the next template.
+	 *
+	 * @return next serialized template in any supported format
+	 * @throws NoSuchElementException
+	 *             if there are no more templates in the stream
+	 * @throws TemplateFormatException
+	 *             if the next template has unsupported header or it is truncated
+	 * @throws UncheckedIOException
+	 *             if the stream throws
+	 */
+	@Override
+	public byte[] next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		byte[] template = next;
+		next = null;
+		return template;
+	}
+	private byte[] read() throws IOException {
+		int available = stream.readNBytes(header, 0, 12);
+		if (available == 0)
+			return null;
+		if (available < 12)
+			throw new TemplateFormatException("Stream ends in the middle of template header.");
+		/*
+		 * Only the header is available, so ANSI 378-2009 and ISO 19794-2:2011 cannot be told apart here.
+		 * That's fine, because both have 4-byte length at the same offset.
+		 */
+		ByteBuffer buffer = ByteBuffer.wrap(header, 0, 12);
+		TemplateFormat format = TemplateFormat.identify(buffer);
+		if (format == null)
+			throw new TemplateFormatException("Unsupported template format.");
+		int headerLength = 12;
+		long length;
+		if (format == TemplateFormat.ANSI_378_2004) {
+			/*
+			 * ANSI 378-2004 has 2-byte length field that is extended to 6 bytes when it is zero.
+			 */
+			length = IdentifyTemplate.uint16(buffer, 8);
+			if (length == 0) {
+				headerLength = 14;
+				if (stream.readNBytes(header, 12, 2) < 2)
+					throw new TemplateFormatException("Stream ends in the middle of template header.");
+				length = IdentifyTemplate.uint32(ByteBuffer.wrap(header), 10);
+			}
+		} else
+			length = IdentifyTemplate.uint32(buffer, 8);
+		if (length < headerLength)
+			throw new TemplateFormatException("Template length is smaller than template header.");
+		if (length > limit)
+			throw new TemplateFormatException("Template length exceeds configured limit.");
+		byte[] template = new byte[(int)length];
+		System.arraycopy(header, 0, template, 0, headerLength);
+		if (stream.readNBytes(template, headerLength, template.length - headerLength) < template.length - headerLength)
+			throw new TemplateFormatException("Stream ends in the middle of template.");
+		return template;
+	}
+}
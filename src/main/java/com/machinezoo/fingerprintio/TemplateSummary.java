@@ -0,0 +1,209 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.common.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Summary of a template in any supported format.
+ * Only template and fingerprint headers are read. Minutiae and extension blocks are skipped using their length fields.
+ * Scanning is therefore much faster than full parsing and it does not allocate any objects per minutia.
+ * <p>
+ * Summary performs only structural checks needed to find fingerprint headers.
+ * Field values are not validated. Templates must be parsed in full to validate them.
+ *
+ * @see TemplateFormat
+ */
+public class TemplateSummary {
+	/**
+	 * Format of the template.
+	 */
+	public TemplateFormat format;
+	/**
+	 * Vendor ID. Defaults to {@link IbiaOrganizations#UNKNOWN} for formats that do not have vendor ID.
+	 * For ISO 19794-2:2011 templates, this is sensor vendor of the first fingerprint.
+	 */
+	public int vendorId = IbiaOrganizations.UNKNOWN;
+	/**
+	 * Sensor ID. For ISO 19794-2:2011 templates, this is sensor ID of the first fingerprint.
+	 */
+	public int sensorId;
+	/**
+	 * Summaries of fingerprints in the template.
+	 */
+	public List<FingerprintSummary> fingerprints = new ArrayList<>();
+	/**
+	 * Scans template in any supported format.
+	 *
+	 * @param template
+	 *            serialized template in any supported format
+	 * @throws TemplateFormatException
+	 *             if template format is not supported or the template is truncated
+	 * @see TemplateFormat#identify(byte[])
+	 */
+	public TemplateSummary(byte[] template) {
+		this(ByteBuffer.wrap(template));
+	}
+	/**
+	 * Scans template in any supported format stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in any supported format
+	 * @throws TemplateFormatException
+	 *             if template format is not supported or the template is truncated
+	 * @see TemplateFormat#identify(ByteBuffer)
+	 */
+	public TemplateSummary(ByteBuffer template) {
+		this(identify(template), template);
+	}
+	/**
+	 * Scans template in known format stored in a buffer. This skips format detection.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param format
+	 *            format of the template
+	 * @param template
+	 *            buffer holding serialized template in the specified format
+	 * @throws TemplateFormatException
+	 *             if the template is truncated
+	 */
+	public TemplateSummary(TemplateFormat format, ByteBuffer template) {
+		Objects.requireNonNull(format);
+		this.format = format;
+		TemplateUtils.decodeTemplate(template, in -> {
+			in.skip(8);
+			switch (format) {
+			case ANSI_378_2004:
+				scanAnsi378v2004(in);
+				break;
+			case ANSI_378_2009:
+			case ANSI_378_2009_AM1:
+				scanAnsi378v2009(in);
+				break;
+			case ISO_19794_2_2005:
+				scanIso19794p2v2005(in);
+				break;
+			case ISO_19794_2_2011:
+				scanIso19794p2v2011(in);
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		});
+	}
+	private static TemplateFormat identify(ByteBuffer template) {
+		TemplateFormat format = TemplateFormat.identify(template);
+		if (format == null)
+			throw new TemplateFormatException("Unsupported template format.");
+		return format;
+	}
+	private void scanAnsi378v2004(TemplateReader in) {
+		/*
+		 * Zero 2-byte length is followed by 4-byte length.
+		 */
+		if (in.readUnsignedShort() == 0)
+			in.skip(4);
+		vendorId = in.readUnsignedShort();
+		in.skip(2);
+		sensorId = in.readUnsignedShort() & 0xfff;
+		int width = in.readUnsignedShort();
+		int height = in.readUnsignedShort();
+		in.skip(4);
+		int count = in.readUnsignedByte();
+		in.skip(1);
+		for (int i = 0; i < count; ++i)
+			scanFingerprintWithOffsetAndType(in, width, height);
+	}
+	private void scanIso19794p2v2005(TemplateReader in) {
+		in.skip(4);
+		sensorId = in.readUnsignedShort() & 0xfff;
+		int width = in.readUnsignedShort();
+		int height = in.readUnsignedShort();
+		in.skip(4);
+		int count = in.readUnsignedByte();
+		in.skip(1);
+		for (int i = 0; i < count; ++i)
+			scanFingerprintWithOffsetAndType(in, width, height);
+	}
+	/*
+	 * ANSI 378-2004 and ISO 19794-2:2005 share fingerprint header layout.
+	 */
+	private void scanFingerprintWithOffsetAndType(TemplateReader in, int width, int height) {
+		FingerprintSummary fp = new FingerprintSummary();
+		fp.position = in.readUnsignedByte();
+		fp.view = in.readUnsignedByte() >> 4;
+		fp.quality = in.readUnsignedByte();
+		fp.minutiaCount = in.readUnsignedByte();
+		fp.width = width;
+		fp.height = height;
+		in.skip(6 * fp.minutiaCount);
+		in.skip(in.readUnsignedShort());
+		fingerprints.add(fp);
+	}
+	/*
+	 * ANSI 378-2009 and its amendment 1 differ only in minutia and extension content, which we skip anyway.
+	 */
+	private void scanAnsi378v2009(TemplateReader in) {
+		in.skip(4);
+		vendorId = in.readUnsignedShort();
+		in.skip(3);
+		sensorId = in.readUnsignedShort();
+		int count = in.readUnsignedByte();
+		in.skip(1);
+		for (int i = 0; i < count; ++i) {
+			FingerprintSummary fp = new FingerprintSummary();
+			fp.position = in.readUnsignedByte();
+			fp.view = in.readUnsignedByte();
+			in.skip(1);
+			fp.quality = in.readUnsignedByte();
+			in.skip(4);
+			fp.width = in.readUnsignedShort();
+			fp.height = in.readUnsignedShort();
+			in.skip(4);
+			fp.minutiaCount = in.readUnsignedByte();
+			in.skip(6 * fp.minutiaCount);
+			in.skip(in.readUnsignedShort());
+			fingerprints.add(fp);
+		}
+	}
+	private void scanIso19794p2v2011(TemplateReader in) {
+		in.skip(4);
+		int count = in.readUnsignedShort();
+		boolean hasCertificates = in.readUnsignedByte() != 0;
+		for (int i = 0; i < count; ++i) {
+			FingerprintSummary fp = new FingerprintSummary();
+			int start = in.offset();
+			long length = 0xffff_ffffL & in.readInt();
+			in.skip(10);
+			int vendor = in.readUnsignedShort();
+			int sensor = in.readUnsignedShort();
+			if (i == 0) {
+				vendorId = vendor;
+				sensorId = sensor;
+			}
+			int qcount = in.readUnsignedByte();
+			fp.quality = 255;
+			if (qcount > 0) {
+				fp.quality = in.readUnsignedByte();
+				in.skip(5 * qcount - 1);
+			}
+			if (hasCertificates)
+				in.skip(3 * in.readUnsignedByte());
+			fp.position = in.readUnsignedByte();
+			fp.view = in.readUnsignedByte();
+			in.skip(5);
+			fp.width = in.readUnsignedShort();
+			fp.height = in.readUnsignedShort();
+			in.skip(1);
+			fp.minutiaCount = in.readUnsignedByte();
+			long remaining = start + length - in.offset();
+			if (remaining < 0)
+				throw new TemplateFormatException("Sample length in bytes is not large enough to accommodate fingerprint header.");
+			in.skip((int)Math.min(remaining, Integer.MAX_VALUE));
+			fingerprints.add(fp);
+		}
+	}
+}
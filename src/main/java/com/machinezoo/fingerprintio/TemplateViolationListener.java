@@ -0,0 +1,29 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import java.util.function.*;
+
+/**
+ * Receives every recoverable rule violation reported to {@link TemplateDiagnostics}.
+ * This is useful for logging or for finding fingerprints and minutiae that violate format rules.
+ * Listener is called synchronously on the parsing thread, so it must be thread-safe if the diagnostics handler is shared.
+ *
+ * @see TemplateDiagnostics#TemplateDiagnostics(TemplateViolationListener)
+ */
+@FunctionalInterface
+public interface TemplateViolationListener {
+	/**
+	 * Called for every recoverable rule violation.
+	 * Message is computed only when requested, so listeners that do not need it avoid the cost of building it.
+	 *
+	 * @param rule
+	 *            category of the violated rule
+	 * @param fingerprint
+	 *            index of the fingerprint that violates the rule or -1 if the violation is not specific to one fingerprint
+	 * @param minutia
+	 *            index of the minutia within the fingerprint or -1 if the violation is not specific to one minutia
+	 * @param message
+	 *            supplier of error message describing the violated rule
+	 */
+	void violated(TemplateRule rule, int fingerprint, int minutia, Supplier<String> message);
+}
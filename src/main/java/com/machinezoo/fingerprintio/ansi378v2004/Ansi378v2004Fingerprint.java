@@ -3,6 +3,8 @@ package com.machinezoo.fingerprintio.ansi378v2004;
 
 import java.util.*;
 import java.util.function.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
 
@@ -52,37 +54,71 @@ public class Ansi378v2004Fingerprint {
 	 */
 	public Ansi378v2004Fingerprint() {
 	}
-	Ansi378v2004Fingerprint(TemplateReader in, ExceptionHandler handler) {
-		position = TemplateUtils.decodeType(in.readUnsignedByte(), Ansi378v2004Position.class, handler, "Unrecognized finger position code.");
+	Ansi378v2004Fingerprint(TemplateReader in, ExceptionHandler handler, int index) {
+		decode(in, handler, index);
+	}
+	void decode(TemplateReader in, ExceptionHandler handler, int index) {
+		counts = null;
+		coredelta = null;
+		extensions = TemplateUtils.clearList(extensions);
+		position = TemplateUtils.decodeType(in.readUnsignedByte(), Ansi378v2004Position.CODES, handler, index, -1, () -> "Unrecognized finger position code.");
 		int offsetAndType = in.readUnsignedByte();
 		view = offsetAndType >> 4;
-		scanType = TemplateUtils.decodeType(offsetAndType & 0xf, Ansi378v2004ScanType.values(), t -> t.code, handler, "Unrecognized sensor type code.");
+		scanType = TemplateUtils.decodeType(offsetAndType & 0xf, Ansi378v2004ScanType.CODES, handler, index, -1, () -> "Unrecognized sensor type code.");
 		quality = in.readUnsignedByte();
 		int count = in.readUnsignedByte();
-		for (int i = 0; i < count; ++i)
-			minutiae.add(new Ansi378v2004Minutia(in, handler));
+		minutiae = TemplateUtils.decodeList(minutiae, count, (m, i) -> m.decode(in, handler, index, i), i -> new Ansi378v2004Minutia(in, handler, index, i));
 		int totalBytes = in.readUnsignedShort();
 		int readBytes = 0;
 		while (readBytes < totalBytes) {
 			Ansi378v2004Extension extension = new Ansi378v2004Extension(in);
 			if (extension.type == Ansi378v2004CountExtension.IDENTIFIER)
-				decodeExtension(extension, data -> counts = new Ansi378v2004CountExtension(data, handler), handler, "Unable to decode ridge count extension.");
+				decodeExtension(extension, data -> counts = new Ansi378v2004CountExtension(data, handler, index), handler, index, () -> "Unable to decode ridge count extension.");
 			else if (extension.type == Ansi378v2004CoreDeltaExtension.IDENTIFIER)
-				decodeExtension(extension, data -> coredelta = new Ansi378v2004CoreDeltaExtension(data, handler), handler, "Unable to decode core/delta extension.");
+				decodeExtension(extension, data -> coredelta = new Ansi378v2004CoreDeltaExtension(data, handler, index), handler, index, () -> "Unable to decode core/delta extension.");
 			else
 				extensions.add(extension);
 			readBytes += extension.measure();
 		}
-		ValidateTemplate.condition(readBytes == totalBytes, handler, "Total length of extension data doesn't match the sum of extension block lengths.");
+		ValidateTemplate.condition(readBytes == totalBytes, handler, TemplateRule.LENGTH, index, () -> "Total length of extension data doesn't match the sum of extension block lengths.");
 	}
-	private void decodeExtension(Ansi378v2004Extension extension, Consumer<byte[]> decoder, ExceptionHandler handler, String message) {
+	private void decodeExtension(Ansi378v2004Extension extension, Consumer<byte[]> decoder, ExceptionHandler handler, int index, Supplier<String> message) {
 		try {
 			decoder.accept(extension.data);
 		} catch (Throwable ex) {
-			ValidateTemplate.fail(handler, message, ex);
+			ValidateTemplate.fail(handler, TemplateRule.EXTENSION, index, -1, message, ex);
 			extensions.add(extension);
 		}
 	}
+	/**
+	 * Converts {@link #minutiae} to compact representation that stores minutiae in primitive arrays.
+	 *
+	 * @return copy of {@link #minutiae} in compact representation
+	 * @see #expandMinutiae(CompactMinutiae)
+	 */
+	public CompactMinutiae compactMinutiae() {
+		CompactMinutiae compact = new CompactMinutiae(minutiae.size());
+		for (int i = 0; i < minutiae.size(); ++i) {
+			Ansi378v2004Minutia minutia = minutiae.get(i);
+			compact.set(i, minutia.type.ordinal(), minutia.positionX, minutia.positionY, minutia.angle, minutia.quality);
+		}
+		return compact;
+	}
+	/**
+	 * Replaces {@link #minutiae} with minutiae (<a href="https://templates.machinezoo.com/ansi378-2004#minutia">MINUTIA</a>) stored in compact representation.
+	 *
+	 * @param compact
+	 *            minutiae in compact representation
+	 * @throws TemplateFormatException
+	 *             if {@code compact} contains unrecognized minutia type code
+	 * @see #compactMinutiae()
+	 */
+	public void expandMinutiae(CompactMinutiae compact) {
+		List<Ansi378v2004Minutia> expanded = new ArrayList<>(compact.size());
+		for (int i = 0; i < compact.size(); ++i)
+			expanded.add(new Ansi378v2004Minutia(compact, i));
+		minutiae = expanded;
+	}
 	void write(TemplateWriter out) {
 		out.writeByte(position.ordinal());
 		out.writeByte((view << 4) | scanType.code);
@@ -122,7 +158,9 @@ public class Ansi378v2004Fingerprint {
 		ValidateTemplate.condition(coredelta == null || !coredelta.cores.isEmpty(), "Not strictly compliant template. Core count is zero.");
 	}
 	private int extensionBytes() {
-		int bytes = extensions.stream().mapToInt(Ansi378v2004Extension::measure).sum();
+		int bytes = 0;
+		for (Ansi378v2004Extension extension : extensions)
+			bytes += extension.measure();
 		if (counts != null)
 			bytes += counts.measure();
 		if (coredelta != null)
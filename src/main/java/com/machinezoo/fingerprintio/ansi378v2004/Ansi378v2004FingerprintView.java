@@ -0,0 +1,140 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.ansi378v2004;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Lazily decoded fingerprint (<a href="https://templates.machinezoo.com/ansi378-2004#fingerprint">FINGERPRINT</a>).
+ * Fingerprint header is decoded eagerly. Minutiae and extensions are decoded on first access.
+ *
+ * @see Ansi378v2004TemplateView
+ */
+public class Ansi378v2004FingerprintView {
+	/**
+	 * Finger position on hands (<a href="https://templates.machinezoo.com/ansi378-2004#position">POSITION</a>).
+	 */
+	public Ansi378v2004Position position;
+	/**
+	 * Finger view number (<a href="https://templates.machinezoo.com/ansi378-2004#viewoffset">VIEWOFFSET</a>).
+	 */
+	public int view;
+	/**
+	 * Impression type (<a href="https://templates.machinezoo.com/ansi378-2004#sampletype">SAMPLETYPE</a>).
+	 */
+	public Ansi378v2004ScanType scanType;
+	/**
+	 * Fingerprint quality (<a href="https://templates.machinezoo.com/ansi378-2004#fpquality">FPQUALITY</a>).
+	 */
+	public int quality;
+	/**
+	 * Number of minutiae (<a href="https://templates.machinezoo.com/ansi378-2004#minutia">MINUTIA</a>) in this fingerprint.
+	 * This is available without decoding the minutiae.
+	 */
+	public int minutiaCount;
+	private final ByteBuffer data;
+	private final int minutiaOffset;
+	private final ExceptionHandler handler;
+	private final int index;
+	private Ansi378v2004Fingerprint decoded;
+	Ansi378v2004FingerprintView(TemplateReader in, ByteBuffer template, ExceptionHandler handler, int index) {
+		int start = in.offset();
+		position = TemplateUtils.decodeType(in.readUnsignedByte(), Ansi378v2004Position.CODES, handler, index, -1, () -> "Unrecognized finger position code.");
+		int offsetAndType = in.readUnsignedByte();
+		view = offsetAndType >> 4;
+		scanType = TemplateUtils.decodeType(offsetAndType & 0xf, Ansi378v2004ScanType.CODES, handler, index, -1, () -> "Unrecognized sensor type code.");
+		quality = in.readUnsignedByte();
+		minutiaCount = in.readUnsignedByte();
+		minutiaOffset = in.offset() - start;
+		in.skip(6 * minutiaCount);
+		in.skip(in.readUnsignedShort());
+		data = TemplateUtils.slice(template, start, in.offset() - start);
+		this.handler = handler;
+		this.index = index;
+	}
+	/**
+	 * Decodes the whole fingerprint, including minutiae and extensions.
+	 * The fingerprint is decoded only once. Subsequent calls return the same object.
+	 *
+	 * @return fully decoded fingerprint
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the exception handler returns {@code false}
+	 */
+	public Ansi378v2004Fingerprint decode() {
+		if (decoded == null)
+			decoded = TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> new Ansi378v2004Fingerprint(in, handler, index));
+		return decoded;
+	}
+	/**
+	 * Decodes minutiae (<a href="https://templates.machinezoo.com/ansi378-2004#minutia">MINUTIA</a>) straight into compact representation.
+	 * This is faster than {@link #decode()}, because no minutia objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and minutiae are not validated.
+	 *
+	 * @return minutiae in compact representation
+	 * @throws TemplateFormatException
+	 *             if minutia records are truncated
+	 * @see Ansi378v2004Fingerprint#compactMinutiae()
+	 */
+	public CompactMinutiae compactMinutiae() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> {
+			in.skip(minutiaOffset);
+			return TemplateUtils.decodeMinutiae(in, minutiaCount, true, 0);
+		});
+	}
+	/**
+	 * Decodes ridge count extension (<a href="https://templates.machinezoo.com/ansi378-2004#rcountext">RCOUNTEXT</a>) straight into compact adjacency index.
+	 * This is faster than {@link #decode()}, because no edge objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and edges are not validated.
+	 *
+	 * @return ridge count edges in compact representation or {@code null} if ridge count extension is not present
+	 * @throws TemplateFormatException
+	 *             if extension data is truncated or malformed
+	 * @see Ansi378v2004CountExtension#compactEdges(int)
+	 */
+	public RidgeCountGraph compactEdges() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> {
+			in.skip(minutiaOffset + 6 * minutiaCount);
+			return TemplateUtils.decodeCountGraph(in, minutiaCount, true);
+		});
+	}
+	/**
+	 * List of minutiae (<a href="https://templates.machinezoo.com/ansi378-2004#minutia">MINUTIA</a>).
+	 *
+	 * @return list of minutiae, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Ansi378v2004Minutia> minutiae() {
+		return decode().minutiae;
+	}
+	/**
+	 * Ridge count extension (<a href="https://templates.machinezoo.com/ansi378-2004#rcountext">RCOUNTEXT</a>).
+	 *
+	 * @return ridge count extension, decoded on first access, or {@code null} if ridge count extension is not present
+	 * @see #decode()
+	 */
+	public Ansi378v2004CountExtension counts() {
+		return decode().counts;
+	}
+	/**
+	 * Core and delta extension (<a href="https://templates.machinezoo.com/ansi378-2004#coredelta">COREDELTA</a>).
+	 *
+	 * @return core and delta extension, decoded on first access, or {@code null} if core and delta extension is not present
+	 * @see #decode()
+	 */
+	public Ansi378v2004CoreDeltaExtension coredelta() {
+		return decode().coredelta;
+	}
+	/**
+	 * List of extension data blocks (<a href="https://templates.machinezoo.com/ansi378-2004#extension">EXTENSION</a>).
+	 *
+	 * @return list of unrecognized extension blocks, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Ansi378v2004Extension> extensions() {
+		return decode().extensions;
+	}
+}
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.ansi378v2004;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Impression type (<a href="https://templates.machinezoo.com/ansi378-2004#sampletype">SAMPLETYPE</a>).
  */
@@ -29,6 +31,7 @@ public enum Ansi378v2004ScanType {
 	 * Live contactless (code 9).
 	 */
 	LIVE_CONTACTLESS(9);
+	static final CodeTable<Ansi378v2004ScanType> CODES = new CodeTable<>(values(), t -> t.code);
 	final int code;
 	Ansi378v2004ScanType(int code) {
 		this.code = code;
@@ -3,12 +3,20 @@ package com.machinezoo.fingerprintio.ansi378v2004;
 
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import com.machinezoo.fingerprintio.TemplateFormat;
 import com.machinezoo.fingerprintio.TemplateFormatException;
+import com.machinezoo.fingerprintio.TemplateRule;
 import com.machinezoo.fingerprintio.common.IbiaOrganizations;
+import com.machinezoo.fingerprintio.utils.IdentifyTemplate;
+import com.machinezoo.fingerprintio.utils.InstrumentTemplate;
 import com.machinezoo.fingerprintio.utils.TemplateReader;
 import com.machinezoo.fingerprintio.utils.TemplateUtils;
 import com.machinezoo.fingerprintio.utils.TemplateWriter;
@@ -22,7 +30,7 @@ import com.machinezoo.noexception.Exceptions;
  * @see <a href="https://templates.machinezoo.com/ansi378-2004">ANSI INCITS 378-2004 Summary</a>
  */
 public class Ansi378v2004Template {
-    private static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, ' ', '2', '0', 0 };
+    static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, ' ', '2', '0', 0 };
     /**
      * Checks whether provided template is an ANSI INCITS 378-2004 template.
      * This method does not do any template validation or conformance checking.
@@ -33,42 +41,19 @@ public class Ansi378v2004Template {
      *            serialized template that is to be evaluated
      * @return {@code true} if {@code template} is an ANSI INCITS 378-2004 template, {@code false} otherwise
      */
-    public static boolean accepts(byte[] template) {
-        if (template.length < MAGIC.length + 4)
-            return false;
-        if (!Arrays.equals(MAGIC, Arrays.copyOf(template, MAGIC.length)))
-            return false;
-        TemplateReader in = new TemplateReader(template);
-        in.skipBytes(MAGIC.length);
-        /*
-         * Differentiate from ISO 19794-2 by examining the length field.
-         */
-        int bytes01 = in.readUnsignedShort();
-        if (bytes01 >= 26) {
-            /*
-             * Too big for ISO 19794-2. It's indeed ANSI 378-2004 with 2-byte length field.
-             */
-            return true;
-        } else if (bytes01 > 0) {
-            /*
-             * Invalid length field for ANSI 378. Must be ISO 19794-2.
-             */
-            return false;
-        } else {
-            int bytes23 = in.readUnsignedShort();
-            if (bytes23 >= 24) {
-                /*
-                 * Too big for ANSI 378. Must be ISO 19794-2.
-                 */
-                return false;
-            } else {
-                /*
-                 * It's ANSI 378-2004 with 6-byte length field.
-                 */
-                return true;
-            }
-        }
-    }
+    public static boolean accepts(byte[] template) { return accepts(ByteBuffer.wrap(template)); }
+    /**
+     * Checks whether provided template is an ANSI INCITS 378-2004 template.
+     * This method does not do any template validation or conformance checking.
+     * It just differentiates ANSI INCITS 378-2004 from other template formats
+     * as quickly as possible, mostly by looking at template header.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     *
+     * @param template
+     *            buffer holding serialized template that is to be evaluated
+     * @return {@code true} if {@code template} is an ANSI INCITS 378-2004 template, {@code false} otherwise
+     */
+    public static boolean accepts(ByteBuffer template) { return IdentifyTemplate.magic(template, MAGIC) && IdentifyTemplate.ansi378v2004(template); }
     /**
      * Vendor ID (<a href="https://templates.machinezoo.com/ansi378-2004#vendor">VENDOR</a>).
      * Defaults to {@link IbiaOrganizations#UNKNOWN}.
@@ -122,6 +107,16 @@ public class Ansi378v2004Template {
      *             if the template cannot be parsed or it fails validation
      */
     public Ansi378v2004Template(byte[] template) { this(template, Exceptions.propagate()); }
+    /**
+     * Parses and validates ANSI INCITS 378-2004 template stored in a buffer.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     *
+     * @param template
+     *            buffer holding serialized template in ANSI INCITS 378-2004 format
+     * @throws TemplateFormatException
+     *             if the template cannot be parsed or it fails validation
+     */
+    public Ansi378v2004Template(ByteBuffer template) { this(template, Exceptions.propagate()); }
     /**
      * Parses and optionally validates ANSI INCITS 378-2004 template.
      *
@@ -148,7 +143,66 @@ public class Ansi378v2004Template {
      * @throws TemplateFormatException
      *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
      */
-    public Ansi378v2004Template(byte[] template, ExceptionHandler handler) {
+    public Ansi378v2004Template(byte[] template, ExceptionHandler handler) { this(ByteBuffer.wrap(template), handler); }
+    /**
+     * Parses and optionally validates ANSI INCITS 378-2004 template stored in a buffer.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * Slice of a larger array can be passed in via {@link ByteBuffer#wrap(byte[], int, int)}.
+     * <p>
+     * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+     * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+     * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+     *
+     * @param template
+     *            buffer holding serialized template in ANSI INCITS 378-2004 format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     */
+    public Ansi378v2004Template(ByteBuffer template, ExceptionHandler handler) {
+        InstrumentTemplate.parse(TemplateFormat.ANSI_378_2004, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+    }
+    /**
+     * Parses and optionally validates ANSI INCITS 378-2004 template into this object, replacing its current content.
+     * This is an alternative to constructors that reduces allocations when many templates are parsed in a loop.
+     * Fingerprint and minutia objects already present in this template are reused where possible.
+     * Lists are reused too, but only those allocated by this library. Other lists, for example immutable ones, are replaced together with their items. Extensions are always decoded into new objects.
+     * Parsing is still not allocation-free. Every call allocates a few small short-lived objects:
+     * internal template reader and lambdas carrying parsing and validation state, once per template and once per fingerprint.
+     * Template content is unspecified if parsing fails.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * <p>
+     * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+     * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+     * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+     * 
+     * @param template
+     *            buffer holding serialized template in ANSI INCITS 378-2004 format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     */
+    public void parse(ByteBuffer template, ExceptionHandler handler) {
+        InstrumentTemplate.parse(TemplateFormat.ANSI_378_2004, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+    }
+    /**
+     * Parses and optionally validates ANSI INCITS 378-2004 template into this object, replacing its current content.
+     * Array is wrapped in new {@link ByteBuffer} on every call. Wrap it once and call {@link #parse(ByteBuffer, ExceptionHandler)} to avoid that.
+     * 
+     * @param template
+     *            serialized template in ANSI INCITS 378-2004 format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     * @see #parse(ByteBuffer, ExceptionHandler)
+     */
+    public void parse(byte[] template, ExceptionHandler handler) {
+        parse(ByteBuffer.wrap(template), handler);
+    }
+    private void decode(ByteBuffer template, ExceptionHandler handler) {
         if (!accepts(template))
             throw new TemplateFormatException("This is not an ANSI INCITS 378-2004 template.");
         TemplateUtils.decodeTemplate(template, in -> {
@@ -158,7 +212,7 @@ public class Ansi378v2004Template {
             subformat = in.readUnsignedShort();
             sensorId = in.readUnsignedShort();
             sensorCertified = (sensorId & 0x8000) != 0;
-            ValidateTemplate.condition((sensorId & 0x7000) == 0, handler, "Unrecognized sensor compliance bits.");
+            ValidateTemplate.condition((sensorId & 0x7000) == 0, handler, TemplateRule.RESERVED, () -> "Unrecognized sensor compliance bits.");
             sensorId &= 0xfff;
             width = in.readUnsignedShort();
             height = in.readUnsignedShort();
@@ -166,13 +220,12 @@ public class Ansi378v2004Template {
             resolutionY = in.readUnsignedShort();
             int count = in.readUnsignedByte();
             in.skipBytes(1);
-            for (int i = 0; i < count; ++i)
-                fingerprints.add(new Ansi378v2004Fingerprint(in, handler));
-            ValidateTemplate.condition(in.available() == 0, handler, "Extra data at the end of the template.");
+            fingerprints = TemplateUtils.decodeList(fingerprints, count, (fp, i) -> fp.decode(in, handler, i), i -> new Ansi378v2004Fingerprint(in, handler, i));
+            ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Extra data at the end of the template.");
             ValidateTemplate.structure(this::validate, handler);
         });
     }
-    private void skipLength(TemplateReader in, ExceptionHandler handler) {
+    static void skipLength(TemplateReader in, ExceptionHandler handler) {
         int available = in.available();
         int length = in.readUnsignedShort();
         if (length == 0) {
@@ -180,11 +233,11 @@ public class Ansi378v2004Template {
              * Zero 2-byte length means this template has a 6-byte length field.
              */
             length = (in.readUnsignedShort() << 16) | in.readUnsignedShort();
-            ValidateTemplate.condition(length >= 0x10000, handler,
-                "Not strictly compliant template: 6-byte length field should have value of at least 0x10000.");
+            ValidateTemplate.condition(length >= 0x10000, handler, TemplateRule.LENGTH,
+                () -> "Not strictly compliant template: 6-byte length field should have value of at least 0x10000.");
         }
-        ValidateTemplate.condition(length >= 26, handler, "Total length must be at least 26 bytes.");
-        ValidateTemplate.condition(length <= MAGIC.length + available, handler, "Total length indicates trimmed template.");
+        ValidateTemplate.condition(length >= 26, handler, TemplateRule.LENGTH, () -> "Total length must be at least 26 bytes.");
+        ValidateTemplate.condition(length <= MAGIC.length + available, handler, TemplateRule.LENGTH, () -> "Total length indicates trimmed template.");
     }
     /**
      * Validates and serializes the template in ANSI INCITS 378-2004 format.
@@ -194,10 +247,137 @@ public class Ansi378v2004Template {
      *             if the template fails validation
      */
     public byte[] toByteArray() {
-        validate();
-        TemplateWriter out = new TemplateWriter();
-        out.write(MAGIC);
+        return toByteArray(true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2004 format, optionally skipping validation.
+     * Validation can be safely skipped if the template was parsed with strict exception handler and it was not modified since.
+     * Serializing invalid template without validation produces malformed output or fails with unspecified exception.
+     * This applies to templates in all formats supported by this library.
+     *
+     * @param validate
+     *            {@code true} to validate the template like {@link #toByteArray()}, {@code false} to skip validation
+     * @return serialized template in ANSI INCITS 378-2004 format
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     */
+    public byte[] toByteArray(boolean validate) {
+        return InstrumentTemplate.serialize(TemplateFormat.ANSI_378_2004, () -> encode(validate), fingerprints, fp -> fp.minutiae.size());
+    }
+    private byte[] encode(boolean validate) {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateWriter out = new TemplateWriter(length);
+        write(out, length);
+        return out.toByteArray();
+    }
+    /**
+     * Validates and serializes the template in ANSI INCITS 378-2004 format into a buffer.
+     * Template is written at buffer's position, which is then advanced past the template.
+     * Nothing is written if the template does not fit in the buffer.
+     *
+     * @param buffer
+     *            buffer to receive serialized template in ANSI INCITS 378-2004 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws BufferOverflowException
+     *             if there is not enough space remaining in the buffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        writeTo(buffer, true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2004 format into a buffer, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written at buffer's position, which is then advanced past the template.
+     * Nothing is written if the template does not fit in the buffer.
+     *
+     * @param buffer
+     *            buffer to receive serialized template in ANSI INCITS 378-2004 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(ByteBuffer)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws BufferOverflowException
+     *             if there is not enough space remaining in the buffer
+     */
+    public void writeTo(ByteBuffer buffer, boolean validate) {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(buffer, length, out -> write(out, length));
+    }
+    /**
+     * Validates and serializes the template in ANSI INCITS 378-2004 format into a stream.
+     * Template is written without first materializing it in memory. The stream is not closed.
+     *
+     * @param stream
+     *            stream to receive serialized template in ANSI INCITS 378-2004 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws IOException
+     *             if the stream throws
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        writeTo(stream, true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2004 format into a stream, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written without first materializing it in memory. The stream is not closed.
+     *
+     * @param stream
+     *            stream to receive serialized template in ANSI INCITS 378-2004 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(OutputStream)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws IOException
+     *             if the stream throws
+     */
+    public void writeTo(OutputStream stream, boolean validate) throws IOException {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(stream, length, out -> write(out, length));
+    }
+    /**
+     * Validates and serializes the template in ANSI INCITS 378-2004 format into a channel.
+     * Template is written without first materializing it in memory. The channel is not closed.
+     *
+     * @param channel
+     *            blocking channel to receive serialized template in ANSI INCITS 378-2004 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws IOException
+     *             if the channel throws
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeTo(channel, true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2004 format into a channel, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written without first materializing it in memory. The channel is not closed.
+     *
+     * @param channel
+     *            blocking channel to receive serialized template in ANSI INCITS 378-2004 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(WritableByteChannel)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws IOException
+     *             if the channel throws
+     */
+    public void writeTo(WritableByteChannel channel, boolean validate) throws IOException {
+        if (validate)
+            validate();
         int length = measure();
+        TemplateUtils.encodeTo(channel, length, out -> write(out, length));
+    }
+    private void write(TemplateWriter out, int length) {
+        out.write(MAGIC);
         if (length < 0x10000)
             out.writeShort(length);
         else {
@@ -215,7 +395,6 @@ public class Ansi378v2004Template {
         out.writeByte(0);
         for (Ansi378v2004Fingerprint fp : fingerprints)
             fp.write(out);
-        return out.toByteArray();
     }
     private int measure() {
         int length = 26;
@@ -233,6 +412,9 @@ public class Ansi378v2004Template {
         ValidateTemplate.int8(fingerprints.size(), "There cannot be more than 255 fingerprints.");
         for (Ansi378v2004Fingerprint fp : fingerprints)
             fp.validate(width, height);
+        ValidateTemplate.views(fingerprints, fp -> fp.position.ordinal(), fp -> fp.view, false, Ansi378v2004Template::validateViews);
+    }
+    private static void validateViews(List<Ansi378v2004Fingerprint> fingerprints) {
         if (fingerprints.size() != fingerprints.stream().mapToInt(fp -> (fp.position.ordinal() << 16) + fp.view).distinct().count())
             throw new TemplateFormatException("Every fingerprint must have a unique combination of finger position and view offset.");
         fingerprints.stream()
@@ -0,0 +1,230 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.ansi378v2004;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Streaming encoder of ANSI INCITS 378-2004 templates.
+ * Template is written field by field directly into caller's buffer without building {@link Ansi378v2004Template} first.
+ * Calls must follow template structure: {@link #beginTemplate(ByteBuffer, int, int, boolean, int, int, int, int, int) beginTemplate},
+ * then for every fingerprint {@link #beginFingerprint(Ansi378v2004Position, int, Ansi378v2004ScanType, int) beginFingerprint}
+ * followed by its minutiae and extension blocks, and finally {@link #finish()}.
+ * <p>
+ * Fields are validated as they are written using the same rules as {@link Ansi378v2004Template#toByteArray()}.
+ * This includes view numbers, which the format requires to be sorted, so fingerprints with the same finger position
+ * must be added in view order starting with view 0.
+ * Length and count fields are filled in when their value becomes known.
+ * Template length field is widened from 2 to 6 bytes if the template turns out to be 64KB or longer.
+ * Buffer position is advanced only when the template is finished, so failed encoding leaves buffer position unchanged,
+ * although data past buffer position might have been overwritten.
+ * <p>
+ * Encoder can be reused for any number of templates. Encoding of minutiae does not allocate any memory.
+ * Encoder is not thread-safe.
+ */
+public class Ansi378v2004TemplateEncoder {
+	private final StreamingTemplate stream = new StreamingTemplate();
+	private int width;
+	private int height;
+	/**
+	 * Creates new streaming encoder of ANSI INCITS 378-2004 templates.
+	 */
+	public Ansi378v2004TemplateEncoder() {
+	}
+	/**
+	 * Starts new template at buffer's position.
+	 * Parameters correspond to fields of {@link Ansi378v2004Template}. Any unfinished template is discarded.
+	 *
+	 * @param buffer
+	 *            buffer to receive serialized template
+	 * @param vendorId
+	 *            vendor ID (<a href="https://templates.machinezoo.com/ansi378-2004#vendor">VENDOR</a>)
+	 * @param subformat
+	 *            vendor-specified subformat (<a href="https://templates.machinezoo.com/ansi378-2004#subformat">SUBFORMAT</a>)
+	 * @param sensorCertified
+	 *            top bit of <a href="https://templates.machinezoo.com/ansi378-2004#devstamp">DEVSTAMP</a> field
+	 * @param sensorId
+	 *            sensor ID (<a href="https://templates.machinezoo.com/ansi378-2004#devid">DEVID</a>)
+	 * @param width
+	 *            image width (<a href="https://templates.machinezoo.com/ansi378-2004#width">WIDTH</a>)
+	 * @param height
+	 *            image height (<a href="https://templates.machinezoo.com/ansi378-2004#height">HEIGHT</a>)
+	 * @param resolutionX
+	 *            horizontal pixel density (<a href="https://templates.machinezoo.com/ansi378-2004#resolutionx">RESOLUTIONX</a>)
+	 * @param resolutionY
+	 *            vertical pixel density (<a href="https://templates.machinezoo.com/ansi378-2004#resolutiony">RESOLUTIONY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 * @throws ReadOnlyBufferException
+	 *             if the buffer is read-only
+	 */
+	public void beginTemplate(ByteBuffer buffer, int vendorId, int subformat, boolean sensorCertified, int sensorId, int width, int height, int resolutionX, int resolutionY) {
+		ValidateTemplate.nonzero16(vendorId, "Vendor ID must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.int16(subformat, "Vendor subformat must be an unsigned 16-bit number.");
+		ValidateTemplate.range(sensorId, 0, 0xfff, "Sensor ID must be an unsigned 12-bit number.");
+		ValidateTemplate.nonzero16(width, "Image width must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(height, "Image height must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(resolutionX, "Horizontal pixel density must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(resolutionY, "Vertical pixel density must be a non-zero unsigned 16-bit number.");
+		this.width = width;
+		this.height = height;
+		stream.begin(buffer);
+		stream.write(Ansi378v2004Template.MAGIC);
+		stream.writeShort(0);
+		stream.writeShort(vendorId);
+		stream.writeShort(subformat);
+		stream.writeShort((sensorCertified ? 0x8000 : 0) | sensorId);
+		stream.writeShort(width);
+		stream.writeShort(height);
+		stream.writeShort(resolutionX);
+		stream.writeShort(resolutionY);
+		stream.writeByte(0);
+		stream.writeByte(0);
+	}
+	/**
+	 * Starts new fingerprint. Previous fingerprint, if any, is completed.
+	 * Fingerprints with the same finger position must be added in view order starting with view 0.
+	 *
+	 * @param position
+	 *            finger position (<a href="https://templates.machinezoo.com/ansi378-2004#position">POSITION</a>)
+	 * @param view
+	 *            finger view number (<a href="https://templates.machinezoo.com/ansi378-2004#viewoffset">VIEWOFFSET</a>)
+	 * @param scanType
+	 *            impression type (<a href="https://templates.machinezoo.com/ansi378-2004#sampletype">SAMPLETYPE</a>)
+	 * @param quality
+	 *            fingerprint quality (<a href="https://templates.machinezoo.com/ansi378-2004#fpquality">FPQUALITY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range or the view is out of order
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void beginFingerprint(Ansi378v2004Position position, int view, Ansi378v2004ScanType scanType, int quality) {
+		Objects.requireNonNull(position, "Finger position must be non-null (even if unknown).");
+		ValidateTemplate.int4(view, "View offset must be an unsigned 4-bit number.");
+		Objects.requireNonNull(scanType, "Scan type must be non-null.");
+		ValidateTemplate.range(quality, 0, 100, "Fingerprint quality must be in range 0 through 100.");
+		ValidateTemplate.int8(stream.fingerprints() + 1, "There cannot be more than 255 fingerprints.");
+		stream.beginFingerprint(position.ordinal(), view, false);
+		stream.writeByte(position.ordinal());
+		stream.writeByte((view << 4) | scanType.code);
+		stream.writeByte(quality);
+		stream.beginMinutiae();
+	}
+	/**
+	 * Adds minutia to the current fingerprint. Minutiae cannot be added after extension blocks.
+	 *
+	 * @param type
+	 *            minutia type (<a href="https://templates.machinezoo.com/ansi378-2004#mintype">MINTYPE</a>)
+	 * @param x
+	 *            X coordinate (<a href="https://templates.machinezoo.com/ansi378-2004#minx">MINX</a>)
+	 * @param y
+	 *            Y coordinate (<a href="https://templates.machinezoo.com/ansi378-2004#miny">MINY</a>)
+	 * @param angle
+	 *            minutia angle (<a href="https://templates.machinezoo.com/ansi378-2004#minangle">MINANGLE</a>)
+	 * @param quality
+	 *            minutia quality (<a href="https://templates.machinezoo.com/ansi378-2004#minquality">MINQUALITY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range or the fingerprint already has 255 minutiae
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started or extension blocks were already added
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addMinutia(Ansi378v2004MinutiaType type, int x, int y, int angle, int quality) {
+		Objects.requireNonNull(type, "Minutia type must be non-null.");
+		ValidateTemplate.position(x, width, "Minutia X position must be an unsigned 14-bit number less than image width.");
+		ValidateTemplate.position(y, height, "Minutia Y position must be an unsigned 14-bit number less than image height.");
+		ValidateAnsi.angle(angle, "Minutia angle must be in range 0 through 179.");
+		ValidateTemplate.range(quality, 0, 100, "Minutia quality must be in range 0 through 100.");
+		stream.minutia(type.ordinal(), x, y, angle, quality, true);
+	}
+	/**
+	 * Adds ridge count extension to the current fingerprint.
+	 * Edges are validated against minutiae added so far, so this should be called after all minutiae are added.
+	 *
+	 * @param counts
+	 *            ridge count extension (<a href="https://templates.machinezoo.com/ansi378-2004#rcountext">RCOUNTEXT</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCounts(Ansi378v2004CountExtension counts) {
+		stream.requireMinutiae();
+		counts.validate(stream.minutiae());
+		add(counts.extension());
+	}
+	/**
+	 * Adds core and delta extension to the current fingerprint.
+	 *
+	 * @param coredelta
+	 *            core and delta extension (<a href="https://templates.machinezoo.com/ansi378-2004#coredelta">COREDELTA</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCoreDelta(Ansi378v2004CoreDeltaExtension coredelta) {
+		stream.requireMinutiae();
+		coredelta.validate(width, height);
+		ValidateTemplate.condition(!coredelta.cores.isEmpty(), "Not strictly compliant template. Core count is zero.");
+		add(coredelta.extension());
+	}
+	/**
+	 * Adds extension data block to the current fingerprint.
+	 *
+	 * @param extension
+	 *            extension data block (<a href="https://templates.machinezoo.com/ansi378-2004#extension">EXTENSION</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addExtension(Ansi378v2004Extension extension) {
+		stream.requireMinutiae();
+		extension.validate();
+		add(extension);
+	}
+	private void add(Ansi378v2004Extension extension) {
+		stream.extension(extension.type, extension.data, true);
+	}
+	/**
+	 * Completes the template and advances buffer position past it.
+	 * Encoder is then ready to start another template.
+	 *
+	 * @return length of the template in bytes
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 * @throws BufferOverflowException
+	 *             if there is no space left in the buffer for 6-byte length field
+	 */
+	public int finish() {
+		stream.end();
+		int start = stream.start();
+		stream.patchByte(start + 24, stream.fingerprints());
+		int length = stream.length();
+		if (length < 0x10000)
+			stream.patchShort(start + 8, length);
+		else {
+			/*
+			 * Zero 2-byte length followed by 4-byte length. The 4 extra bytes count towards the length.
+			 */
+			stream.insert(start + 10, 4);
+			stream.patchShort(start + 8, 0);
+			stream.patchInt(start + 10, length + 4);
+		}
+		return stream.finish();
+	}
+}
@@ -24,7 +24,7 @@ public class Ansi378v2009CoreDeltaExtension {
 	 */
 	public Ansi378v2009CoreDeltaExtension() {
 	}
-	Ansi378v2009CoreDeltaExtension(byte[] extension, ExceptionHandler handler) {
+	Ansi378v2009CoreDeltaExtension(byte[] extension, ExceptionHandler handler, int fingerprint) {
 		TemplateUtils.decodeExtension(extension, in -> {
 			int coreInfo = in.readUnsignedByte();
 			for (int i = 0; i < (coreInfo & 0xf); ++i)
@@ -32,7 +32,7 @@ public class Ansi378v2009CoreDeltaExtension {
 			int deltaInfo = in.readUnsignedByte();
 			for (int i = 0; i < (deltaInfo & 0xf); ++i)
 				deltas.add(new Ansi378v2009Delta(in, (deltaInfo & 0x40) != 0));
-			ValidateTemplate.condition(in.available() == 0, handler, "Extra data at the end of core/delta extension.");
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, fingerprint, () -> "Extra data at the end of core/delta extension.");
 		});
 	}
 	Ansi378v2009Extension extension() {
@@ -42,7 +42,7 @@ public class Ansi378v2009CoreDeltaExtension {
 		return extension;
 	}
 	byte[] toByteArray() {
-		TemplateWriter out = new TemplateWriter();
+		TemplateWriter out = new TemplateWriter(measure() - 4);
 		out.writeByte((hasCoreAngles() ? 0x40 : 0) | cores.size());
 		for (Ansi378v2009Core core : cores)
 			core.write(out);
@@ -64,13 +64,15 @@ public class Ansi378v2009CoreDeltaExtension {
 	void validate(int width, int height) {
 		for (Ansi378v2009Core core : cores)
 			core.validate(width, height);
-		if (hasCoreAngles() && cores.stream().anyMatch(c -> c.angle == null))
-			throw new TemplateFormatException("Inconsistent core angle information. Either all cores should have angle or none should.");
+		boolean coreAngles = hasCoreAngles();
+		for (Ansi378v2009Core core : cores)
+			ValidateTemplate.condition(!coreAngles || core.angle != null, "Inconsistent core angle information. Either all cores should have angle or none should.");
 		ValidateTemplate.int4(cores.size(), "There can be no more than 15 cores.");
 		for (Ansi378v2009Delta delta : deltas)
 			delta.validate(width, height);
-		if (hasDeltaAngles() && deltas.stream().anyMatch(d -> d.angles == null))
-			throw new TemplateFormatException("Inconsistent delta angle information. Either all deltas should have angles or none should.");
+		boolean deltaAngles = hasDeltaAngles();
+		for (Ansi378v2009Delta delta : deltas)
+			ValidateTemplate.condition(!deltaAngles || delta.angles != null, "Inconsistent delta angle information. Either all deltas should have angles or none should.");
 		ValidateTemplate.int4(deltas.size(), "There can be no more than 15 deltas.");
 	}
 	private boolean hasCoreAngles() {
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.ansi378v2009;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Edge picking method (<a href="https://templates.machinezoo.com/ansi378-2009#startype">STARTYPE</a>).
  */
@@ -17,4 +19,5 @@ public enum Ansi378v2009CountType {
 	 * Octants (code 2).
 	 */
 	OCTANTS;
+	static final CodeTable<Ansi378v2009CountType> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
@@ -2,6 +2,7 @@
 package com.machinezoo.fingerprintio.ansi378v2009;
 
 import java.util.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
 
@@ -36,14 +37,24 @@ public class Ansi378v2009Minutia {
 	 */
 	public Ansi378v2009Minutia() {
 	}
-	Ansi378v2009Minutia(TemplateReader in, ExceptionHandler handler) {
+	Ansi378v2009Minutia(TemplateReader in, ExceptionHandler handler, int fingerprint, int index) {
+		decode(in, handler, fingerprint, index);
+	}
+	void decode(TemplateReader in, ExceptionHandler handler, int fingerprint, int index) {
 		positionX = in.readUnsignedShort();
-		type = TemplateUtils.decodeType(positionX >> 14, Ansi378v2009MinutiaType.class, handler, "Unrecognized minutia type code.");
+		type = TemplateUtils.decodeType(positionX >> 14, Ansi378v2009MinutiaType.CODES, handler, fingerprint, index, () -> "Unrecognized minutia type code.");
 		positionX &= 0x3fff;
 		positionY = in.readUnsignedShort();
 		angle = in.readUnsignedByte();
 		quality = in.readUnsignedByte();
 	}
+	Ansi378v2009Minutia(CompactMinutiae compact, int index) {
+		type = TemplateUtils.decodeType(compact.type(index), Ansi378v2009MinutiaType.CODES, Exceptions.propagate(), -1, index, () -> "Unrecognized minutia type code.");
+		positionX = compact.positionX(index);
+		positionY = compact.positionY(index);
+		angle = compact.angle(index);
+		quality = compact.quality(index);
+	}
 	void write(TemplateWriter out) {
 		out.writeShort((type.ordinal() << 14) | positionX);
 		out.writeShort(positionY);
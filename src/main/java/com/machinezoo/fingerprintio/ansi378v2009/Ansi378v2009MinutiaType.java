@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.ansi378v2009;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Minutia type (<a href="https://templates.machinezoo.com/ansi378-2009#mintype">MINTYPE</a>).
  */
@@ -17,4 +19,5 @@ public enum Ansi378v2009MinutiaType {
 	 * Ridge bifurcation (code 10 binary).
 	 */
 	BIFURCATION;
+	static final CodeTable<Ansi378v2009MinutiaType> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
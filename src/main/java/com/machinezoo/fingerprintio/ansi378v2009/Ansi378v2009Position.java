@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.ansi378v2009;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Finger position on hands (<a href="https://templates.machinezoo.com/ansi378-2009#position">POSITION</a>).
  */
@@ -49,4 +51,5 @@ public enum Ansi378v2009Position {
 	 * Little finger on left hand (code 10).
 	 */
 	LEFT_LITTLE;
+	static final CodeTable<Ansi378v2009Position> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.ansi378v2009;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Impression type (<a href="https://templates.machinezoo.com/ansi378-2009#sampletype">SAMPLETYPE</a>).
  */
@@ -73,6 +75,7 @@ public enum Ansi378v2009ScanType {
 	 * Unknown (code 29).
 	 */
 	UNKNOWN(29);
+	static final CodeTable<Ansi378v2009ScanType> CODES = new CodeTable<>(values(), t -> t.code);
 	final int code;
 	Ansi378v2009ScanType(int code) {
 		this.code = code;
@@ -3,15 +3,21 @@ package com.machinezoo.fingerprintio.ansi378v2009;
 
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import com.machinezoo.fingerprintio.TemplateFormat;
 import com.machinezoo.fingerprintio.TemplateFormatException;
+import com.machinezoo.fingerprintio.TemplateRule;
 import com.machinezoo.fingerprintio.ansi378v2009am1.Ansi378v2009Am1Template;
 import com.machinezoo.fingerprintio.common.IbiaOrganizations;
+import com.machinezoo.fingerprintio.utils.IdentifyTemplate;
+import com.machinezoo.fingerprintio.utils.InstrumentTemplate;
 import com.machinezoo.fingerprintio.utils.TemplateUtils;
 import com.machinezoo.fingerprintio.utils.TemplateWriter;
 import com.machinezoo.fingerprintio.utils.ValidateTemplate;
@@ -24,7 +30,7 @@ import com.machinezoo.noexception.Exceptions;
  * @see <a href="https://templates.machinezoo.com/ansi378-2009">ANSI INCITS 378-2009 Summary</a>
  */
 public class Ansi378v2009Template {
-    private static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, '0', '3', '0', 0 };
+    static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, '0', '3', '0', 0 };
     /**
      * Checks whether provided template is an ANSI INCITS 378-2009 template.
      * This method does not do any template validation or conformance checking.
@@ -35,31 +41,23 @@ public class Ansi378v2009Template {
      *            serialized template that is to be evaluated
      * @return {@code true} if {@code template} is an ANSI INCITS 378-2009 template, {@code false} otherwise
      */
-    public static boolean accepts(byte[] template) {
-        if (!Arrays.equals(MAGIC, Arrays.copyOf(template, MAGIC.length)))
-            return false;
+    public static boolean accepts(byte[] template) { return accepts(ByteBuffer.wrap(template)); }
+    /**
+     * Checks whether provided template is an ANSI INCITS 378-2009 template.
+     * This method does not do any template validation or conformance checking.
+     * It just differentiates ANSI INCITS 378-2009 from other template formats
+     * as quickly as possible, mostly by looking at template header.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     *
+     * @param template
+     *            buffer holding serialized template that is to be evaluated
+     * @return {@code true} if {@code template} is an ANSI INCITS 378-2009 template, {@code false} otherwise
+     */
+    public static boolean accepts(ByteBuffer template) {
         /*
-         * We differentiate the format from ISO 19794-2:2011 by failing to interpret the data as ISO 19794-2:2011,
-         * which is why the code below is copied from Iso19794p2v2001Template with return values inverted.
+         * We differentiate the format from ISO 19794-2:2011 by failing to interpret the data as ISO 19794-2:2011.
          */
-        try {
-            DataInputStream in = new DataInputStream(new ByteArrayInputStream(template));
-            in.skip(MAGIC.length);
-            long total = 0xffff_ffffL & in.readInt();
-            int count = in.readUnsignedShort();
-            in.skip(1);
-            long sum = 0;
-            for (int i = 0; i < count; ++i) {
-                long length = 0xffff_ffffL & in.readInt();
-                if (length < 34)
-                    return true;
-                sum += length;
-                in.skip(length - 4);
-            }
-            return total != 15 + sum;
-        } catch (Throwable ex) {
-            return true;
-        }
+        return IdentifyTemplate.magic(template, MAGIC) && !IdentifyTemplate.iso19794p2v2011(template);
     }
     /**
      * Vendor ID (<a href="https://templates.machinezoo.com/ansi378-2009#vendor">VENDOR</a>).
@@ -96,6 +94,16 @@ public class Ansi378v2009Template {
      *             if the template cannot be parsed or it fails validation
      */
     public Ansi378v2009Template(byte[] template) { this(template, Exceptions.propagate()); }
+    /**
+     * Parses and validates ANSI INCITS 378-2009 template stored in a buffer.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * 
+     * @param template
+     *            buffer holding serialized template in ANSI INCITS 378-2009 format
+     * @throws TemplateFormatException
+     *             if the template cannot be parsed or it fails validation
+     */
+    public Ansi378v2009Template(ByteBuffer template) { this(template, Exceptions.propagate()); }
     /**
      * Parses and optionally validates ANSI INCITS 378-2009 template.
      * 
@@ -122,31 +130,87 @@ public class Ansi378v2009Template {
      * @throws TemplateFormatException
      *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
      */
-    public Ansi378v2009Template(byte[] template, ExceptionHandler handler) {
+    public Ansi378v2009Template(byte[] template, ExceptionHandler handler) { this(ByteBuffer.wrap(template), handler); }
+    /**
+     * Parses and optionally validates ANSI INCITS 378-2009 template stored in a buffer.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * Slice of a larger array can be passed in via {@link ByteBuffer#wrap(byte[], int, int)}.
+     * <p>
+     * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+     * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+     * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+     * 
+     * @param template
+     *            buffer holding serialized template in ANSI INCITS 378-2009 format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     */
+    public Ansi378v2009Template(ByteBuffer template, ExceptionHandler handler) {
+        InstrumentTemplate.parse(TemplateFormat.ANSI_378_2009, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+    }
+    /**
+     * Parses and optionally validates ANSI INCITS 378-2009 template into this object, replacing its current content.
+     * This is an alternative to constructors that reduces allocations when many templates are parsed in a loop.
+     * Fingerprint and minutia objects already present in this template are reused where possible.
+     * Lists are reused too, but only those allocated by this library. Other lists, for example immutable ones, are replaced together with their items. Extensions are always decoded into new objects.
+     * Parsing is still not allocation-free. Every call allocates a few small short-lived objects:
+     * internal template reader and lambdas carrying parsing and validation state, once per template and once per fingerprint.
+     * Template content is unspecified if parsing fails.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * <p>
+     * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+     * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+     * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+     * 
+     * @param template
+     *            buffer holding serialized template in ANSI INCITS 378-2009 format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     */
+    public void parse(ByteBuffer template, ExceptionHandler handler) {
+        InstrumentTemplate.parse(TemplateFormat.ANSI_378_2009, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+    }
+    /**
+     * Parses and optionally validates ANSI INCITS 378-2009 template into this object, replacing its current content.
+     * Array is wrapped in new {@link ByteBuffer} on every call. Wrap it once and call {@link #parse(ByteBuffer, ExceptionHandler)} to avoid that.
+     * 
+     * @param template
+     *            serialized template in ANSI INCITS 378-2009 format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     * @see #parse(ByteBuffer, ExceptionHandler)
+     */
+    public void parse(byte[] template, ExceptionHandler handler) {
+        parse(ByteBuffer.wrap(template), handler);
+    }
+    private void decode(ByteBuffer template, ExceptionHandler handler) {
         if (!accepts(template)) {
-            if (Ansi378v2009Am1Template.accepts(template)) {
-                ValidateTemplate.fail(handler, "This is ANSI INCITS 378-2009/AM1 template, not ANSI INCITS 378-2009 template.");
-                template = Arrays.copyOf(template, template.length);
-                template[6] = '0';
-            } else
+            if (Ansi378v2009Am1Template.accepts(template))
+                ValidateTemplate.fail(handler, TemplateRule.FORMAT, -1, -1, () -> "This is ANSI INCITS 378-2009/AM1 template, not ANSI INCITS 378-2009 template.");
+            else
                 throw new TemplateFormatException("This is not an ANSI INCITS 378-2009 template.");
         }
         TemplateUtils.decodeTemplate(template, in -> {
             in.skipBytes(MAGIC.length);
             long length = 0xffff_ffffL & in.readInt();
-            ValidateTemplate.condition(length >= 21, handler, "Total length must be at least 21 bytes.");
-            ValidateTemplate.condition(length <= MAGIC.length + 4 + in.available(), handler, "Total length indicates trimmed template.");
+            ValidateTemplate.condition(length >= 21, handler, TemplateRule.LENGTH, () -> "Total length must be at least 21 bytes.");
+            ValidateTemplate.condition(length <= MAGIC.length + 4 + in.available(), handler, TemplateRule.LENGTH, () -> "Total length indicates trimmed template.");
             vendorId = in.readUnsignedShort();
             subformat = in.readUnsignedShort();
             int certification = in.readUnsignedByte();
             sensorCertified = (certification & 0x80) != 0;
-            ValidateTemplate.condition((certification & 0x7f) == 0, handler, "Unrecognized sensor compliance bits.");
+            ValidateTemplate.condition((certification & 0x7f) == 0, handler, TemplateRule.RESERVED, () -> "Unrecognized sensor compliance bits.");
             sensorId = in.readUnsignedShort();
             int count = in.readUnsignedByte();
             in.skipBytes(1);
-            for (int i = 0; i < count; ++i)
-                fingerprints.add(new Ansi378v2009Fingerprint(in, handler));
-            ValidateTemplate.condition(in.available() == 0, handler, "Extra data at the end of the template.");
+            fingerprints = TemplateUtils.decodeList(fingerprints, count, (fp, i) -> fp.decode(in, handler, i), i -> new Ansi378v2009Fingerprint(in, handler, i));
+            ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Extra data at the end of the template.");
             ValidateTemplate.structure(this::validate, handler);
         });
     }
@@ -158,10 +222,136 @@ public class Ansi378v2009Template {
      *             if the template fails validation
      */
     public byte[] toByteArray() {
-        validate();
-        TemplateWriter out = new TemplateWriter();
+        return toByteArray(true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2009 format, optionally skipping validation.
+     * See {@link com.machinezoo.fingerprintio.ansi378v2004.Ansi378v2004Template#toByteArray(boolean)} for when validation can be skipped.
+     * 
+     * @param validate
+     *            {@code true} to validate the template like {@link #toByteArray()}, {@code false} to skip validation
+     * @return serialized template in ANSI INCITS 378-2009 format
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     */
+    public byte[] toByteArray(boolean validate) {
+        return InstrumentTemplate.serialize(TemplateFormat.ANSI_378_2009, () -> encode(validate), fingerprints, fp -> fp.minutiae.size());
+    }
+    private byte[] encode(boolean validate) {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateWriter out = new TemplateWriter(length);
+        write(out, length);
+        return out.toByteArray();
+    }
+    /**
+     * Validates and serializes the template in ANSI INCITS 378-2009 format into a buffer.
+     * Template is written at buffer's position, which is then advanced past the template.
+     * Nothing is written if the template does not fit in the buffer.
+     * 
+     * @param buffer
+     *            buffer to receive serialized template in ANSI INCITS 378-2009 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws BufferOverflowException
+     *             if there is not enough space remaining in the buffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        writeTo(buffer, true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2009 format into a buffer, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written at buffer's position, which is then advanced past the template.
+     * Nothing is written if the template does not fit in the buffer.
+     * 
+     * @param buffer
+     *            buffer to receive serialized template in ANSI INCITS 378-2009 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(ByteBuffer)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws BufferOverflowException
+     *             if there is not enough space remaining in the buffer
+     */
+    public void writeTo(ByteBuffer buffer, boolean validate) {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(buffer, length, out -> write(out, length));
+    }
+    /**
+     * Validates and serializes the template in ANSI INCITS 378-2009 format into a stream.
+     * Template is written without first materializing it in memory. The stream is not closed.
+     * 
+     * @param stream
+     *            stream to receive serialized template in ANSI INCITS 378-2009 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws IOException
+     *             if the stream throws
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        writeTo(stream, true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2009 format into a stream, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written without first materializing it in memory. The stream is not closed.
+     * 
+     * @param stream
+     *            stream to receive serialized template in ANSI INCITS 378-2009 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(OutputStream)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws IOException
+     *             if the stream throws
+     */
+    public void writeTo(OutputStream stream, boolean validate) throws IOException {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(stream, length, out -> write(out, length));
+    }
+    /**
+     * Validates and serializes the template in ANSI INCITS 378-2009 format into a channel.
+     * Template is written without first materializing it in memory. The channel is not closed.
+     * 
+     * @param channel
+     *            blocking channel to receive serialized template in ANSI INCITS 378-2009 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws IOException
+     *             if the channel throws
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeTo(channel, true);
+    }
+    /**
+     * Serializes the template in ANSI INCITS 378-2009 format into a channel, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written without first materializing it in memory. The channel is not closed.
+     * 
+     * @param channel
+     *            blocking channel to receive serialized template in ANSI INCITS 378-2009 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(WritableByteChannel)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws IOException
+     *             if the channel throws
+     */
+    public void writeTo(WritableByteChannel channel, boolean validate) throws IOException {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(channel, length, out -> write(out, length));
+    }
+    private void write(TemplateWriter out, int length) {
         out.write(MAGIC);
-        out.writeInt(measure());
+        out.writeInt(length);
         out.writeShort(vendorId);
         out.writeShort(subformat);
         out.writeByte(sensorCertified ? 0x80 : 0);
@@ -170,7 +360,6 @@ public class Ansi378v2009Template {
         out.writeByte(0);
         for (Ansi378v2009Fingerprint fp : fingerprints)
             fp.write(out);
-        return out.toByteArray();
     }
     private int measure() { return 21 + fingerprints.stream().mapToInt(Ansi378v2009Fingerprint::measure).sum(); }
     private void validate() {
@@ -180,6 +369,9 @@ public class Ansi378v2009Template {
         ValidateTemplate.int8(fingerprints.size(), "There cannot be more than 255 fingerprints.");
         for (Ansi378v2009Fingerprint fp : fingerprints)
             fp.validate();
+        ValidateTemplate.views(fingerprints, fp -> fp.position.ordinal(), fp -> fp.view, true, Ansi378v2009Template::validateViews);
+    }
+    private static void validateViews(List<Ansi378v2009Fingerprint> fingerprints) {
         if (fingerprints.size() != fingerprints.stream().map(fp -> (fp.position.ordinal() << 16) + fp.view).distinct().count())
             throw new TemplateFormatException("Every fingerprint must have a unique combination of finger position and view offset.");
         fingerprints.stream()
@@ -0,0 +1,226 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.ansi378v2009;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Streaming encoder of ANSI INCITS 378-2009 templates.
+ * Template is written field by field directly into caller's buffer without building {@link Ansi378v2009Template} first.
+ * Calls must follow template structure: {@link #beginTemplate(ByteBuffer, int, int, boolean, int) beginTemplate},
+ * then for every fingerprint {@link #beginFingerprint(Ansi378v2009Position, int, Ansi378v2009ScanType, int, int, int, int, int, int, int) beginFingerprint}
+ * followed by its minutiae and extension blocks, and finally {@link #finish()}.
+ * <p>
+ * Fields are validated as they are written using the same rules as {@link Ansi378v2009Template#toByteArray()}.
+ * This includes view numbers, which the format requires to be sorted, so fingerprints with the same finger position
+ * must be added together in view order starting with view 0.
+ * Length and count fields are filled in when their value becomes known.
+ * Buffer position is advanced only when the template is finished, so failed encoding leaves buffer position unchanged,
+ * although data past buffer position might have been overwritten.
+ * <p>
+ * Encoder can be reused for any number of templates. Encoding of minutiae does not allocate any memory.
+ * Encoder is not thread-safe.
+ */
+public class Ansi378v2009TemplateEncoder {
+	private final StreamingTemplate stream = new StreamingTemplate();
+	private int width;
+	private int height;
+	/**
+	 * Creates new streaming encoder of ANSI INCITS 378-2009 templates.
+	 */
+	public Ansi378v2009TemplateEncoder() {
+	}
+	/**
+	 * Starts new template at buffer's position.
+	 * Parameters correspond to fields of {@link Ansi378v2009Template}. Any unfinished template is discarded.
+	 *
+	 * @param buffer
+	 *            buffer to receive serialized template
+	 * @param vendorId
+	 *            vendor ID (<a href="https://templates.machinezoo.com/ansi378-2009#vendor">VENDOR</a>)
+	 * @param subformat
+	 *            vendor-specified subformat (<a href="https://templates.machinezoo.com/ansi378-2009#subformat">SUBFORMAT</a>)
+	 * @param sensorCertified
+	 *            top bit of <a href="https://templates.machinezoo.com/ansi378-2009#devstamp">DEVSTAMP</a> field
+	 * @param sensorId
+	 *            sensor ID (<a href="https://templates.machinezoo.com/ansi378-2009#devid">DEVID</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 * @throws ReadOnlyBufferException
+	 *             if the buffer is read-only
+	 */
+	public void beginTemplate(ByteBuffer buffer, int vendorId, int subformat, boolean sensorCertified, int sensorId) {
+		ValidateTemplate.nonzero16(vendorId, "Vendor ID must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.int16(subformat, "Vendor subformat must be an unsigned 16-bit number.");
+		ValidateTemplate.int16(sensorId, "Sensor ID must be an unsigned 16-bit number.");
+		stream.begin(buffer);
+		stream.write(Ansi378v2009Template.MAGIC);
+		stream.writeInt(0);
+		stream.writeShort(vendorId);
+		stream.writeShort(subformat);
+		stream.writeByte(sensorCertified ? 0x80 : 0);
+		stream.writeShort(sensorId);
+		stream.writeByte(0);
+		stream.writeByte(0);
+	}
+	/**
+	 * Starts new fingerprint. Previous fingerprint, if any, is completed.
+	 * Fingerprints with the same finger position must be added together in view order starting with view 0.
+	 *
+	 * @param position
+	 *            finger position (<a href="https://templates.machinezoo.com/ansi378-2009#position">POSITION</a>)
+	 * @param view
+	 *            finger view number (<a href="https://templates.machinezoo.com/ansi378-2009#viewoffset">VIEWOFFSET</a>)
+	 * @param scanType
+	 *            impression type (<a href="https://templates.machinezoo.com/ansi378-2009#sampletype">SAMPLETYPE</a>)
+	 * @param quality
+	 *            fingerprint quality (<a href="https://templates.machinezoo.com/ansi378-2009#fpquality">FPQUALITY</a>)
+	 * @param qualityVendorId
+	 *            quality algorithm vendor (<a href="https://templates.machinezoo.com/ansi378-2009#qvendor">QVENDOR</a>)
+	 * @param qualityAlgorithmId
+	 *            quality algorithm (<a href="https://templates.machinezoo.com/ansi378-2009#qalgo">QALGO</a>)
+	 * @param width
+	 *            image width (<a href="https://templates.machinezoo.com/ansi378-2009#width">WIDTH</a>)
+	 * @param height
+	 *            image height (<a href="https://templates.machinezoo.com/ansi378-2009#height">HEIGHT</a>)
+	 * @param resolutionX
+	 *            horizontal pixel density (<a href="https://templates.machinezoo.com/ansi378-2009#resolutionx">RESOLUTIONX</a>)
+	 * @param resolutionY
+	 *            vertical pixel density (<a href="https://templates.machinezoo.com/ansi378-2009#resolutiony">RESOLUTIONY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range or the view is out of order
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void beginFingerprint(Ansi378v2009Position position, int view, Ansi378v2009ScanType scanType, int quality, int qualityVendorId, int qualityAlgorithmId, int width, int height, int resolutionX, int resolutionY) {
+		Objects.requireNonNull(position, "Finger position must be non-null (even if unknown).");
+		ValidateTemplate.int4(view, "View offset must be an unsigned 4-bit number.");
+		Objects.requireNonNull(scanType, "Scan type must be non-null.");
+		ValidateAnsi.quality(quality, "Fingerprint quality must be in range 0 through 100 or one of the special values 254 and 255.");
+		ValidateTemplate.nonzero16(qualityVendorId, "Quality algorithm vendor ID must a non-zero unsigned 16-bit number.");
+		ValidateTemplate.int16(qualityAlgorithmId, "Quality algorithm ID must an unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(width, "Image width must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(height, "Image height must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(resolutionX, "Horizontal pixel density must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(resolutionY, "Vertical pixel density must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.int8(stream.fingerprints() + 1, "There cannot be more than 255 fingerprints.");
+		stream.beginFingerprint(position.ordinal(), view, true);
+		this.width = width;
+		this.height = height;
+		stream.writeByte(position.ordinal());
+		stream.writeByte(view);
+		stream.writeByte(scanType.code);
+		stream.writeByte(quality);
+		stream.writeShort(qualityVendorId);
+		stream.writeShort(qualityAlgorithmId);
+		stream.writeShort(width);
+		stream.writeShort(height);
+		stream.writeShort(resolutionX);
+		stream.writeShort(resolutionY);
+		stream.beginMinutiae();
+	}
+	/**
+	 * Adds minutia to the current fingerprint. Minutiae cannot be added after extension blocks.
+	 *
+	 * @param type
+	 *            minutia type (<a href="https://templates.machinezoo.com/ansi378-2009#mintype">MINTYPE</a>)
+	 * @param x
+	 *            X coordinate (<a href="https://templates.machinezoo.com/ansi378-2009#minx">MINX</a>)
+	 * @param y
+	 *            Y coordinate (<a href="https://templates.machinezoo.com/ansi378-2009#miny">MINY</a>)
+	 * @param angle
+	 *            minutia angle (<a href="https://templates.machinezoo.com/ansi378-2009#minangle">MINANGLE</a>)
+	 * @param quality
+	 *            minutia quality (<a href="https://templates.machinezoo.com/ansi378-2009#minquality">MINQUALITY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range or the fingerprint already has 255 minutiae
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started or extension blocks were already added
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addMinutia(Ansi378v2009MinutiaType type, int x, int y, int angle, int quality) {
+		Objects.requireNonNull(type, "Minutia type must be non-null.");
+		ValidateTemplate.position(x, width, "Minutia X position must be an unsigned 14-bit number less than image width.");
+		ValidateTemplate.position(y, height, "Minutia Y position must be an unsigned 14-bit number less than image height.");
+		ValidateAnsi.angle(angle, "Minutia angle must be in range 0 through 179.");
+		ValidateAnsi.quality(quality, "Minutia quality must be in range 0 through 100 or one of the special values 254 and 255.");
+		stream.minutia(type.ordinal(), x, y, angle, quality, true);
+	}
+	/**
+	 * Adds ridge count extension to the current fingerprint.
+	 * Edges are validated against minutiae added so far, so this should be called after all minutiae are added.
+	 *
+	 * @param counts
+	 *            ridge count extension (<a href="https://templates.machinezoo.com/ansi378-2009#rcountext">RCOUNTEXT</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCounts(Ansi378v2009CountExtension counts) {
+		stream.requireMinutiae();
+		counts.validate(stream.minutiae());
+		add(counts.extension());
+	}
+	/**
+	 * Adds core and delta extension to the current fingerprint.
+	 *
+	 * @param coredelta
+	 *            core and delta extension (<a href="https://templates.machinezoo.com/ansi378-2009#coredelta">COREDELTA</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCoreDelta(Ansi378v2009CoreDeltaExtension coredelta) {
+		stream.requireMinutiae();
+		coredelta.validate(width, height);
+		add(coredelta.extension());
+	}
+	/**
+	 * Adds extension data block to the current fingerprint.
+	 *
+	 * @param extension
+	 *            extension data block (<a href="https://templates.machinezoo.com/ansi378-2009#extension">EXTENSION</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addExtension(Ansi378v2009Extension extension) {
+		stream.requireMinutiae();
+		extension.validate();
+		add(extension);
+	}
+	private void add(Ansi378v2009Extension extension) {
+		stream.extension(extension.type, extension.data, true);
+	}
+	/**
+	 * Completes the template and advances buffer position past it.
+	 * Encoder is then ready to start another template.
+	 *
+	 * @return length of the template in bytes
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 */
+	public int finish() {
+		stream.end();
+		int start = stream.start();
+		stream.patchInt(start + 8, stream.length());
+		stream.patchByte(start + 19, stream.fingerprints());
+		return stream.finish();
+	}
+}
@@ -0,0 +1,169 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.ansi378v2009am1;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Lazily decoded fingerprint (<a href="https://templates.machinezoo.com/ansi378-2009am1#fingerprint">FINGERPRINT</a>).
+ * Fingerprint header is decoded eagerly. Minutiae and extensions are decoded on first access.
+ *
+ * @see Ansi378v2009Am1TemplateView
+ */
+public class Ansi378v2009Am1FingerprintView {
+	/**
+	 * Finger position on hands (<a href="https://templates.machinezoo.com/ansi378-2009am1#position">POSITION</a>).
+	 */
+	public Ansi378v2009Am1Position position;
+	/**
+	 * Finger view number (<a href="https://templates.machinezoo.com/ansi378-2009am1#viewoffset">VIEWOFFSET</a>).
+	 */
+	public int view;
+	/**
+	 * Impression type (<a href="https://templates.machinezoo.com/ansi378-2009am1#sampletype">SAMPLETYPE</a>).
+	 */
+	public Ansi378v2009Am1ScanType scanType;
+	/**
+	 * Fingerprint quality (<a href="https://templates.machinezoo.com/ansi378-2009am1#fpquality">FPQUALITY</a>).
+	 */
+	public int quality;
+	/**
+	 * Quality algorithm vendor (<a href="https://templates.machinezoo.com/ansi378-2009am1#qvendor">QVENDOR</a>).
+	 */
+	public int qualityVendorId;
+	/**
+	 * Quality algorithm (<a href="https://templates.machinezoo.com/ansi378-2009am1#qalgo">QALGO</a>).
+	 */
+	public int qualityAlgorithmId;
+	/**
+	 * Image width (<a href="https://templates.machinezoo.com/ansi378-2009am1#width">WIDTH</a>).
+	 */
+	public int width;
+	/**
+	 * Image height (<a href="https://templates.machinezoo.com/ansi378-2009am1#height">HEIGHT</a>).
+	 */
+	public int height;
+	/**
+	 * Horizontal pixel density (<a href="https://templates.machinezoo.com/ansi378-2009am1#resolutionx">RESOLUTIONX</a>).
+	 */
+	public int resolutionX;
+	/**
+	 * Vertical pixel density (<a href="https://templates.machinezoo.com/ansi378-2009am1#resolutiony">RESOLUTIONY</a>).
+	 */
+	public int resolutionY;
+	/**
+	 * Number of minutiae (<a href="https://templates.machinezoo.com/ansi378-2009am1#minutia">MINUTIA</a>) in this fingerprint.
+	 * This is available without decoding the minutiae.
+	 */
+	public int minutiaCount;
+	private final ByteBuffer data;
+	private final int minutiaOffset;
+	private final ExceptionHandler handler;
+	private final int index;
+	private Ansi378v2009Am1Fingerprint decoded;
+	Ansi378v2009Am1FingerprintView(TemplateReader in, ByteBuffer template, ExceptionHandler handler, int index) {
+		int start = in.offset();
+		position = TemplateUtils.decodeType(in.readUnsignedByte(), Ansi378v2009Am1Position.CODES, handler, index, -1, () -> "Unrecognized finger position code.");
+		view = in.readUnsignedByte();
+		scanType = TemplateUtils.decodeType(in.readUnsignedByte(), Ansi378v2009Am1ScanType.CODES, handler, index, -1, () -> "Unrecognized sensor type code.");
+		quality = in.readUnsignedByte();
+		qualityVendorId = in.readUnsignedShort();
+		qualityAlgorithmId = in.readUnsignedShort();
+		width = in.readUnsignedShort();
+		height = in.readUnsignedShort();
+		resolutionX = in.readUnsignedShort();
+		resolutionY = in.readUnsignedShort();
+		minutiaCount = in.readUnsignedByte();
+		minutiaOffset = in.offset() - start;
+		in.skip(6 * minutiaCount);
+		in.skip(in.readUnsignedShort());
+		data = TemplateUtils.slice(template, start, in.offset() - start);
+		this.handler = handler;
+		this.index = index;
+	}
+	/**
+	 * Decodes the whole fingerprint, including minutiae and extensions.
+	 * The fingerprint is decoded only once. Subsequent calls return the same object.
+	 *
+	 * @return fully decoded fingerprint
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the exception handler returns {@code false}
+	 */
+	public Ansi378v2009Am1Fingerprint decode() {
+		if (decoded == null)
+			decoded = TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> new Ansi378v2009Am1Fingerprint(in, handler, index));
+		return decoded;
+	}
+	/**
+	 * Decodes minutiae (<a href="https://templates.machinezoo.com/ansi378-2009am1#minutia">MINUTIA</a>) straight into compact representation.
+	 * This is faster than {@link #decode()}, because no minutia objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and minutiae are not validated.
+	 *
+	 * @return minutiae in compact representation
+	 * @throws TemplateFormatException
+	 *             if minutia records are truncated
+	 * @see Ansi378v2009Am1Fingerprint#compactMinutiae()
+	 */
+	public CompactMinutiae compactMinutiae() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> {
+			in.skip(minutiaOffset);
+			return TemplateUtils.decodeMinutiae(in, minutiaCount, true, 0);
+		});
+	}
+	/**
+	 * Decodes ridge count extension (<a href="https://templates.machinezoo.com/ansi378-2009am1#rcountext">RCOUNTEXT</a>) straight into compact adjacency index.
+	 * This is faster than {@link #decode()}, because no edge objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and edges are not validated.
+	 *
+	 * @return ridge count edges in compact representation or {@code null} if ridge count extension is not present
+	 * @throws TemplateFormatException
+	 *             if extension data is truncated or malformed
+	 * @see Ansi378v2009Am1CountExtension#compactEdges(int)
+	 */
+	public RidgeCountGraph compactEdges() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> {
+			in.skip(minutiaOffset + 6 * minutiaCount);
+			return TemplateUtils.decodeCountGraph(in, minutiaCount, true);
+		});
+	}
+	/**
+	 * List of minutiae (<a href="https://templates.machinezoo.com/ansi378-2009am1#minutia">MINUTIA</a>).
+	 *
+	 * @return list of minutiae, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Ansi378v2009Am1Minutia> minutiae() {
+		return decode().minutiae;
+	}
+	/**
+	 * Ridge count extension (<a href="https://templates.machinezoo.com/ansi378-2009am1#rcountext">RCOUNTEXT</a>).
+	 *
+	 * @return ridge count extension, decoded on first access, or {@code null} if ridge count extension is not present
+	 * @see #decode()
+	 */
+	public Ansi378v2009Am1CountExtension counts() {
+		return decode().counts;
+	}
+	/**
+	 * Core and delta extension (<a href="https://templates.machinezoo.com/ansi378-2009am1#coredelta">COREDELTA</a>).
+	 *
+	 * @return core and delta extension, decoded on first access, or {@code null} if core and delta extension is not present
+	 * @see #decode()
+	 */
+	public Ansi378v2009Am1CoreDeltaExtension coredelta() {
+		return decode().coredelta;
+	}
+	/**
+	 * List of extension data blocks (<a href="https://templates.machinezoo.com/ansi378-2009am1#extension">EXTENSION</a>).
+	 *
+	 * @return list of unrecognized extension blocks, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Ansi378v2009Am1Extension> extensions() {
+		return decode().extensions;
+	}
+}
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.ansi378v2009am1;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Finger position on hands (<a href="https://templates.machinezoo.com/ansi378-2009am1#position">POSITION</a>).
  */
@@ -105,6 +107,7 @@ public enum Ansi378v2009Am1Position {
 	 * Left middle, ring, and little (code 50).
 	 */
 	LEFT_MIDDLE_TO_LITTLE(50);
+	static final CodeTable<Ansi378v2009Am1Position> CODES = new CodeTable<>(values(), t -> t.code);
 	final int code;
 	Ansi378v2009Am1Position(int code) {
 		this.code = code;
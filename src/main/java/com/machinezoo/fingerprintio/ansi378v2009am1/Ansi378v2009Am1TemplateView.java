@@ -0,0 +1,109 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.ansi378v2009am1;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.common.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Lazily decoded ANSI INCITS 378-2009/AM1 template.
+ * Only template header and fingerprint headers are decoded when the view is constructed.
+ * Minutiae and extensions are decoded on first access separately for every fingerprint.
+ * This is considerably faster than full parsing when only template and fingerprint metadata is needed.
+ * <p>
+ * The view keeps reference to the original template data, which must not be modified while the view is in use.
+ * Recoverable validation errors are reported when the affected part of the template is decoded.
+ * Full validation is performed only by {@link Ansi378v2009Am1Template}.
+ *
+ * @see Ansi378v2009Am1Template
+ */
+public class Ansi378v2009Am1TemplateView {
+	/**
+	 * Vendor ID (<a href="https://templates.machinezoo.com/ansi378-2009am1#vendor">VENDOR</a>).
+	 * Defaults to {@link IbiaOrganizations#UNKNOWN}.
+	 */
+	public int vendorId = IbiaOrganizations.UNKNOWN;
+	/**
+	 * Vendor-specified subformat (<a href="https://templates.machinezoo.com/ansi378-2009am1#subformat">SUBFORMAT</a>).
+	 */
+	public int subformat;
+	/**
+	 * Indicates that the fingerprint reader has certificate of compliance with Appendix F of CJIS-RS-0010 V7.
+	 * This is the top bit of <a href="https://templates.machinezoo.com/ansi378-2009am1#devstamp">DEVSTAMP</a> field.
+	 */
+	public boolean sensorCertified;
+	/**
+	 * Sensor ID (<a href="https://templates.machinezoo.com/ansi378-2009am1#devid">DEVID</a>).
+	 */
+	public int sensorId;
+	/**
+	 * Lazily decoded fingerprints (<a href="https://templates.machinezoo.com/ansi378-2009am1#fingerprint">FINGERPRINT</a>).
+	 */
+	public List<Ansi378v2009Am1FingerprintView> fingerprints = new ArrayList<>();
+	/**
+	 * Decodes template and fingerprint headers of ANSI INCITS 378-2009/AM1 template.
+	 *
+	 * @param template
+	 *            serialized template in ANSI INCITS 378-2009/AM1 format
+	 * @throws TemplateFormatException
+	 *             if template headers cannot be parsed or they fail validation
+	 */
+	public Ansi378v2009Am1TemplateView(byte[] template) {
+		this(ByteBuffer.wrap(template), Exceptions.propagate());
+	}
+	/**
+	 * Decodes template and fingerprint headers of ANSI INCITS 378-2009/AM1 template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in ANSI INCITS 378-2009/AM1 format
+	 * @throws TemplateFormatException
+	 *             if template headers cannot be parsed or they fail validation
+	 */
+	public Ansi378v2009Am1TemplateView(ByteBuffer template) {
+		this(template, Exceptions.propagate());
+	}
+	/**
+	 * Decodes template and fingerprint headers of ANSI INCITS 378-2009/AM1 template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing, including later lazy decoding of fingerprints,
+	 * will be fed to the provided exception handler.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in ANSI INCITS 378-2009/AM1 format
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public Ansi378v2009Am1TemplateView(ByteBuffer template, ExceptionHandler handler) {
+		if (!Ansi378v2009Am1Template.accepts(template)) {
+			if (Ansi378v2009Template.accepts(template))
+				ValidateTemplate.fail(handler, TemplateRule.FORMAT, -1, -1, () -> "This is ANSI INCITS 378-2009 template, not ANSI INCITS 378-2009/AM1 template.");
+			else
+				throw new TemplateFormatException("This is not an ANSI INCITS 378-2009/AM1 template.");
+		}
+		TemplateUtils.decodeTemplate(template, in -> {
+			in.skipBytes(Ansi378v2009Am1Template.MAGIC.length);
+			long length = 0xffff_ffffL & in.readInt();
+			ValidateTemplate.condition(length >= 21, handler, TemplateRule.LENGTH, () -> "Total length must be at least 21 bytes.");
+			ValidateTemplate.condition(length <= Ansi378v2009Am1Template.MAGIC.length + 4 + in.available(), handler, TemplateRule.LENGTH, () -> "Total length indicates trimmed template.");
+			vendorId = in.readUnsignedShort();
+			subformat = in.readUnsignedShort();
+			int certification = in.readUnsignedByte();
+			sensorCertified = (certification & 0x80) != 0;
+			ValidateTemplate.condition((certification & 0x7f) == 0, handler, TemplateRule.RESERVED, () -> "Unrecognized sensor compliance bits.");
+			sensorId = in.readUnsignedShort();
+			int count = in.readUnsignedByte();
+			in.skipBytes(1);
+			for (int i = 0; i < count; ++i)
+				fingerprints.add(new Ansi378v2009Am1FingerprintView(in, template, handler, i));
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Extra data at the end of the template.");
+		});
+	}
+}
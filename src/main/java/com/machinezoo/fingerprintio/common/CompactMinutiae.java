@@ -0,0 +1,116 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.common;
+
+/**
+ * Compact in-memory representation of minutiae of one fingerprint.
+ * Minutiae are stored in parallel primitive arrays instead of a list of objects,
+ * which saves most of the memory when large numbers of fingerprints are kept in memory.
+ * <p>
+ * All template formats share minutia record layout, so this class serves all of them.
+ * Fields hold raw values as they are stored in the template: type is the 2-bit minutia type code,
+ * positions are in pixels, angle is in format-specific units, and quality is the raw quality byte.
+ * Values are not validated. Conversion to and from format-specific minutia objects is provided by fingerprint classes.
+ */
+public class CompactMinutiae {
+	private final short[] positionX;
+	private final short[] positionY;
+	private final byte[] angle;
+	private final byte[] quality;
+	private final byte[] type;
+	/**
+	 * Creates new compact minutia storage with the specified number of minutiae.
+	 * All minutiae are initially zeroed.
+	 *
+	 * @param count
+	 *            number of minutiae
+	 */
+	public CompactMinutiae(int count) {
+		positionX = new short[count];
+		positionY = new short[count];
+		angle = new byte[count];
+		quality = new byte[count];
+		type = new byte[count];
+	}
+	/**
+	 * Gets the number of minutiae.
+	 *
+	 * @return number of minutiae
+	 */
+	public int size() {
+		return type.length;
+	}
+	/**
+	 * Gets minutia type code.
+	 *
+	 * @param index
+	 *            index of the minutia
+	 * @return 2-bit minutia type code
+	 */
+	public int type(int index) {
+		return type[index];
+	}
+	/**
+	 * Gets minutia X position.
+	 *
+	 * @param index
+	 *            index of the minutia
+	 * @return X position in pixels
+	 */
+	public int positionX(int index) {
+		return positionX[index] & 0xffff;
+	}
+	/**
+	 * Gets minutia Y position.
+	 *
+	 * @param index
+	 *            index of the minutia
+	 * @return Y position in pixels
+	 */
+	public int positionY(int index) {
+		return positionY[index] & 0xffff;
+	}
+	/**
+	 * Gets minutia angle.
+	 *
+	 * @param index
+	 *            index of the minutia
+	 * @return angle in format-specific units
+	 */
+	public int angle(int index) {
+		return angle[index] & 0xff;
+	}
+	/**
+	 * Gets minutia quality.
+	 *
+	 * @param index
+	 *            index of the minutia
+	 * @return raw quality value
+	 */
+	public int quality(int index) {
+		return quality[index] & 0xff;
+	}
+	/**
+	 * Sets all fields of one minutia.
+	 * Values are truncated to the width of the underlying storage: 2 bits for type, 16 bits for positions, and 8 bits for angle and quality.
+	 *
+	 * @param index
+	 *            index of the minutia
+	 * @param type
+	 *            2-bit minutia type code
+	 * @param positionX
+	 *            X position in pixels
+	 * @param positionY
+	 *            Y position in pixels
+	 * @param angle
+	 *            angle in format-specific units
+	 * @param quality
+	 *            raw quality value
+	 */
+	public void set(int index, int type, int positionX, int positionY, int angle, int quality) {
+		this.type[index] = (byte)(type & 3);
+		this.positionX[index] = (short)positionX;
+		this.positionY[index] = (short)positionY;
+		this.angle[index] = (byte)angle;
+		this.quality[index] = (byte)quality;
+	}
+}
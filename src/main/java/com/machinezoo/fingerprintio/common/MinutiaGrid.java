@@ -0,0 +1,240 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.common;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Spatial index over minutiae of one fingerprint.
+ * Image is divided into square cells and minutiae are bucketed by the cell they fall into,
+ * so that rectangle and radius queries only visit cells that overlap the queried area.
+ * <p>
+ * Index is built once from {@link CompactMinutiae} and it does not change afterwards.
+ * Queries report minutia indexes into the {@link CompactMinutiae} the index was built from.
+ * Queries do not allocate anything and their cost is proportional to the number of visited cells plus the number of minutiae in them.
+ * Minutiae lying outside of image dimensions are placed in the nearest border cell, so they are still found by queries.
+ */
+public class MinutiaGrid {
+	/**
+	 * Default cell size in millimeters. It is about the size of typical minutia neighborhood.
+	 */
+	private static final int CELL_MM = 2;
+	private final int cellSize;
+	private final int columns;
+	private final int rows;
+	private final int[] offsets;
+	private final int[] indexes;
+	private final int[] positionX;
+	private final int[] positionY;
+	/**
+	 * Creates new spatial index with the specified cell size.
+	 *
+	 * @param minutiae
+	 *            minutiae to index
+	 * @param width
+	 *            image width in pixels
+	 * @param height
+	 *            image height in pixels
+	 * @param cellSize
+	 *            width and height of one cell in pixels
+	 * @throws IllegalArgumentException
+	 *             if {@code cellSize} is not positive
+	 */
+	public MinutiaGrid(CompactMinutiae minutiae, int width, int height, int cellSize) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("Cell size must be positive.");
+		this.cellSize = cellSize;
+		columns = Math.max(1, (width + cellSize - 1) / cellSize);
+		rows = Math.max(1, (height + cellSize - 1) / cellSize);
+		int count = minutiae.size();
+		int[] cells = new int[count];
+		offsets = new int[columns * rows + 1];
+		for (int i = 0; i < count; ++i) {
+			cells[i] = cell(minutiae.positionX(i), minutiae.positionY(i));
+			++offsets[cells[i] + 1];
+		}
+		for (int i = 0; i < columns * rows; ++i)
+			offsets[i + 1] += offsets[i];
+		int[] next = Arrays.copyOf(offsets, columns * rows);
+		indexes = new int[count];
+		positionX = new int[count];
+		positionY = new int[count];
+		for (int i = 0; i < count; ++i) {
+			int at = next[cells[i]]++;
+			indexes[at] = i;
+			positionX[at] = minutiae.positionX(i);
+			positionY[at] = minutiae.positionY(i);
+		}
+	}
+	/**
+	 * Creates new spatial index with cell size derived from image resolution.
+	 * Cells are about 2mm wide. If resolution is not known (zero), 500dpi is assumed.
+	 *
+	 * @param minutiae
+	 *            minutiae to index
+	 * @param width
+	 *            image width in pixels
+	 * @param height
+	 *            image height in pixels
+	 * @param resolutionX
+	 *            horizontal pixel density in pixels per centimeter
+	 * @param resolutionY
+	 *            vertical pixel density in pixels per centimeter
+	 */
+	public MinutiaGrid(CompactMinutiae minutiae, int width, int height, int resolutionX, int resolutionY) {
+		this(minutiae, width, height, cellSize(resolutionX, resolutionY));
+	}
+	private static int cellSize(int resolutionX, int resolutionY) {
+		int resolution = Math.max(resolutionX, resolutionY);
+		if (resolution <= 0)
+			resolution = 197;
+		return Math.max(1, resolution * CELL_MM / 10);
+	}
+	/*
+	 * Coordinates are long, so that radius queries can pass center plus or minus radius without int overflow.
+	 */
+	private int column(long x) {
+		return (int)Math.min(columns - 1, Math.max(0, x / cellSize));
+	}
+	private int row(long y) {
+		return (int)Math.min(rows - 1, Math.max(0, y / cellSize));
+	}
+	private int cell(int x, int y) {
+		return row(y) * columns + column(x);
+	}
+	/**
+	 * Gets the number of indexed minutiae.
+	 *
+	 * @return number of minutiae
+	 */
+	public int size() {
+		return indexes.length;
+	}
+	/**
+	 * Gets cell size used by this index.
+	 *
+	 * @return width and height of one cell in pixels
+	 */
+	public int cellSize() {
+		return cellSize;
+	}
+	/**
+	 * Enumerates minutiae inside the rectangle.
+	 * Order of reported minutiae is unspecified.
+	 *
+	 * @param left
+	 *            left edge of the rectangle (inclusive)
+	 * @param top
+	 *            top edge of the rectangle (inclusive)
+	 * @param right
+	 *            right edge of the rectangle (exclusive)
+	 * @param bottom
+	 *            bottom edge of the rectangle (exclusive)
+	 * @param action
+	 *            callback receiving index of every minutia inside the rectangle
+	 */
+	public void forEachInRectangle(int left, int top, int right, int bottom, IntConsumer action) {
+		if (left >= right || top >= bottom)
+			return;
+		for (int row = row(top); row <= row(bottom - 1); ++row) {
+			for (int column = column(left); column <= column(right - 1); ++column) {
+				int cell = row * columns + column;
+				for (int i = offsets[cell]; i < offsets[cell + 1]; ++i)
+					if (positionX[i] >= left && positionX[i] < right && positionY[i] >= top && positionY[i] < bottom)
+						action.accept(indexes[i]);
+			}
+		}
+	}
+	/**
+	 * Counts minutiae inside the rectangle.
+	 *
+	 * @param left
+	 *            left edge of the rectangle (inclusive)
+	 * @param top
+	 *            top edge of the rectangle (inclusive)
+	 * @param right
+	 *            right edge of the rectangle (exclusive)
+	 * @param bottom
+	 *            bottom edge of the rectangle (exclusive)
+	 * @return number of minutiae inside the rectangle
+	 */
+	public int countInRectangle(int left, int top, int right, int bottom) {
+		if (left >= right || top >= bottom)
+			return 0;
+		int count = 0;
+		for (int row = row(top); row <= row(bottom - 1); ++row) {
+			for (int column = column(left); column <= column(right - 1); ++column) {
+				int cell = row * columns + column;
+				for (int i = offsets[cell]; i < offsets[cell + 1]; ++i)
+					if (positionX[i] >= left && positionX[i] < right && positionY[i] >= top && positionY[i] < bottom)
+						++count;
+			}
+		}
+		return count;
+	}
+	/**
+	 * Enumerates minutiae within the specified distance from a point.
+	 * Minutiae exactly at the specified distance are included. Order of reported minutiae is unspecified.
+	 *
+	 * @param x
+	 *            X coordinate of the center in pixels
+	 * @param y
+	 *            Y coordinate of the center in pixels
+	 * @param radius
+	 *            maximum distance in pixels
+	 * @param action
+	 *            callback receiving index of every minutia within the radius
+	 */
+	public void forEachWithinRadius(int x, int y, int radius, IntConsumer action) {
+		if (radius < 0)
+			return;
+		long limit = (long)radius * radius;
+		for (int row = row((long)y - radius); row <= row((long)y + radius); ++row) {
+			for (int column = column((long)x - radius); column <= column((long)x + radius); ++column) {
+				int cell = row * columns + column;
+				for (int i = offsets[cell]; i < offsets[cell + 1]; ++i) {
+					long dx = (long)positionX[i] - x;
+					long dy = (long)positionY[i] - y;
+					/*
+					 * Bounding box check first keeps squares below 2^62, so that their sum cannot overflow.
+					 */
+					if (Math.abs(dx) <= radius && Math.abs(dy) <= radius && dx * dx + dy * dy <= limit)
+						action.accept(indexes[i]);
+				}
+			}
+		}
+	}
+	/**
+	 * Counts minutiae within the specified distance from a point.
+	 * Minutiae exactly at the specified distance are included.
+	 *
+	 * @param x
+	 *            X coordinate of the center in pixels
+	 * @param y
+	 *            Y coordinate of the center in pixels
+	 * @param radius
+	 *            maximum distance in pixels
+	 * @return number of minutiae within the radius
+	 */
+	public int countWithinRadius(int x, int y, int radius) {
+		if (radius < 0)
+			return 0;
+		long limit = (long)radius * radius;
+		int count = 0;
+		for (int row = row((long)y - radius); row <= row((long)y + radius); ++row) {
+			for (int column = column((long)x - radius); column <= column((long)x + radius); ++column) {
+				int cell = row * columns + column;
+				for (int i = offsets[cell]; i < offsets[cell + 1]; ++i) {
+					long dx = (long)positionX[i] - x;
+					long dy = (long)positionY[i] - y;
+					/*
+					 * Bounding box check first keeps squares below 2^62, so that their sum cannot overflow.
+					 */
+					if (Math.abs(dx) <= radius && Math.abs(dy) <= radius && dx * dx + dy * dy <= limit)
+						++count;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,143 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.common;
+
+import java.util.*;
+
+/**
+ * Compact adjacency index of ridge count edges of one fingerprint.
+ * Edges are grouped by starting minutia and stored in parallel primitive arrays instead of a list of edge objects,
+ * so that all edges starting at one minutia can be enumerated in time proportional to their number.
+ * <p>
+ * All template formats share the edge record layout (EDGEFROM, EDGETO, RIDGECOUNT), so this class serves all of them.
+ * Edges starting at minutia {@code i} are numbered from {@link #first(int) first(i)} (inclusive) to {@link #first(int) first(i + 1)} (exclusive).
+ * Edges with the same starting minutia keep their relative order from the template.
+ * Placeholder edges are kept as they are, with whatever placeholder values the template format uses.
+ * Values are not validated. Conversion to and from format-specific ridge count extensions is provided by ridge count extension classes.
+ */
+public class RidgeCountGraph {
+	private final int[] offsets;
+	private final byte[] to;
+	private final byte[] count;
+	/**
+	 * Creates new adjacency index from serialized edge records (<a href="https://templates.machinezoo.com/iso-19794-2-2011#edgedef">EDGEDEF</a>).
+	 * Every edge record is 3 bytes long: starting minutia, ending minutia, and ridge count.
+	 * Incomplete record at the end of the range is ignored.
+	 * If some edge starts at minutia index that is not less than {@code minutiaCount},
+	 * the index is extended to cover that minutia, so that no edge is lost.
+	 *
+	 * @param minutiaCount
+	 *            number of minutiae in the fingerprint
+	 * @param edges
+	 *            array containing edge records
+	 * @param offset
+	 *            offset of the first edge record in {@code edges}
+	 * @param length
+	 *            length of all edge records in bytes
+	 */
+	public RidgeCountGraph(int minutiaCount, byte[] edges, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, edges.length);
+		int size = length / 3;
+		int nodes = minutiaCount;
+		for (int i = 0; i < size; ++i)
+			nodes = Math.max(nodes, (edges[offset + 3 * i] & 0xff) + 1);
+		offsets = new int[nodes + 1];
+		for (int i = 0; i < size; ++i)
+			++offsets[(edges[offset + 3 * i] & 0xff) + 1];
+		for (int i = 0; i < nodes; ++i)
+			offsets[i + 1] += offsets[i];
+		int[] next = Arrays.copyOf(offsets, nodes);
+		to = new byte[size];
+		count = new byte[size];
+		for (int i = 0; i < size; ++i) {
+			int at = next[edges[offset + 3 * i] & 0xff]++;
+			to[at] = edges[offset + 3 * i + 1];
+			count[at] = edges[offset + 3 * i + 2];
+		}
+	}
+	/**
+	 * Creates new adjacency index from serialized edge records (<a href="https://templates.machinezoo.com/iso-19794-2-2011#edgedef">EDGEDEF</a>).
+	 *
+	 * @param minutiaCount
+	 *            number of minutiae in the fingerprint
+	 * @param edges
+	 *            edge records, 3 bytes per edge
+	 * @see #RidgeCountGraph(int, byte[], int, int)
+	 */
+	public RidgeCountGraph(int minutiaCount, byte[] edges) {
+		this(minutiaCount, edges, 0, edges.length);
+	}
+	/**
+	 * Gets the number of minutiae covered by the index.
+	 *
+	 * @return number of minutiae
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+	/**
+	 * Gets the total number of edges.
+	 *
+	 * @return number of edges
+	 */
+	public int edgeCount() {
+		return to.length;
+	}
+	/**
+	 * Gets index of the first edge starting at the specified minutia.
+	 * Passing {@link #size()} returns {@link #edgeCount()}.
+	 *
+	 * @param minutia
+	 *            index of the starting minutia
+	 * @return index of the first edge starting at the minutia
+	 */
+	public int first(int minutia) {
+		return offsets[minutia];
+	}
+	/**
+	 * Gets the number of edges starting at the specified minutia.
+	 *
+	 * @param minutia
+	 *            index of the starting minutia
+	 * @return number of edges starting at the minutia
+	 */
+	public int degree(int minutia) {
+		return offsets[minutia + 1] - offsets[minutia];
+	}
+	/**
+	 * Gets ending minutia of the edge.
+	 *
+	 * @param edge
+	 *            index of the edge
+	 * @return index of the ending minutia or format-specific placeholder value
+	 */
+	public int to(int edge) {
+		return to[edge] & 0xff;
+	}
+	/**
+	 * Gets ridge count of the edge.
+	 *
+	 * @param edge
+	 *            index of the edge
+	 * @return number of ridges crossed by the edge or format-specific placeholder value
+	 */
+	public int count(int edge) {
+		return count[edge] & 0xff;
+	}
+	/**
+	 * Serializes all edges into edge records (<a href="https://templates.machinezoo.com/iso-19794-2-2011#edgedef">EDGEDEF</a>).
+	 * Edges are written in index order, i.e. grouped by starting minutia.
+	 *
+	 * @return edge records, 3 bytes per edge
+	 */
+	public byte[] toByteArray() {
+		byte[] edges = new byte[3 * to.length];
+		for (int minutia = 0; minutia < size(); ++minutia) {
+			for (int edge = offsets[minutia]; edge < offsets[minutia + 1]; ++edge) {
+				edges[3 * edge] = (byte)minutia;
+				edges[3 * edge + 1] = to[edge];
+				edges[3 * edge + 2] = count[edge];
+			}
+		}
+		return edges;
+	}
+}
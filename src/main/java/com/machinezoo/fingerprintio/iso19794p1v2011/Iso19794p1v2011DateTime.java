@@ -1,6 +1,7 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p1v2011;
 
+import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.utils.*;
 
 /**
@@ -65,7 +66,14 @@ public class Iso19794p1v2011DateTime {
 		out.writeByte(second);
 		out.writeShort(millisecond);
 	}
-	void validate() {
+	/**
+	 * Checks that all date and time components are in range and that omitted components are not followed by specified ones.
+	 * Modality-specific formats call this when they serialize the timestamp themselves.
+	 * 
+	 * @throws TemplateFormatException
+	 *             if the timestamp fails validation
+	 */
+	public void validate() {
 		validate16(year, 1, 0xfffe, "Year must be in range 1 through 0xfffe if present or special value 0xffff if omitted.");
 		validate8(month, 1, 12, "Month must be in range 1 through 12 if present or special value 0xff if omitted.");
 		validate8(day, 1, 31, "Day of month must be in range 1 through 31 if present or special value 0xff if omitted.");
@@ -1,6 +1,7 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p1v2011;
 
+import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.utils.*;
 
@@ -37,7 +38,14 @@ public class Iso19794p1v2011Quality {
 		out.writeShort(vendor);
 		out.writeShort(algorithm);
 	}
-	void validate() {
+	/**
+	 * Checks that quality score, vendor, and algorithm are in range.
+	 * Modality-specific formats call this when they serialize the quality record themselves.
+	 * 
+	 * @throws TemplateFormatException
+	 *             if the quality record fails validation
+	 */
+	public void validate() {
 		ValidateTemplate.condition(quality >= 0 && quality <= 100 || quality == 255, "Sample quality must be in range 0 through 100 or special value 255.");
 		ValidateTemplate.int16(vendor, "Quality algorithm vendor must be a 16-bit unsigned number.");
 		ValidateTemplate.int16(algorithm, "Quality algorithm must be a 16-bit unsigned number.");
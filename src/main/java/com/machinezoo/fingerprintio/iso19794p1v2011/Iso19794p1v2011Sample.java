@@ -2,6 +2,7 @@
 package com.machinezoo.fingerprintio.iso19794p1v2011;
 
 import java.util.*;
+import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
@@ -44,9 +45,9 @@ public class Iso19794p1v2011Sample {
 	 */
 	public Iso19794p1v2011Sample() {
 	}
-	Iso19794p1v2011Sample(TemplateReader in, ExceptionHandler handler, Iso19794p1v2011Format format, boolean hasCertificates) {
+	Iso19794p1v2011Sample(TemplateReader in, ExceptionHandler handler, int index, Iso19794p1v2011Format format, boolean hasCertificates) {
 		long length = 0xffff_ffffL & in.readInt();
-		ValidateTemplate.condition(length >= 14, handler, "Length of biometric sample must be at least 14 bytes.");
+		ValidateTemplate.condition(length >= 14, handler, TemplateRule.LENGTH, index, () -> "Length of biometric sample must be at least 14 bytes.");
 		long remaining = in.available() - (length - 4);
 		datetime = new Iso19794p1v2011DateTime(in);
 		sensorType = in.readUnsignedByte();
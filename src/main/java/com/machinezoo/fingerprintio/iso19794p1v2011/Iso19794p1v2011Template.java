@@ -2,6 +2,8 @@
 package com.machinezoo.fingerprintio.iso19794p1v2011;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
 import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.utils.*;
@@ -24,10 +26,24 @@ public class Iso19794p1v2011Template {
 	 * @return {@code true} if {@code template} is an instance of ISO/IEC 19794-1:2011 base template, {@code false} otherwise
 	 */
 	public static boolean accepts(byte[] template) {
-		if (template.length < 15)
+		return accepts(ByteBuffer.wrap(template));
+	}
+	/**
+	 * Checks whether provided template is an instance of ISO/IEC 19794-1:2011 base template.
+	 * This method does not do any template validation or conformance checking.
+	 * It just differentiates ISO/IEC 19794-1:2011 from other template formats
+	 * as quickly as possible, mostly by looking at template header.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template that is to be evaluated
+	 * @return {@code true} if {@code template} is an instance of ISO/IEC 19794-1:2011 base template, {@code false} otherwise
+	 */
+	public static boolean accepts(ByteBuffer template) {
+		if (template.remaining() < 15)
 			return false;
 		try {
-			DataInputStream in = new DataInputStream(new ByteArrayInputStream(template));
+			TemplateReader in = new TemplateReader(template);
 			for (int i = 0; i < 3; ++i) {
 				int magicByte = in.readUnsignedByte();
 				if (magicByte < 'A' || magicByte > 'Z')
@@ -89,6 +105,20 @@ public class Iso19794p1v2011Template {
 	public Iso19794p1v2011Template(byte[] template, Iso19794p1v2011Format format) {
 		this(template, Exceptions.propagate(), format);
 	}
+	/**
+	 * Parses and validates ISO/IEC 19794-1:2011 template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-1:2011 format
+	 * @param format
+	 *            information about optional fields
+	 * @throws TemplateFormatException
+	 *             if the template cannot be parsed or it fails validation
+	 */
+	public Iso19794p1v2011Template(ByteBuffer template, Iso19794p1v2011Format format) {
+		this(template, Exceptions.propagate(), format);
+	}
 	/**
 	 * Parses and optionally validates ISO/IEC 19794-1:2011 template.
 	 * 
@@ -123,30 +153,51 @@ public class Iso19794p1v2011Template {
 	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
 	 */
 	public Iso19794p1v2011Template(byte[] template, ExceptionHandler handler, Iso19794p1v2011Format format) {
+		this(ByteBuffer.wrap(template), handler, format);
+	}
+	/**
+	 * Parses and optionally validates ISO/IEC 19794-1:2011 template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * Slice of a larger array can be passed in via {@link ByteBuffer#wrap(byte[], int, int)}.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+	 * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+	 * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-1:2011 format
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @param format
+	 *            information about optional fields
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public Iso19794p1v2011Template(ByteBuffer template, ExceptionHandler handler, Iso19794p1v2011Format format) {
 		if (!accepts(template))
 			throw new TemplateFormatException("This is not an ISO/IEC 19794-1:2011 biometric record.");
 		TemplateUtils.decodeTemplate(template, in -> {
 			byte[] magic = new byte[4];
 			in.readFully(magic);
 			modality = Arrays.stream(Iso19794p1v2011Modality.values()).filter(m -> Arrays.equals(m.magic, magic)).findFirst().orElse(null);
-			ValidateTemplate.condition(modality != null, handler, "Unrecognized modality-specific file signature.");
+			ValidateTemplate.condition(modality != null, handler, TemplateRule.FORMAT, () -> "Unrecognized modality-specific file signature.");
 			byte[] version = new byte[4];
 			in.readFully(version);
 			versionMajor = (version[0] - '0') * 10 + (version[1] = '0');
 			versionMinor = version[2] - '0';
 			long length = 0xffff_ffffL & in.readInt();
-			ValidateTemplate.condition(length >= 29, handler, "Total length must be at least 29 bytes.");
-			ValidateTemplate.condition(length <= 12 + in.available(), handler, "Total length indicates trimmed template.");
+			ValidateTemplate.condition(length >= 29, handler, TemplateRule.LENGTH, () -> "Total length must be at least 29 bytes.");
+			ValidateTemplate.condition(length <= 12 + in.available(), handler, TemplateRule.LENGTH, () -> "Total length indicates trimmed template.");
 			int count = in.readUnsignedShort();
 			int certFlag = in.readUnsignedByte();
-			ValidateTemplate.condition(certFlag < 2, handler, "Certification flag must be either 0 or 1.");
+			ValidateTemplate.condition(certFlag < 2, handler, TemplateRule.RESERVED, () -> "Certification flag must be either 0 or 1.");
 			if (!format.hasCertificates)
-				ValidateTemplate.condition(certFlag == 0, handler, "Certificates cannot be present in this modality-specific format.");
+				ValidateTemplate.condition(certFlag == 0, handler, TemplateRule.FORMAT, () -> "Certificates cannot be present in this modality-specific format.");
 			byte[] data = new byte[format.extraHeaderLength];
 			in.readFully(data);
 			for (int i = 0; i < count; ++i)
-				samples.add(new Iso19794p1v2011Sample(in, handler, format, certFlag != 0));
-			ValidateTemplate.condition(in.available() == 0, handler, "Extra data at the end of the template.");
+				samples.add(new Iso19794p1v2011Sample(in, handler, i, format, certFlag != 0));
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Extra data at the end of the template.");
 			ValidateTemplate.structure(() -> validate(format), handler);
 		});
 	}
@@ -161,20 +212,79 @@ public class Iso19794p1v2011Template {
 	 */
 	public byte[] toByteArray(Iso19794p1v2011Format format) {
 		validate(format);
-		TemplateWriter out = new TemplateWriter();
+		int length = measure(format);
+		TemplateWriter out = new TemplateWriter(length);
+		write(out, length, format);
+		return out.toByteArray();
+	}
+	/**
+	 * Validates and serializes the template in ISO/IEC 19794-1:2011 format into a buffer.
+	 * Template is written at buffer's position, which is then advanced past the template.
+	 * Nothing is written if the template does not fit in the buffer.
+	 * 
+	 * @param buffer
+	 *            buffer to receive serialized template in ISO/IEC 19794-1:2011 format
+	 * @param format
+	 *            information about optional fields
+	 * @throws TemplateFormatException
+	 *             if the template fails validation
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void writeTo(ByteBuffer buffer, Iso19794p1v2011Format format) {
+		validate(format);
+		int length = measure(format);
+		TemplateUtils.encodeTo(buffer, length, out -> write(out, length, format));
+	}
+	/**
+	 * Validates and serializes the template in ISO/IEC 19794-1:2011 format into a stream.
+	 * Template is written without first materializing it in memory. The stream is not closed.
+	 * 
+	 * @param stream
+	 *            stream to receive serialized template in ISO/IEC 19794-1:2011 format
+	 * @param format
+	 *            information about optional fields
+	 * @throws TemplateFormatException
+	 *             if the template fails validation
+	 * @throws IOException
+	 *             if the stream throws
+	 */
+	public void writeTo(OutputStream stream, Iso19794p1v2011Format format) throws IOException {
+		validate(format);
+		int length = measure(format);
+		TemplateUtils.encodeTo(stream, length, out -> write(out, length, format));
+	}
+	/**
+	 * Validates and serializes the template in ISO/IEC 19794-1:2011 format into a channel.
+	 * Template is written without first materializing it in memory. The channel is not closed.
+	 * 
+	 * @param channel
+	 *            blocking channel to receive serialized template in ISO/IEC 19794-1:2011 format
+	 * @param format
+	 *            information about optional fields
+	 * @throws TemplateFormatException
+	 *             if the template fails validation
+	 * @throws IOException
+	 *             if the channel throws
+	 */
+	public void writeTo(WritableByteChannel channel, Iso19794p1v2011Format format) throws IOException {
+		validate(format);
+		int length = measure(format);
+		TemplateUtils.encodeTo(channel, length, out -> write(out, length, format));
+	}
+	private void write(TemplateWriter out, int length, Iso19794p1v2011Format format) {
 		out.write(modality.magic);
 		out.writeByte(versionMajor / 10 + '0');
 		out.writeByte(versionMajor % 10 + '0');
 		out.writeByte(versionMinor + '0');
 		out.writeByte(0);
-		out.writeInt(measure(format));
+		out.writeInt(length);
 		out.writeShort(samples.size());
 		out.writeByte(format.hasCertificates ? 1 : 0);
 		if (format.extraHeaderLength > 0)
 			out.write(extra);
 		for (Iso19794p1v2011Sample sample : samples)
 			sample.write(out, format);
-		return out.toByteArray();
 	}
 	private int measure(Iso19794p1v2011Format format) {
 		return 15 + format.extraHeaderLength + samples.stream().mapToInt(s -> s.measure(format)).sum();
@@ -2,6 +2,7 @@
 package com.machinezoo.fingerprintio.iso19794p2v2005;
 
 import java.util.*;
+import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
 
@@ -23,7 +24,7 @@ public class Iso19794p2v2005CoreDeltaExtension {
 	 */
 	public Iso19794p2v2005CoreDeltaExtension() {
 	}
-	Iso19794p2v2005CoreDeltaExtension(byte[] extension, ExceptionHandler handler) {
+	Iso19794p2v2005CoreDeltaExtension(byte[] extension, ExceptionHandler handler, int fingerprint) {
 		TemplateUtils.decodeExtension(extension, in -> {
 			int coreCount = in.readUnsignedByte();
 			for (int i = 0; i < coreCount; ++i)
@@ -31,7 +32,7 @@ public class Iso19794p2v2005CoreDeltaExtension {
 			int deltaCount = in.readUnsignedByte();
 			for (int i = 0; i < deltaCount; ++i)
 				deltas.add(new Iso19794p2v2005Delta(in));
-			ValidateTemplate.condition(in.available() == 0, handler, "Extra data at the end of core/delta extension.");
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, fingerprint, () -> "Extra data at the end of core/delta extension.");
 		});
 	}
 	Iso19794p2v2005Extension extension() {
@@ -41,7 +42,7 @@ public class Iso19794p2v2005CoreDeltaExtension {
 		return extension;
 	}
 	byte[] toByteArray() {
-		TemplateWriter out = new TemplateWriter();
+		TemplateWriter out = new TemplateWriter(measure() - 4);
 		out.writeByte(cores.size());
 		for (Iso19794p2v2005Core core : cores)
 			core.write(out);
@@ -52,8 +53,10 @@ public class Iso19794p2v2005CoreDeltaExtension {
 	}
 	int measure() {
 		int length = 4 + 2;
-		length += cores.stream().mapToInt(Iso19794p2v2005Core::measure).sum();
-		length += deltas.stream().mapToInt(Iso19794p2v2005Delta::measure).sum();
+		for (Iso19794p2v2005Core core : cores)
+			length += core.measure();
+		for (Iso19794p2v2005Delta delta : deltas)
+			length += delta.measure();
 		return length;
 	}
 	void validate(int width, int height) {
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2005;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Edge picking method (<a href="https://templates.machinezoo.com/iso-19794-2-2005#startype">STARTYPE</a>).
  */
@@ -17,4 +19,5 @@ public enum Iso19794p2v2005CountType {
 	 * Octants (code 2).
 	 */
 	OCTANTS;
+	static final CodeTable<Iso19794p2v2005CountType> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
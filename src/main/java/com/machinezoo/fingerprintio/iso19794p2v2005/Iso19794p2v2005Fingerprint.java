@@ -3,6 +3,8 @@ package com.machinezoo.fingerprintio.iso19794p2v2005;
 
 import java.util.*;
 import java.util.function.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
 
@@ -57,15 +59,21 @@ public class Iso19794p2v2005Fingerprint {
 	 */
 	public Iso19794p2v2005Fingerprint() {
 	}
-	Iso19794p2v2005Fingerprint(TemplateReader in, int width, int height, ExceptionHandler handler) {
-		position = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2005Position.class, handler, "Unrecognized finger position code.");
+	Iso19794p2v2005Fingerprint(TemplateReader in, int width, int height, ExceptionHandler handler, int index) {
+		decode(in, width, height, handler, index);
+	}
+	void decode(TemplateReader in, int width, int height, ExceptionHandler handler, int index) {
+		counts = null;
+		coredelta = null;
+		zones = null;
+		extensions = TemplateUtils.clearList(extensions);
+		position = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2005Position.CODES, handler, index, -1, () -> "Unrecognized finger position code.");
 		int offsetAndType = in.readUnsignedByte();
 		view = offsetAndType >> 4;
-		scanType = TemplateUtils.decodeType(offsetAndType & 0xf, Iso19794p2v2005ScanType.values(), t -> t.code, handler, "Unrecognized sensor type code.");
+		scanType = TemplateUtils.decodeType(offsetAndType & 0xf, Iso19794p2v2005ScanType.CODES, handler, index, -1, () -> "Unrecognized sensor type code.");
 		quality = in.readUnsignedByte();
 		int count = in.readUnsignedByte();
-		for (int i = 0; i < count; ++i)
-			minutiae.add(new Iso19794p2v2005Minutia(in, handler));
+		minutiae = TemplateUtils.decodeList(minutiae, count, (m, i) -> m.decode(in, handler, index, i), i -> new Iso19794p2v2005Minutia(in, handler, index, i));
 		int totalBytes = in.readUnsignedShort();
 		byte[] extensionBlock = new byte[totalBytes];
 		in.readFully(extensionBlock);
@@ -74,27 +82,56 @@ public class Iso19794p2v2005Fingerprint {
 				while (inx.available() > 0) {
 					Iso19794p2v2005Extension extension = new Iso19794p2v2005Extension(inx);
 					if (extension.type == Iso19794p2v2005CountExtension.IDENTIFIER)
-						decodeExtension(extension, data -> counts = new Iso19794p2v2005CountExtension(data, handler), handler, "Unable to decode ridge count extension.");
+						decodeExtension(extension, data -> counts = new Iso19794p2v2005CountExtension(data, handler, index), handler, index, () -> "Unable to decode ridge count extension.");
 					else if (extension.type == Iso19794p2v2005CoreDeltaExtension.IDENTIFIER)
-						decodeExtension(extension, data -> coredelta = new Iso19794p2v2005CoreDeltaExtension(data, handler), handler, "Unable to decode core/delta extension.");
+						decodeExtension(extension, data -> coredelta = new Iso19794p2v2005CoreDeltaExtension(data, handler, index), handler, index, () -> "Unable to decode core/delta extension.");
 					else if (extension.type == Iso19794p2v2005ZonalExtension.IDENTIFIER)
-						decodeExtension(extension, data -> zones = new Iso19794p2v2005ZonalExtension(data, width, height, handler), handler, "Unable to decode zonal quality extension.");
+						decodeExtension(extension, data -> zones = new Iso19794p2v2005ZonalExtension(data, width, height, handler, index), handler, index, () -> "Unable to decode zonal quality extension.");
 					else
 						extensions.add(extension);
 				}
 			});
 		} catch (Throwable ex) {
-			ValidateTemplate.fail(handler, "Failed to parse extension data.", ex);
+			ValidateTemplate.fail(handler, TemplateRule.EXTENSION, index, -1, () -> "Failed to parse extension data.", ex);
 		}
 	}
-	private void decodeExtension(Iso19794p2v2005Extension extension, Consumer<byte[]> decoder, ExceptionHandler handler, String message) {
+	private void decodeExtension(Iso19794p2v2005Extension extension, Consumer<byte[]> decoder, ExceptionHandler handler, int index, Supplier<String> message) {
 		try {
 			decoder.accept(extension.data);
 		} catch (Throwable ex) {
-			ValidateTemplate.fail(handler, message, ex);
+			ValidateTemplate.fail(handler, TemplateRule.EXTENSION, index, -1, message, ex);
 			extensions.add(extension);
 		}
 	}
+	/**
+	 * Converts {@link #minutiae} to compact representation that stores minutiae in primitive arrays.
+	 *
+	 * @return copy of {@link #minutiae} in compact representation
+	 * @see #expandMinutiae(CompactMinutiae)
+	 */
+	public CompactMinutiae compactMinutiae() {
+		CompactMinutiae compact = new CompactMinutiae(minutiae.size());
+		for (int i = 0; i < minutiae.size(); ++i) {
+			Iso19794p2v2005Minutia minutia = minutiae.get(i);
+			compact.set(i, minutia.type.ordinal(), minutia.positionX, minutia.positionY, minutia.angle, minutia.quality);
+		}
+		return compact;
+	}
+	/**
+	 * Replaces {@link #minutiae} with minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2005#minutia">MINUTIA</a>) stored in compact representation.
+	 *
+	 * @param compact
+	 *            minutiae in compact representation
+	 * @throws TemplateFormatException
+	 *             if {@code compact} contains unrecognized minutia type code
+	 * @see #compactMinutiae()
+	 */
+	public void expandMinutiae(CompactMinutiae compact) {
+		List<Iso19794p2v2005Minutia> expanded = new ArrayList<>(compact.size());
+		for (int i = 0; i < compact.size(); ++i)
+			expanded.add(new Iso19794p2v2005Minutia(compact, i));
+		minutiae = expanded;
+	}
 	void write(TemplateWriter out) {
 		out.writeByte(position.ordinal());
 		out.writeByte((view << 4) | scanType.code);
@@ -137,7 +174,9 @@ public class Iso19794p2v2005Fingerprint {
 		ValidateTemplate.int16(extensionBytes(), "Total size of all extension blocks must a 16-bit number.");
 	}
 	private int extensionBytes() {
-		int bytes = extensions.stream().mapToInt(Iso19794p2v2005Extension::measure).sum();
+		int bytes = 0;
+		for (Iso19794p2v2005Extension extension : extensions)
+			bytes += extension.measure();
 		if (counts != null)
 			bytes += counts.measure();
 		if (coredelta != null)
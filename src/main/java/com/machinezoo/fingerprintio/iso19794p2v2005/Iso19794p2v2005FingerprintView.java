@@ -0,0 +1,153 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Lazily decoded fingerprint (<a href="https://templates.machinezoo.com/iso-19794-2-2005#fingerprint">FINGERPRINT</a>).
+ * Fingerprint header is decoded eagerly. Minutiae and extensions are decoded on first access.
+ *
+ * @see Iso19794p2v2005TemplateView
+ */
+public class Iso19794p2v2005FingerprintView {
+	/**
+	 * Finger position on hands (<a href="https://templates.machinezoo.com/iso-19794-2-2005#position">POSITION</a>).
+	 */
+	public Iso19794p2v2005Position position;
+	/**
+	 * Finger view number (<a href="https://templates.machinezoo.com/iso-19794-2-2005#viewoffset">VIEWOFFSET</a>).
+	 */
+	public int view;
+	/**
+	 * Impression type (<a href="https://templates.machinezoo.com/iso-19794-2-2005#sampletype">SAMPLETYPE</a>).
+	 */
+	public Iso19794p2v2005ScanType scanType;
+	/**
+	 * Fingerprint quality (<a href="https://templates.machinezoo.com/iso-19794-2-2005#fpquality">FPQUALITY</a>).
+	 */
+	public int quality;
+	/**
+	 * Number of minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2005#minutia">MINUTIA</a>) in this fingerprint.
+	 * This is available without decoding the minutiae.
+	 */
+	public int minutiaCount;
+	private final ByteBuffer data;
+	private final int minutiaOffset;
+	private final int width;
+	private final int height;
+	private final ExceptionHandler handler;
+	private final int index;
+	private Iso19794p2v2005Fingerprint decoded;
+	Iso19794p2v2005FingerprintView(TemplateReader in, ByteBuffer template, int width, int height, ExceptionHandler handler, int index) {
+		int start = in.offset();
+		position = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2005Position.CODES, handler, index, -1, () -> "Unrecognized finger position code.");
+		int offsetAndType = in.readUnsignedByte();
+		view = offsetAndType >> 4;
+		scanType = TemplateUtils.decodeType(offsetAndType & 0xf, Iso19794p2v2005ScanType.CODES, handler, index, -1, () -> "Unrecognized sensor type code.");
+		quality = in.readUnsignedByte();
+		minutiaCount = in.readUnsignedByte();
+		minutiaOffset = in.offset() - start;
+		in.skip(6 * minutiaCount);
+		in.skip(in.readUnsignedShort());
+		data = TemplateUtils.slice(template, start, in.offset() - start);
+		this.width = width;
+		this.height = height;
+		this.handler = handler;
+		this.index = index;
+	}
+	/**
+	 * Decodes the whole fingerprint, including minutiae and extensions.
+	 * The fingerprint is decoded only once. Subsequent calls return the same object.
+	 *
+	 * @return fully decoded fingerprint
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the exception handler returns {@code false}
+	 */
+	public Iso19794p2v2005Fingerprint decode() {
+		if (decoded == null)
+			decoded = TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> new Iso19794p2v2005Fingerprint(in, width, height, handler, index));
+		return decoded;
+	}
+	/**
+	 * Decodes minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2005#minutia">MINUTIA</a>) straight into compact representation.
+	 * This is faster than {@link #decode()}, because no minutia objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and minutiae are not validated.
+	 *
+	 * @return minutiae in compact representation
+	 * @throws TemplateFormatException
+	 *             if minutia records are truncated
+	 * @see Iso19794p2v2005Fingerprint#compactMinutiae()
+	 */
+	public CompactMinutiae compactMinutiae() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> {
+			in.skip(minutiaOffset);
+			return TemplateUtils.decodeMinutiae(in, minutiaCount, true, 0);
+		});
+	}
+	/**
+	 * Decodes ridge count extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#rcountext">RCOUNTEXT</a>) straight into compact adjacency index.
+	 * This is faster than {@link #decode()}, because no edge objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and edges are not validated.
+	 *
+	 * @return ridge count edges in compact representation or {@code null} if ridge count extension is not present
+	 * @throws TemplateFormatException
+	 *             if extension data is truncated or malformed
+	 * @see Iso19794p2v2005CountExtension#compactEdges(int)
+	 */
+	public RidgeCountGraph compactEdges() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint.", in -> {
+			in.skip(minutiaOffset + 6 * minutiaCount);
+			return TemplateUtils.decodeCountGraph(in, minutiaCount, false);
+		});
+	}
+	/**
+	 * List of minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2005#minutia">MINUTIA</a>).
+	 *
+	 * @return list of minutiae, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Iso19794p2v2005Minutia> minutiae() {
+		return decode().minutiae;
+	}
+	/**
+	 * Ridge count extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#rcountext">RCOUNTEXT</a>).
+	 *
+	 * @return ridge count extension, decoded on first access, or {@code null} if ridge count extension is not present
+	 * @see #decode()
+	 */
+	public Iso19794p2v2005CountExtension counts() {
+		return decode().counts;
+	}
+	/**
+	 * Core and delta extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#coredelta">COREDELTA</a>).
+	 *
+	 * @return core and delta extension, decoded on first access, or {@code null} if core and delta extension is not present
+	 * @see #decode()
+	 */
+	public Iso19794p2v2005CoreDeltaExtension coredelta() {
+		return decode().coredelta;
+	}
+	/**
+	 * Zonal quality extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#zonalext">ZONALEXT</a>).
+	 *
+	 * @return zonal quality extension, decoded on first access, or {@code null} if zonal quality extension is not present
+	 * @see #decode()
+	 */
+	public Iso19794p2v2005ZonalExtension zones() {
+		return decode().zones;
+	}
+	/**
+	 * List of extension data blocks (<a href="https://templates.machinezoo.com/iso-19794-2-2005#extension">EXTENSION</a>).
+	 *
+	 * @return list of unrecognized extension blocks, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Iso19794p2v2005Extension> extensions() {
+		return decode().extensions;
+	}
+}
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2005;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Minutia type (<a href="https://templates.machinezoo.com/iso-19794-2-2005#mintype">MINTYPE</a>).
  */
@@ -17,4 +19,5 @@ public enum Iso19794p2v2005MinutiaType {
 	 * Ridge bifurcation (code 10 binary).
 	 */
 	BIFURCATION;
+	static final CodeTable<Iso19794p2v2005MinutiaType> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2005;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Finger position on hands (<a href="https://templates.machinezoo.com/iso-19794-2-2005#position">POSITION</a>).
  */
@@ -49,4 +51,5 @@ public enum Iso19794p2v2005Position {
 	 * Little finger on left hand (code 10).
 	 */
 	LEFT_LITTLE;
+	static final CodeTable<Iso19794p2v2005Position> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2005;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Impression type (<a href="https://templates.machinezoo.com/iso-19794-2-2005#sampletype">SAMPLETYPE</a>).
  */
@@ -25,6 +27,7 @@ public enum Iso19794p2v2005ScanType {
 	 * Swipe (code 8).
 	 */
 	SWIPE(8);
+	static final CodeTable<Iso19794p2v2005ScanType> CODES = new CodeTable<>(values(), t -> t.code);
 	final int code;
 	Iso19794p2v2005ScanType(int code) {
 		this.code = code;
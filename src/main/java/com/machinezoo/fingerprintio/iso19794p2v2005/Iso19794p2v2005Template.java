@@ -3,11 +3,19 @@ package com.machinezoo.fingerprintio.iso19794p2v2005;
 
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import com.machinezoo.fingerprintio.TemplateFormat;
 import com.machinezoo.fingerprintio.TemplateFormatException;
+import com.machinezoo.fingerprintio.TemplateRule;
+import com.machinezoo.fingerprintio.utils.IdentifyTemplate;
+import com.machinezoo.fingerprintio.utils.InstrumentTemplate;
 import com.machinezoo.fingerprintio.utils.TemplateReader;
 import com.machinezoo.fingerprintio.utils.TemplateUtils;
 import com.machinezoo.fingerprintio.utils.TemplateWriter;
@@ -21,7 +29,7 @@ import com.machinezoo.noexception.Exceptions;
  * @see <a href="https://templates.machinezoo.com/iso-19794-2-2005">ISO/IEC 19794-2:2005 Summary</a>
  */
 public class Iso19794p2v2005Template {
-    private static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, ' ', '2', '0', 0 };
+    static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, ' ', '2', '0', 0 };
     /**
      * Checks whether provided template is an ISO/IEC 19794-2:2005 off-card template.
      * This method does not do any template validation or conformance checking.
@@ -32,42 +40,19 @@ public class Iso19794p2v2005Template {
      *            serialized template that is to be evaluated
      * @return {@code true} if {@code template} is an ISO/IEC 19794-2:2005 off-card template, {@code false} otherwise
      */
-    public static boolean accepts(byte[] template) {
-        if (template.length < MAGIC.length + 4)
-            return false;
-        if (!Arrays.equals(MAGIC, Arrays.copyOf(template, MAGIC.length)))
-            return false;
-        TemplateReader in = new TemplateReader(template);
-        in.skipBytes(MAGIC.length);
-        /*
-         * Differentiate from ANSI 378 by examining the length field.
-         */
-        int bytes01 = in.readUnsignedShort();
-        if (bytes01 >= 26) {
-            /*
-             * Too big for ISO 19794-2. Must be ANSI 378-2004 with 2-byte length field.
-             */
-            return false;
-        } else if (bytes01 > 0) {
-            /*
-             * Invalid length field for ANSI 378. Must be ISO 19794-2.
-             */
-            return true;
-        } else {
-            int bytes23 = in.readUnsignedShort();
-            if (bytes23 >= 24) {
-                /*
-                 * Too big for ANSI 378. Must be ISO 19794-2.
-                 */
-                return true;
-            } else {
-                /*
-                 * It's ANSI 378-2004 with 6-byte length field.
-                 */
-                return false;
-            }
-        }
-    }
+    public static boolean accepts(byte[] template) { return accepts(ByteBuffer.wrap(template)); }
+    /**
+     * Checks whether provided template is an ISO/IEC 19794-2:2005 off-card template.
+     * This method does not do any template validation or conformance checking.
+     * It just differentiates off-card ISO/IEC 19794-2:2005 from other template formats
+     * as quickly as possible, mostly by looking at template header.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     *
+     * @param template
+     *            buffer holding serialized template that is to be evaluated
+     * @return {@code true} if {@code template} is an ISO/IEC 19794-2:2005 off-card template, {@code false} otherwise
+     */
+    public static boolean accepts(ByteBuffer template) { return IdentifyTemplate.magic(template, MAGIC) && IdentifyTemplate.iso19794p2v2005(template); }
     /**
      * Indicates that the fingerprint reader has certificate of compliance with Annex B of ISO 19794-2 spec,
      * which is a copy of Appendix F of CJIS-RS-0010 V7.
@@ -113,6 +98,16 @@ public class Iso19794p2v2005Template {
      *             if the template cannot be parsed or it fails validation
      */
     public Iso19794p2v2005Template(byte[] template) { this(template, Exceptions.propagate()); }
+    /**
+     * Parses and validates ISO/IEC 19794-2:2005 off-card template.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * 
+     * @param template
+     *            buffer holding serialized template in ISO/IEC 19794-2:2005 off-card format
+     * @throws TemplateFormatException
+     *             if the template cannot be parsed or it fails validation
+     */
+    public Iso19794p2v2005Template(ByteBuffer template) { this(template, Exceptions.propagate()); }
     /**
      * Parses and optionally validates ISO/IEC 19794-2:2005 off-card template.
      * 
@@ -139,17 +134,76 @@ public class Iso19794p2v2005Template {
      * @throws TemplateFormatException
      *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
      */
-    public Iso19794p2v2005Template(byte[] template, ExceptionHandler handler) {
+    public Iso19794p2v2005Template(byte[] template, ExceptionHandler handler) { this(ByteBuffer.wrap(template), handler); }
+    /**
+     * Parses and optionally validates ISO/IEC 19794-2:2005 off-card template.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * Slice of a larger array can be passed in via {@link ByteBuffer#wrap(byte[], int, int)}.
+     * <p>
+     * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+     * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+     * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+     * 
+     * @param template
+     *            buffer holding serialized template in ISO/IEC 19794-2:2005 off-card format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     */
+    public Iso19794p2v2005Template(ByteBuffer template, ExceptionHandler handler) {
+        InstrumentTemplate.parse(TemplateFormat.ISO_19794_2_2005, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+    }
+    /**
+     * Parses and optionally validates ISO/IEC 19794-2:2005 off-card template into this object, replacing its current content.
+     * This is an alternative to constructors that reduces allocations when many templates are parsed in a loop.
+     * Fingerprint and minutia objects already present in this template are reused where possible.
+     * Lists are reused too, but only those allocated by this library. Other lists, for example immutable ones, are replaced together with their items. Extensions are always decoded into new objects.
+     * Parsing is still not allocation-free. Every call allocates a few small short-lived objects:
+     * internal template reader and lambdas carrying parsing and validation state, once per template and once per fingerprint.
+     * Template content is unspecified if parsing fails.
+     * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+     * <p>
+     * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+     * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+     * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+     * 
+     * @param template
+     *            buffer holding serialized template in ISO/IEC 19794-2:2005 off-card format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     */
+    public void parse(ByteBuffer template, ExceptionHandler handler) {
+        InstrumentTemplate.parse(TemplateFormat.ISO_19794_2_2005, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+    }
+    /**
+     * Parses and optionally validates ISO/IEC 19794-2:2005 off-card template into this object, replacing its current content.
+     * Array is wrapped in new {@link ByteBuffer} on every call. Wrap it once and call {@link #parse(ByteBuffer, ExceptionHandler)} to avoid that.
+     * 
+     * @param template
+     *            serialized template in ISO/IEC 19794-2:2005 off-card format
+     * @param handler
+     *            handler for recoverable validation exceptions
+     * @throws TemplateFormatException
+     *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+     * @see #parse(ByteBuffer, ExceptionHandler)
+     */
+    public void parse(byte[] template, ExceptionHandler handler) {
+        parse(ByteBuffer.wrap(template), handler);
+    }
+    private void decode(ByteBuffer template, ExceptionHandler handler) {
         if (!accepts(template))
             throw new TemplateFormatException("This is not an ISO/IEC 19794-2:2005 off-card template.");
         TemplateUtils.decodeTemplate(template, in -> {
             in.skipBytes(MAGIC.length);
             long length = 0xffff_ffffL & in.readInt();
-            ValidateTemplate.condition(length >= 24, handler, "Total length must be at least 24 bytes.");
-            ValidateTemplate.condition(length <= MAGIC.length + 4 + in.available(), handler, "Total length indicates trimmed template.");
+            ValidateTemplate.condition(length >= 24, handler, TemplateRule.LENGTH, () -> "Total length must be at least 24 bytes.");
+            ValidateTemplate.condition(length <= MAGIC.length + 4 + in.available(), handler, TemplateRule.LENGTH, () -> "Total length indicates trimmed template.");
             sensorId = in.readUnsignedShort();
             sensorCertified = (sensorId & 0x8000) != 0;
-            ValidateTemplate.condition((sensorId & 0x7000) == 0, handler, "Unrecognized sensor compliance bits.");
+            ValidateTemplate.condition((sensorId & 0x7000) == 0, handler, TemplateRule.RESERVED, () -> "Unrecognized sensor compliance bits.");
             sensorId &= 0xfff;
             width = in.readUnsignedShort();
             height = in.readUnsignedShort();
@@ -157,9 +211,8 @@ public class Iso19794p2v2005Template {
             resolutionY = in.readUnsignedShort();
             int count = in.readUnsignedByte();
             in.skipBytes(1);
-            for (int i = 0; i < count; ++i)
-                fingerprints.add(new Iso19794p2v2005Fingerprint(in, width, height, handler));
-            ValidateTemplate.condition(in.available() == 0, handler, "Extra data at the end of the template.");
+            fingerprints = TemplateUtils.decodeList(fingerprints, count, (fp, i) -> fp.decode(in, width, height, handler, i), i -> new Iso19794p2v2005Fingerprint(in, width, height, handler, i));
+            ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Extra data at the end of the template.");
             ValidateTemplate.structure(this::validate, handler);
         });
     }
@@ -171,10 +224,136 @@ public class Iso19794p2v2005Template {
      *             if the template fails validation
      */
     public byte[] toByteArray() {
-        validate();
-        TemplateWriter out = new TemplateWriter();
+        return toByteArray(true);
+    }
+    /**
+     * Serializes the template in ISO/IEC 19794-2:2005 off-card format, optionally skipping validation.
+     * See {@link com.machinezoo.fingerprintio.ansi378v2004.Ansi378v2004Template#toByteArray(boolean)} for when validation can be skipped.
+     * 
+     * @param validate
+     *            {@code true} to validate the template like {@link #toByteArray()}, {@code false} to skip validation
+     * @return serialized template in ISO/IEC 19794-2:2005 off-card format
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     */
+    public byte[] toByteArray(boolean validate) {
+        return InstrumentTemplate.serialize(TemplateFormat.ISO_19794_2_2005, () -> encode(validate), fingerprints, fp -> fp.minutiae.size());
+    }
+    private byte[] encode(boolean validate) {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateWriter out = new TemplateWriter(length);
+        write(out, length);
+        return out.toByteArray();
+    }
+    /**
+     * Validates and serializes the template in ISO/IEC 19794-2:2005 format into a buffer.
+     * Template is written at buffer's position, which is then advanced past the template.
+     * Nothing is written if the template does not fit in the buffer.
+     * 
+     * @param buffer
+     *            buffer to receive serialized template in ISO/IEC 19794-2:2005 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws BufferOverflowException
+     *             if there is not enough space remaining in the buffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        writeTo(buffer, true);
+    }
+    /**
+     * Serializes the template in ISO/IEC 19794-2:2005 format into a buffer, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written at buffer's position, which is then advanced past the template.
+     * Nothing is written if the template does not fit in the buffer.
+     * 
+     * @param buffer
+     *            buffer to receive serialized template in ISO/IEC 19794-2:2005 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(ByteBuffer)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws BufferOverflowException
+     *             if there is not enough space remaining in the buffer
+     */
+    public void writeTo(ByteBuffer buffer, boolean validate) {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(buffer, length, out -> write(out, length));
+    }
+    /**
+     * Validates and serializes the template in ISO/IEC 19794-2:2005 format into a stream.
+     * Template is written without first materializing it in memory. The stream is not closed.
+     * 
+     * @param stream
+     *            stream to receive serialized template in ISO/IEC 19794-2:2005 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws IOException
+     *             if the stream throws
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        writeTo(stream, true);
+    }
+    /**
+     * Serializes the template in ISO/IEC 19794-2:2005 format into a stream, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written without first materializing it in memory. The stream is not closed.
+     * 
+     * @param stream
+     *            stream to receive serialized template in ISO/IEC 19794-2:2005 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(OutputStream)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws IOException
+     *             if the stream throws
+     */
+    public void writeTo(OutputStream stream, boolean validate) throws IOException {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(stream, length, out -> write(out, length));
+    }
+    /**
+     * Validates and serializes the template in ISO/IEC 19794-2:2005 format into a channel.
+     * Template is written without first materializing it in memory. The channel is not closed.
+     * 
+     * @param channel
+     *            blocking channel to receive serialized template in ISO/IEC 19794-2:2005 format
+     * @throws TemplateFormatException
+     *             if the template fails validation
+     * @throws IOException
+     *             if the channel throws
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeTo(channel, true);
+    }
+    /**
+     * Serializes the template in ISO/IEC 19794-2:2005 format into a channel, optionally skipping validation.
+     * See {@link #toByteArray(boolean)} for when validation can be skipped.
+     * Template is written without first materializing it in memory. The channel is not closed.
+     * 
+     * @param channel
+     *            blocking channel to receive serialized template in ISO/IEC 19794-2:2005 format
+     * @param validate
+     *            {@code true} to validate the template like {@link #writeTo(WritableByteChannel)}, {@code false} to skip validation
+     * @throws TemplateFormatException
+     *             if validation is enabled and the template fails validation
+     * @throws IOException
+     *             if the channel throws
+     */
+    public void writeTo(WritableByteChannel channel, boolean validate) throws IOException {
+        if (validate)
+            validate();
+        int length = measure();
+        TemplateUtils.encodeTo(channel, length, out -> write(out, length));
+    }
+    private void write(TemplateWriter out, int length) {
         out.write(MAGIC);
-        out.writeInt(measure());
+        out.writeInt(length);
         out.writeShort((sensorCertified ? 0x8000 : 0) | sensorId);
         out.writeShort(width);
         out.writeShort(height);
@@ -184,7 +363,6 @@ public class Iso19794p2v2005Template {
         out.writeByte(0);
         for (Iso19794p2v2005Fingerprint fp : fingerprints)
             fp.write(out);
-        return out.toByteArray();
     }
     private int measure() { return 24 + fingerprints.stream().mapToInt(Iso19794p2v2005Fingerprint::measure).sum(); }
     private void validate() {
@@ -198,6 +376,9 @@ public class Iso19794p2v2005Template {
         ValidateTemplate.range(fingerprints.size(), 0, 176, "There cannot be more than 176 fingerprints.");
         for (Iso19794p2v2005Fingerprint fp : fingerprints)
             fp.validate(width, height);
+        ValidateTemplate.views(fingerprints, fp -> fp.position.ordinal(), fp -> fp.view, false, Iso19794p2v2005Template::validateViews);
+    }
+    private static void validateViews(List<Iso19794p2v2005Fingerprint> fingerprints) {
         if (fingerprints.size() != fingerprints.stream().mapToInt(fp -> (fp.position.ordinal() << 16) + fp.view).distinct().count())
             throw new TemplateFormatException("Every fingerprint must have a unique combination of finger position and view offset.");
         fingerprints.stream()
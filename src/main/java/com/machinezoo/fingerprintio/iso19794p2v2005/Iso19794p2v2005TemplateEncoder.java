@@ -0,0 +1,227 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Streaming encoder of ISO/IEC 19794-2:2005 templates.
+ * Template is written field by field directly into caller's buffer without building {@link Iso19794p2v2005Template} first.
+ * Calls must follow template structure: {@link #beginTemplate(ByteBuffer, boolean, int, int, int, int, int) beginTemplate},
+ * then for every fingerprint {@link #beginFingerprint(Iso19794p2v2005Position, int, Iso19794p2v2005ScanType, int) beginFingerprint}
+ * followed by its minutiae and extension blocks, and finally {@link #finish()}.
+ * <p>
+ * Fields are validated as they are written using the same rules as {@link Iso19794p2v2005Template#toByteArray()}.
+ * This includes view numbers, which the format requires to be sorted, so fingerprints with the same finger position
+ * must be added in view order starting with view 0.
+ * Length and count fields are filled in when their value becomes known.
+ * Buffer position is advanced only when the template is finished, so failed encoding leaves buffer position unchanged,
+ * although data past buffer position might have been overwritten.
+ * <p>
+ * Encoder can be reused for any number of templates. Encoding of minutiae does not allocate any memory.
+ * Encoder is not thread-safe.
+ */
+public class Iso19794p2v2005TemplateEncoder {
+	private final StreamingTemplate stream = new StreamingTemplate();
+	private int width;
+	private int height;
+	/**
+	 * Creates new streaming encoder of ISO/IEC 19794-2:2005 templates.
+	 */
+	public Iso19794p2v2005TemplateEncoder() {
+	}
+	/**
+	 * Starts new template at buffer's position.
+	 * Parameters correspond to fields of {@link Iso19794p2v2005Template}. Any unfinished template is discarded.
+	 *
+	 * @param buffer
+	 *            buffer to receive serialized template
+	 * @param sensorCertified
+	 *            top bit of <a href="https://templates.machinezoo.com/iso-19794-2-2005#devstamp">DEVSTAMP</a> field
+	 * @param sensorId
+	 *            sensor ID (<a href="https://templates.machinezoo.com/iso-19794-2-2005#devid">DEVID</a>)
+	 * @param width
+	 *            image width (<a href="https://templates.machinezoo.com/iso-19794-2-2005#width">WIDTH</a>)
+	 * @param height
+	 *            image height (<a href="https://templates.machinezoo.com/iso-19794-2-2005#height">HEIGHT</a>)
+	 * @param resolutionX
+	 *            horizontal pixel density (<a href="https://templates.machinezoo.com/iso-19794-2-2005#resolutionx">RESOLUTIONX</a>)
+	 * @param resolutionY
+	 *            vertical pixel density (<a href="https://templates.machinezoo.com/iso-19794-2-2005#resolutiony">RESOLUTIONY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 * @throws ReadOnlyBufferException
+	 *             if the buffer is read-only
+	 */
+	public void beginTemplate(ByteBuffer buffer, boolean sensorCertified, int sensorId, int width, int height, int resolutionX, int resolutionY) {
+		ValidateTemplate.range(sensorId, 0, 0xfff, "Sensor ID must be an unsigned 12-bit number.");
+		ValidateTemplate.nonzero16(width, "Image width must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(height, "Image height must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(resolutionX, "Horizontal pixel density must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.condition(resolutionX >= 99, "Horizontal pixel density must be at least 99 (DPI 250+).");
+		ValidateTemplate.nonzero16(resolutionY, "Vertical pixel density must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.condition(resolutionY >= 99, "Vertical pixel density must be at least 99 (DPI 250+).");
+		this.width = width;
+		this.height = height;
+		stream.begin(buffer);
+		stream.write(Iso19794p2v2005Template.MAGIC);
+		stream.writeInt(0);
+		stream.writeShort((sensorCertified ? 0x8000 : 0) | sensorId);
+		stream.writeShort(width);
+		stream.writeShort(height);
+		stream.writeShort(resolutionX);
+		stream.writeShort(resolutionY);
+		stream.writeByte(0);
+		stream.writeByte(0);
+	}
+	/**
+	 * Starts new fingerprint. Previous fingerprint, if any, is completed.
+	 * Fingerprints with the same finger position must be added in view order starting with view 0.
+	 *
+	 * @param position
+	 *            finger position (<a href="https://templates.machinezoo.com/iso-19794-2-2005#position">POSITION</a>)
+	 * @param view
+	 *            finger view number (<a href="https://templates.machinezoo.com/iso-19794-2-2005#viewoffset">VIEWOFFSET</a>)
+	 * @param scanType
+	 *            impression type (<a href="https://templates.machinezoo.com/iso-19794-2-2005#sampletype">SAMPLETYPE</a>)
+	 * @param quality
+	 *            fingerprint quality (<a href="https://templates.machinezoo.com/iso-19794-2-2005#fpquality">FPQUALITY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range or the view is out of order
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void beginFingerprint(Iso19794p2v2005Position position, int view, Iso19794p2v2005ScanType scanType, int quality) {
+		Objects.requireNonNull(position, "Finger position must be non-null (even if unknown).");
+		ValidateTemplate.int4(view, "View offset must be an unsigned 4-bit number.");
+		Objects.requireNonNull(scanType, "Scan type must be non-null.");
+		ValidateTemplate.range(quality, 0, 100, "Fingerprint quality must be in range 0 through 100.");
+		ValidateTemplate.range(stream.fingerprints() + 1, 0, 176, "There cannot be more than 176 fingerprints.");
+		stream.beginFingerprint(position.ordinal(), view, false);
+		stream.writeByte(position.ordinal());
+		stream.writeByte((view << 4) | scanType.code);
+		stream.writeByte(quality);
+		stream.beginMinutiae();
+	}
+	/**
+	 * Adds minutia to the current fingerprint. Minutiae cannot be added after extension blocks.
+	 *
+	 * @param type
+	 *            minutia type (<a href="https://templates.machinezoo.com/iso-19794-2-2005#mintype">MINTYPE</a>)
+	 * @param x
+	 *            X coordinate (<a href="https://templates.machinezoo.com/iso-19794-2-2005#minx">MINX</a>)
+	 * @param y
+	 *            Y coordinate (<a href="https://templates.machinezoo.com/iso-19794-2-2005#miny">MINY</a>)
+	 * @param angle
+	 *            minutia angle (<a href="https://templates.machinezoo.com/iso-19794-2-2005#minangle">MINANGLE</a>)
+	 * @param quality
+	 *            minutia quality (<a href="https://templates.machinezoo.com/iso-19794-2-2005#minquality">MINQUALITY</a>)
+	 * @throws TemplateFormatException
+	 *             if some field is out of range or the fingerprint already has 255 minutiae
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started or extension blocks were already added
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addMinutia(Iso19794p2v2005MinutiaType type, int x, int y, int angle, int quality) {
+		Objects.requireNonNull(type, "Minutia type must be non-null.");
+		ValidateTemplate.position(x, width, "Minutia X position must be an unsigned 14-bit number less than image width.");
+		ValidateTemplate.position(y, height, "Minutia Y position must be an unsigned 14-bit number less than image height.");
+		ValidateTemplate.int8(angle, "Minutia angle must be an unsigned 8-bit number.");
+		ValidateTemplate.range(quality, 0, 100, "Minutia quality must be in range 0 through 100.");
+		stream.minutia(type.ordinal(), x, y, angle, quality, true);
+	}
+	/**
+	 * Adds ridge count extension to the current fingerprint.
+	 * Edges are validated against minutiae added so far, so this should be called after all minutiae are added.
+	 *
+	 * @param counts
+	 *            ridge count extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#rcountext">RCOUNTEXT</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCounts(Iso19794p2v2005CountExtension counts) {
+		stream.requireMinutiae();
+		counts.validate(stream.minutiae());
+		add(counts.extension());
+	}
+	/**
+	 * Adds core and delta extension to the current fingerprint.
+	 *
+	 * @param coredelta
+	 *            core and delta extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#coredelta">COREDELTA</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCoreDelta(Iso19794p2v2005CoreDeltaExtension coredelta) {
+		stream.requireMinutiae();
+		coredelta.validate(width, height);
+		add(coredelta.extension());
+	}
+	/**
+	 * Adds zonal quality extension to the current fingerprint.
+	 *
+	 * @param zones
+	 *            zonal quality extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#zonalext">ZONALEXT</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addZones(Iso19794p2v2005ZonalExtension zones) {
+		stream.requireMinutiae();
+		zones.validate(width, height);
+		add(zones.extension());
+	}
+	/**
+	 * Adds extension data block to the current fingerprint.
+	 *
+	 * @param extension
+	 *            extension data block (<a href="https://templates.machinezoo.com/iso-19794-2-2005#extension">EXTENSION</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addExtension(Iso19794p2v2005Extension extension) {
+		stream.requireMinutiae();
+		extension.validate();
+		add(extension);
+	}
+	private void add(Iso19794p2v2005Extension extension) {
+		stream.extension(extension.type, extension.data, false);
+	}
+	/**
+	 * Completes the template and advances buffer position past it.
+	 * Encoder is then ready to start another template.
+	 *
+	 * @return length of the template in bytes
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 */
+	public int finish() {
+		stream.end();
+		int start = stream.start();
+		stream.patchByte(start + 22, stream.fingerprints());
+		stream.patchInt(start + 8, stream.length());
+		return stream.finish();
+	}
+}
@@ -0,0 +1,112 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Lazily decoded ISO/IEC 19794-2:2005 off-card template.
+ * Only template header and fingerprint headers are decoded when the view is constructed.
+ * Minutiae and extensions are decoded on first access separately for every fingerprint.
+ * This is considerably faster than full parsing when only template and fingerprint metadata is needed.
+ * <p>
+ * The view keeps reference to the original template data, which must not be modified while the view is in use.
+ * Recoverable validation errors are reported when the affected part of the template is decoded.
+ * Full validation is performed only by {@link Iso19794p2v2005Template}.
+ *
+ * @see Iso19794p2v2005Template
+ */
+public class Iso19794p2v2005TemplateView {
+	/**
+	 * Indicates that the fingerprint reader has certificate of compliance with Appendix F of CJIS-RS-0010 V7.
+	 * This is the top bit of <a href="https://templates.machinezoo.com/iso-19794-2-2005#devstamp">DEVSTAMP</a> field.
+	 */
+	public boolean sensorCertified;
+	/**
+	 * Sensor ID (<a href="https://templates.machinezoo.com/iso-19794-2-2005#devid">DEVID</a>).
+	 */
+	public int sensorId;
+	/**
+	 * Image width (<a href="https://templates.machinezoo.com/iso-19794-2-2005#width">WIDTH</a>).
+	 */
+	public int width;
+	/**
+	 * Image height (<a href="https://templates.machinezoo.com/iso-19794-2-2005#height">HEIGHT</a>).
+	 */
+	public int height;
+	/**
+	 * Horizontal pixel density (<a href="https://templates.machinezoo.com/iso-19794-2-2005#resolutionx">RESOLUTIONX</a>).
+	 */
+	public int resolutionX;
+	/**
+	 * Vertical pixel density (<a href="https://templates.machinezoo.com/iso-19794-2-2005#resolutiony">RESOLUTIONY</a>).
+	 */
+	public int resolutionY;
+	/**
+	 * Lazily decoded fingerprints (<a href="https://templates.machinezoo.com/iso-19794-2-2005#fingerprint">FINGERPRINT</a>).
+	 */
+	public List<Iso19794p2v2005FingerprintView> fingerprints = new ArrayList<>();
+	/**
+	 * Decodes template and fingerprint headers of ISO/IEC 19794-2:2005 off-card template.
+	 *
+	 * @param template
+	 *            serialized template in ISO/IEC 19794-2:2005 off-card format
+	 * @throws TemplateFormatException
+	 *             if template headers cannot be parsed or they fail validation
+	 */
+	public Iso19794p2v2005TemplateView(byte[] template) {
+		this(ByteBuffer.wrap(template), Exceptions.propagate());
+	}
+	/**
+	 * Decodes template and fingerprint headers of ISO/IEC 19794-2:2005 off-card template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2005 off-card format
+	 * @throws TemplateFormatException
+	 *             if template headers cannot be parsed or they fail validation
+	 */
+	public Iso19794p2v2005TemplateView(ByteBuffer template) {
+		this(template, Exceptions.propagate());
+	}
+	/**
+	 * Decodes template and fingerprint headers of ISO/IEC 19794-2:2005 off-card template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing, including later lazy decoding of fingerprints,
+	 * will be fed to the provided exception handler.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2005 off-card format
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public Iso19794p2v2005TemplateView(ByteBuffer template, ExceptionHandler handler) {
+		if (!Iso19794p2v2005Template.accepts(template))
+			throw new TemplateFormatException("This is not an ISO/IEC 19794-2:2005 off-card template.");
+		TemplateUtils.decodeTemplate(template, in -> {
+			in.skipBytes(Iso19794p2v2005Template.MAGIC.length);
+			long length = 0xffff_ffffL & in.readInt();
+			ValidateTemplate.condition(length >= 24, handler, TemplateRule.LENGTH, () -> "Total length must be at least 24 bytes.");
+			ValidateTemplate.condition(length <= Iso19794p2v2005Template.MAGIC.length + 4 + in.available(), handler, TemplateRule.LENGTH, () -> "Total length indicates trimmed template.");
+			sensorId = in.readUnsignedShort();
+			sensorCertified = (sensorId & 0x8000) != 0;
+			ValidateTemplate.condition((sensorId & 0x7000) == 0, handler, TemplateRule.RESERVED, () -> "Unrecognized sensor compliance bits.");
+			sensorId &= 0xfff;
+			width = in.readUnsignedShort();
+			height = in.readUnsignedShort();
+			resolutionX = in.readUnsignedShort();
+			resolutionY = in.readUnsignedShort();
+			int count = in.readUnsignedByte();
+			in.skipBytes(1);
+			for (int i = 0; i < count; ++i)
+				fingerprints.add(new Iso19794p2v2005FingerprintView(in, template, width, height, handler, i));
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Extra data at the end of the template.");
+		});
+	}
+}
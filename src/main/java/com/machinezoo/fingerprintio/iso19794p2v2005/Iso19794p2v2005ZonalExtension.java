@@ -2,6 +2,7 @@
 package com.machinezoo.fingerprintio.iso19794p2v2005;
 
 import java.util.*;
+import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
 
@@ -25,35 +26,80 @@ public class Iso19794p2v2005ZonalExtension {
 	public int bits = 8;
 	/**
 	 * Zonal quality data (<a href="https://templates.machinezoo.com/iso-19794-2-2005#zonalquality">ZONALQUALITY</a>).
-	 * Every array item represents quality of one zone.
+	 * Zones are packed as they are in the template: {@link #bits} bits per zone, row by row, most significant bit first,
+	 * padded with zero bits to whole bytes. Use {@link #quality(int, int, int, int)} to read individual zones,
+	 * {@link #unpack(int, int)} to expand all zones, and {@link #pack(int[])} to fill this field from unpacked zones.
 	 */
-	public int[] quality;
+	public byte[] quality;
 	/**
 	 * Creates new zonal quality extension (<a href="https://templates.machinezoo.com/iso-19794-2-2005#zonalext">ZONALEXT</a>).
 	 */
 	public Iso19794p2v2005ZonalExtension() {
 	}
-	Iso19794p2v2005ZonalExtension(byte[] extension, int imageWidth, int imageHeight, ExceptionHandler handler) {
+	/**
+	 * Returns quality of zone in the specified column and row.
+	 * Number of zone columns and rows is derived from image size, {@link #zoneWidth}, and {@link #zoneHeight}.
+	 *
+	 * @param x
+	 *            zero-based zone column
+	 * @param y
+	 *            zero-based zone row
+	 * @param imageWidth
+	 *            image width, usually taken from the template
+	 * @param imageHeight
+	 *            image height, usually taken from the template
+	 * @return quality of the zone
+	 * @throws TemplateFormatException
+	 *             if zone size or {@link #bits} is invalid or {@link #quality} is too short
+	 * @throws IndexOutOfBoundsException
+	 *             if the zone is outside of the image
+	 */
+	public int quality(int x, int y, int imageWidth, int imageHeight) {
+		ZonalQuality.bits(bits);
+		return ZonalQuality.quality(quality, bits, ZonalQuality.columns(imageWidth, zoneWidth), ZonalQuality.rows(imageHeight, zoneHeight), x, y);
+	}
+	/**
+	 * Expands {@link #quality} into array with one item per zone.
+	 * Number of zones is derived from image size, {@link #zoneWidth}, and {@link #zoneHeight}. Padding bits are ignored.
+	 *
+	 * @param imageWidth
+	 *            image width, usually taken from the template
+	 * @param imageHeight
+	 *            image height, usually taken from the template
+	 * @return quality of every zone, row by row
+	 * @throws TemplateFormatException
+	 *             if zone size or {@link #bits} is invalid or {@link #quality} is too short
+	 * @see #pack(int[])
+	 */
+	public int[] unpack(int imageWidth, int imageHeight) {
+		ZonalQuality.bits(bits);
+		return ZonalQuality.unpack(quality, bits, ZonalQuality.columns(imageWidth, zoneWidth), ZonalQuality.rows(imageHeight, zoneHeight));
+	}
+	/**
+	 * Packs zone qualities with one array item per zone into {@link #quality} using current {@link #bits}.
+	 *
+	 * @param zones
+	 *            quality of every zone, row by row
+	 * @throws TemplateFormatException
+	 *             if some zone quality does not fit within {@link #bits}
+	 * @see #unpack(int, int)
+	 */
+	public void pack(int[] zones) {
+		ZonalQuality.bits(bits);
+		for (int zone : zones)
+			ValidateTemplate.range(zone, 0, (1 << bits) - 1, "Zonal quality values must be unsigned numbers that fit within specified bit depth.");
+		quality = ZonalQuality.pack(zones, bits);
+	}
+	Iso19794p2v2005ZonalExtension(byte[] extension, int imageWidth, int imageHeight, ExceptionHandler handler, int fingerprint) {
 		TemplateUtils.decodeExtension(extension, in -> {
 			zoneWidth = in.readUnsignedByte();
 			zoneHeight = in.readUnsignedByte();
 			bits = in.readUnsignedByte();
 			int width = (imageWidth + zoneWidth - 1) / zoneWidth;
 			int height = (imageHeight + zoneHeight - 1) / zoneHeight;
-			int size = width * height;
-			quality = new int[size];
-			int buffered = 0;
-			int buffer = 0;
-			for (int i = 0; i < size; ++i) {
-				while (buffered < bits) {
-					buffer = (buffer << 8) | in.readUnsignedByte();
-					buffered += 8;
-				}
-				quality[i] = buffer >> (buffered - bits);
-				buffered -= bits;
-				buffer &= (1 << buffered) - 1;
-			}
-			ValidateTemplate.condition(in.available() == 0, handler, "Extra data at the end of zonal quality extension.");
+			quality = new byte[bits >= 1 && bits <= 8 ? ZonalQuality.length(width * height, bits) : in.available()];
+			in.readFully(quality);
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, fingerprint, () -> "Extra data at the end of zonal quality extension.");
 		});
 	}
 	Iso19794p2v2005Extension extension() {
@@ -63,27 +109,15 @@ public class Iso19794p2v2005ZonalExtension {
 		return extension;
 	}
 	byte[] toByteArray() {
-		TemplateWriter out = new TemplateWriter();
+		TemplateWriter out = new TemplateWriter(measure() - 4);
 		out.writeByte(zoneWidth);
 		out.writeByte(zoneHeight);
 		out.writeByte(bits);
-		int length = 0;
-		int packed = 0;
-		for (int i = 0; i < quality.length; ++i) {
-			packed = (packed << bits) | quality[i];
-			length += bits;
-			if (length >= 8) {
-				out.writeByte(packed >> (length - 8));
-				length -= 8;
-				packed &= (1 << length) - 1;
-			}
-		}
-		if (length > 0)
-			out.writeByte(packed << (8 - length));
+		out.write(quality);
 		return out.toByteArray();
 	}
 	int measure() {
-		return 4 + 3 + (quality.length * bits + 7) / 8;
+		return 4 + 3 + quality.length;
 	}
 	void validate(int imageWidth, int imageHeight) {
 		ValidateTemplate.nonzero8(zoneWidth, "Zonal quality cell width must be a non-zero unsigned 8-bit number.");
@@ -92,9 +126,7 @@ public class Iso19794p2v2005ZonalExtension {
 		int width = (imageWidth + zoneWidth - 1) / zoneWidth;
 		int height = (imageHeight + zoneHeight - 1) / zoneHeight;
 		Objects.requireNonNull(quality, "Zonal quality array must be non-null.");
-		ValidateTemplate.condition(quality.length == width * height, "Zonal quality array size must be derived from image and zone size.");
-		for (int i = 0; i < quality.length; ++i)
-			ValidateTemplate.range(quality[i], 0, (1 << bits) - 1, "Zonal quality values must be unsigned numbers that fit within specified bit depth.");
+		ValidateTemplate.condition(quality.length == ZonalQuality.length(width * height, bits), "Zonal quality array size must be derived from image size, zone size, and bit depth.");
 		ValidateTemplate.int16(measure(), "Zonal quality extension size must be an unsigned 16-bit number.");
 	}
 }
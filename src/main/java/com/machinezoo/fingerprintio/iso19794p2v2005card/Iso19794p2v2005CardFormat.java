@@ -0,0 +1,30 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005card;
+
+/**
+ * Subformat of ISO/IEC 19794-2:2005 on-card template.
+ * Card templates do not carry any header, so the subformat must be known in advance, usually from card capabilities.
+ */
+public enum Iso19794p2v2005CardFormat {
+	/**
+	 * Normal size card format. Every minutia takes 5 bytes.
+	 * Minutia position is in units of 0.01mm and minutia angle in units of 1/256 of full circle.
+	 */
+	NORMAL(5, 1000, 256),
+	/**
+	 * Compact size card format. Every minutia takes 3 bytes.
+	 * Minutia position is in units of 0.1mm and minutia angle in units of 1/64 of full circle.
+	 */
+	COMPACT(3, 100, 64);
+	final int recordSize;
+	/*
+	 * Position units per centimeter.
+	 */
+	final int unitsPerCm;
+	final int angles;
+	Iso19794p2v2005CardFormat(int recordSize, int unitsPerCm, int angles) {
+		this.recordSize = recordSize;
+		this.unitsPerCm = unitsPerCm;
+		this.angles = angles;
+	}
+}
@@ -0,0 +1,89 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005card;
+
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Minutia of on-card template. Units of position and angle depend on {@link Iso19794p2v2005CardFormat}.
+ * On-card minutiae have no quality.
+ */
+public class Iso19794p2v2005CardMinutia {
+	/**
+	 * Minutia type.
+	 * Defaults to {@link Iso19794p2v2005CardMinutiaType#OTHER}.
+	 */
+	public Iso19794p2v2005CardMinutiaType type = Iso19794p2v2005CardMinutiaType.OTHER;
+	/**
+	 * Minutia X position in units of 0.01mm (normal format) or 0.1mm (compact format).
+	 */
+	public int positionX;
+	/**
+	 * Minutia Y position in units of 0.01mm (normal format) or 0.1mm (compact format).
+	 */
+	public int positionY;
+	/**
+	 * Minutia angle in units of 1/256 (normal format) or 1/64 (compact format) of full circle.
+	 */
+	public int angle;
+	/**
+	 * Creates new on-card minutia.
+	 */
+	public Iso19794p2v2005CardMinutia() {
+	}
+	Iso19794p2v2005CardMinutia(TemplateReader in, Iso19794p2v2005CardFormat format, ExceptionHandler handler, int index) {
+		if (format == Iso19794p2v2005CardFormat.NORMAL) {
+			positionX = in.readUnsignedShort();
+			type = TemplateUtils.decodeType(positionX >> 14, Iso19794p2v2005CardMinutiaType.CODES, handler, -1, index, () -> "Unrecognized minutia type code.");
+			positionX &= 0x3fff;
+			positionY = in.readUnsignedShort();
+			/*
+			 * Top two bits of Y position are reserved. Lenient parsing clears them, so that the minutia passes validation.
+			 */
+			ValidateTemplate.condition((positionY & 0xc000) == 0, handler, TemplateRule.RESERVED, -1, index, () -> "Reserved bits in minutia Y position must be zero.");
+			positionY &= 0x3fff;
+			angle = in.readUnsignedByte();
+		} else {
+			positionX = in.readUnsignedByte();
+			positionY = in.readUnsignedByte();
+			angle = in.readUnsignedByte();
+			type = TemplateUtils.decodeType(angle >> 6, Iso19794p2v2005CardMinutiaType.CODES, handler, -1, index, () -> "Unrecognized minutia type code.");
+			angle &= 0x3f;
+		}
+	}
+	/*
+	 * Off-card positions are in pixels. They are converted to physical units using pixel density in pixels per centimeter.
+	 */
+	Iso19794p2v2005CardMinutia(Iso19794p2v2005Minutia minutia, int resolutionX, int resolutionY, Iso19794p2v2005CardFormat format) {
+		type = Iso19794p2v2005CardMinutiaType.values()[minutia.type.ordinal()];
+		positionX = (int)Math.round((double)minutia.positionX * format.unitsPerCm / resolutionX);
+		positionY = (int)Math.round((double)minutia.positionY * format.unitsPerCm / resolutionY);
+		angle = (minutia.angle * format.angles + 128) / 256 % format.angles;
+	}
+	void write(TemplateWriter out, Iso19794p2v2005CardFormat format) {
+		if (format == Iso19794p2v2005CardFormat.NORMAL) {
+			out.writeShort((type.ordinal() << 14) | positionX);
+			out.writeShort(positionY);
+			out.writeByte(angle);
+		} else {
+			out.writeByte(positionX);
+			out.writeByte(positionY);
+			out.writeByte((type.ordinal() << 6) | angle);
+		}
+	}
+	void validate(Iso19794p2v2005CardFormat format) {
+		Objects.requireNonNull(type, "Minutia type must be non-null.");
+		if (format == Iso19794p2v2005CardFormat.NORMAL) {
+			ValidateTemplate.int14(positionX, "Minutia X position must be an unsigned 14-bit number.");
+			ValidateTemplate.int14(positionY, "Minutia Y position must be an unsigned 14-bit number.");
+			ValidateTemplate.int8(angle, "Minutia angle must be an unsigned 8-bit number.");
+		} else {
+			ValidateTemplate.int8(positionX, "Minutia X position must be an unsigned 8-bit number.");
+			ValidateTemplate.int8(positionY, "Minutia Y position must be an unsigned 8-bit number.");
+			ValidateTemplate.range(angle, 0, 0x3f, "Minutia angle must be an unsigned 6-bit number.");
+		}
+	}
+}
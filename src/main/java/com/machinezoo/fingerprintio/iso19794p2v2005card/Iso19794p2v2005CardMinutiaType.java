@@ -0,0 +1,23 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005card;
+
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Minutia type of on-card template. Codes are the same as in the off-card format.
+ */
+public enum Iso19794p2v2005CardMinutiaType {
+	/**
+	 * Other minutia type (code 00 binary).
+	 */
+	OTHER,
+	/**
+	 * Ridge ending (code 01 binary).
+	 */
+	ENDING,
+	/**
+	 * Ridge bifurcation (code 10 binary).
+	 */
+	BIFURCATION;
+	static final CodeTable<Iso19794p2v2005CardMinutiaType> CODES = new CodeTable<>(values(), Enum::ordinal);
+}
@@ -0,0 +1,168 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005card;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * ISO/IEC 19794-2:2005 on-card template in normal or compact card format.
+ * On-card template is the content of finger minutiae data object (tag 0x90) stored on a smart card.
+ * It is a plain sequence of minutia records without any header, so it is not recognized by {@link TemplateFormat#identify(byte[])}
+ * and its {@link Iso19794p2v2005CardFormat} must be supplied by the caller.
+ * 
+ * @see <a href="https://templates.machinezoo.com/iso-19794-2-2005">ISO/IEC 19794-2:2005 Summary</a>
+ */
+public class Iso19794p2v2005CardTemplate {
+	/**
+	 * Card subformat. It determines size of minutia records and units of minutia position and angle.
+	 * Defaults to {@link Iso19794p2v2005CardFormat#NORMAL}.
+	 */
+	public Iso19794p2v2005CardFormat format = Iso19794p2v2005CardFormat.NORMAL;
+	/**
+	 * List of minutiae.
+	 */
+	public List<Iso19794p2v2005CardMinutia> minutiae = new ArrayList<>();
+	/**
+	 * Creates new ISO/IEC 19794-2:2005 on-card template.
+	 */
+	public Iso19794p2v2005CardTemplate() {
+	}
+	/**
+	 * Parses and validates ISO/IEC 19794-2:2005 on-card template.
+	 * 
+	 * @param template
+	 *            serialized template in ISO/IEC 19794-2:2005 on-card format
+	 * @param format
+	 *            subformat of the template
+	 * @throws TemplateFormatException
+	 *             if the template cannot be parsed or it fails validation
+	 */
+	public Iso19794p2v2005CardTemplate(byte[] template, Iso19794p2v2005CardFormat format) {
+		this(template, format, Exceptions.propagate());
+	}
+	/**
+	 * Parses and validates ISO/IEC 19794-2:2005 on-card template.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2005 on-card format
+	 * @param format
+	 *            subformat of the template
+	 * @throws TemplateFormatException
+	 *             if the template cannot be parsed or it fails validation
+	 */
+	public Iso19794p2v2005CardTemplate(ByteBuffer template, Iso19794p2v2005CardFormat format) {
+		this(template, format, Exceptions.propagate());
+	}
+	/**
+	 * Parses and optionally validates ISO/IEC 19794-2:2005 on-card template.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+	 * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+	 * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+	 * 
+	 * @param template
+	 *            serialized template in ISO/IEC 19794-2:2005 on-card format
+	 * @param format
+	 *            subformat of the template
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public Iso19794p2v2005CardTemplate(byte[] template, Iso19794p2v2005CardFormat format, ExceptionHandler handler) {
+		this(ByteBuffer.wrap(template), format, handler);
+	}
+	/**
+	 * Parses and optionally validates ISO/IEC 19794-2:2005 on-card template.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+	 * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+	 * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2005 on-card format
+	 * @param format
+	 *            subformat of the template
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public Iso19794p2v2005CardTemplate(ByteBuffer template, Iso19794p2v2005CardFormat format, ExceptionHandler handler) {
+		this.format = Objects.requireNonNull(format);
+		TemplateUtils.decodeTemplate(template, in -> {
+			int count = in.available() / format.recordSize;
+			minutiae = new ArrayList<>(count);
+			for (int i = 0; i < count; ++i)
+				minutiae.add(new Iso19794p2v2005CardMinutia(in, format, handler, i));
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Template length is not a multiple of minutia record size.");
+			ValidateTemplate.structure(this::validate, handler);
+		});
+	}
+	/**
+	 * Converts fingerprint from ISO/IEC 19794-2:2005 off-card template to on-card template.
+	 * Minutia positions are converted from pixels to physical units using pixel density of the off-card template.
+	 * Minutia angles are rounded to the precision of the card format. Minutia quality and extension data are dropped.
+	 * Minutia order is preserved. Callers should sort minutiae if the card requires specific order.
+	 * 
+	 * @param template
+	 *            off-card template
+	 * @param fingerprint
+	 *            index of the fingerprint in off-card template
+	 * @param format
+	 *            subformat of the new on-card template
+	 * @throws TemplateFormatException
+	 *             if some minutia cannot be represented in the card format
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code fingerprint} is not a valid index
+	 */
+	public Iso19794p2v2005CardTemplate(Iso19794p2v2005Template template, int fingerprint, Iso19794p2v2005CardFormat format) {
+		this.format = Objects.requireNonNull(format);
+		ValidateTemplate.nonzero16(template.resolutionX, "Horizontal pixel density must be a non-zero unsigned 16-bit number.");
+		ValidateTemplate.nonzero16(template.resolutionY, "Vertical pixel density must be a non-zero unsigned 16-bit number.");
+		List<Iso19794p2v2005Minutia> source = template.fingerprints.get(fingerprint).minutiae;
+		minutiae = new ArrayList<>(source.size());
+		for (Iso19794p2v2005Minutia minutia : source)
+			minutiae.add(new Iso19794p2v2005CardMinutia(minutia, template.resolutionX, template.resolutionY, format));
+		validate();
+	}
+	/**
+	 * Validates and serializes the template in ISO/IEC 19794-2:2005 on-card format.
+	 * 
+	 * @return serialized template in ISO/IEC 19794-2:2005 on-card format
+	 * @throws TemplateFormatException
+	 *             if the template fails validation
+	 */
+	public byte[] toByteArray() {
+		return toByteArray(true);
+	}
+	/**
+	 * Serializes the template in ISO/IEC 19794-2:2005 on-card format, optionally skipping validation.
+	 * See {@link com.machinezoo.fingerprintio.ansi378v2004.Ansi378v2004Template#toByteArray(boolean)} for when validation can be skipped.
+	 * 
+	 * @param validate
+	 *            {@code true} to validate the template like {@link #toByteArray()}, {@code false} to skip validation
+	 * @return serialized template in ISO/IEC 19794-2:2005 on-card format
+	 * @throws TemplateFormatException
+	 *             if validation is enabled and the template fails validation
+	 */
+	public byte[] toByteArray(boolean validate) {
+		if (validate)
+			validate();
+		TemplateWriter out = new TemplateWriter(format.recordSize * minutiae.size());
+		for (Iso19794p2v2005CardMinutia minutia : minutiae)
+			minutia.write(out, format);
+		return out.toByteArray();
+	}
+	private void validate() {
+		Objects.requireNonNull(format, "Card format must be non-null.");
+		for (Iso19794p2v2005CardMinutia minutia : minutiae)
+			minutia.validate(format);
+	}
+}
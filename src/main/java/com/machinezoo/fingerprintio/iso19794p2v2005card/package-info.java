@@ -0,0 +1,9 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+/**
+ * Implementation of ISO 19794-2:2005 on-card template formats (normal and compact card subformats).
+ * The top-level class is {@link com.machinezoo.fingerprintio.iso19794p2v2005card.Iso19794p2v2005CardTemplate}.
+ * Off-card templates are implemented in package {@link com.machinezoo.fingerprintio.iso19794p2v2005}.
+ * 
+ * @see <a href="https://templates.machinezoo.com/iso-19794-2-2005">ISO/IEC 19794-2:2005 Summary</a>
+ */
+package com.machinezoo.fingerprintio.iso19794p2v2005card;
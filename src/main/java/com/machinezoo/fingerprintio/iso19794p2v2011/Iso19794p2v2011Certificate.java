@@ -25,9 +25,9 @@ public class Iso19794p2v2011Certificate {
 	 */
 	public Iso19794p2v2011Certificate() {
 	}
-	Iso19794p2v2011Certificate(Iso19794p1v2011Certificate certificate, ExceptionHandler handler) {
+	Iso19794p2v2011Certificate(Iso19794p1v2011Certificate certificate, ExceptionHandler handler, int fingerprint) {
 		authority = certificate.authority;
-		scheme = TemplateUtils.decodeType(certificate.scheme, Iso19794p2v2011CertificationScheme.values(), s -> s.code, handler, "Unrecognized certification scheme.");
+		scheme = TemplateUtils.decodeType(certificate.scheme, Iso19794p2v2011CertificationScheme.CODES, handler, fingerprint, -1, () -> "Unrecognized certification scheme.");
 	}
 	Iso19794p1v2011Certificate toCertificate() {
 		Iso19794p1v2011Certificate certificate = new Iso19794p1v2011Certificate();
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Certification scheme (<a href="https://templates.machinezoo.com/iso-19794-2-2011#certtype">CERTTYPE</a>).
  */
@@ -17,6 +19,7 @@ public enum Iso19794p2v2011CertificationScheme {
 	 * Annex E.3 of ISO 19794-2:2011, requirements for optical fingerprint readers (code 3).
 	 */
 	OPTICAL_SENSOR_REQUIREMENTS(3);
+	static final CodeTable<Iso19794p2v2011CertificationScheme> CODES = new CodeTable<>(values(), t -> t.code);
 	final int code;
 	Iso19794p2v2011CertificationScheme(int code) {
 		this.code = code;
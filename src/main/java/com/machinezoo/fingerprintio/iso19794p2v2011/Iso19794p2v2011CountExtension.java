@@ -2,6 +2,8 @@
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
 import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
 
@@ -24,11 +26,41 @@ public class Iso19794p2v2011CountExtension {
 	 */
 	public Iso19794p2v2011CountExtension() {
 	}
-	Iso19794p2v2011CountExtension(byte[] extension, ExceptionHandler handler) {
+	/**
+	 * Converts {@link #edges} to compact adjacency index that groups edges by starting minutia.
+	 *
+	 * @param minutiaCount
+	 *            number of minutiae in the fingerprint
+	 * @return copy of {@link #edges} in compact representation
+	 * @see #expandEdges(RidgeCountGraph)
+	 */
+	public RidgeCountGraph compactEdges(int minutiaCount) {
+		TemplateWriter out = new TemplateWriter(3 * edges.size());
+		for (Iso19794p2v2011CountEdge edge : edges)
+			edge.write(out);
+		return new RidgeCountGraph(minutiaCount, out.toByteArray());
+	}
+	/**
+	 * Replaces {@link #edges} with edges (<a href="https://templates.machinezoo.com/iso-19794-2-2011#edgedef">EDGEDEF</a>) stored in compact adjacency index.
+	 * Edges will be ordered by starting minutia.
+	 *
+	 * @param compact
+	 *            edges in compact representation
+	 * @see #compactEdges(int)
+	 */
+	public void expandEdges(RidgeCountGraph compact) {
+		List<Iso19794p2v2011CountEdge> expanded = new ArrayList<>(compact.edgeCount());
+		TemplateUtils.decodeExtension(compact.toByteArray(), in -> {
+			for (int i = 0; i < compact.edgeCount(); ++i)
+				expanded.add(new Iso19794p2v2011CountEdge(in));
+		});
+		edges = expanded;
+	}
+	Iso19794p2v2011CountExtension(byte[] extension, ExceptionHandler handler, int fingerprint) {
 		TemplateUtils.decodeExtension(extension, in -> {
-			type = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011CountType.class, handler, "Unrecognized edge picking method.");
+			type = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011CountType.CODES, handler, fingerprint, -1, () -> "Unrecognized edge picking method.");
 			int count = (extension.length - 1) / 3;
-			ValidateTemplate.condition(3 * count == extension.length - 1, handler, "Extra misaligned data at the end of ridge count extension.");
+			ValidateTemplate.condition(3 * count == extension.length - 1, handler, TemplateRule.TRAILING_DATA, fingerprint, () -> "Extra misaligned data at the end of ridge count extension.");
 			for (int i = 0; i < count; ++i)
 				edges.add(new Iso19794p2v2011CountEdge(in));
 		});
@@ -40,7 +72,7 @@ public class Iso19794p2v2011CountExtension {
 		return extension;
 	}
 	byte[] toByteArray() {
-		TemplateWriter out = new TemplateWriter();
+		TemplateWriter out = new TemplateWriter(measure() - 4);
 		out.writeByte(type.ordinal());
 		for (Iso19794p2v2011CountEdge edge : edges)
 			edge.write(out);
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Ridge ending type (<a href="https://templates.machinezoo.com/iso-19794-2-2011#endingtype">ENDINGTYPE</a>).
  */
@@ -13,4 +15,5 @@ public enum Iso19794p2v2011EndingType {
 	 * Ending minutiae are located at ridge skeleton endpoints.
 	 */
 	RIDGE_SKELETON_ENDPOINT;
+	static final CodeTable<Iso19794p2v2011EndingType> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
@@ -4,6 +4,8 @@ package com.machinezoo.fingerprintio.iso19794p2v2011;
 import static java.util.stream.Collectors.*;
 import java.util.*;
 import java.util.function.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.iso19794p1v2011.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
@@ -104,78 +106,179 @@ public class Iso19794p2v2011Fingerprint {
 	 */
 	public Iso19794p2v2011Fingerprint() {
 	}
-	Iso19794p2v2011Fingerprint(Iso19794p1v2011Sample sample, ExceptionHandler handler) {
+	Iso19794p2v2011Fingerprint(Iso19794p1v2011Sample sample, ExceptionHandler handler, int index) {
+		decode(sample, handler, index);
+	}
+	void decode(Iso19794p1v2011Sample sample, ExceptionHandler handler, int index) {
 		datetime = sample.datetime;
-		sensorType = TemplateUtils.decodeType(sample.sensorType, Iso19794p2v2011SensorType.class, handler, "Unrecognized sensor type.");
+		sensorType = TemplateUtils.decodeType(sample.sensorType, Iso19794p2v2011SensorType.CODES, handler, index, -1, () -> "Unrecognized sensor type.");
 		sensorVendor = sample.sensorVendor;
 		sensorId = sample.sensorId;
 		qrecords = sample.qrecords;
 		certificates = sample.certificates.stream()
-			.map(c -> new Iso19794p2v2011Certificate(c, handler))
+			.map(c -> new Iso19794p2v2011Certificate(c, handler, index))
 			.collect(toList());
-		TemplateUtils.decodeBytes(sample.data, "Unexpected end of fingerprint block.", in -> {
-			position = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011Position.class, handler, "Unrecognized finger position code.");
-			view = in.readUnsignedByte();
-			resolutionX = in.readUnsignedShort();
-			resolutionY = in.readUnsignedShort();
-			scanType = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011ScanType.values(), t -> t.code, handler, "Unrecognized sensor type code.");
-			width = in.readUnsignedShort();
-			height = in.readUnsignedShort();
-			int flags = in.readUnsignedByte();
-			int minBytes = flags >> 4;
-			ValidateTemplate.condition(minBytes == 5 || minBytes == 6, handler, "Minutia record size must be either 5 or 6 bytes.");
-			endingType = TemplateUtils.decodeType(flags & 0xf, Iso19794p2v2011EndingType.class, handler, "Unrecognized ridge ending type code.");
-			int count = in.readUnsignedByte();
-			for (int i = 0; i < count; ++i)
-				minutiae.add(new Iso19794p2v2011Minutia(in, minBytes == 6, handler));
-			int totalBytes = in.readUnsignedShort();
-			int readBytes = 0;
-			while (readBytes < totalBytes) {
-				Iso19794p2v2011Extension extension = new Iso19794p2v2011Extension(in);
-				readBytes += extension.measure();
-				if (extension.type == Iso19794p2v2011CountExtension.IDENTIFIER)
-					decodeExtension(extension, data -> counts = new Iso19794p2v2011CountExtension(data, handler), handler, "Unable to decode ridge count extension.");
-				else if (extension.type == Iso19794p2v2011CoreDeltaExtension.IDENTIFIER)
-					decodeExtension(extension, data -> coredelta = new Iso19794p2v2011CoreDeltaExtension(data, handler), handler, "Unable to decode core/delta extension.");
-				else if (extension.type == Iso19794p2v2011ZonalExtension.IDENTIFIER)
-					decodeExtension(extension, data -> zones = new Iso19794p2v2011ZonalExtension(data, width, height, handler), handler, "Unable to decode zonal quality extension.");
-				else
-					extensions.add(extension);
+		TemplateUtils.decodeBytes(sample.data, "Unexpected end of fingerprint block.", in -> decodeData(in, handler, index));
+	}
+	/*
+	 * Reads the whole ISO 19794-1 sample record. This is used by lazy views, which cannot afford to go through Iso19794p1v2011Template.
+	 */
+	Iso19794p2v2011Fingerprint(TemplateReader in, boolean hasCertificates, ExceptionHandler handler, int index) {
+		long length = 0xffff_ffffL & in.readInt();
+		ValidateTemplate.condition(length >= 14, handler, TemplateRule.LENGTH, index, () -> "Length of biometric sample must be at least 14 bytes.");
+		ValidateTemplate.condition(length == in.available() + 4, handler, TemplateRule.LENGTH, index, () -> "Sample length doesn't match the amount of sample data.");
+		datetime = new Iso19794p1v2011DateTime();
+		datetime.year = in.readUnsignedShort();
+		datetime.month = in.readUnsignedByte();
+		datetime.day = in.readUnsignedByte();
+		datetime.hour = in.readUnsignedByte();
+		datetime.minute = in.readUnsignedByte();
+		datetime.second = in.readUnsignedByte();
+		datetime.millisecond = in.readUnsignedShort();
+		sensorType = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011SensorType.CODES, handler, index, -1, () -> "Unrecognized sensor type.");
+		sensorVendor = in.readUnsignedShort();
+		sensorId = in.readUnsignedShort();
+		int qcount = in.readUnsignedByte();
+		for (int i = 0; i < qcount; ++i) {
+			Iso19794p1v2011Quality quality = new Iso19794p1v2011Quality();
+			quality.quality = in.readUnsignedByte();
+			quality.vendor = in.readUnsignedShort();
+			quality.algorithm = in.readUnsignedShort();
+			qrecords.add(quality);
+		}
+		if (hasCertificates) {
+			int certCount = in.readUnsignedByte();
+			for (int i = 0; i < certCount; ++i) {
+				Iso19794p1v2011Certificate certificate = new Iso19794p1v2011Certificate();
+				certificate.authority = in.readUnsignedShort();
+				certificate.scheme = in.readUnsignedByte();
+				certificates.add(new Iso19794p2v2011Certificate(certificate, handler, index));
 			}
-			ValidateTemplate.condition(readBytes == totalBytes, handler, "Total length of extension data does not match the sum of extension block lengths.");
-			ValidateTemplate.condition(in.available() == 0, "Fingerprint length field value doesn't match natural end of the fingerprint.");
-		});
+		}
+		decodeData(in, handler, index);
+	}
+	private void decodeData(TemplateReader in, ExceptionHandler handler, int index) {
+		counts = null;
+		coredelta = null;
+		zones = null;
+		extensions = TemplateUtils.clearList(extensions);
+		position = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011Position.CODES, handler, index, -1, () -> "Unrecognized finger position code.");
+		view = in.readUnsignedByte();
+		resolutionX = in.readUnsignedShort();
+		resolutionY = in.readUnsignedShort();
+		scanType = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011ScanType.CODES, handler, index, -1, () -> "Unrecognized sensor type code.");
+		width = in.readUnsignedShort();
+		height = in.readUnsignedShort();
+		int flags = in.readUnsignedByte();
+		int minBytes = flags >> 4;
+		ValidateTemplate.condition(minBytes == 5 || minBytes == 6, handler, TemplateRule.LENGTH, index, () -> "Minutia record size must be either 5 or 6 bytes.");
+		endingType = TemplateUtils.decodeType(flags & 0xf, Iso19794p2v2011EndingType.CODES, handler, index, -1, () -> "Unrecognized ridge ending type code.");
+		int count = in.readUnsignedByte();
+		minutiae = TemplateUtils.decodeList(minutiae, count, (m, i) -> m.decode(in, minBytes == 6, handler, index, i), i -> new Iso19794p2v2011Minutia(in, minBytes == 6, handler, index, i));
+		int totalBytes = in.readUnsignedShort();
+		int readBytes = 0;
+		while (readBytes < totalBytes) {
+			Iso19794p2v2011Extension extension = new Iso19794p2v2011Extension(in);
+			readBytes += extension.measure();
+			if (extension.type == Iso19794p2v2011CountExtension.IDENTIFIER)
+				decodeExtension(extension, data -> counts = new Iso19794p2v2011CountExtension(data, handler, index), handler, index, () -> "Unable to decode ridge count extension.");
+			else if (extension.type == Iso19794p2v2011CoreDeltaExtension.IDENTIFIER)
+				decodeExtension(extension, data -> coredelta = new Iso19794p2v2011CoreDeltaExtension(data, handler, index), handler, index, () -> "Unable to decode core/delta extension.");
+			else if (extension.type == Iso19794p2v2011ZonalExtension.IDENTIFIER)
+				decodeExtension(extension, data -> zones = new Iso19794p2v2011ZonalExtension(data, width, height, handler, index), handler, index, () -> "Unable to decode zonal quality extension.");
+			else
+				extensions.add(extension);
+		}
+		ValidateTemplate.condition(readBytes == totalBytes, handler, TemplateRule.LENGTH, index, () -> "Total length of extension data does not match the sum of extension block lengths.");
+		ValidateTemplate.condition(in.available() == 0, "Fingerprint length field value doesn't match natural end of the fingerprint.");
 	}
-	private void decodeExtension(Iso19794p2v2011Extension extension, Consumer<byte[]> decoder, ExceptionHandler handler, String message) {
+	private void decodeExtension(Iso19794p2v2011Extension extension, Consumer<byte[]> decoder, ExceptionHandler handler, int index, Supplier<String> message) {
 		try {
 			decoder.accept(extension.data);
 		} catch (Throwable ex) {
-			ValidateTemplate.fail(handler, message, ex);
+			ValidateTemplate.fail(handler, TemplateRule.EXTENSION, index, -1, message, ex);
 			extensions.add(extension);
 		}
 	}
+	/**
+	 * Builds spatial index over {@link #minutiae} for rectangle and radius queries.
+	 * Index covers image area given by {@link #width} and {@link #height}.
+	 * Cell size is derived from {@link #resolutionX} and {@link #resolutionY}.
+	 * The index is a snapshot. It must be rebuilt if {@link #minutiae} change.
+	 *
+	 * @return spatial index over {@link #minutiae}
+	 * @see MinutiaGrid
+	 */
+	public MinutiaGrid minutiaGrid() {
+		return new MinutiaGrid(compactMinutiae(), width, height, resolutionX, resolutionY);
+	}
+	/**
+	 * Converts {@link #minutiae} to compact representation that stores minutiae in primitive arrays.
+	 *
+	 * @return copy of {@link #minutiae} in compact representation
+	 * @see #expandMinutiae(CompactMinutiae)
+	 */
+	public CompactMinutiae compactMinutiae() {
+		CompactMinutiae compact = new CompactMinutiae(minutiae.size());
+		for (int i = 0; i < minutiae.size(); ++i) {
+			Iso19794p2v2011Minutia minutia = minutiae.get(i);
+			compact.set(i, minutia.type.ordinal(), minutia.positionX, minutia.positionY, minutia.angle, minutia.quality);
+		}
+		return compact;
+	}
+	/**
+	 * Replaces {@link #minutiae} with minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2011#minutia">MINUTIA</a>) stored in compact representation.
+	 *
+	 * @param compact
+	 *            minutiae in compact representation
+	 * @throws TemplateFormatException
+	 *             if {@code compact} contains unrecognized minutia type code
+	 * @see #compactMinutiae()
+	 */
+	public void expandMinutiae(CompactMinutiae compact) {
+		List<Iso19794p2v2011Minutia> expanded = new ArrayList<>(compact.size());
+		for (int i = 0; i < compact.size(); ++i)
+			expanded.add(new Iso19794p2v2011Minutia(compact, i));
+		minutiae = expanded;
+	}
 	private boolean hasMinutiaQuality() {
 		return minutiae.stream().anyMatch(m -> m.quality != 254);
 	}
-	Iso19794p1v2011Sample toSample() {
-		Iso19794p1v2011Sample sample = new Iso19794p1v2011Sample();
-		sample.datetime = datetime;
-		sample.sensorType = sensorType.ordinal();
-		sample.sensorVendor = sensorVendor;
-		sample.sensorId = sensorId;
-		sample.qrecords = qrecords;
-		sample.certificates = certificates.stream()
-			.map(c -> c.toCertificate())
-			.collect(toList());
-		TemplateWriter out = new TemplateWriter();
-		out.writeByte(position.ordinal());
+	/*
+	 * Writes the whole ISO 19794-1 sample record, i.e. the generic sample header followed by fingerprint data.
+	 * Going through Iso19794p1v2011Sample would require materializing the data in a separate array first.
+	 */
+	void write(TemplateWriter out) {
+		boolean hasMinutiaQuality = hasMinutiaQuality();
+		out.writeInt(measure(hasMinutiaQuality));
+		out.writeShort(datetime.year);
+		out.writeByte(datetime.month);
+		out.writeByte(datetime.day);
+		out.writeByte(datetime.hour);
+		out.writeByte(datetime.minute);
+		out.writeByte(datetime.second);
+		out.writeShort(datetime.millisecond);
+		out.writeByte(sensorType.ordinal());
+		out.writeShort(sensorVendor);
+		out.writeShort(sensorId);
+		out.writeByte(qrecords.size());
+		for (Iso19794p1v2011Quality quality : qrecords) {
+			out.writeByte(quality.quality);
+			out.writeShort(quality.vendor);
+			out.writeShort(quality.algorithm);
+		}
+		out.writeByte(certificates.size());
+		for (Iso19794p2v2011Certificate certificate : certificates) {
+			out.writeShort(certificate.authority);
+			out.writeByte(certificate.scheme.code);
+		}
+		out.writeByte(position.code);
 		out.writeByte(view);
 		out.writeShort(resolutionX);
 		out.writeShort(resolutionY);
 		out.writeByte(scanType.code);
 		out.writeShort(width);
 		out.writeShort(height);
-		boolean hasMinutiaQuality = hasMinutiaQuality();
 		out.write(((hasMinutiaQuality ? 6 : 5) << 4) | endingType.ordinal());
 		out.writeByte(minutiae.size());
 		for (Iso19794p2v2011Minutia minutia : minutiae)
@@ -189,13 +292,46 @@ public class Iso19794p2v2011Fingerprint {
 			zones.extension().write(out);
 		for (Iso19794p2v2011Extension extension : extensions)
 			extension.write(out);
-		sample.data = out.toByteArray();
-		return sample;
+	}
+	int measure() {
+		return measure(hasMinutiaQuality());
+	}
+	private int measure(boolean hasMinutiaQuality) {
+		int header = 14 + 2 + 2 + 1 + 5 * qrecords.size() + 1 + 3 * certificates.size();
+		return header + 13 + (hasMinutiaQuality ? 6 : 5) * minutiae.size() + 2 + extensionBytes();
 	}
 	void validate() {
+		validateHeader();
+		ValidateTemplate.nonzero8(minutiae.size(), "Minutia count must be in range 1 through 255.");
+		for (Iso19794p2v2011Minutia minutia : minutiae)
+			minutia.validate(width, height);
+		if (counts != null)
+			counts.validate(minutiae.size());
+		if (coredelta != null)
+			coredelta.validate(width, height);
+		if (zones != null)
+			zones.validate(width, height);
+		for (Iso19794p2v2011Extension extension : extensions)
+			extension.validate();
+		ValidateTemplate.int16(extensionBytes(), "Total size of all extension blocks must a 16-bit number.");
+	}
+	/*
+	 * Everything that precedes minutiae. Streaming encoder validates these fields separately.
+	 */
+	void validateHeader() {
+		Objects.requireNonNull(datetime, "Timestamp must be non-null (even if filled with defaults).");
+		datetime.validate();
 		Objects.requireNonNull(sensorType, "Sensor type must be non-null (even if unknown).");
 		ValidateTemplate.int16(sensorVendor, "Sensor vendor ID must be an unsigned 16-bit number.");
 		ValidateTemplate.int16(sensorId, "Sensor ID must be an unsigned 16-bit number.");
+		Objects.requireNonNull(qrecords, "List of quality records must be non-null.");
+		ValidateTemplate.int8(qrecords.size(), "There cannot be more than 255 quality records.");
+		for (Iso19794p1v2011Quality quality : qrecords)
+			quality.validate();
+		Objects.requireNonNull(certificates, "List of certificates must be non-null.");
+		ValidateTemplate.int8(certificates.size(), "There cannot be more than 255 certificates.");
+		for (Iso19794p2v2011Certificate certificate : certificates)
+			certificate.validate();
 		Objects.requireNonNull(position, "Finger position must be non-null.");
 		ValidateTemplate.int4(view, "View offset must be an unsigned 4-bit number.");
 		ValidateTemplate.nonzero16(resolutionX, "Horizontal pixel density must be a non-zero unsigned 16-bit number.");
@@ -206,21 +342,11 @@ public class Iso19794p2v2011Fingerprint {
 		ValidateTemplate.nonzero14(width, "Image width must be a non-zero unsigned 14-bit number.");
 		ValidateTemplate.nonzero14(height, "Image height must be a non-zero unsigned 14-bit number.");
 		Objects.requireNonNull(endingType, "Ridge ending type must be non-null.");
-		ValidateTemplate.nonzero8(minutiae.size(), "Minutia count must be in range 1 through 255.");
-		for (Iso19794p2v2011Minutia minutia : minutiae)
-			minutia.validate(width, height);
-		if (counts != null)
-			counts.validate(minutiae.size());
-		if (coredelta != null)
-			coredelta.validate(width, height);
-		if (zones != null)
-			zones.validate(width, height);
-		for (Iso19794p2v2011Extension extension : extensions)
-			extension.validate();
-		ValidateTemplate.int16(extensionBytes(), "Total size of all extension blocks must a 16-bit number.");
 	}
 	private int extensionBytes() {
-		int bytes = extensions.stream().mapToInt(Iso19794p2v2011Extension::measure).sum();
+		int bytes = 0;
+		for (Iso19794p2v2011Extension extension : extensions)
+			bytes += extension.measure();
 		if (counts != null)
 			bytes += counts.measure();
 		if (coredelta != null)
@@ -0,0 +1,228 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2011;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
+import com.machinezoo.fingerprintio.iso19794p1v2011.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Lazily decoded fingerprint (<a href="https://templates.machinezoo.com/iso-19794-2-2011#fingerprint">FINGERPRINT</a>).
+ * Fingerprint header is decoded eagerly. Quality records, certificates, minutiae, and extensions are decoded on first access.
+ *
+ * @see Iso19794p2v2011TemplateView
+ */
+public class Iso19794p2v2011FingerprintView {
+	/**
+	 * Capture date and time (<a href="https://templates.machinezoo.com/iso-19794-2-2011#datetime">DATETIME</a>).
+	 */
+	public Iso19794p1v2011DateTime datetime = new Iso19794p1v2011DateTime();
+	/**
+	 * Sensor technology (<a href="https://templates.machinezoo.com/iso-19794-2-2011#devtech">DEVTECH</a>).
+	 */
+	public Iso19794p2v2011SensorType sensorType;
+	/**
+	 * Sensor vendor ID (<a href="https://templates.machinezoo.com/iso-19794-2-2011#devvendor">DEVVENDOR</a>).
+	 */
+	public int sensorVendor;
+	/**
+	 * Sensor ID (<a href="https://templates.machinezoo.com/iso-19794-2-2011#devid">DEVID</a>).
+	 */
+	public int sensorId;
+	/**
+	 * Finger position on hands (<a href="https://templates.machinezoo.com/iso-19794-2-2011#position">POSITION</a>).
+	 */
+	public Iso19794p2v2011Position position;
+	/**
+	 * Finger view number (<a href="https://templates.machinezoo.com/iso-19794-2-2011#viewoffset">VIEWOFFSET</a>).
+	 */
+	public int view;
+	/**
+	 * Horizontal pixel density (<a href="https://templates.machinezoo.com/iso-19794-2-2011#resolutionx">RESOLUTIONX</a>).
+	 */
+	public int resolutionX;
+	/**
+	 * Vertical pixel density (<a href="https://templates.machinezoo.com/iso-19794-2-2011#resolutiony">RESOLUTIONY</a>).
+	 */
+	public int resolutionY;
+	/**
+	 * Impression type (<a href="https://templates.machinezoo.com/iso-19794-2-2011#sampletype">SAMPLETYPE</a>).
+	 */
+	public Iso19794p2v2011ScanType scanType;
+	/**
+	 * Image width (<a href="https://templates.machinezoo.com/iso-19794-2-2011#width">WIDTH</a>).
+	 */
+	public int width;
+	/**
+	 * Image height (<a href="https://templates.machinezoo.com/iso-19794-2-2011#height">HEIGHT</a>).
+	 */
+	public int height;
+	/**
+	 * Ridge ending type (<a href="https://templates.machinezoo.com/iso-19794-2-2011#endingtype">ENDINGTYPE</a>).
+	 */
+	public Iso19794p2v2011EndingType endingType;
+	/**
+	 * Number of minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2011#minutia">MINUTIA</a>) in this fingerprint.
+	 * This is available without decoding the minutiae.
+	 */
+	public int minutiaCount;
+	private final ByteBuffer data;
+	private final int minutiaOffset;
+	private final boolean hasCertificates;
+	private final boolean hasMinutiaQuality;
+	private final ExceptionHandler handler;
+	private final int index;
+	private Iso19794p2v2011Fingerprint decoded;
+	Iso19794p2v2011FingerprintView(TemplateReader in, ByteBuffer template, boolean hasCertificates, ExceptionHandler handler, int index) {
+		int start = in.offset();
+		long length = 0xffff_ffffL & in.readInt();
+		ValidateTemplate.condition(length >= 14, handler, TemplateRule.LENGTH, index, () -> "Length of biometric sample must be at least 14 bytes.");
+		datetime.year = in.readUnsignedShort();
+		datetime.month = in.readUnsignedByte();
+		datetime.day = in.readUnsignedByte();
+		datetime.hour = in.readUnsignedByte();
+		datetime.minute = in.readUnsignedByte();
+		datetime.second = in.readUnsignedByte();
+		datetime.millisecond = in.readUnsignedShort();
+		sensorType = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011SensorType.CODES, handler, index, -1, () -> "Unrecognized sensor type.");
+		sensorVendor = in.readUnsignedShort();
+		sensorId = in.readUnsignedShort();
+		in.skip(5 * in.readUnsignedByte());
+		if (hasCertificates)
+			in.skip(3 * in.readUnsignedByte());
+		position = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011Position.CODES, handler, index, -1, () -> "Unrecognized finger position code.");
+		view = in.readUnsignedByte();
+		resolutionX = in.readUnsignedShort();
+		resolutionY = in.readUnsignedShort();
+		scanType = TemplateUtils.decodeType(in.readUnsignedByte(), Iso19794p2v2011ScanType.CODES, handler, index, -1, () -> "Unrecognized sensor type code.");
+		width = in.readUnsignedShort();
+		height = in.readUnsignedShort();
+		int flags = in.readUnsignedByte();
+		hasMinutiaQuality = flags >> 4 == 6;
+		endingType = TemplateUtils.decodeType(flags & 0xf, Iso19794p2v2011EndingType.CODES, handler, index, -1, () -> "Unrecognized ridge ending type code.");
+		minutiaCount = in.readUnsignedByte();
+		minutiaOffset = in.offset() - start;
+		/*
+		 * Rest of the fingerprint is skipped using the sample length field, which is the only way to find where the next fingerprint starts.
+		 */
+		long remaining = start + length - in.offset();
+		if (remaining < 0)
+			throw new TemplateFormatException("Sample length in bytes is not large enough to accommodate fingerprint header.");
+		in.skip((int)Math.min(remaining, Integer.MAX_VALUE));
+		data = TemplateUtils.slice(template, start, in.offset() - start);
+		this.hasCertificates = hasCertificates;
+		this.handler = handler;
+		this.index = index;
+	}
+	/**
+	 * Decodes the whole fingerprint, including quality records, certificates, minutiae, and extensions.
+	 * The fingerprint is decoded only once. Subsequent calls return the same object.
+	 *
+	 * @return fully decoded fingerprint
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the exception handler returns {@code false}
+	 */
+	public Iso19794p2v2011Fingerprint decode() {
+		if (decoded == null)
+			decoded = TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint block.", in -> new Iso19794p2v2011Fingerprint(in, hasCertificates, handler, index));
+		return decoded;
+	}
+	/**
+	 * List of quality records (<a href="https://templates.machinezoo.com/iso-19794-2-2011#qrecord">QRECORD</a>).
+	 *
+	 * @return list of quality records, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Iso19794p1v2011Quality> qrecords() {
+		return decode().qrecords;
+	}
+	/**
+	 * List of certification records (<a href="https://templates.machinezoo.com/iso-19794-2-2011#certificate">CERTIFICATE</a>).
+	 *
+	 * @return list of certification records, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Iso19794p2v2011Certificate> certificates() {
+		return decode().certificates;
+	}
+	/**
+	 * Decodes minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2011#minutia">MINUTIA</a>) straight into compact representation.
+	 * This is faster than {@link #decode()}, because no minutia objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and minutiae are not validated.
+	 *
+	 * @return minutiae in compact representation
+	 * @throws TemplateFormatException
+	 *             if minutia records are truncated
+	 * @see Iso19794p2v2011Fingerprint#compactMinutiae()
+	 */
+	public CompactMinutiae compactMinutiae() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint block.", in -> {
+			in.skip(minutiaOffset);
+			return TemplateUtils.decodeMinutiae(in, minutiaCount, hasMinutiaQuality, 254);
+		});
+	}
+	/**
+	 * Decodes ridge count extension (<a href="https://templates.machinezoo.com/iso-19794-2-2011#rcountext">RCOUNTEXT</a>) straight into compact adjacency index.
+	 * This is faster than {@link #decode()}, because no edge objects are created and the rest of the fingerprint is not decoded.
+	 * Result is not cached and edges are not validated.
+	 *
+	 * @return ridge count edges in compact representation or {@code null} if ridge count extension is not present
+	 * @throws TemplateFormatException
+	 *             if extension data is truncated or malformed
+	 * @see Iso19794p2v2011CountExtension#compactEdges(int)
+	 */
+	public RidgeCountGraph compactEdges() {
+		return TemplateUtils.decodeBytesTo(data, "Unexpected end of fingerprint block.", in -> {
+			in.skip(minutiaOffset + (hasMinutiaQuality ? 6 : 5) * minutiaCount);
+			return TemplateUtils.decodeCountGraph(in, minutiaCount, true);
+		});
+	}
+	/**
+	 * List of minutiae (<a href="https://templates.machinezoo.com/iso-19794-2-2011#minutia">MINUTIA</a>).
+	 *
+	 * @return list of minutiae, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Iso19794p2v2011Minutia> minutiae() {
+		return decode().minutiae;
+	}
+	/**
+	 * Ridge count extension (<a href="https://templates.machinezoo.com/iso-19794-2-2011#rcountext">RCOUNTEXT</a>).
+	 *
+	 * @return ridge count extension, decoded on first access, or {@code null} if ridge count extension is not present
+	 * @see #decode()
+	 */
+	public Iso19794p2v2011CountExtension counts() {
+		return decode().counts;
+	}
+	/**
+	 * Core and delta extension (<a href="https://templates.machinezoo.com/iso-19794-2-2011#coredelta">COREDELTA</a>).
+	 *
+	 * @return core and delta extension, decoded on first access, or {@code null} if core and delta extension is not present
+	 * @see #decode()
+	 */
+	public Iso19794p2v2011CoreDeltaExtension coredelta() {
+		return decode().coredelta;
+	}
+	/**
+	 * Zonal quality extension (<a href="https://templates.machinezoo.com/iso-19794-2-2011#zonalext">ZONALEXT</a>).
+	 *
+	 * @return zonal quality extension, decoded on first access, or {@code null} if zonal quality extension is not present
+	 * @see #decode()
+	 */
+	public Iso19794p2v2011ZonalExtension zones() {
+		return decode().zones;
+	}
+	/**
+	 * List of extension data blocks (<a href="https://templates.machinezoo.com/iso-19794-2-2011#extension">EXTENSION</a>).
+	 *
+	 * @return list of unrecognized extension blocks, decoded on first access
+	 * @see #decode()
+	 */
+	public List<Iso19794p2v2011Extension> extensions() {
+		return decode().extensions;
+	}
+}
@@ -2,6 +2,7 @@
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
 import java.util.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.utils.*;
 import com.machinezoo.noexception.*;
 
@@ -36,14 +37,23 @@ public class Iso19794p2v2011Minutia {
 	 */
 	public Iso19794p2v2011Minutia() {
 	}
-	Iso19794p2v2011Minutia(TemplateReader in, boolean withQuality, ExceptionHandler handler) {
+	Iso19794p2v2011Minutia(TemplateReader in, boolean withQuality, ExceptionHandler handler, int fingerprint, int index) {
+		decode(in, withQuality, handler, fingerprint, index);
+	}
+	void decode(TemplateReader in, boolean withQuality, ExceptionHandler handler, int fingerprint, int index) {
 		positionX = in.readUnsignedShort();
-		type = TemplateUtils.decodeType(positionX >> 14, Iso19794p2v2011MinutiaType.class, handler, "Unrecognized minutia type code.");
+		type = TemplateUtils.decodeType(positionX >> 14, Iso19794p2v2011MinutiaType.CODES, handler, fingerprint, index, () -> "Unrecognized minutia type code.");
 		positionX &= 0x3fff;
 		positionY = in.readUnsignedShort();
 		angle = in.readUnsignedByte();
-		if (withQuality)
-			quality = in.readUnsignedByte();
+		quality = withQuality ? in.readUnsignedByte() : 254;
+	}
+	Iso19794p2v2011Minutia(CompactMinutiae compact, int index) {
+		type = TemplateUtils.decodeType(compact.type(index), Iso19794p2v2011MinutiaType.CODES, Exceptions.propagate(), -1, index, () -> "Unrecognized minutia type code.");
+		positionX = compact.positionX(index);
+		positionY = compact.positionY(index);
+		angle = compact.angle(index);
+		quality = compact.quality(index);
 	}
 	void write(TemplateWriter out, boolean withQuality) {
 		out.writeShort((type.ordinal() << 14) | positionX);
@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Finger position on hands (<a href="https://templates.machinezoo.com/iso-19794-2-2011#position">POSITION</a>).
  */
@@ -105,6 +107,7 @@ public enum Iso19794p2v2011Position {
 	 * Left middle, ring, and little (code 50).
 	 */
 	LEFT_MIDDLE_TO_LITTLE(50);
+	static final CodeTable<Iso19794p2v2011Position> CODES = new CodeTable<>(values(), t -> t.code);
 	final int code;
 	Iso19794p2v2011Position(int code) {
 		this.code = code;
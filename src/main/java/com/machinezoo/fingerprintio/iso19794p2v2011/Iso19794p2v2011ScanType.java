@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Impression type (<a href="https://templates.machinezoo.com/iso-19794-2-2011#sampletype">SAMPLETYPE</a>).
  */
@@ -57,6 +59,7 @@ public enum Iso19794p2v2011ScanType {
 	 * Unknown (code 29).
 	 */
 	UNKNOWN(29);
+	static final CodeTable<Iso19794p2v2011ScanType> CODES = new CodeTable<>(values(), t -> t.code);
 	final int code;
 	Iso19794p2v2011ScanType(int code) {
 		this.code = code;
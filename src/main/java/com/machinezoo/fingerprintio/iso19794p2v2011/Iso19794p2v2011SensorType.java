@@ -1,6 +1,8 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
+import com.machinezoo.fingerprintio.utils.*;
+
 /**
  * Sensor technology (<a href="https://templates.machinezoo.com/iso-19794-2-2011#devtech">DEVTECH</a>).
  */
@@ -89,4 +91,5 @@ public enum Iso19794p2v2011SensorType {
 	 * Glass fiber (code 20).
 	 */
 	GLASS_FIBER;
+	static final CodeTable<Iso19794p2v2011SensorType> CODES = new CodeTable<>(values(), Enum::ordinal);
 }
@@ -3,6 +3,8 @@ package com.machinezoo.fingerprintio.iso19794p2v2011;
 
 import static java.util.stream.Collectors.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
 import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.iso19794p1v2011.*;
@@ -22,7 +24,7 @@ public class Iso19794p2v2011Template {
 		FORMAT.hasQuality = true;
 		FORMAT.hasCertificates = true;
 	}
-	private static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, '0', '3', '0', 0 };
+	static final byte[] MAGIC = new byte[] { 'F', 'M', 'R', 0, '0', '3', '0', 0 };
 	/**
 	 * Checks whether provided template is an ISO/IEC 19794-2:2011 off-card template.
 	 * This method does not do any template validation or conformance checking.
@@ -34,30 +36,21 @@ public class Iso19794p2v2011Template {
 	 * @return {@code true} if {@code template} is an ISO/IEC 19794-2:2011 off-card template, {@code false} otherwise
 	 */
 	public static boolean accepts(byte[] template) {
-		if (!Arrays.equals(MAGIC, Arrays.copyOf(template, MAGIC.length)))
-			return false;
-		try {
-			DataInputStream in = new DataInputStream(new ByteArrayInputStream(template));
-			in.skip(MAGIC.length);
-			long total = 0xffff_ffffL & in.readInt();
-			int count = in.readUnsignedShort();
-			in.skip(1);
-			long sum = 0;
-			for (int i = 0; i < count; ++i) {
-				long length = 0xffff_ffffL & in.readInt();
-				/*
-				 * Allow zero minutia count when just checking template format.
-				 * Otherwise the minimum length would be 39.
-				 */
-				if (length < 34)
-					return false;
-				sum += length;
-				in.skip(length - 4);
-			}
-			return total == 15 + sum;
-		} catch (Throwable ex) {
-			return false;
-		}
+		return accepts(ByteBuffer.wrap(template));
+	}
+	/**
+	 * Checks whether provided template is an ISO/IEC 19794-2:2011 off-card template.
+	 * This method does not do any template validation or conformance checking.
+	 * It just differentiates off-card ISO/IEC 19794-2:2011 from other template formats
+	 * as quickly as possible, mostly by looking at template header.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template that is to be evaluated
+	 * @return {@code true} if {@code template} is an ISO/IEC 19794-2:2011 off-card template, {@code false} otherwise
+	 */
+	public static boolean accepts(ByteBuffer template) {
+		return IdentifyTemplate.magic(template, MAGIC) && IdentifyTemplate.iso19794p2v2011(template);
 	}
 	/**
 	 * List of fingerprints (<a href="https://templates.machinezoo.com/iso-19794-2-2011#fingerprint">FINGERPRINT</a>).
@@ -79,6 +72,18 @@ public class Iso19794p2v2011Template {
 	public Iso19794p2v2011Template(byte[] template) {
 		this(template, Exceptions.propagate());
 	}
+	/**
+	 * Parses and validates ISO/IEC 19794-2:2011 off-card template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @throws TemplateFormatException
+	 *             if the template cannot be parsed or it fails validation
+	 */
+	public Iso19794p2v2011Template(ByteBuffer template) {
+		this(template, Exceptions.propagate());
+	}
 	/**
 	 * Parses and optionally validates ISO/IEC 19794-2:2011 off-card template.
 	 * 
@@ -109,13 +114,73 @@ public class Iso19794p2v2011Template {
 	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
 	 */
 	public Iso19794p2v2011Template(byte[] template, ExceptionHandler handler) {
+		this(ByteBuffer.wrap(template), handler);
+	}
+	/**
+	 * Parses and optionally validates ISO/IEC 19794-2:2011 off-card template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * Slice of a larger array can be passed in via {@link ByteBuffer#wrap(byte[], int, int)}.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+	 * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+	 * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public Iso19794p2v2011Template(ByteBuffer template, ExceptionHandler handler) {
+		InstrumentTemplate.parse(TemplateFormat.ISO_19794_2_2011, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+	}
+	/**
+	 * Parses and optionally validates ISO/IEC 19794-2:2011 off-card template into this object, replacing its current content.
+	 * This is an alternative to constructors that reduces allocations when many templates are parsed in a loop.
+	 * Fingerprint and minutia objects already present in this template are reused where possible.
+	 * Lists are reused too, but only those allocated by this library. Other lists, for example immutable ones, are replaced together with their items. Extensions are always decoded into new objects. ISO 19794-1 sample records are allocated anew as well.
+	 * Parsing is still not allocation-free. Every call allocates a few small short-lived objects:
+	 * internal template reader and lambdas carrying parsing and validation state, once per template and once per fingerprint.
+	 * Template content is unspecified if parsing fails.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing will be fed to the provided exception handler.
+	 * Pass in {@link Exceptions#silence()} to ignore all recoverable validation errors
+	 * or {@link Exceptions#propagate()} to throw exception even for recoverable errors.
+	 * 
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public void parse(ByteBuffer template, ExceptionHandler handler) {
+		InstrumentTemplate.parse(TemplateFormat.ISO_19794_2_2011, template, () -> decode(template, handler), () -> fingerprints, fp -> fp.minutiae.size());
+	}
+	/**
+	 * Parses and optionally validates ISO/IEC 19794-2:2011 off-card template into this object, replacing its current content.
+	 * Array is wrapped in new {@link ByteBuffer} on every call. Wrap it once and call {@link #parse(ByteBuffer, ExceptionHandler)} to avoid that.
+	 * 
+	 * @param template
+	 *            serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 * @see #parse(ByteBuffer, ExceptionHandler)
+	 */
+	public void parse(byte[] template, ExceptionHandler handler) {
+		parse(ByteBuffer.wrap(template), handler);
+	}
+	private void decode(ByteBuffer template, ExceptionHandler handler) {
 		if (!accepts(template))
 			throw new TemplateFormatException("This is not an ISO/IEC 19794-2:2011 off-card template.");
 		try {
 			Iso19794p1v2011Template decoded = new Iso19794p1v2011Template(template, handler, FORMAT);
-			fingerprints = decoded.samples.stream()
-				.map(s -> new Iso19794p2v2011Fingerprint(s, handler))
-				.collect(toList());
+			Iterator<Iso19794p1v2011Sample> samples = decoded.samples.iterator();
+			fingerprints = TemplateUtils.decodeList(fingerprints, decoded.samples.size(), (fp, i) -> fp.decode(samples.next(), handler, i), i -> new Iso19794p2v2011Fingerprint(samples.next(), handler, i));
 			ValidateTemplate.structure(this::validate, handler);
 		} catch (Throwable ex) {
 			throw TemplateUtils.convertException(ex);
@@ -129,20 +194,155 @@ public class Iso19794p2v2011Template {
 	 *             if the template fails validation
 	 */
 	public byte[] toByteArray() {
-		validate();
-		Iso19794p1v2011Template container = new Iso19794p1v2011Template();
-		container.modality = Iso19794p1v2011Modality.ISO_19794_2;
-		container.versionMajor = 3;
-		container.versionMinor = 0;
-		container.samples = fingerprints.stream()
-			.map(fp -> fp.toSample())
-			.collect(toList());
-		return container.toByteArray(FORMAT);
+		return toByteArray(true);
+	}
+	/**
+	 * Serializes the template in ISO/IEC 19794-2:2011 off-card format, optionally skipping validation.
+	 * See {@link com.machinezoo.fingerprintio.ansi378v2004.Ansi378v2004Template#toByteArray(boolean)} for when validation can be skipped.
+	 * 
+	 * @param validate
+	 *            {@code true} to validate the template like {@link #toByteArray()}, {@code false} to skip validation
+	 * @return serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @throws TemplateFormatException
+	 *             if validation is enabled and the template fails validation
+	 */
+	public byte[] toByteArray(boolean validate) {
+		return InstrumentTemplate.serialize(TemplateFormat.ISO_19794_2_2011, () -> encode(validate), fingerprints, fp -> fp.minutiae.size());
+	}
+	private byte[] encode(boolean validate) {
+		if (validate)
+			validate();
+		int length = measure();
+		TemplateWriter out = new TemplateWriter(length);
+		write(out, length);
+		return out.toByteArray();
+	}
+	/**
+	 * Validates and serializes the template in ISO/IEC 19794-2:2011 off-card format into a buffer.
+	 * Template is written at buffer's position, which is then advanced past the template.
+	 * Nothing is written if the template does not fit in the buffer.
+	 * 
+	 * @param buffer
+	 *            buffer to receive serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @throws TemplateFormatException
+	 *             if the template fails validation
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		writeTo(buffer, true);
+	}
+	/**
+	 * Serializes the template in ISO/IEC 19794-2:2011 off-card format into a buffer, optionally skipping validation.
+	 * See {@link #toByteArray(boolean)} for when validation can be skipped.
+	 * Template is written at buffer's position, which is then advanced past the template.
+	 * Nothing is written if the template does not fit in the buffer.
+	 * 
+	 * @param buffer
+	 *            buffer to receive serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @param validate
+	 *            {@code true} to validate the template like {@link #writeTo(ByteBuffer)}, {@code false} to skip validation
+	 * @throws TemplateFormatException
+	 *             if validation is enabled and the template fails validation
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void writeTo(ByteBuffer buffer, boolean validate) {
+		if (validate)
+			validate();
+		int length = measure();
+		TemplateUtils.encodeTo(buffer, length, out -> write(out, length));
+	}
+	/**
+	 * Validates and serializes the template in ISO/IEC 19794-2:2011 off-card format into a stream.
+	 * Template is written without first materializing it in memory. The stream is not closed.
+	 * 
+	 * @param stream
+	 *            stream to receive serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @throws TemplateFormatException
+	 *             if the template fails validation
+	 * @throws IOException
+	 *             if the stream throws
+	 */
+	public void writeTo(OutputStream stream) throws IOException {
+		writeTo(stream, true);
+	}
+	/**
+	 * Serializes the template in ISO/IEC 19794-2:2011 off-card format into a stream, optionally skipping validation.
+	 * See {@link #toByteArray(boolean)} for when validation can be skipped.
+	 * Template is written without first materializing it in memory. The stream is not closed.
+	 * 
+	 * @param stream
+	 *            stream to receive serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @param validate
+	 *            {@code true} to validate the template like {@link #writeTo(OutputStream)}, {@code false} to skip validation
+	 * @throws TemplateFormatException
+	 *             if validation is enabled and the template fails validation
+	 * @throws IOException
+	 *             if the stream throws
+	 */
+	public void writeTo(OutputStream stream, boolean validate) throws IOException {
+		if (validate)
+			validate();
+		int length = measure();
+		TemplateUtils.encodeTo(stream, length, out -> write(out, length));
+	}
+	/**
+	 * Validates and serializes the template in ISO/IEC 19794-2:2011 off-card format into a channel.
+	 * Template is written without first materializing it in memory. The channel is not closed.
+	 * 
+	 * @param channel
+	 *            blocking channel to receive serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @throws TemplateFormatException
+	 *             if the template fails validation
+	 * @throws IOException
+	 *             if the channel throws
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		writeTo(channel, true);
+	}
+	/**
+	 * Serializes the template in ISO/IEC 19794-2:2011 off-card format into a channel, optionally skipping validation.
+	 * See {@link #toByteArray(boolean)} for when validation can be skipped.
+	 * Template is written without first materializing it in memory. The channel is not closed.
+	 * 
+	 * @param channel
+	 *            blocking channel to receive serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @param validate
+	 *            {@code true} to validate the template like {@link #writeTo(WritableByteChannel)}, {@code false} to skip validation
+	 * @throws TemplateFormatException
+	 *             if validation is enabled and the template fails validation
+	 * @throws IOException
+	 *             if the channel throws
+	 */
+	public void writeTo(WritableByteChannel channel, boolean validate) throws IOException {
+		if (validate)
+			validate();
+		int length = measure();
+		TemplateUtils.encodeTo(channel, length, out -> write(out, length));
+	}
+	/*
+	 * This is the ISO 19794-1 container with ISO 19794-2 samples written in place.
+	 * Serializing via Iso19794p1v2011Template would require every fingerprint to be first encoded into a temporary array.
+	 */
+	private void write(TemplateWriter out, int length) {
+		out.write(MAGIC);
+		out.writeInt(length);
+		out.writeShort(fingerprints.size());
+		out.writeByte(1);
+		for (Iso19794p2v2011Fingerprint fp : fingerprints)
+			fp.write(out);
+	}
+	private int measure() {
+		return 15 + fingerprints.stream().mapToInt(Iso19794p2v2011Fingerprint::measure).sum();
 	}
 	private void validate() {
 		ValidateTemplate.range(fingerprints.size(), 1, 176, "Fingerprint count must be in range 1 through 176.");
 		for (Iso19794p2v2011Fingerprint fp : fingerprints)
 			fp.validate();
+		ValidateTemplate.views(fingerprints, fp -> fp.position.ordinal(), fp -> fp.view, false, Iso19794p2v2011Template::validateViews);
+	}
+	private static void validateViews(List<Iso19794p2v2011Fingerprint> fingerprints) {
 		if (fingerprints.size() != fingerprints.stream().mapToInt(fp -> (fp.position.ordinal() << 16) + fp.view).distinct().count())
 			throw new TemplateFormatException("Every fingerprint must have a unique combination of finger position and view offset.");
 		fingerprints.stream()
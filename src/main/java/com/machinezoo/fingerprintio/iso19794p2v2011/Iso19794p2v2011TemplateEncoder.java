@@ -0,0 +1,252 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2011;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.iso19794p1v2011.*;
+import com.machinezoo.fingerprintio.utils.*;
+
+/**
+ * Streaming encoder of ISO/IEC 19794-2:2011 off-card templates.
+ * Template is written field by field directly into caller's buffer without building {@link Iso19794p2v2011Template} first.
+ * Calls must follow template structure: {@link #beginTemplate(ByteBuffer) beginTemplate},
+ * then for every fingerprint {@link #beginFingerprint(Iso19794p2v2011Fingerprint, boolean) beginFingerprint}
+ * followed by its minutiae and extension blocks, and finally {@link #finish()}.
+ * <p>
+ * Fields are validated as they are written using the same rules as {@link Iso19794p2v2011Template#toByteArray()}.
+ * This includes view numbers, which the format requires to be sorted, so fingerprints with the same finger position
+ * must be added in view order starting with view 0.
+ * Length and count fields are filled in when their value becomes known.
+ * Buffer position is advanced only when the template is finished, so failed encoding leaves buffer position unchanged,
+ * although data past buffer position might have been overwritten.
+ * <p>
+ * Encoder can be reused for any number of templates. Encoding of minutiae does not allocate any memory.
+ * Encoder is not thread-safe.
+ */
+public class Iso19794p2v2011TemplateEncoder {
+	private final StreamingTemplate stream = new StreamingTemplate();
+	private int width;
+	private int height;
+	private boolean minutiaQuality;
+	/*
+	 * Offset of the sample length field of the current fingerprint or -1 if there is no fingerprint yet.
+	 */
+	private int fingerprintAt;
+	/**
+	 * Creates new streaming encoder of ISO/IEC 19794-2:2011 off-card templates.
+	 */
+	public Iso19794p2v2011TemplateEncoder() {
+	}
+	/**
+	 * Starts new template at buffer's position. Any unfinished template is discarded.
+	 *
+	 * @param buffer
+	 *            buffer to receive serialized template
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 * @throws ReadOnlyBufferException
+	 *             if the buffer is read-only
+	 */
+	public void beginTemplate(ByteBuffer buffer) {
+		stream.begin(buffer);
+		fingerprintAt = -1;
+		stream.write(Iso19794p2v2011Template.MAGIC);
+		stream.writeInt(0);
+		stream.writeShort(0);
+		stream.writeByte(1);
+	}
+	/**
+	 * Starts new fingerprint. Previous fingerprint, if any, is completed.
+	 * Fingerprints with the same finger position must be added in view order starting with view 0.
+	 * <p>
+	 * Fingerprint header has too many fields to pass them as parameters, so they are taken from provided fingerprint object.
+	 * Its minutiae and extensions are ignored. They must be added by calling other methods of this encoder.
+	 * The same object can be reused for all fingerprints.
+	 *
+	 * @param header
+	 *            fingerprint (<a href="https://templates.machinezoo.com/iso-19794-2-2011#fingerprint">FINGERPRINT</a>)
+	 *            whose fields other than minutiae and extensions are written to the template
+	 * @param minutiaQuality
+	 *            {@code true} to include quality in minutia records, {@code false} to omit it
+	 * @throws TemplateFormatException
+	 *             if some field is out of range, the view is out of order, or the previous fingerprint has no minutiae
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void beginFingerprint(Iso19794p2v2011Fingerprint header, boolean minutiaQuality) {
+		header.validateHeader();
+		ValidateTemplate.range(stream.fingerprints() + 1, 1, 176, "Fingerprint count must be in range 1 through 176.");
+		endFingerprint();
+		stream.beginFingerprint(header.position.ordinal(), header.view, false);
+		width = header.width;
+		height = header.height;
+		this.minutiaQuality = minutiaQuality;
+		fingerprintAt = stream.position();
+		stream.writeInt(0);
+		Iso19794p1v2011DateTime datetime = header.datetime;
+		stream.writeShort(datetime.year);
+		stream.writeByte(datetime.month);
+		stream.writeByte(datetime.day);
+		stream.writeByte(datetime.hour);
+		stream.writeByte(datetime.minute);
+		stream.writeByte(datetime.second);
+		stream.writeShort(datetime.millisecond);
+		stream.writeByte(header.sensorType.ordinal());
+		stream.writeShort(header.sensorVendor);
+		stream.writeShort(header.sensorId);
+		stream.writeByte(header.qrecords.size());
+		for (Iso19794p1v2011Quality quality : header.qrecords) {
+			stream.writeByte(quality.quality);
+			stream.writeShort(quality.vendor);
+			stream.writeShort(quality.algorithm);
+		}
+		stream.writeByte(header.certificates.size());
+		for (Iso19794p2v2011Certificate certificate : header.certificates) {
+			stream.writeShort(certificate.authority);
+			stream.writeByte(certificate.scheme.code);
+		}
+		stream.writeByte(header.position.code);
+		stream.writeByte(header.view);
+		stream.writeShort(header.resolutionX);
+		stream.writeShort(header.resolutionY);
+		stream.writeByte(header.scanType.code);
+		stream.writeShort(header.width);
+		stream.writeShort(header.height);
+		stream.writeByte(((minutiaQuality ? 6 : 5) << 4) | header.endingType.ordinal());
+		stream.beginMinutiae();
+	}
+	/**
+	 * Adds minutia to the current fingerprint. Minutiae cannot be added after extension blocks.
+	 *
+	 * @param type
+	 *            minutia type (<a href="https://templates.machinezoo.com/iso-19794-2-2011#mintype">MINTYPE</a>)
+	 * @param x
+	 *            X coordinate (<a href="https://templates.machinezoo.com/iso-19794-2-2011#minx">MINX</a>)
+	 * @param y
+	 *            Y coordinate (<a href="https://templates.machinezoo.com/iso-19794-2-2011#miny">MINY</a>)
+	 * @param angle
+	 *            minutia angle (<a href="https://templates.machinezoo.com/iso-19794-2-2011#minangle">MINANGLE</a>)
+	 * @param quality
+	 *            minutia quality (<a href="https://templates.machinezoo.com/iso-19794-2-2011#minquality">MINQUALITY</a>),
+	 *            which must be 254 (unreported) if minutia records do not include quality
+	 * @throws TemplateFormatException
+	 *             if some field is out of range or the fingerprint already has 255 minutiae
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started or extension blocks were already added
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addMinutia(Iso19794p2v2011MinutiaType type, int x, int y, int angle, int quality) {
+		Objects.requireNonNull(type, "Minutia type must be non-null.");
+		ValidateTemplate.position(x, width, "Minutia X position must be an unsigned 14-bit number less than image width.");
+		ValidateTemplate.position(y, height, "Minutia Y position must be an unsigned 14-bit number less than image height.");
+		ValidateTemplate.int8(angle, "Minutia angle must be an unsigned 8-bit number.");
+		ValidateTemplate.condition(quality >= 0 && quality <= 100 || quality == 254 || quality == 255,
+			"Minutia quality must be in range 0 through 100 or a special value 254 or 255.");
+		ValidateTemplate.condition(minutiaQuality || quality == 254, "Minutia quality must be 254 (unreported) when minutia records do not include quality.");
+		stream.minutia(type.ordinal(), x, y, angle, quality, minutiaQuality);
+	}
+	/**
+	 * Adds ridge count extension to the current fingerprint.
+	 * Edges are validated against minutiae added so far, so this should be called after all minutiae are added.
+	 *
+	 * @param counts
+	 *            ridge count extension (<a href="https://templates.machinezoo.com/iso-19794-2-2011#rcountext">RCOUNTEXT</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCounts(Iso19794p2v2011CountExtension counts) {
+		stream.requireMinutiae();
+		counts.validate(stream.minutiae());
+		add(counts.extension());
+	}
+	/**
+	 * Adds core and delta extension to the current fingerprint.
+	 *
+	 * @param coredelta
+	 *            core and delta extension (<a href="https://templates.machinezoo.com/iso-19794-2-2011#coredelta">COREDELTA</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addCoreDelta(Iso19794p2v2011CoreDeltaExtension coredelta) {
+		stream.requireMinutiae();
+		coredelta.validate(width, height);
+		add(coredelta.extension());
+	}
+	/**
+	 * Adds zonal quality extension to the current fingerprint.
+	 *
+	 * @param zones
+	 *            zonal quality extension (<a href="https://templates.machinezoo.com/iso-19794-2-2011#zonalext">ZONALEXT</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addZones(Iso19794p2v2011ZonalExtension zones) {
+		stream.requireMinutiae();
+		zones.validate(width, height);
+		add(zones.extension());
+	}
+	/**
+	 * Adds extension data block to the current fingerprint.
+	 *
+	 * @param extension
+	 *            extension data block (<a href="https://templates.machinezoo.com/iso-19794-2-2011#extension">EXTENSION</a>)
+	 * @throws TemplateFormatException
+	 *             if the extension fails validation
+	 * @throws IllegalStateException
+	 *             if no fingerprint has been started
+	 * @throws BufferOverflowException
+	 *             if there is not enough space remaining in the buffer
+	 */
+	public void addExtension(Iso19794p2v2011Extension extension) {
+		stream.requireMinutiae();
+		extension.validate();
+		add(extension);
+	}
+	private void add(Iso19794p2v2011Extension extension) {
+		stream.extension(extension.type, extension.data, true);
+	}
+	/*
+	 * Fingerprint is an ISO 19794-1 sample record, which starts with its own length.
+	 */
+	private void endFingerprint() {
+		stream.end();
+		if (fingerprintAt >= 0) {
+			ValidateTemplate.nonzero8(stream.minutiae(), "Minutia count must be in range 1 through 255.");
+			stream.patchInt(fingerprintAt, stream.position() - fingerprintAt);
+		}
+	}
+	/**
+	 * Completes the template and advances buffer position past it.
+	 * Encoder is then ready to start another template.
+	 *
+	 * @return length of the template in bytes
+	 * @throws TemplateFormatException
+	 *             if there are no fingerprints or the last fingerprint has no minutiae
+	 * @throws IllegalStateException
+	 *             if no template has been started
+	 */
+	public int finish() {
+		endFingerprint();
+		ValidateTemplate.range(stream.fingerprints(), 1, 176, "Fingerprint count must be in range 1 through 176.");
+		int start = stream.start();
+		stream.patchInt(start + 8, stream.length());
+		stream.patchShort(start + 12, stream.fingerprints());
+		return stream.finish();
+	}
+}
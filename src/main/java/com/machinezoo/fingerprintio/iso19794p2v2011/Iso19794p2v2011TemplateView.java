@@ -0,0 +1,78 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2011;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.utils.*;
+import com.machinezoo.noexception.*;
+
+/**
+ * Lazily decoded ISO/IEC 19794-2:2011 off-card template.
+ * Only template header and fingerprint headers are decoded when the view is constructed.
+ * Quality records, certificates, minutiae, and extensions are decoded on first access separately for every fingerprint.
+ * This is considerably faster than full parsing when only template and fingerprint metadata is needed.
+ * <p>
+ * The view keeps reference to the original template data, which must not be modified while the view is in use.
+ * Recoverable validation errors are reported when the affected part of the template is decoded.
+ * Full validation is performed only by {@link Iso19794p2v2011Template}.
+ *
+ * @see Iso19794p2v2011Template
+ */
+public class Iso19794p2v2011TemplateView {
+	/**
+	 * Lazily decoded fingerprints (<a href="https://templates.machinezoo.com/iso-19794-2-2011#fingerprint">FINGERPRINT</a>).
+	 */
+	public List<Iso19794p2v2011FingerprintView> fingerprints = new ArrayList<>();
+	/**
+	 * Decodes template and fingerprint headers of ISO/IEC 19794-2:2011 off-card template.
+	 *
+	 * @param template
+	 *            serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @throws TemplateFormatException
+	 *             if template headers cannot be parsed or they fail validation
+	 */
+	public Iso19794p2v2011TemplateView(byte[] template) {
+		this(ByteBuffer.wrap(template), Exceptions.propagate());
+	}
+	/**
+	 * Decodes template and fingerprint headers of ISO/IEC 19794-2:2011 off-card template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @throws TemplateFormatException
+	 *             if template headers cannot be parsed or they fail validation
+	 */
+	public Iso19794p2v2011TemplateView(ByteBuffer template) {
+		this(template, Exceptions.propagate());
+	}
+	/**
+	 * Decodes template and fingerprint headers of ISO/IEC 19794-2:2011 off-card template stored in a buffer.
+	 * Template is read from buffer's position up to its limit. Position and limit of the buffer are not modified.
+	 * <p>
+	 * Recoverable validation exceptions encountered during parsing, including later lazy decoding of fingerprints,
+	 * will be fed to the provided exception handler.
+	 *
+	 * @param template
+	 *            buffer holding serialized template in ISO/IEC 19794-2:2011 off-card format
+	 * @param handler
+	 *            handler for recoverable validation exceptions
+	 * @throws TemplateFormatException
+	 *             if unrecoverable validation error is encountered or the provided exception handler returns {@code false}
+	 */
+	public Iso19794p2v2011TemplateView(ByteBuffer template, ExceptionHandler handler) {
+		if (!Iso19794p2v2011Template.accepts(template))
+			throw new TemplateFormatException("This is not an ISO/IEC 19794-2:2011 off-card template.");
+		TemplateUtils.decodeTemplate(template, in -> {
+			in.skipBytes(Iso19794p2v2011Template.MAGIC.length);
+			long length = 0xffff_ffffL & in.readInt();
+			ValidateTemplate.condition(length <= Iso19794p2v2011Template.MAGIC.length + 4 + in.available(), handler, TemplateRule.LENGTH, () -> "Total length indicates trimmed template.");
+			int count = in.readUnsignedShort();
+			boolean hasCertificates = in.readUnsignedByte() != 0;
+			for (int i = 0; i < count; ++i)
+				fingerprints.add(new Iso19794p2v2011FingerprintView(in, template, hasCertificates, handler, i));
+			ValidateTemplate.condition(in.available() == 0, handler, TemplateRule.TRAILING_DATA, () -> "Extra data at the end of the template.");
+		});
+	}
+}
@@ -0,0 +1,299 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import java.io.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+
+/*
+ * Canonical form removes encoding choices that do not change template content:
+ * - length fields are recomputed and ANSI 378-2004 uses 6-byte length only when 2-byte length is not enough,
+ * - reserved bytes are zeroed,
+ * - extension blocks of every fingerprint are sorted by type and then by content,
+ * - ISO 19794-2:2011 minutia records include quality only if some minutia has quality other than 254 (not reported),
+ * - ISO 19794-2:2011 certification flag is always set and certificate counts are always present,
+ * - data past the end of ISO 19794-2:2011 fingerprint sample is dropped.
+ *
+ * Everything else including order of fingerprints and minutiae is preserved, because ridge count extension refers to minutia indexes.
+ * Output uses the same layout as template classes, so canonical form of a template serialized by this library is usually identical to the input.
+ * Input is not validated. Only structure needed to find fields is checked.
+ *
+ * Output is written into single writer sized after the input. Length fields are written as placeholders and patched when the length is known.
+ * Fields are copied straight from the reader into the writer, so that no intermediate arrays are allocated.
+ *
+ * Hash is computed over the same canonical stream, but the stream is fed to the hash as it is produced instead of being collected in an array.
+ * Length fields are left as zero placeholders in the hashed stream. They are derived from the rest of the canonical form,
+ * so they add no information and equal canonical forms still have equal hashes.
+ */
+public class CanonicalTemplate {
+	public static byte[] canonicalize(TemplateFormat format, TemplateReader in) {
+		/*
+		 * Canonical form is rarely longer than the input. Writer grows in the rare case it is.
+		 */
+		TemplateWriter out = new TemplateWriter(8 + in.available());
+		write(format, in, out, true);
+		int length = (int)out.size();
+		if (format != TemplateFormat.ANSI_378_2004 || length < 0x10000)
+			return out.toByteArray();
+		/*
+		 * Templates of 64KB or more need 6-byte length field. They are rare enough to afford another copy.
+		 */
+		byte[] narrow = out.toByteArray();
+		TemplateWriter wide = new TemplateWriter(length + 4);
+		wide.write(narrow, 0, 8);
+		wide.writeShort(0);
+		wide.writeInt(length + 4);
+		wide.write(narrow, 10, length - 10);
+		return wide.toByteArray();
+	}
+	public static long hash(TemplateFormat format, TemplateReader in) {
+		MurmurHash hash = new MurmurHash();
+		TemplateWriter out = new TemplateWriter(hash, in.available());
+		write(format, in, out, false);
+		out.flush();
+		return hash.finish();
+	}
+	private static void write(TemplateFormat format, TemplateReader in, TemplateWriter out, boolean patch) {
+		out.write(in, 8);
+		switch (format) {
+		case ANSI_378_2004:
+		case ISO_19794_2_2005:
+			canonicalizeLegacy(in, out, patch, format == TemplateFormat.ANSI_378_2004);
+			break;
+		case ANSI_378_2009:
+		case ANSI_378_2009_AM1:
+			canonicalizeAnsi378v2009(in, out, patch);
+			break;
+		case ISO_19794_2_2011:
+			canonicalizeIso19794p2v2011(in, out, patch);
+			break;
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+	private static void canonicalizeLegacy(TemplateReader in, TemplateWriter out, boolean patch, boolean ansi) {
+		if (ansi) {
+			if (in.readUnsignedShort() == 0)
+				in.skip(4);
+			out.writeShort(0);
+			/*
+			 * Vendor and subformat.
+			 */
+			out.write(in, 4);
+		} else {
+			in.skip(4);
+			out.writeInt(0);
+		}
+		/*
+		 * Sensor, image dimensions, and resolution.
+		 */
+		out.write(in, 10);
+		int count = in.readUnsignedByte();
+		in.skip(1);
+		out.writeByte(count);
+		out.writeByte(0);
+		for (int i = 0; i < count; ++i) {
+			out.write(in, 3);
+			int minutiae = in.readUnsignedByte();
+			out.writeByte(minutiae);
+			out.write(in, 6 * minutiae);
+			canonicalizeExtensions(in, out, ansi);
+		}
+		int length = (int)out.size();
+		/*
+		 * ANSI template too long for 2-byte length field is widened by the caller.
+		 */
+		if (patch && !ansi)
+			out.patchInt(8, length);
+		else if (patch && length < 0x10000)
+			out.patchShort(8, length);
+	}
+	private static void canonicalizeAnsi378v2009(TemplateReader in, TemplateWriter out, boolean patch) {
+		in.skip(4);
+		out.writeInt(0);
+		/*
+		 * Vendor, subformat, and sensor certification. Only the top bit of certification byte is defined.
+		 */
+		out.write(in, 4);
+		out.writeByte(in.readUnsignedByte() & 0x80);
+		out.write(in, 2);
+		int count = in.readUnsignedByte();
+		in.skip(1);
+		out.writeByte(count);
+		out.writeByte(0);
+		for (int i = 0; i < count; ++i) {
+			out.write(in, 16);
+			int minutiae = in.readUnsignedByte();
+			out.writeByte(minutiae);
+			out.write(in, 6 * minutiae);
+			canonicalizeExtensions(in, out, true);
+		}
+		if (patch)
+			out.patchInt(8, (int)out.size());
+	}
+	private static void canonicalizeIso19794p2v2011(TemplateReader in, TemplateWriter out, boolean patch) {
+		in.skip(4);
+		out.writeInt(0);
+		int count = in.readUnsignedShort();
+		boolean hasCertificates = in.readUnsignedByte() != 0;
+		out.writeShort(count);
+		out.writeByte(1);
+		for (int i = 0; i < count; ++i) {
+			int start = in.offset();
+			long length = 0xffff_ffffL & in.readInt();
+			int sample = (int)out.size();
+			out.writeInt(0);
+			/*
+			 * Datetime, sensor type, vendor, and ID.
+			 */
+			out.write(in, 9 + 5);
+			int qcount = in.readUnsignedByte();
+			out.writeByte(qcount);
+			out.write(in, 5 * qcount);
+			if (hasCertificates) {
+				int ccount = in.readUnsignedByte();
+				out.writeByte(ccount);
+				out.write(in, 3 * ccount);
+			} else
+				out.writeByte(0);
+			/*
+			 * Position, view, resolution, scan type, and image dimensions.
+			 */
+			out.write(in, 11);
+			int flags = in.readUnsignedByte();
+			int minutiae = in.readUnsignedByte();
+			int recordSize = flags >> 4 == 6 ? 6 : 5;
+			if (recordSize * minutiae > in.available())
+				throw new TemplateEofException();
+			/*
+			 * Quality bytes are scanned in place before the records are copied.
+			 */
+			boolean hasQuality = false;
+			if (recordSize == 6)
+				for (int j = 0; j < minutiae; ++j)
+					hasQuality |= in.peekUnsignedByte(6 * j + 5) != 254;
+			out.writeByte(((hasQuality ? 6 : 5) << 4) | (flags & 0xf));
+			out.writeByte(minutiae);
+			if (recordSize == 5 || hasQuality)
+				out.write(in, recordSize * minutiae);
+			else {
+				for (int j = 0; j < minutiae; ++j) {
+					out.write(in, 5);
+					in.skip(1);
+				}
+			}
+			canonicalizeExtensions(in, out, true);
+			long remaining = start + length - in.offset();
+			if (remaining < 0)
+				throw new TemplateFormatException("Sample length in bytes is not large enough to accommodate fingerprint data.");
+			in.skip((int)Math.min(remaining, Integer.MAX_VALUE));
+			if (patch)
+				out.patchInt(sample, (int)out.size() - sample);
+		}
+		if (patch)
+			out.patchInt(8, (int)out.size());
+	}
+	/*
+	 * ISO 19794-2:2005 is the only format that does not include the 4-byte block header in extension block length.
+	 * Block headers are copied as they are, because their length field does not change in canonical form.
+	 *
+	 * Most fingerprints have at most one extension block, which is copied straight to the output.
+	 * Multiple blocks are read into one array and sorted there via their offsets, so that there is no array per block.
+	 */
+	private static void canonicalizeExtensions(TemplateReader in, TemplateWriter out, boolean inclusive) {
+		int remaining = in.readUnsignedShort();
+		if (remaining > in.available())
+			throw new TemplateEofException();
+		out.writeShort(remaining);
+		if (remaining == 0)
+			return;
+		if (remaining >= 4 && blockLength((in.peekUnsignedByte(2) << 8) | in.peekUnsignedByte(3), inclusive) == remaining) {
+			out.write(in, remaining);
+			return;
+		}
+		byte[] data = new byte[remaining];
+		in.readFully(data);
+		int[] offsets = new int[remaining / 4];
+		int count = 0;
+		for (int offset = 0; offset < remaining; offset += blockLength(data, offset, inclusive)) {
+			if (remaining - offset < 4 || blockLength(data, offset, inclusive) < 4 || blockLength(data, offset, inclusive) > remaining - offset)
+				throw new TemplateFormatException("Extension block length is inconsistent with total length of extension data.");
+			offsets[count++] = offset;
+		}
+		/*
+		 * Insertion sort, because there are only a few blocks.
+		 */
+		for (int i = 1; i < count; ++i) {
+			for (int j = i; j > 0 && compareBlocks(data, offsets[j - 1], offsets[j], inclusive) > 0; --j) {
+				int swapped = offsets[j];
+				offsets[j] = offsets[j - 1];
+				offsets[j - 1] = swapped;
+			}
+		}
+		for (int i = 0; i < count; ++i)
+			out.write(data, offsets[i], blockLength(data, offsets[i], inclusive));
+	}
+	private static int blockLength(int field, boolean inclusive) {
+		return field + (inclusive ? 0 : 4);
+	}
+	private static int blockLength(byte[] data, int offset, boolean inclusive) {
+		return blockLength(((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff), inclusive);
+	}
+	private static int compareBlocks(byte[] data, int first, int second, boolean inclusive) {
+		return Arrays.compareUnsigned(data, first, first + blockLength(data, first, inclusive), data, second, second + blockLength(data, second, inclusive));
+	}
+	/*
+	 * MurmurHash64A by Austin Appleby, adapted for incremental input. It is fast, well distributed, and simple enough to be implemented here.
+	 * The original algorithm seeds the hash with input length, which is not known in advance here, so the length is mixed in at the end instead.
+	 * Output is consumed in 8-byte blocks. Bytes of incomplete block are collected until the block is complete.
+	 */
+	private static class MurmurHash extends OutputStream {
+		private static final long M = 0xc6a4a7935bd1e995L;
+		private static final int R = 47;
+		private long h;
+		private long length;
+		private long pending;
+		private void mix(long k) {
+			k *= M;
+			k ^= k >>> R;
+			k *= M;
+			h ^= k;
+			h *= M;
+		}
+		@Override
+		public void write(int value) {
+			pending |= (long)(value & 0xff) << (8 * (int)(length & 7));
+			++length;
+			if ((length & 7) == 0) {
+				mix(pending);
+				pending = 0;
+			}
+		}
+		@Override
+		public void write(byte[] data, int offset, int count) {
+			int end = offset + count;
+			while (offset < end && (length & 7) != 0)
+				write(data[offset++]);
+			for (; end - offset >= 8; offset += 8) {
+				long k = 0;
+				for (int i = 7; i >= 0; --i)
+					k = (k << 8) | (data[offset + i] & 0xff);
+				mix(k);
+				length += 8;
+			}
+			while (offset < end)
+				write(data[offset++]);
+		}
+		long finish() {
+			if ((length & 7) != 0) {
+				h ^= pending;
+				h *= M;
+			}
+			h ^= length * M;
+			h ^= h >>> R;
+			h *= M;
+			h ^= h >>> R;
+			return h;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import java.util.function.*;
+
+/*
+ * Maps raw codes found in templates to enum constants.
+ * Every enum that is decoded from templates keeps one table in a static field,
+ * so that decoding is a single array load without any allocation or iteration over enum constants.
+ */
+public class CodeTable<T> {
+	private final Object[] table;
+	public CodeTable(T[] candidates, ToIntFunction<T> codes) {
+		int max = -1;
+		for (T candidate : candidates)
+			max = Math.max(max, codes.applyAsInt(candidate));
+		table = new Object[max + 1];
+		/*
+		 * If several constants share the same code, the first one wins.
+		 */
+		for (int i = candidates.length - 1; i >= 0; --i)
+			table[codes.applyAsInt(candidates[i])] = candidates[i];
+	}
+	@SuppressWarnings("unchecked")
+	public T get(int code) {
+		return code >= 0 && code < table.length ? (T)table[code] : null;
+	}
+}
@@ -0,0 +1,528 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
+
+/*
+ * Conversion reads the source template straight into a small format-neutral skeleton and writes the skeleton in target format.
+ * Minutiae are held in CompactMinutiae, so there are no per-minutia objects and no format-specific object graph.
+ *
+ * Skeleton holds values in the most expressive form found among supported formats:
+ * - finger positions and scan types use ANSI 378-2009/ISO 19794-2:2011 codes,
+ * - minutia and fingerprint quality use 0-100 scale with special values 254 (not reported) and 255 (failed),
+ * - angles are kept in source units (ANSI 2-degree units or ISO 256ths of a circle) and converted only when units differ.
+ *
+ * Source template is not validated. Conversion only fails when some value cannot be represented in target format.
+ */
+public class ConvertTemplate {
+	public static class NeutralTemplate {
+		public int vendorId = IbiaOrganizations.UNKNOWN;
+		public int subformat;
+		public boolean sensorCertified;
+		public int sensorId;
+		public List<NeutralFingerprint> fingerprints = new ArrayList<>();
+	}
+	public static class NeutralFingerprint {
+		public byte[] datetime;
+		public int sensorType;
+		public int sensorVendor;
+		public int position;
+		public int view;
+		public int scanType;
+		public int quality = 254;
+		public int qualityVendorId = IbiaOrganizations.UNKNOWN;
+		public int qualityAlgorithmId = IbiaQualityAlgorithms.UNKNOWN;
+		public int width;
+		public int height;
+		public int resolutionX;
+		public int resolutionY;
+		public int endingType;
+		public boolean ansiAngles;
+		public CompactMinutiae minutiae;
+		public int countType = -1;
+		public byte[] countEdges;
+		public List<int[]> cores;
+		public List<int[]> deltas;
+	}
+	public static NeutralTemplate decode(TemplateFormat format, TemplateReader in) {
+		NeutralTemplate template = new NeutralTemplate();
+		in.skip(8);
+		switch (format) {
+		case ANSI_378_2004:
+		case ISO_19794_2_2005:
+			decodeLegacy(in, template, format == TemplateFormat.ANSI_378_2004);
+			break;
+		case ANSI_378_2009:
+		case ANSI_378_2009_AM1:
+			decodeAnsi378v2009(in, template);
+			break;
+		case ISO_19794_2_2011:
+			decodeIso19794p2v2011(in, template);
+			break;
+		default:
+			throw new IllegalArgumentException();
+		}
+		return template;
+	}
+	/*
+	 * ANSI 378-2004 and ISO 19794-2:2005 share overall layout. They differ in header fields and in encoding of some values.
+	 */
+	private static void decodeLegacy(TemplateReader in, NeutralTemplate template, boolean ansi) {
+		if (ansi) {
+			if (in.readUnsignedShort() == 0)
+				in.skip(4);
+			template.vendorId = in.readUnsignedShort();
+			template.subformat = in.readUnsignedShort();
+		} else
+			in.skip(4);
+		int sensor = in.readUnsignedShort();
+		template.sensorCertified = (sensor & 0x8000) != 0;
+		template.sensorId = sensor & 0xfff;
+		int width = in.readUnsignedShort();
+		int height = in.readUnsignedShort();
+		int resolutionX = in.readUnsignedShort();
+		int resolutionY = in.readUnsignedShort();
+		int count = in.readUnsignedByte();
+		in.skip(1);
+		for (int i = 0; i < count; ++i) {
+			NeutralFingerprint fp = new NeutralFingerprint();
+			fp.position = in.readUnsignedByte();
+			int offsetAndType = in.readUnsignedByte();
+			fp.view = offsetAndType >> 4;
+			fp.scanType = offsetAndType & 0xf;
+			/*
+			 * ANSI 378-2004 uses code 9 for contactless scans. Later formats use code 24.
+			 */
+			if (ansi && fp.scanType == 9)
+				fp.scanType = 24;
+			fp.quality = in.readUnsignedByte();
+			fp.width = width;
+			fp.height = height;
+			fp.resolutionX = resolutionX;
+			fp.resolutionY = resolutionY;
+			fp.ansiAngles = ansi;
+			fp.minutiae = TemplateUtils.decodeMinutiae(in, in.readUnsignedByte(), true, 0);
+			/*
+			 * Zero minutia quality means the quality is not reported.
+			 */
+			CompactMinutiae minutiae = fp.minutiae;
+			for (int j = 0; j < minutiae.size(); ++j)
+				if (minutiae.quality(j) == 0)
+					minutiae.set(j, minutiae.type(j), minutiae.positionX(j), minutiae.positionY(j), minutiae.angle(j), 254);
+			decodeExtensions(in, fp, ansi, ansi);
+			template.fingerprints.add(fp);
+		}
+	}
+	private static void decodeAnsi378v2009(TemplateReader in, NeutralTemplate template) {
+		in.skip(4);
+		template.vendorId = in.readUnsignedShort();
+		template.subformat = in.readUnsignedShort();
+		template.sensorCertified = (in.readUnsignedByte() & 0x80) != 0;
+		template.sensorId = in.readUnsignedShort();
+		int count = in.readUnsignedByte();
+		in.skip(1);
+		for (int i = 0; i < count; ++i) {
+			NeutralFingerprint fp = new NeutralFingerprint();
+			fp.position = in.readUnsignedByte();
+			fp.view = in.readUnsignedByte();
+			fp.scanType = in.readUnsignedByte();
+			fp.quality = in.readUnsignedByte();
+			fp.qualityVendorId = in.readUnsignedShort();
+			fp.qualityAlgorithmId = in.readUnsignedShort();
+			fp.width = in.readUnsignedShort();
+			fp.height = in.readUnsignedShort();
+			fp.resolutionX = in.readUnsignedShort();
+			fp.resolutionY = in.readUnsignedShort();
+			fp.ansiAngles = true;
+			fp.minutiae = TemplateUtils.decodeMinutiae(in, in.readUnsignedByte(), true, 254);
+			decodeExtensions(in, fp, true, true);
+			template.fingerprints.add(fp);
+		}
+	}
+	private static void decodeIso19794p2v2011(TemplateReader in, NeutralTemplate template) {
+		in.skip(4);
+		int count = in.readUnsignedShort();
+		boolean hasCertificates = in.readUnsignedByte() != 0;
+		for (int i = 0; i < count; ++i) {
+			NeutralFingerprint fp = new NeutralFingerprint();
+			int start = in.offset();
+			long length = 0xffff_ffffL & in.readInt();
+			fp.datetime = new byte[9];
+			in.readFully(fp.datetime);
+			fp.sensorType = in.readUnsignedByte();
+			fp.sensorVendor = in.readUnsignedShort();
+			int sensorId = in.readUnsignedShort();
+			if (i == 0)
+				template.sensorId = sensorId;
+			int qcount = in.readUnsignedByte();
+			if (qcount > 0) {
+				fp.quality = in.readUnsignedByte();
+				fp.qualityVendorId = in.readUnsignedShort();
+				fp.qualityAlgorithmId = in.readUnsignedShort();
+				in.skip(5 * (qcount - 1));
+			}
+			if (hasCertificates)
+				in.skip(3 * in.readUnsignedByte());
+			fp.position = in.readUnsignedByte();
+			fp.view = in.readUnsignedByte();
+			fp.resolutionX = in.readUnsignedShort();
+			fp.resolutionY = in.readUnsignedShort();
+			fp.scanType = in.readUnsignedByte();
+			fp.width = in.readUnsignedShort();
+			fp.height = in.readUnsignedShort();
+			int flags = in.readUnsignedByte();
+			fp.endingType = flags & 0xf;
+			fp.minutiae = TemplateUtils.decodeMinutiae(in, in.readUnsignedByte(), flags >> 4 == 6, 254);
+			decodeExtensions(in, fp, false, true);
+			long remaining = start + length - in.offset();
+			if (remaining < 0)
+				throw new TemplateFormatException("Sample length in bytes is not large enough to accommodate fingerprint data.");
+			in.skip((int)Math.min(remaining, Integer.MAX_VALUE));
+			template.fingerprints.add(fp);
+		}
+	}
+	/*
+	 * Only ridge count and core/delta extensions are converted. Other extensions are format-specific or vendor-specific and they are dropped.
+	 * ISO 19794-2:2005 is the only format that does not include the 4-byte block header in extension block length.
+	 */
+	private static void decodeExtensions(TemplateReader in, NeutralFingerprint fp, boolean ansi, boolean inclusive) {
+		int remaining = in.readUnsignedShort();
+		while (remaining > 0) {
+			int type = in.readUnsignedShort();
+			int length = in.readUnsignedShort() + (inclusive ? 0 : 4);
+			if (length < 4 || length > remaining)
+				throw new TemplateFormatException("Extension block length is inconsistent with total length of extension data.");
+			if (type == 1 && length >= 5) {
+				fp.countType = in.readUnsignedByte();
+				fp.countEdges = new byte[length - 5];
+				in.readFully(fp.countEdges);
+			} else if (type == 2) {
+				byte[] data = new byte[length - 4];
+				in.readFully(data);
+				TemplateUtils.decodeExtension(data, inx -> decodeCoreDelta(inx, fp, ansi));
+			} else
+				in.skip(length - 4);
+			remaining -= length;
+		}
+	}
+	private static void decodeCoreDelta(TemplateReader in, NeutralFingerprint fp, boolean ansi) {
+		fp.cores = new ArrayList<>();
+		fp.deltas = new ArrayList<>();
+		int coreInfo = in.readUnsignedByte();
+		int coreCount = ansi ? coreInfo & 0xf : coreInfo;
+		for (int i = 0; i < coreCount; ++i) {
+			int x = in.readUnsignedShort();
+			boolean hasAngle = ansi ? (coreInfo & 0x40) != 0 : (x & 0x4000) != 0;
+			int y = in.readUnsignedShort();
+			fp.cores.add(new int[] { x & 0x3fff, y, hasAngle ? in.readUnsignedByte() : -1 });
+		}
+		int deltaInfo = in.readUnsignedByte();
+		int deltaCount = ansi ? deltaInfo & 0xf : deltaInfo;
+		for (int i = 0; i < deltaCount; ++i) {
+			int x = in.readUnsignedShort();
+			boolean hasAngles = ansi ? (deltaInfo & 0x40) != 0 : (x & 0x4000) != 0;
+			int y = in.readUnsignedShort();
+			int[] delta = new int[] { x & 0x3fff, y, -1, -1, -1 };
+			if (hasAngles)
+				for (int j = 0; j < 3; ++j)
+					delta[2 + j] = in.readUnsignedByte();
+			fp.deltas.add(delta);
+		}
+	}
+	public static byte[] encode(NeutralTemplate template, TemplateFormat format) {
+		switch (format) {
+		case ANSI_378_2004:
+		case ISO_19794_2_2005:
+			return encodeLegacy(template, format == TemplateFormat.ANSI_378_2004);
+		case ANSI_378_2009:
+		case ANSI_378_2009_AM1:
+			return encodeAnsi378v2009(template, format == TemplateFormat.ANSI_378_2009_AM1);
+		case ISO_19794_2_2011:
+			return encodeIso19794p2v2011(template);
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+	/*
+	 * ANSI 378-2004 and ISO 19794-2:2005 share the same magic.
+	 */
+	private static final byte[] LEGACY_MAGIC = new byte[] { 'F', 'M', 'R', 0, ' ', '2', '0', 0 };
+	private static byte[] encodeLegacy(NeutralTemplate template, boolean ansi) {
+		ValidateTemplate.range(template.sensorId, 0, 0xfff, "Sensor ID must fit in 12 bits in target format.");
+		ValidateTemplate.int8(template.fingerprints.size(), "Target format cannot hold more than 255 fingerprints.");
+		/*
+		 * Image dimensions and resolution are stored only once in the template header.
+		 * Minutia positions are in pixels, so fingerprints with different resolutions cannot be merged.
+		 */
+		int width = 0;
+		int height = 0;
+		int resolutionX = 197;
+		int resolutionY = 197;
+		for (int i = 0; i < template.fingerprints.size(); ++i) {
+			NeutralFingerprint fp = template.fingerprints.get(i);
+			width = Math.max(width, fp.width);
+			height = Math.max(height, fp.height);
+			if (i == 0) {
+				resolutionX = fp.resolutionX;
+				resolutionY = fp.resolutionY;
+			} else
+				ValidateTemplate.condition(fp.resolutionX == resolutionX && fp.resolutionY == resolutionY, "All fingerprints must have the same resolution in target format.");
+		}
+		int length = ansi ? 26 : 24;
+		for (NeutralFingerprint fp : template.fingerprints)
+			length += 4 + 6 * fp.minutiae.size() + 2 + measureExtensions(fp, ansi);
+		if (ansi && length >= 0x10000)
+			length += 4;
+		TemplateWriter out = new TemplateWriter(length);
+		out.write(LEGACY_MAGIC);
+		if (ansi) {
+			if (length < 0x10000)
+				out.writeShort(length);
+			else {
+				out.writeShort(0);
+				out.writeInt(length);
+			}
+			out.writeShort(template.vendorId);
+			out.writeShort(template.subformat);
+		} else
+			out.writeInt(length);
+		out.writeShort((template.sensorCertified ? 0x8000 : 0) | template.sensorId);
+		out.writeShort(width);
+		out.writeShort(height);
+		out.writeShort(resolutionX);
+		out.writeShort(resolutionY);
+		out.writeByte(template.fingerprints.size());
+		out.writeByte(0);
+		for (NeutralFingerprint fp : template.fingerprints) {
+			out.writeByte(position(fp.position, false));
+			ValidateTemplate.range(fp.view, 0, 15, "Finger view number must fit in 4 bits in target format.");
+			int scanType = scanType(fp.scanType, ansi ? ANSI_2004_SCAN_TYPES : ISO_2005_SCAN_TYPES);
+			if (ansi && scanType == 24)
+				scanType = 9;
+			out.writeByte((fp.view << 4) | scanType);
+			out.writeByte(fp.quality > 100 ? 0 : fp.quality);
+			writeMinutiae(out, fp, ansi, true, 0);
+			writeExtensions(out, fp, ansi, ansi);
+		}
+		return out.toByteArray();
+	}
+	private static byte[] encodeAnsi378v2009(NeutralTemplate template, boolean amendment) {
+		ValidateTemplate.int8(template.fingerprints.size(), "Target format cannot hold more than 255 fingerprints.");
+		int length = 21;
+		for (NeutralFingerprint fp : template.fingerprints)
+			length += 19 + 6 * fp.minutiae.size() + measureExtensions(fp, true);
+		TemplateWriter out = new TemplateWriter(length);
+		out.write(new byte[] { 'F', 'M', 'R', 0, '0', '3', amendment ? (byte)'5' : (byte)'0', 0 });
+		out.writeInt(length);
+		out.writeShort(template.vendorId);
+		out.writeShort(template.subformat);
+		out.writeByte(template.sensorCertified ? 0x80 : 0);
+		out.writeShort(template.sensorId);
+		out.writeByte(template.fingerprints.size());
+		out.writeByte(0);
+		for (NeutralFingerprint fp : template.fingerprints) {
+			out.writeByte(position(fp.position, amendment));
+			ValidateTemplate.int8(fp.view, "Finger view number must fit in 8 bits in target format.");
+			out.writeByte(fp.view);
+			out.writeByte(scanType(fp.scanType, ANSI_2009_SCAN_TYPES));
+			out.writeByte(fp.quality);
+			out.writeShort(fp.qualityVendorId);
+			out.writeShort(fp.qualityAlgorithmId);
+			out.writeShort(fp.width);
+			out.writeShort(fp.height);
+			out.writeShort(fp.resolutionX);
+			out.writeShort(fp.resolutionY);
+			writeMinutiae(out, fp, true, true, -1);
+			writeExtensions(out, fp, true, true);
+		}
+		return out.toByteArray();
+	}
+	private static final byte[] UNKNOWN_DATETIME = new byte[] { -1, -1, -1, -1, -1, -1, -1, -1, -1 };
+	private static byte[] encodeIso19794p2v2011(NeutralTemplate template) {
+		ValidateTemplate.int16(template.fingerprints.size(), "Target format cannot hold more than 65535 fingerprints.");
+		int length = 15;
+		for (NeutralFingerprint fp : template.fingerprints)
+			length += measureIso19794p2v2011(fp);
+		TemplateWriter out = new TemplateWriter(length);
+		out.write(new byte[] { 'F', 'M', 'R', 0, '0', '3', '0', 0 });
+		out.writeInt(length);
+		out.writeShort(template.fingerprints.size());
+		/*
+		 * Certification flag is set like in Iso19794p2v2011Template. All fingerprints then have empty list of certificates.
+		 */
+		out.writeByte(1);
+		for (NeutralFingerprint fp : template.fingerprints) {
+			out.writeInt(measureIso19794p2v2011(fp));
+			out.write(fp.datetime != null ? fp.datetime : UNKNOWN_DATETIME);
+			out.writeByte(fp.sensorType);
+			out.writeShort(fp.sensorVendor);
+			out.writeShort(template.sensorId);
+			if (fp.quality == 254)
+				out.writeByte(0);
+			else {
+				out.writeByte(1);
+				out.writeByte(fp.quality);
+				out.writeShort(fp.qualityVendorId);
+				out.writeShort(fp.qualityAlgorithmId);
+			}
+			out.writeByte(0);
+			out.writeByte(position(fp.position, true));
+			ValidateTemplate.int8(fp.view, "Finger view number must fit in 8 bits in target format.");
+			out.writeByte(fp.view);
+			out.writeShort(fp.resolutionX);
+			out.writeShort(fp.resolutionY);
+			out.writeByte(scanType(fp.scanType, ISO_2011_SCAN_TYPES));
+			out.writeShort(fp.width);
+			out.writeShort(fp.height);
+			boolean hasMinutiaQuality = hasMinutiaQuality(fp);
+			out.writeByte(((hasMinutiaQuality ? 6 : 5) << 4) | fp.endingType);
+			writeMinutiae(out, fp, false, hasMinutiaQuality, -1);
+			writeExtensions(out, fp, false, true);
+		}
+		return out.toByteArray();
+	}
+	private static int measureIso19794p2v2011(NeutralFingerprint fp) {
+		int header = 14 + 2 + 2 + 1 + (fp.quality == 254 ? 0 : 5) + 1;
+		return header + 13 + (hasMinutiaQuality(fp) ? 6 : 5) * fp.minutiae.size() + 2 + measureExtensions(fp, false);
+	}
+	private static boolean hasMinutiaQuality(NeutralFingerprint fp) {
+		for (int i = 0; i < fp.minutiae.size(); ++i)
+			if (fp.minutiae.quality(i) != 254)
+				return true;
+		return false;
+	}
+	/*
+	 * Minutia quality 254 (not reported) and 255 (failed) is mapped to legacyQuality in formats that do not have these special values.
+	 * Negative legacyQuality means the target format supports the special values.
+	 */
+	private static void writeMinutiae(TemplateWriter out, NeutralFingerprint fp, boolean ansi, boolean withQuality, int legacyQuality) {
+		CompactMinutiae minutiae = fp.minutiae;
+		ValidateTemplate.int8(minutiae.size(), "There cannot be more than 255 minutiae.");
+		out.writeByte(minutiae.size());
+		for (int i = 0; i < minutiae.size(); ++i) {
+			out.writeShort((minutiae.type(i) << 14) | minutiae.positionX(i));
+			out.writeShort(minutiae.positionY(i));
+			out.writeByte(angle(minutiae.angle(i), fp.ansiAngles, ansi));
+			if (withQuality) {
+				int quality = minutiae.quality(i);
+				out.writeByte(legacyQuality >= 0 && quality > 100 ? legacyQuality : quality);
+			}
+		}
+	}
+	private static int measureExtensions(NeutralFingerprint fp, boolean ansi) {
+		int length = 0;
+		if (fp.countEdges != null)
+			length += 4 + 1 + fp.countEdges.length;
+		if (fp.cores != null)
+			length += measureCoreDelta(fp, ansi);
+		return length;
+	}
+	private static int measureCoreDelta(NeutralFingerprint fp, boolean ansi) {
+		int length = 4 + 2;
+		if (ansi) {
+			length += (hasAngles(fp.cores) ? 5 : 4) * fp.cores.size();
+			length += (hasAngles(fp.deltas) ? 7 : 4) * fp.deltas.size();
+		} else {
+			for (int[] core : fp.cores)
+				length += core[2] >= 0 ? 5 : 4;
+			for (int[] delta : fp.deltas)
+				length += delta[2] >= 0 ? 7 : 4;
+		}
+		return length;
+	}
+	/*
+	 * ANSI formats have only one flag for all cores and another flag for all deltas. Angles are written only if all cores/deltas have them.
+	 */
+	private static boolean hasAngles(List<int[]> points) {
+		for (int[] point : points)
+			if (point[2] < 0)
+				return false;
+		return true;
+	}
+	private static void writeExtensions(TemplateWriter out, NeutralFingerprint fp, boolean ansi, boolean inclusive) {
+		int length = measureExtensions(fp, ansi);
+		ValidateTemplate.int16(length, "Total length of extension data must be an unsigned 16-bit number.");
+		out.writeShort(length);
+		if (fp.countEdges != null) {
+			out.writeShort(1);
+			out.writeShort((inclusive ? 4 : 0) + 1 + fp.countEdges.length);
+			out.writeByte(fp.countType);
+			out.write(fp.countEdges);
+		}
+		if (fp.cores != null) {
+			ValidateTemplate.int4(fp.cores.size(), "There can be no more than 15 cores.");
+			ValidateTemplate.int4(fp.deltas.size(), "There can be no more than 15 deltas.");
+			out.writeShort(2);
+			out.writeShort(measureCoreDelta(fp, ansi) - (inclusive ? 0 : 4));
+			boolean coreAngles = ansi && hasAngles(fp.cores);
+			out.writeByte(ansi ? (coreAngles ? 0x40 : 0) | fp.cores.size() : fp.cores.size());
+			for (int[] core : fp.cores) {
+				boolean hasAngle = ansi ? coreAngles : core[2] >= 0;
+				out.writeShort((!ansi && hasAngle ? 0x4000 : 0) | core[0]);
+				out.writeShort(core[1]);
+				if (hasAngle)
+					out.writeByte(angle(core[2], fp.ansiAngles, ansi));
+			}
+			boolean deltaAngles = ansi && hasAngles(fp.deltas);
+			out.writeByte(ansi ? (deltaAngles ? 0x40 : 0) | fp.deltas.size() : fp.deltas.size());
+			for (int[] delta : fp.deltas) {
+				boolean hasAngles = ansi ? deltaAngles : delta[2] >= 0;
+				out.writeShort((!ansi && hasAngles ? 0x4000 : 0) | delta[0]);
+				out.writeShort(delta[1]);
+				if (hasAngles)
+					for (int i = 0; i < 3; ++i)
+						out.writeByte(angle(delta[2 + i], fp.ansiAngles, ansi));
+			}
+		}
+	}
+	/*
+	 * ANSI angles are in 2-degree units (0-179). ISO angles are in 256ths of a full circle (0-255). Both are counterclockwise.
+	 */
+	private static int angle(int angle, boolean fromAnsi, boolean toAnsi) {
+		if (fromAnsi == toAnsi)
+			return angle;
+		if (toAnsi)
+			return (angle * 45 + 32) / 64 % 180;
+		return (angle * 64 + 22) / 45 % 256;
+	}
+	/*
+	 * Older formats only define positions of single fingers. Extended formats add multi-finger positions.
+	 */
+	private static int position(int position, boolean extended) {
+		if (position <= 10 || extended && (position >= 13 && position <= 15 || position >= 40 && position <= 50))
+			return position;
+		throw new TemplateFormatException("Finger position code " + position + " cannot be represented in target format.");
+	}
+	private static final int[] ANSI_2004_SCAN_TYPES = { 0, 1, 2, 3, 8, 24 };
+	private static final int[] ISO_2005_SCAN_TYPES = { 0, 1, 2, 3, 8 };
+	private static final int[] ANSI_2009_SCAN_TYPES = { 0, 1, 2, 3, 8, 10, 11, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29 };
+	private static final int[] ISO_2011_SCAN_TYPES = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 24, 28, 29 };
+	private static boolean supports(int[] supported, int code) {
+		for (int candidate : supported)
+			if (candidate == code)
+				return true;
+		return false;
+	}
+	/*
+	 * Scan types that do not exist in target format are mapped to the closest equivalent.
+	 */
+	private static int scanType(int code, int[] supported) {
+		if (supports(supported, code))
+			return code;
+		if (code >= 24 && code <= 27 && supports(supported, 24))
+			return 24;
+		if (code >= 20 && code <= 27)
+			return code % 2 == 0 ? 0 : 1;
+		if (code >= 4 && code <= 7)
+			return 2;
+		if (code == 9)
+			return 1;
+		if (supports(supported, 28))
+			return 28;
+		if (code == 11)
+			return 2;
+		return 0;
+	}
+}
@@ -0,0 +1,86 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import java.nio.*;
+
+/*
+ * Format detection runs on every template before parsing, often on every inbound record,
+ * so everything here reads the template in place without copying it or allocating readers.
+ * Offsets are relative to buffer position. Buffer position and limit are never modified.
+ */
+public class IdentifyTemplate {
+	public static boolean magic(ByteBuffer template, byte[] magic) {
+		if (template.remaining() < magic.length)
+			return false;
+		int start = template.position();
+		for (int i = 0; i < magic.length; ++i)
+			if (template.get(start + i) != magic[i])
+				return false;
+		return true;
+	}
+	public static int uint8(ByteBuffer template, int offset) {
+		return template.get(template.position() + offset) & 0xff;
+	}
+	public static int uint16(ByteBuffer template, int offset) {
+		return (uint8(template, offset) << 8) | uint8(template, offset + 1);
+	}
+	public static long uint32(ByteBuffer template, int offset) {
+		return ((long)uint16(template, offset) << 16) | uint16(template, offset + 2);
+	}
+	/*
+	 * ANSI 378-2004 and ISO 19794-2:2005 share the same magic. They can be differentiated by examining the length field.
+	 * Returns true for ANSI 378-2004 and false for ISO 19794-2:2005. Caller must check the magic first.
+	 */
+	public static boolean ansi378v2004(ByteBuffer template) {
+		if (template.remaining() < 12)
+			return false;
+		int bytes01 = uint16(template, 8);
+		if (bytes01 >= 26) {
+			/*
+			 * Too big for ISO 19794-2. It's indeed ANSI 378-2004 with 2-byte length field.
+			 */
+			return true;
+		} else if (bytes01 > 0) {
+			/*
+			 * Invalid length field for ANSI 378. Must be ISO 19794-2.
+			 */
+			return false;
+		} else {
+			/*
+			 * If the next two bytes are too big for ANSI 378, it must be ISO 19794-2.
+			 * Otherwise it's ANSI 378-2004 with 6-byte length field.
+			 */
+			return uint16(template, 10) < 24;
+		}
+	}
+	public static boolean iso19794p2v2005(ByteBuffer template) {
+		return template.remaining() >= 12 && !ansi378v2004(template);
+	}
+	/*
+	 * ANSI 378-2009 and ISO 19794-2:2011 share the same magic. They are differentiated by walking fingerprint lengths
+	 * as defined by ISO 19794-2:2011 and checking whether they add up to total length. Caller must check the magic first.
+	 */
+	public static boolean iso19794p2v2011(ByteBuffer template) {
+		int size = template.remaining();
+		if (size < 15)
+			return false;
+		long total = uint32(template, 8);
+		int count = uint16(template, 12);
+		long offset = 15;
+		long sum = 0;
+		for (int i = 0; i < count; ++i) {
+			if (offset + 4 > size)
+				return false;
+			long length = uint32(template, (int)offset);
+			/*
+			 * Allow zero minutia count when just checking template format.
+			 * Otherwise the minimum length would be 39.
+			 */
+			if (length < 34)
+				return false;
+			sum += length;
+			offset += length;
+		}
+		return total == 15 + sum;
+	}
+}
@@ -0,0 +1,99 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import java.nio.*;
+import java.util.*;
+import java.util.function.*;
+import com.machinezoo.fingerprintio.*;
+
+/*
+ * Template classes route parsing and serialization through here. When instrumentation is not installed,
+ * the only overhead is one volatile read. Lambdas do not escape, so JIT can usually scalar-replace them.
+ */
+public class InstrumentTemplate {
+	public static volatile TemplateInstrumentation installed;
+	private static <T> int minutiae(List<T> fingerprints, ToIntFunction<T> minutiae) {
+		int sum = 0;
+		for (T fp : fingerprints)
+			sum += minutiae.applyAsInt(fp);
+		return sum;
+	}
+	/*
+	 * Recoverable violations tolerated by exception handler during parsing on the current thread.
+	 * The object is reused, so that tracking does not allocate.
+	 */
+	private static class Outcome {
+		boolean active;
+		int violations;
+		TemplateRule violation;
+	}
+	private static final ThreadLocal<Outcome> outcomes = ThreadLocal.withInitial(Outcome::new);
+	/*
+	 * Called by ValidateTemplate whenever exception handler tolerates violation of some rule.
+	 */
+	public static void tolerated(TemplateRule rule) {
+		if (installed == null)
+			return;
+		Outcome outcome = outcomes.get();
+		if (outcome.active && outcome.violations++ == 0)
+			outcome.violation = rule;
+	}
+	public static <T> void parse(TemplateFormat format, ByteBuffer template, Runnable parser, Supplier<List<T>> fingerprints, ToIntFunction<T> minutiae) {
+		TemplateInstrumentation instrumentation = installed;
+		if (instrumentation == null) {
+			parser.run();
+			return;
+		}
+		int bytes = template.remaining();
+		Outcome outcome = outcomes.get();
+		/*
+		 * Parsers do not nest at the moment, but saving outer state keeps the counts correct if they ever do.
+		 */
+		boolean outerActive = outcome.active;
+		int outerViolations = outcome.violations;
+		TemplateRule outerViolation = outcome.violation;
+		outcome.active = true;
+		outcome.violations = 0;
+		outcome.violation = null;
+		long start = System.nanoTime();
+		int violations;
+		TemplateRule violation;
+		try {
+			parser.run();
+		} catch (Throwable ex) {
+			/*
+			 * Partially parsed template may contain nulls, so it is not safe to count its fingerprints and minutiae.
+			 */
+			instrumentation.parsed(format, bytes, 0, 0, System.nanoTime() - start, false, outcome.violations, outcome.violation);
+			throw ex;
+		} finally {
+			violations = outcome.violations;
+			violation = outcome.violation;
+			outcome.active = outerActive;
+			outcome.violations = outerViolations;
+			outcome.violation = outerViolation;
+		}
+		long nanos = System.nanoTime() - start;
+		List<T> parsed = fingerprints.get();
+		instrumentation.parsed(format, bytes, parsed.size(), minutiae(parsed, minutiae), nanos, true, violations, violation);
+	}
+	public static <T> byte[] serialize(TemplateFormat format, Supplier<byte[]> serializer, List<T> fingerprints, ToIntFunction<T> minutiae) {
+		TemplateInstrumentation instrumentation = installed;
+		if (instrumentation == null)
+			return serializer.get();
+		long start = System.nanoTime();
+		byte[] serialized;
+		try {
+			serialized = serializer.get();
+		} catch (Throwable ex) {
+			/*
+			 * Invalid template may contain nulls, so it is not safe to count its fingerprints and minutiae.
+			 */
+			instrumentation.serialized(format, 0, 0, 0, System.nanoTime() - start, false);
+			throw ex;
+		}
+		long nanos = System.nanoTime() - start;
+		instrumentation.serialized(format, serialized.length, fingerprints.size(), minutiae(fingerprints, minutiae), nanos, true);
+		return serialized;
+	}
+}
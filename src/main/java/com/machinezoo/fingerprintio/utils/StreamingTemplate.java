@@ -0,0 +1,176 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import java.nio.*;
+import java.util.*;
+import com.machinezoo.fingerprintio.*;
+
+/*
+ * Shared core of streaming encoders. Fields are written big-endian straight into caller's buffer using absolute indexes,
+ * so byte order and position of the buffer do not matter until the template is finished.
+ * Length and count fields are written as placeholders and patched once the value is known.
+ * Buffer position is advanced only by finish(), so failed encoding leaves buffer position where it was.
+ *
+ * Streaming encoders share the minutia record layout and the fingerprint structure of all formats:
+ * fingerprint header, minutia count, minutia records, total length of extensions, and extension blocks.
+ * Everything format-specific is written by the encoder itself.
+ *
+ * The object is reused across templates, so that steady-state encoding does not allocate.
+ */
+public class StreamingTemplate {
+	private enum State {
+		IDLE, TEMPLATE, MINUTIAE, EXTENSIONS
+	}
+	private ByteBuffer buffer;
+	private int start;
+	private int position;
+	private State state = State.IDLE;
+	private int fingerprints;
+	private int minutiae;
+	private int minutiaCountAt;
+	private int extensionLengthAt;
+	/*
+	 * Expected next view for every finger position. Position is a byte in all formats, so the array covers all of them.
+	 * Unlike packed counters in ValidateTemplate.views(), this handles view 15 too, so the encoder accepts everything the template does.
+	 */
+	private final byte[] views = new byte[256];
+	private int previousPosition;
+	public void begin(ByteBuffer buffer) {
+		if (buffer.isReadOnly())
+			throw new ReadOnlyBufferException();
+		this.buffer = buffer;
+		start = position = buffer.position();
+		state = State.TEMPLATE;
+		fingerprints = 0;
+		Arrays.fill(views, (byte)0);
+		previousPosition = -1;
+	}
+	public int start() {
+		return start;
+	}
+	public int position() {
+		return position;
+	}
+	public int length() {
+		return position - start;
+	}
+	public int fingerprints() {
+		return fingerprints;
+	}
+	public int minutiae() {
+		return minutiae;
+	}
+	private void require(boolean condition) {
+		if (!condition)
+			throw new IllegalStateException("Template encoder methods must be called in order: template, fingerprint, minutiae, extensions, finish.");
+	}
+	private int claim(int length) {
+		if (buffer.limit() - position < length)
+			throw new BufferOverflowException();
+		int at = position;
+		position += length;
+		return at;
+	}
+	public void writeByte(int value) {
+		buffer.put(claim(1), (byte)value);
+	}
+	public void writeShort(int value) {
+		patchShort(claim(2), value);
+	}
+	public void writeInt(int value) {
+		patchInt(claim(4), value);
+	}
+	public void write(byte[] data) {
+		int at = claim(data.length);
+		for (int i = 0; i < data.length; ++i)
+			buffer.put(at + i, data[i]);
+	}
+	public void patchByte(int at, int value) {
+		buffer.put(at, (byte)value);
+	}
+	public void patchShort(int at, int value) {
+		buffer.put(at, (byte)(value >> 8));
+		buffer.put(at + 1, (byte)value);
+	}
+	public void patchInt(int at, int value) {
+		patchShort(at, value >> 16);
+		patchShort(at + 2, value);
+	}
+	/*
+	 * Opens gap in already written data. This is used to widen length field after the length turns out to be too large for it.
+	 */
+	public void insert(int at, int length) {
+		claim(length);
+		for (int i = position - 1; i >= at + length; --i)
+			buffer.put(i, buffer.get(i - length));
+	}
+	/*
+	 * Views are checked against the same rules as in templates. Views of every finger position must be sorted and contiguous starting from zero.
+	 * Some formats also require fingerprints with the same position to be listed together.
+	 */
+	public void beginFingerprint(int position, int view, boolean grouped) {
+		require(state != State.IDLE);
+		endFingerprint();
+		if (views[position] != view)
+			throw new TemplateFormatException("Fingerprint view numbers must be unique, assigned contiguously, starting from zero, and sorted.");
+		if (grouped && view > 0 && position != previousPosition)
+			throw new TemplateFormatException("Fingerprints with the same finger position must be listed in the template together.");
+		++views[position];
+		previousPosition = position;
+		++fingerprints;
+	}
+	/*
+	 * Called by the encoder after it writes fingerprint header up to, but not including, minutia count.
+	 */
+	public void beginMinutiae() {
+		minutiaCountAt = claim(1);
+		minutiae = 0;
+		state = State.MINUTIAE;
+	}
+	public void minutia(int type, int x, int y, int angle, int quality, boolean withQuality) {
+		require(state == State.MINUTIAE);
+		ValidateTemplate.int8(minutiae + 1, "There cannot be more than 255 minutiae.");
+		writeShort((type << 14) | x);
+		writeShort(y);
+		writeByte(angle);
+		if (withQuality)
+			writeByte(quality);
+		++minutiae;
+	}
+	/*
+	 * ISO 19794-2:2005 does not include block header in block length. All other formats do.
+	 */
+	public void extension(int type, byte[] data, boolean inclusive) {
+		require(state == State.MINUTIAE || state == State.EXTENSIONS);
+		if (state == State.MINUTIAE)
+			endMinutiae();
+		ValidateTemplate.int16(position - extensionLengthAt - 2 + 4 + data.length, "Total size of all extension blocks must a 16-bit number.");
+		writeShort(type);
+		writeShort(data.length + (inclusive ? 4 : 0));
+		write(data);
+	}
+	private void endMinutiae() {
+		patchByte(minutiaCountAt, minutiae);
+		extensionLengthAt = claim(2);
+		state = State.EXTENSIONS;
+	}
+	private void endFingerprint() {
+		if (state == State.MINUTIAE)
+			endMinutiae();
+		if (state == State.EXTENSIONS)
+			patchShort(extensionLengthAt, position - extensionLengthAt - 2);
+		state = State.TEMPLATE;
+	}
+	public void end() {
+		require(state != State.IDLE);
+		endFingerprint();
+	}
+	public int finish() {
+		buffer.position(position);
+		state = State.IDLE;
+		return position - start;
+	}
+	public void requireMinutiae() {
+		require(state == State.MINUTIAE || state == State.EXTENSIONS);
+	}
+}
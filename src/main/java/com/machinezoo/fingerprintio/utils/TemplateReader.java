@@ -2,89 +2,170 @@
 package com.machinezoo.fingerprintio.utils;
 
 import java.io.*;
-import com.machinezoo.noexception.*;
+import java.nio.*;
+import java.nio.charset.*;
 
+/*
+ * Reads big-endian fields directly from the array. This class sits on the hot path of every parser,
+ * so it avoids stream wrappers and lambdas, which would otherwise allocate on every field read.
+ *
+ * Buffers without accessible backing array (direct, memory-mapped, or read-only) are read in place
+ * via absolute ByteBuffer accessors, which is slightly slower, but it avoids copying the template.
+ */
 public class TemplateReader implements DataInput {
-	private final DataInputStream stream;
+	private final byte[] array;
+	private final ByteBuffer buffer;
+	private final int origin;
+	private final int end;
+	private int position;
 	public TemplateReader(byte[] buffer) {
-		stream = new DataInputStream(new ByteArrayInputStream(buffer));
-	}
-	private static final CheckedExceptionHandler handler = new CheckedExceptionHandler() {
-		@Override
-		public RuntimeException handle(Exception exception) {
-			if (exception instanceof EOFException)
-				return new TemplateEofException();
-			/*
-			 * We should never get here, because byte array reads cannot fail.
-			 */
-			return Exceptions.wrap().handle(exception);
+		this(buffer, 0, buffer.length);
+	}
+	public TemplateReader(byte[] buffer, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > buffer.length - length)
+			throw new IndexOutOfBoundsException();
+		array = buffer;
+		this.buffer = null;
+		origin = position = offset;
+		end = offset + length;
+	}
+	/*
+	 * Reads bytes between position and limit of the buffer. Position of the buffer is not modified.
+	 */
+	public TemplateReader(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			array = buffer.array();
+			this.buffer = null;
+			origin = position = buffer.arrayOffset() + buffer.position();
+			end = buffer.arrayOffset() + buffer.limit();
+		} else {
+			array = null;
+			this.buffer = buffer;
+			origin = position = buffer.position();
+			end = buffer.limit();
 		}
-	};
+	}
+	private int claim(int length) {
+		int start = position;
+		if (length > end - start)
+			throw new TemplateEofException();
+		position = start + length;
+		return start;
+	}
+	private int at(int offset) {
+		return array != null ? array[offset] & 0xff : buffer.get(offset) & 0xff;
+	}
 	public int available() {
-		return handler.getAsInt(() -> stream.available());
+		return end - position;
+	}
+	/*
+	 * Number of bytes read so far, i.e. current offset relative to the start of the input.
+	 */
+	public int offset() {
+		return position - origin;
+	}
+	/*
+	 * Unlike skipBytes(), this method throws if there's not enough data left.
+	 */
+	public void skip(int length) {
+		claim(length);
+	}
+	/*
+	 * Reads byte at the specified distance ahead of current position without consuming any input.
+	 */
+	public int peekUnsignedByte(int ahead) {
+		if (ahead < 0 || ahead >= end - position)
+			throw new TemplateEofException();
+		return at(position + ahead);
 	}
 	@Override
 	public void readFully(byte[] bytes) {
-		handler.run(() -> stream.readFully(bytes));
+		readFully(bytes, 0, bytes.length);
 	}
 	@Override
 	public void readFully(byte[] bytes, int offset, int length) {
-		handler.run(() -> stream.readFully(bytes, offset, length));
+		int start = claim(length);
+		if (array != null)
+			System.arraycopy(array, start, bytes, offset, length);
+		else
+			buffer.duplicate().position(start).get(bytes, offset, length);
 	}
 	@Override
 	public int skipBytes(int number) {
-		return handler.getAsInt(() -> stream.skipBytes(number));
+		int skipped = Math.max(0, Math.min(number, available()));
+		position += skipped;
+		return skipped;
 	}
 	@Override
 	public boolean readBoolean() {
-		return handler.getAsBoolean(() -> stream.readBoolean());
+		return at(claim(1)) != 0;
 	}
 	@Override
 	public byte readByte() {
-		return (byte)handler.getAsInt(() -> stream.readByte());
+		return (byte)at(claim(1));
 	}
 	@Override
 	public int readUnsignedByte() {
-		return handler.getAsInt(() -> stream.readUnsignedByte());
+		return at(claim(1));
 	}
 	@Override
 	public short readShort() {
-		return (short)handler.getAsInt(() -> stream.readShort());
+		return (short)readUnsignedShort();
 	}
 	@Override
 	public int readUnsignedShort() {
-		return handler.getAsInt(() -> stream.readUnsignedShort());
+		int start = claim(2);
+		return (at(start) << 8) | at(start + 1);
 	}
 	@Override
 	public char readChar() {
-		return (char)handler.getAsInt(() -> stream.readChar());
+		return (char)readUnsignedShort();
 	}
 	@Override
 	public int readInt() {
-		return handler.getAsInt(() -> stream.readInt());
+		int start = claim(4);
+		return (at(start) << 24) | (at(start + 1) << 16) | (at(start + 2) << 8) | at(start + 3);
 	}
 	@Override
 	public long readLong() {
-		return handler.getAsLong(() -> stream.readLong());
+		long high = readInt() & 0xffff_ffffL;
+		return (high << 32) | (readInt() & 0xffff_ffffL);
 	}
 	@Override
 	public float readFloat() {
-		/*
-		 * Avoid conversion float->double->float. We are not sure it won't change the float.
-		 */
-		return handler.get(() -> stream.readFloat());
+		return Float.intBitsToFloat(readInt());
 	}
 	@Override
 	public double readDouble() {
-		return handler.getAsDouble(() -> stream.readDouble());
+		return Double.longBitsToDouble(readLong());
 	}
-	@SuppressWarnings("deprecation")
 	@Override
 	public String readLine() {
-		return handler.get(() -> stream.readLine());
+		if (available() == 0)
+			return null;
+		StringBuilder line = new StringBuilder();
+		while (available() > 0) {
+			int c = readUnsignedByte();
+			if (c == '\n')
+				break;
+			if (c == '\r') {
+				if (available() > 0 && at(position) == '\n')
+					++position;
+				break;
+			}
+			line.append((char)c);
+		}
+		return line.toString();
 	}
 	@Override
 	public String readUTF() {
-		return handler.get(() -> stream.readUTF());
+		int length = readUnsignedShort();
+		byte[] bytes = new byte[length];
+		readFully(bytes);
+		/*
+		 * Modified UTF-8 differs from standard UTF-8 only in encoding of NUL and supplementary characters.
+		 * Neither appears in template formats, so standard decoder is good enough.
+		 */
+		return new String(bytes, StandardCharsets.UTF_8);
 	}
 }
@@ -1,15 +1,97 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.utils;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
 import java.util.function.*;
 import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.noexception.*;
 
 public class TemplateUtils {
-	public static void decodeTemplate(byte[] template, Consumer<TemplateReader> parser) {
+	public static void decodeTemplate(ByteBuffer template, Consumer<TemplateReader> parser) {
 		decodeBytes(template, "Unexpected end of template data.", parser);
 	}
+	/*
+	 * Offset is relative to buffer position. Returned buffer shares content with the original, but it has its own position and limit.
+	 */
+	public static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.position(buffer.position() + offset);
+		slice.limit(buffer.position() + offset + length);
+		return slice;
+	}
+	/*
+	 * All formats share minutia record layout: 2-bit type with 14-bit X position, 16-bit Y position, angle byte, and optional quality byte.
+	 * Minutiae are read straight into compact storage, so no objects are allocated per minutia.
+	 */
+	public static CompactMinutiae decodeMinutiae(TemplateReader in, int count, boolean withQuality, int defaultQuality) {
+		CompactMinutiae minutiae = new CompactMinutiae(count);
+		for (int i = 0; i < count; ++i) {
+			int typeAndX = in.readUnsignedShort();
+			int y = in.readUnsignedShort();
+			int angle = in.readUnsignedByte();
+			int quality = withQuality ? in.readUnsignedByte() : defaultQuality;
+			minutiae.set(i, typeAndX >> 14, typeAndX & 0x3fff, y, angle, quality);
+		}
+		return minutiae;
+	}
+	/*
+	 * Decodes list items in place. Objects already in the list are reused and only missing items are created.
+	 * Surplus items are dropped. Items are decoded in list order, because they are read sequentially from the template.
+	 * Decoders receive item index, so that they can report where rule violations were found.
+	 *
+	 * Only lists allocated by this library are reused. Lists are public fields, so the application might have assigned
+	 * immutable list or list shared with other code. Such list is replaced with a new one together with its items.
+	 */
+	public static <T> List<T> decodeList(List<T> list, int count, ObjIntConsumer<T> existing, IntFunction<T> fresh) {
+		if (!owned(list))
+			list = new ArrayList<>(count);
+		else if (list.size() > count)
+			list.subList(count, list.size()).clear();
+		for (int i = 0; i < count; ++i) {
+			if (i < list.size())
+				existing.accept(list.get(i), i);
+			else
+				list.add(fresh.apply(i));
+		}
+		return list;
+	}
+	/*
+	 * Empties list before it is refilled by the decoder. Lists not allocated by this library are replaced as in decodeList().
+	 */
+	public static <T> List<T> clearList(List<T> list) {
+		if (!owned(list))
+			return new ArrayList<>();
+		list.clear();
+		return list;
+	}
+	private static boolean owned(List<?> list) {
+		return list != null && list.getClass() == ArrayList.class;
+	}
+	/*
+	 * Scans extension blocks following minutiae and builds ridge count index straight from the first ridge count extension block.
+	 * Other extension blocks are skipped without being decoded. ISO 19794-2:2005 does not include block header in block length.
+	 */
+	public static RidgeCountGraph decodeCountGraph(TemplateReader in, int minutiaCount, boolean inclusive) {
+		int remaining = in.readUnsignedShort();
+		while (remaining > 0) {
+			int type = in.readUnsignedShort();
+			int length = in.readUnsignedShort() + (inclusive ? 0 : 4);
+			if (length < 4 || length > remaining)
+				throw new TemplateFormatException("Extension block length is inconsistent with total length of extension data.");
+			if (type == 1 && length > 4) {
+				byte[] data = new byte[length - 4];
+				in.readFully(data);
+				return new RidgeCountGraph(minutiaCount, data, 1, data.length - 1);
+			}
+			in.skip(length - 4);
+			remaining -= length;
+		}
+		return null;
+	}
 	public static void decodeExtension(byte[] extension, Consumer<TemplateReader> parser) {
 		decodeBytes(extension, "Unexpected end of extension block.", parser);
 	}
@@ -21,6 +103,14 @@ public class TemplateUtils {
 			throw convertException(ex, eofMessage);
 		}
 	}
+	public static void decodeBytes(ByteBuffer data, String eofMessage, Consumer<TemplateReader> parser) {
+		try {
+			TemplateReader in = new TemplateReader(data);
+			parser.accept(in);
+		} catch (Throwable ex) {
+			throw convertException(ex, eofMessage);
+		}
+	}
 	public static <T> T decodeBytesTo(byte[] data, String eofMessage, Function<TemplateReader, T> parser) {
 		try {
 			TemplateReader in = new TemplateReader(data);
@@ -29,6 +119,34 @@ public class TemplateUtils {
 			throw convertException(ex, eofMessage);
 		}
 	}
+	public static <T> T decodeBytesTo(ByteBuffer data, String eofMessage, Function<TemplateReader, T> parser) {
+		try {
+			TemplateReader in = new TemplateReader(data);
+			return parser.apply(in);
+		} catch (Throwable ex) {
+			throw convertException(ex, eofMessage);
+		}
+	}
+	/*
+	 * Length is checked up front, so that nothing is written into the buffer if the template does not fit.
+	 */
+	public static void encodeTo(ByteBuffer buffer, int length, Consumer<TemplateWriter> encoder) {
+		if (buffer.isReadOnly())
+			throw new ReadOnlyBufferException();
+		if (buffer.remaining() < length)
+			throw new BufferOverflowException();
+		TemplateWriter out = new TemplateWriter(buffer);
+		encoder.accept(out);
+		out.flush();
+	}
+	public static void encodeTo(OutputStream stream, int length, Consumer<TemplateWriter> encoder) throws IOException {
+		TemplateWriter out = new TemplateWriter(stream, length);
+		encoder.accept(out);
+		out.flush();
+	}
+	public static void encodeTo(WritableByteChannel channel, int length, Consumer<TemplateWriter> encoder) throws IOException {
+		encodeTo(Channels.newOutputStream(channel), length, encoder);
+	}
 	private static TemplateFormatException convertException(Throwable ex, String eofMessage) {
 		if (ex instanceof TemplateEofException)
 			return new TemplateFormatException(eofMessage);
@@ -41,12 +159,9 @@ public class TemplateUtils {
 			return (TemplateFormatException)ex;
 		return new TemplateFormatException(ex);
 	}
-	public static <T extends Enum<T>> T decodeType(int code, Class<T> clazz, ExceptionHandler handler, String message) {
-		return decodeType(code, clazz.getEnumConstants(), Enum::ordinal, handler, message);
-	}
-	public static <T> T decodeType(int code, T[] candidates, ToIntFunction<T> codes, ExceptionHandler handler, String message) {
-		T type = Arrays.stream(candidates).filter(t -> codes.applyAsInt(t) == code).findFirst().orElse(null);
-		ValidateTemplate.condition(type != null, handler, message);
+	public static <T> T decodeType(int code, CodeTable<T> table, ExceptionHandler handler, int fingerprint, int minutia, Supplier<String> message) {
+		T type = table.get(code);
+		ValidateTemplate.condition(type != null, handler, TemplateRule.CODE, fingerprint, minutia, message);
 		return type;
 	}
 }
@@ -2,68 +2,238 @@
 package com.machinezoo.fingerprintio.utils;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
 import com.machinezoo.noexception.*;
 
+/*
+ * Writes big-endian fields directly into the array. Callers usually know exact output size from measure(),
+ * in which case the backing array is handed out by toByteArray() without copying.
+ * The buffer still grows if the estimate is too low, so that a wrong measure() results in a copy, not in corrupt output.
+ *
+ * When writing into a heap ByteBuffer, fields are written straight into its backing array.
+ * Streams and direct buffers receive data through a small chunk that is flushed whenever it fills up,
+ * so that large galleries can be serialized without materializing every template in memory.
+ * IOException from the stream is sneaked through, because DataOutput methods are called from non-throwing code.
+ */
 public class TemplateWriter implements DataOutput {
-	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-	private final DataOutputStream stream = new DataOutputStream(buffer);
+	private static final int CHUNK = 8192;
+	private byte[] buffer;
+	private int start;
+	private int position;
+	private int end;
+	private final boolean growable;
+	private final ByteBuffer target;
+	private final OutputStream stream;
+	private long flushed;
+	public TemplateWriter() {
+		this(64);
+	}
+	public TemplateWriter(int capacity) {
+		buffer = new byte[capacity];
+		end = capacity;
+		growable = true;
+		target = null;
+		stream = null;
+	}
+	/*
+	 * Writes at buffer's position. Buffer position is advanced by flush().
+	 */
+	public TemplateWriter(ByteBuffer target) {
+		growable = false;
+		stream = null;
+		if (target.hasArray()) {
+			this.target = target;
+			buffer = target.array();
+			start = position = target.arrayOffset() + target.position();
+			end = target.arrayOffset() + target.limit();
+		} else {
+			this.target = target;
+			buffer = new byte[Math.min(target.remaining(), CHUNK)];
+			end = buffer.length;
+		}
+	}
+	/*
+	 * Length is only a hint used to avoid allocating large chunk for small templates.
+	 */
+	public TemplateWriter(OutputStream stream, int length) {
+		buffer = new byte[Math.max(16, Math.min(length, CHUNK))];
+		end = buffer.length;
+		growable = false;
+		target = null;
+		this.stream = stream;
+	}
+	private boolean chunked() {
+		return stream != null || target != null && !target.hasArray();
+	}
+	private int claim(int length) {
+		if (length > end - position)
+			reserve(length);
+		int at = position;
+		position = at + length;
+		return at;
+	}
+	private void reserve(int length) {
+		if (growable) {
+			buffer = Arrays.copyOf(buffer, Math.max(position + length, 2 * buffer.length));
+			end = buffer.length;
+		} else if (chunked()) {
+			flush();
+			if (length > end - position)
+				throw new BufferOverflowException();
+		} else
+			throw new BufferOverflowException();
+	}
+	/*
+	 * Moves written data to the target buffer or stream. Does nothing for plain array output.
+	 */
+	public void flush() {
+		int length = position - start;
+		if (length == 0 || growable)
+			return;
+		if (stream != null)
+			Exceptions.sneak().run(() -> stream.write(buffer, start, length));
+		else if (target.hasArray())
+			target.position(target.position() + length);
+		else
+			target.put(buffer, start, length);
+		flushed += length;
+		if (chunked())
+			position = start = 0;
+		else
+			start = position;
+	}
+	public long size() {
+		return flushed + position - start;
+	}
 	@Override
 	public void write(int byteValue) {
-		Exceptions.wrap().run(() -> stream.write(byteValue));
+		/*
+		 * Claim first. Growable buffer may be reallocated by the claim.
+		 */
+		int at = claim(1);
+		buffer[at] = (byte)byteValue;
 	}
 	@Override
 	public void write(byte[] bytes) {
-		Exceptions.wrap().run(() -> stream.write(bytes));
+		write(bytes, 0, bytes.length);
 	}
 	@Override
 	public void write(byte[] bytes, int offset, int length) {
-		Exceptions.wrap().run(() -> stream.write(bytes, offset, length));
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		if (length > end - position && chunked()) {
+			/*
+			 * Large blocks bypass the chunk, so that they are not copied twice.
+			 */
+			flush();
+			if (length > end) {
+				if (stream != null)
+					Exceptions.sneak().run(() -> stream.write(bytes, offset, length));
+				else
+					target.put(bytes, offset, length);
+				flushed += length;
+				return;
+			}
+		}
+		int at = claim(length);
+		System.arraycopy(bytes, offset, buffer, at, length);
+	}
+	/*
+	 * Copies bytes straight from the reader into the output without temporary array.
+	 * Availability is checked first, so that nothing is written if the input is truncated.
+	 * Chunked outputs receive long copies one chunk at a time.
+	 */
+	public void write(TemplateReader in, int length) {
+		if (length > in.available())
+			throw new TemplateEofException();
+		while (length > end - position && chunked()) {
+			int part = end - position;
+			in.readFully(buffer, position, part);
+			position = end;
+			flush();
+			length -= part;
+		}
+		int at = claim(length);
+		in.readFully(buffer, at, length);
 	}
 	@Override
 	public void writeBoolean(boolean value) {
-		Exceptions.wrap().run(() -> stream.writeBoolean(value));
+		write(value ? 1 : 0);
 	}
 	@Override
 	public void writeByte(int value) {
-		Exceptions.wrap().run(() -> stream.writeByte(value));
+		write(value);
 	}
 	@Override
 	public void writeShort(int value) {
-		Exceptions.wrap().run(() -> stream.writeShort(value));
+		int at = claim(2);
+		buffer[at] = (byte)(value >> 8);
+		buffer[at + 1] = (byte)value;
 	}
 	@Override
 	public void writeChar(int value) {
-		Exceptions.wrap().run(() -> stream.writeChar(value));
+		writeShort(value);
 	}
 	@Override
 	public void writeInt(int value) {
-		Exceptions.wrap().run(() -> stream.writeInt(value));
+		int at = claim(4);
+		buffer[at] = (byte)(value >> 24);
+		buffer[at + 1] = (byte)(value >> 16);
+		buffer[at + 2] = (byte)(value >> 8);
+		buffer[at + 3] = (byte)value;
 	}
 	@Override
 	public void writeLong(long value) {
-		Exceptions.wrap().run(() -> stream.writeLong(value));
+		writeInt((int)(value >> 32));
+		writeInt((int)value);
 	}
 	@Override
 	public void writeFloat(float value) {
-		Exceptions.wrap().run(() -> stream.writeFloat(value));
+		writeInt(Float.floatToIntBits(value));
 	}
 	@Override
 	public void writeDouble(double value) {
-		Exceptions.wrap().run(() -> stream.writeDouble(value));
+		writeLong(Double.doubleToLongBits(value));
 	}
 	@Override
 	public void writeBytes(String text) {
-		Exceptions.wrap().run(() -> stream.writeBytes(text));
+		int at = claim(text.length());
+		for (int i = 0; i < text.length(); ++i)
+			buffer[at + i] = (byte)text.charAt(i);
 	}
 	@Override
 	public void writeChars(String text) {
-		Exceptions.wrap().run(() -> stream.writeChars(text));
+		for (int i = 0; i < text.length(); ++i)
+			writeChar(text.charAt(i));
 	}
 	@Override
 	public void writeUTF(String text) {
-		Exceptions.wrap().run(() -> stream.writeUTF(text));
+		/*
+		 * Modified UTF-8 is identical to standard UTF-8 for all characters that could appear in templates.
+		 */
+		byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+		writeShort(encoded.length);
+		write(encoded);
+	}
+	/*
+	 * Overwrites already written field. This is used to fill in length fields once the length is known.
+	 * Only array output supports patching, because other outputs might have been already flushed.
+	 */
+	public void patchShort(int at, int value) {
+		if (!growable)
+			throw new IllegalStateException();
+		Objects.checkFromIndexSize(at, 2, position);
+		buffer[at] = (byte)(value >> 8);
+		buffer[at + 1] = (byte)value;
+	}
+	public void patchInt(int at, int value) {
+		patchShort(at, value >> 16);
+		patchShort(at + 2, value);
 	}
 	public byte[] toByteArray() {
-		return buffer.toByteArray();
+		if (!growable)
+			throw new IllegalStateException();
+		return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
 	}
 }
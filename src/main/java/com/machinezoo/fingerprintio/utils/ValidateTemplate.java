@@ -1,26 +1,47 @@
 // Part of FingerprintIO: https://fingerprintio.machinezoo.com
 package com.machinezoo.fingerprintio.utils;
 
+import java.util.*;
+import java.util.function.*;
 import com.machinezoo.fingerprintio.*;
 import com.machinezoo.noexception.*;
 
 public class ValidateTemplate {
-	public static void fail(ExceptionHandler handler, String message, Throwable cause) {
-		var exception = new TemplateFormatException(message, cause);
-		if (!handler.handle(exception))
-			throw exception;
+	private static final ExceptionHandler SILENCE = Exceptions.silence();
+	/*
+	 * All recoverable violations go through here. Fingerprint and minutia index is -1 when not applicable.
+	 * Exception is created only when the handler has to see it. Diagnostics handler receives the violation directly
+	 * and silencing handler would discard the exception anyway. Message supplier is usually a constant lambda,
+	 * which is not allocated at all, so reporting a violation to these handlers does not allocate.
+	 */
+	public static void fail(ExceptionHandler handler, TemplateRule rule, int fingerprint, int minutia, Supplier<String> message, Throwable cause) {
+		if (handler instanceof TemplateDiagnostics)
+			((TemplateDiagnostics)handler).report(rule, fingerprint, minutia, message);
+		else if (handler != SILENCE) {
+			var exception = new TemplateFormatException(rule, fingerprint, minutia, message.get(), cause);
+			if (!handler.handle(exception))
+				throw exception;
+		}
+		InstrumentTemplate.tolerated(rule);
+	}
+	public static void fail(ExceptionHandler handler, TemplateRule rule, int fingerprint, int minutia, Supplier<String> message) {
+		fail(handler, rule, fingerprint, minutia, message, null);
+	}
+	public static void condition(boolean condition, ExceptionHandler handler, TemplateRule rule, int fingerprint, int minutia, Supplier<String> message) {
+		if (!condition)
+			fail(handler, rule, fingerprint, minutia, message, null);
 	}
-	public static void fail(ExceptionHandler handler, String message) {
-		var exception = new TemplateFormatException(message);
-		if (!handler.handle(exception))
-			throw exception;
+	public static void condition(boolean condition, ExceptionHandler handler, TemplateRule rule, int fingerprint, Supplier<String> message) {
+		if (!condition)
+			fail(handler, rule, fingerprint, -1, message, null);
 	}
-	public static void condition(boolean condition, ExceptionHandler handler, String message) {
+	public static void condition(boolean condition, ExceptionHandler handler, TemplateRule rule, Supplier<String> message) {
 		if (!condition)
-			fail(handler, message);
+			fail(handler, rule, -1, -1, message, null);
 	}
 	public static void condition(boolean condition, String message) {
-		condition(condition, Exceptions.propagate(), message);
+		if (!condition)
+			throw new TemplateFormatException(message);
 	}
 	public static void range(int value, int min, int max, String message) {
 		condition(value >= min && value <= max, message);
@@ -56,14 +77,56 @@ public class ValidateTemplate {
 		int14(value, message);
 		range(value, 0, size - 1, message);
 	}
-	public static void rules(Runnable validator, ExceptionHandler handler, String message) {
+	/*
+	 * Allocation-free fast path for finger position and view number rules, which are the same in all formats.
+	 * Views of fingerprints with the same finger position must be unique, contiguous from zero, and sorted,
+	 * which means that the k-th fingerprint with given position must have view number k.
+	 * Expected next view for every position is kept in 4-bit counters packed in two longs.
+	 * When the fast path fails, the template is not necessarily invalid, because rare cases do not fit the counters.
+	 * Full checks supplied by the caller are then run to either accept the template or report the precise rule that is violated.
+	 */
+	public static <T> void views(List<T> fingerprints, ToIntFunction<T> positions, ToIntFunction<T> views, boolean grouped, Consumer<List<T>> full) {
+		if (!viewsFast(fingerprints, positions, views, grouped))
+			full.accept(fingerprints);
+	}
+	private static <T> boolean viewsFast(List<T> fingerprints, ToIntFunction<T> positions, ToIntFunction<T> views, boolean grouped) {
+		long low = 0;
+		long high = 0;
+		int previous = -1;
+		for (int i = 0; i < fingerprints.size(); ++i) {
+			T fingerprint = fingerprints.get(i);
+			int position = positions.applyAsInt(fingerprint);
+			int view = views.applyAsInt(fingerprint);
+			if (position < 0 || position >= 32 || view < 0 || view >= 15)
+				return false;
+			int shift = 4 * (position & 0xf);
+			long counters = position < 16 ? low : high;
+			if (((counters >>> shift) & 0xf) != view)
+				return false;
+			/*
+			 * Some formats also require fingerprints with the same position to be listed together.
+			 */
+			if (grouped && view > 0 && position != previous)
+				return false;
+			previous = position;
+			if (position < 16)
+				low += 1L << shift;
+			else
+				high += 1L << shift;
+		}
+		return true;
+	}
+	/*
+	 * Validation of the decoded template stops at the first violated constraint, which is reported as a single violation.
+	 */
+	public static void structure(Runnable validator, ExceptionHandler handler) {
 		try {
 			validator.run();
 		} catch (Throwable ex) {
-			fail(handler, message, ex);
+			/*
+			 * Validation errors describe the violated constraint precisely, so their message is reused.
+			 */
+			fail(handler, TemplateRule.STRUCTURE, -1, -1, () -> ex.getMessage() != null ? ex.getMessage() : "Template failed validation.", ex);
 		}
 	}
-	public static void structure(Runnable validator, ExceptionHandler handler) {
-		rules(validator, handler, "Template failed validation.");
-	}
 }
@@ -0,0 +1,104 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import java.util.*;
+
+/*
+ * Zonal quality extensions keep zone values packed exactly as they appear in the template, MSB first.
+ * Parsing and serialization are then plain array copies. Unpacking is only done when the application asks for it.
+ */
+public class ZonalQuality {
+	/*
+	 * For bit depths that divide a byte (1, 2, 4), every byte maps to fixed number of zones.
+	 * Tables hold unpacked zones for all 256 byte values, so unpacking is one table lookup per zone without shifting.
+	 */
+	private static final byte[][] TABLES = new byte[9][];
+	static {
+		for (int bits = 1; bits <= 4; bits *= 2) {
+			int perByte = 8 / bits;
+			byte[] table = new byte[256 * perByte];
+			for (int b = 0; b < 256; ++b)
+				for (int k = 0; k < perByte; ++k)
+					table[b * perByte + k] = (byte)((b >> (8 - bits * (k + 1))) & ((1 << bits) - 1));
+			TABLES[bits] = table;
+		}
+	}
+	public static int length(int zones, int bits) {
+		return (zones * bits + 7) / 8;
+	}
+	public static void bits(int bits) {
+		ValidateTemplate.range(bits, 1, 8, "Number of bits per zone in zonal quality extension must be in range 1 through 8.");
+	}
+	/*
+	 * Number of zone columns or rows. Cell size is checked here, so that it does not surface as division by zero.
+	 */
+	public static int columns(int imageWidth, int zoneWidth) {
+		ValidateTemplate.nonzero8(zoneWidth, "Zonal quality cell width must be a non-zero unsigned 8-bit number.");
+		return (imageWidth + zoneWidth - 1) / zoneWidth;
+	}
+	public static int rows(int imageHeight, int zoneHeight) {
+		ValidateTemplate.nonzero8(zoneHeight, "Zonal quality cell height must be a non-zero unsigned 8-bit number.");
+		return (imageHeight + zoneHeight - 1) / zoneHeight;
+	}
+	/*
+	 * Zone count is computed in long, because 16-bit image dimensions and 1-pixel cells can exceed int range.
+	 */
+	private static void validate(byte[] packed, int bits, int columns, int rows) {
+		bits(bits);
+		Objects.requireNonNull(packed, "Zonal quality array must be non-null.");
+		ValidateTemplate.condition((long)columns * rows * bits <= 8L * packed.length, "Zonal quality array is too short for image size, zone size, and bit depth.");
+	}
+	public static int quality(byte[] packed, int bits, int columns, int rows, int x, int y) {
+		validate(packed, bits, columns, rows);
+		Objects.checkIndex(x, columns);
+		Objects.checkIndex(y, rows);
+		return get(packed, bits, y * columns + x);
+	}
+	private static int get(byte[] packed, int bits, int zone) {
+		int bit = zone * bits;
+		int word = (packed[bit >> 3] & 0xff) << 8;
+		if ((bit >> 3) + 1 < packed.length)
+			word |= packed[(bit >> 3) + 1] & 0xff;
+		return (word >> (16 - bits - (bit & 7))) & ((1 << bits) - 1);
+	}
+	public static int[] unpack(byte[] packed, int bits, int columns, int rows) {
+		validate(packed, bits, columns, rows);
+		int zones = columns * rows;
+		int[] values = new int[zones];
+		if (bits == 8) {
+			for (int i = 0; i < zones; ++i)
+				values[i] = packed[i] & 0xff;
+			return values;
+		}
+		byte[] table = TABLES[bits];
+		if (table != null) {
+			int perByte = 8 / bits;
+			int zone = 0;
+			for (int i = 0; zone < zones; ++i) {
+				int offset = (packed[i] & 0xff) * perByte;
+				for (int k = 0; k < perByte && zone < zones; ++k)
+					values[zone++] = table[offset + k];
+			}
+		} else {
+			for (int i = 0; i < zones; ++i)
+				values[i] = get(packed, bits, i);
+		}
+		return values;
+	}
+	public static byte[] pack(int[] values, int bits) {
+		byte[] packed = new byte[length(values.length, bits)];
+		if (bits == 8) {
+			for (int i = 0; i < values.length; ++i)
+				packed[i] = (byte)values[i];
+			return packed;
+		}
+		for (int i = 0; i < values.length; ++i) {
+			int bit = i * bits;
+			int shifted = values[i] << (16 - bits - (bit & 7));
+			packed[bit >> 3] |= (byte)(shifted >> 8);
+			if ((shifted & 0xff) != 0)
+				packed[(bit >> 3) + 1] |= (byte)shifted;
+		}
+		return packed;
+	}
+}
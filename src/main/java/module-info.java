@@ -8,7 +8,7 @@ import com.machinezoo.stagean.*;
  * @see <a href="https://fingerprintio.machinezoo.com/">FingerprintIO tutorial</a>
  */
 @DocIssue("Complete tutorial: parsing, serialization, detection/accepts, recoverable error handling.")
-@ApiIssue("GitHub issue #37: compact and card subformats. Pull some of it from unpublished code.")
+@ApiIssue("GitHub issue #37: card subformats of ISO 19794-2:2011. Pull some of it from unpublished code.")
 module com.machinezoo.fingerprintio {
 	exports com.machinezoo.fingerprintio;
 	exports com.machinezoo.fingerprintio.common;
@@ -17,6 +17,7 @@ module com.machinezoo.fingerprintio {
 	exports com.machinezoo.fingerprintio.ansi378v2009am1;
 	exports com.machinezoo.fingerprintio.iso19794p1v2011;
 	exports com.machinezoo.fingerprintio.iso19794p2v2005;
+	exports com.machinezoo.fingerprintio.iso19794p2v2005card;
 	exports com.machinezoo.fingerprintio.iso19794p2v2011;
 	/*
 	 * Transitive, because we expose ExceptionHandler in the API.
@@ -0,0 +1,121 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+
+public class TemplateArchiveTest {
+	private static List<byte[]> templates() {
+		List<byte[]> templates = new ArrayList<>();
+		for (int i = 0; i < 3000; ++i)
+			templates.add(TestUtils.sample(TemplateFormat.values()[i % TemplateFormat.values().length]));
+		templates.add(new byte[0]);
+		return templates;
+	}
+	private static void assertArchive(List<byte[]> templates, TemplateArchive archive) {
+		assertEquals(templates.size(), archive.size());
+		for (int i = 0; i < templates.size(); ++i) {
+			ByteBuffer template = archive.get(i);
+			assertTrue(template.isReadOnly());
+			assertEquals(0, template.position());
+			byte[] content = new byte[template.remaining()];
+			template.get(content);
+			assertArrayEquals(templates.get(i), content);
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> archive.get(templates.size()));
+		assertThrows(IndexOutOfBoundsException.class, () -> archive.get(-1));
+	}
+	@Test
+	public void file(@TempDir Path directory) throws IOException {
+		Path path = directory.resolve("gallery.fioa");
+		List<byte[]> templates = templates();
+		try (TemplateArchiveWriter writer = new TemplateArchiveWriter(path)) {
+			for (byte[] template : templates)
+				writer.add(template);
+		}
+		TemplateArchive archive = TemplateArchive.map(path);
+		assertArchive(templates, archive);
+		/*
+		 * Slices can be passed straight to parsers.
+		 */
+		ByteBuffer iso = archive.get(TemplateFormat.ISO_19794_2_2005.ordinal());
+		assertEquals(TemplateFormat.ISO_19794_2_2005, TemplateFormat.identify(iso));
+		TestUtils.assertJsonEquals(new Iso19794p2v2005Template(TestUtils.sample(TemplateFormat.ISO_19794_2_2005)), new Iso19794p2v2005Template(iso));
+	}
+	@Test
+	public void stream() throws IOException {
+		List<byte[]> templates = templates();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		TemplateArchiveWriter writer = new TemplateArchiveWriter(stream);
+		for (int i = 0; i < templates.size(); ++i)
+			writer.add(i % 2 == 0 ? TestUtils.slice(templates.get(i)) : TestUtils.direct(templates.get(i)));
+		writer.close();
+		writer.close();
+		assertThrows(IllegalStateException.class, () -> writer.add(new byte[1]));
+		assertArchive(templates, new TemplateArchive(TestUtils.slice(stream.toByteArray())));
+		assertArchive(templates, new TemplateArchive(TestUtils.direct(stream.toByteArray())));
+	}
+	@Test
+	public void empty() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		new TemplateArchiveWriter(stream).close();
+		assertEquals(0, new TemplateArchive(ByteBuffer.wrap(stream.toByteArray())).size());
+	}
+	@Test
+	public void oversized() throws IOException {
+		/*
+		 * Templates are discarded by the stream, so the test does not need 2GB of memory.
+		 */
+		byte[] large = new byte[1 << 24];
+		TemplateArchiveWriter writer = new TemplateArchiveWriter(OutputStream.nullOutputStream());
+		for (int i = 0; i < 127; ++i)
+			writer.add(large);
+		assertThrows(IllegalStateException.class, () -> writer.add(large));
+		writer.add(new byte[100]);
+		writer.close();
+	}
+	@Test
+	public void failed() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] data, int offset, int length) {
+				if (length == 13)
+					throw new UncheckedIOException(new IOException());
+				super.write(data, offset, length);
+			}
+		};
+		TemplateArchiveWriter writer = new TemplateArchiveWriter(stream);
+		writer.add(new byte[10]);
+		assertThrows(UncheckedIOException.class, () -> writer.add(new byte[13]));
+		writer.close();
+		/*
+		 * Template that failed to be written is not in the index.
+		 */
+		assertArchive(List.of(new byte[10]), new TemplateArchive(ByteBuffer.wrap(stream.toByteArray())));
+	}
+	@Test
+	public void corrupted() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		try (TemplateArchiveWriter writer = new TemplateArchiveWriter(stream)) {
+			writer.add(TestUtils.sample(TemplateFormat.ANSI_378_2009));
+		}
+		byte[] archive = stream.toByteArray();
+		assertThrows(TemplateFormatException.class, () -> new TemplateArchive(ByteBuffer.wrap(archive, 0, archive.length - 1)));
+		assertThrows(TemplateFormatException.class, () -> new TemplateArchive(ByteBuffer.wrap(TestUtils.sample(TemplateFormat.ANSI_378_2009))));
+		byte[] version = archive.clone();
+		version[7] = 2;
+		assertThrows(TemplateFormatException.class, () -> new TemplateArchive(ByteBuffer.wrap(version)));
+		byte[] count = archive.clone();
+		count[count.length - 13] = 2;
+		assertThrows(TemplateFormatException.class, () -> new TemplateArchive(ByteBuffer.wrap(count)));
+		byte[] index = archive.clone();
+		ByteBuffer.wrap(index).putLong(index.length - 16 - 16, 1_000_000);
+		assertThrows(TemplateFormatException.class, () -> new TemplateArchive(ByteBuffer.wrap(index)).get(0));
+	}
+}
@@ -0,0 +1,86 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+
+public class TemplateBatchTest {
+	/*
+	 * Valid templates interleaved with garbage. Bogus ANSI 378-2004 and ISO 19794-2:2011 samples fail strict parsing.
+	 */
+	private static List<byte[]> mixed() {
+		List<byte[]> templates = new ArrayList<>();
+		for (int i = 0; i < 100; ++i) {
+			templates.add(TestUtils.sample(TemplateFormat.values()[i % TemplateFormat.values().length]));
+			templates.add(new byte[i]);
+		}
+		return templates;
+	}
+	private static void assertMixed(List<byte[]> templates, List<TemplateBatchResult<Object>> results) {
+		assertEquals(templates.size(), results.size());
+		for (int i = 0; i < templates.size(); ++i) {
+			TemplateBatchResult<Object> result = results.get(i);
+			assertTrue(result.template == null ^ result.exception == null);
+			TemplateFormat format = TemplateFormat.identify(templates.get(i));
+			if (format == null || format == TemplateFormat.ANSI_378_2004 || format == TemplateFormat.ISO_19794_2_2011)
+				assertNotNull(result.exception);
+			else
+				assertNotNull(result.template);
+			if (format == TemplateFormat.ISO_19794_2_2005)
+				assertTrue(result.template instanceof Iso19794p2v2005Template);
+		}
+	}
+	@Test
+	public void identify() {
+		List<byte[]> templates = mixed();
+		assertMixed(templates, TemplateBatch.decode(templates));
+	}
+	@Test
+	public void decoder() {
+		List<byte[]> templates = new ArrayList<>();
+		for (int i = 0; i < 50; ++i) {
+			templates.add(Ansi378v2009TemplateTest.sample());
+			templates.add(TestUtils.sample(TemplateFormat.ISO_19794_2_2005));
+		}
+		List<TemplateBatchResult<Ansi378v2009Template>> results = TemplateBatch.decode(templates, Ansi378v2009Template::new);
+		for (int i = 0; i < templates.size(); ++i) {
+			if (i % 2 == 0)
+				TestUtils.assertJsonEquals(new Ansi378v2009Template(templates.get(i)), results.get(i).template);
+			else
+				assertNotNull(results.get(i).exception);
+		}
+	}
+	@Test
+	public void spliterator() {
+		List<byte[]> templates = mixed();
+		List<TemplateBatchResult<TemplateSummary>> results = TemplateBatch.decode(templates.spliterator(), TemplateSummary::new);
+		assertEquals(templates.size(), results.size());
+		for (int i = 0; i < templates.size(); ++i) {
+			if (i % 2 == 0)
+				assertEquals(TemplateFormat.identify(templates.get(i)), results.get(i).template.format);
+			else
+				assertNotNull(results.get(i).exception);
+		}
+	}
+	@Test
+	public void executor() {
+		List<byte[]> templates = mixed();
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			List<TemplateBatchResult<Ansi378v2009Template>> results = TemplateBatch.decode(new LinkedList<>(templates), Ansi378v2009Template::new, executor);
+			assertEquals(templates.size(), results.size());
+			for (int i = 0; i < templates.size(); ++i)
+				assertEquals(TemplateFormat.identify(templates.get(i)) == TemplateFormat.ANSI_378_2009, results.get(i).template != null);
+			assertEquals(0, TemplateBatch.decode(List.of(), Ansi378v2009Template::new, executor).size());
+			assertThrows(IllegalStateException.class, () -> TemplateBatch.decode(templates, t -> {
+				throw new IllegalStateException();
+			}, executor));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import com.machinezoo.fingerprintio.ansi378v2004.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.iso19794p2v2011.*;
+
+public class TemplateCanonicalizerTest {
+	private static void assertSame(byte[] expected, byte[] actual) {
+		assertFalse(Arrays.equals(expected, actual));
+		assertArrayEquals(TemplateCanonicalizer.canonicalize(expected), TemplateCanonicalizer.canonicalize(actual));
+		assertEquals(TemplateCanonicalizer.hash(expected), TemplateCanonicalizer.hash(actual));
+	}
+	@Test
+	public void idempotent() {
+		for (TemplateFormat format : TemplateFormat.values()) {
+			byte[] canonical = TemplateCanonicalizer.canonicalize(TestUtils.sample(format));
+			assertEquals(format, TemplateFormat.identify(canonical));
+			assertArrayEquals(canonical, TemplateCanonicalizer.canonicalize(canonical));
+			assertArrayEquals(canonical, TemplateCanonicalizer.canonicalize(format, TestUtils.slice(TestUtils.sample(format))));
+		}
+	}
+	@Test
+	public void ansi2004Length() {
+		byte[] sample = TestUtils.sample(TemplateFormat.ANSI_378_2004);
+		ByteBuffer extended = ByteBuffer.allocate(sample.length + 4);
+		extended.put(sample, 0, 8);
+		extended.putShort((short)0);
+		extended.putInt(sample.length + 4);
+		extended.put(sample, 10, sample.length - 10);
+		assertSame(sample, extended.array());
+	}
+	@Test
+	public void ansi2004Large() {
+		Ansi378v2004Template template = new Ansi378v2004Template();
+		template.width = 600;
+		template.height = 400;
+		for (int i = 0; i < 44; ++i) {
+			Ansi378v2004Fingerprint fp = new Ansi378v2004Fingerprint();
+			fp.position = Ansi378v2004Position.values()[i % 11];
+			fp.view = i / 11;
+			for (int j = 0; j < 255; ++j) {
+				Ansi378v2004Minutia minutia = new Ansi378v2004Minutia();
+				minutia.positionX = 2 * j;
+				minutia.positionY = j;
+				fp.minutiae.add(minutia);
+			}
+			template.fingerprints.add(fp);
+		}
+		byte[] serialized = template.toByteArray();
+		assertTrue(serialized.length > 0x10000);
+		assertArrayEquals(serialized, TemplateCanonicalizer.canonicalize(serialized));
+	}
+	private static Ansi378v2009Extension extension(int type, int... data) {
+		Ansi378v2009Extension extension = new Ansi378v2009Extension();
+		extension.type = type;
+		extension.data = new byte[data.length];
+		for (int i = 0; i < data.length; ++i)
+			extension.data[i] = (byte)data[i];
+		return extension;
+	}
+	@Test
+	public void extensions() {
+		Ansi378v2009Template template = new Ansi378v2009Template();
+		Ansi378v2009Fingerprint fp = new Ansi378v2009Fingerprint();
+		fp.width = 400;
+		fp.height = 500;
+		fp.extensions.add(extension(0x201, 1, 2, 3));
+		fp.extensions.add(extension(0x201, 1, 2));
+		fp.extensions.add(extension(0x101, 5));
+		template.fingerprints.add(fp);
+		byte[] original = template.toByteArray();
+		Collections.reverse(fp.extensions);
+		assertSame(original, template.toByteArray());
+	}
+	private static Iso19794p2v2011Template iso2011() {
+		Iso19794p2v2011Template template = new Iso19794p2v2011Template();
+		Iso19794p2v2011Fingerprint fp = new Iso19794p2v2011Fingerprint();
+		fp.width = 400;
+		fp.height = 500;
+		for (int i = 0; i < 3; ++i) {
+			Iso19794p2v2011Minutia minutia = new Iso19794p2v2011Minutia();
+			minutia.type = Iso19794p2v2011MinutiaType.ENDING;
+			minutia.positionX = 10 * i;
+			minutia.positionY = 20 * i;
+			minutia.angle = 30 * i;
+			fp.minutiae.add(minutia);
+		}
+		template.fingerprints.add(fp);
+		return template;
+	}
+	@Test
+	public void minutiaQuality() {
+		byte[] compact = iso2011().toByteArray();
+		/*
+		 * Flags are at fixed offset in single-fingerprint template without quality records and certificates.
+		 * Expand 5-byte minutia records to 6-byte records with unreported quality.
+		 */
+		int flags = 15 + 4 + 9 + 5 + 1 + 1 + 11;
+		assertEquals(0x50, compact[flags] & 0xf0);
+		int count = compact[flags + 1] & 0xff;
+		ByteBuffer expanded = ByteBuffer.allocate(compact.length + count);
+		expanded.put(compact, 0, flags);
+		expanded.put((byte)(0x60 | (compact[flags] & 0xf)));
+		expanded.put((byte)count);
+		for (int i = 0; i < count; ++i) {
+			expanded.put(compact, flags + 2 + 5 * i, 5);
+			expanded.put((byte)254);
+		}
+		expanded.put(compact, flags + 2 + 5 * count, compact.length - flags - 2 - 5 * count);
+		expanded.putInt(8, expanded.capacity());
+		expanded.putInt(15, expanded.capacity() - 15);
+		assertSame(compact, expanded.array());
+	}
+	@Test
+	public void datetime() {
+		/*
+		 * Datetime is content. Templates that differ only in stored datetime must stay distinct.
+		 */
+		Iso19794p2v2011Template template = iso2011();
+		template.fingerprints.get(0).datetime.year = 2020;
+		template.fingerprints.get(0).datetime.day = 15;
+		byte[] original = template.toByteArray(false);
+		assertArrayEquals(original, TemplateCanonicalizer.canonicalize(original));
+		template.fingerprints.get(0).datetime.day = 0xff;
+		assertNotEquals(TemplateCanonicalizer.hash(original), TemplateCanonicalizer.hash(template.toByteArray()));
+		template.fingerprints.get(0).datetime.year = 0;
+		template.fingerprints.get(0).datetime.month = 3;
+		byte[] zero = template.toByteArray(false);
+		template.fingerprints.get(0).datetime.year = 0xffff;
+		template.fingerprints.get(0).datetime.month = 0xff;
+		assertNotEquals(TemplateCanonicalizer.hash(zero), TemplateCanonicalizer.hash(template.toByteArray()));
+	}
+	@Test
+	public void hash() {
+		Set<Long> hashes = new HashSet<>();
+		for (TemplateFormat format : TemplateFormat.values()) {
+			byte[] sample = TestUtils.sample(format);
+			long hash = TemplateCanonicalizer.hash(sample);
+			assertEquals(hash, TemplateCanonicalizer.hash(TestUtils.slice(sample)));
+			assertEquals(hash, TemplateCanonicalizer.hash(format, TestUtils.slice(sample)));
+			/*
+			 * Hash is computed while canonicalizing, but it must be the same as if canonical form was hashed.
+			 */
+			assertEquals(hash, TemplateCanonicalizer.hash(TemplateCanonicalizer.canonicalize(sample)));
+			hashes.add(hash);
+		}
+		Iso19794p2v2011Template template = iso2011();
+		hashes.add(TemplateCanonicalizer.hash(template.toByteArray()));
+		template.fingerprints.get(0).minutiae.get(1).angle = 31;
+		hashes.add(TemplateCanonicalizer.hash(template.toByteArray()));
+		assertEquals(TemplateFormat.values().length + 2, hashes.size());
+	}
+	@Test
+	public void unsupported() {
+		assertThrows(TemplateFormatException.class, () -> TemplateCanonicalizer.canonicalize(new byte[100]));
+		byte[] sample = TestUtils.sample(TemplateFormat.ANSI_378_2009);
+		assertThrows(TemplateFormatException.class, () -> TemplateCanonicalizer.canonicalize(Arrays.copyOf(sample, sample.length - 10)));
+	}
+}
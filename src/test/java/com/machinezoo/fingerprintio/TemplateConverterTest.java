@@ -0,0 +1,164 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import com.machinezoo.fingerprintio.ansi378v2004.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.ansi378v2009am1.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.fingerprintio.iso19794p2v2011.*;
+import com.machinezoo.noexception.*;
+
+public class TemplateConverterTest {
+	private static void parse(TemplateFormat format, byte[] template) {
+		/*
+		 * Some samples carry invalid data over to the converted template, so only structure is checked here.
+		 */
+		switch (format) {
+		case ANSI_378_2004:
+			new Ansi378v2004Template(template, Exceptions.silence());
+			break;
+		case ANSI_378_2009:
+			new Ansi378v2009Template(template, Exceptions.silence());
+			break;
+		case ANSI_378_2009_AM1:
+			new Ansi378v2009Am1Template(template, Exceptions.silence());
+			break;
+		case ISO_19794_2_2005:
+			new Iso19794p2v2005Template(template, Exceptions.silence());
+			break;
+		case ISO_19794_2_2011:
+			new Iso19794p2v2011Template(template, Exceptions.silence());
+			break;
+		}
+	}
+	@Test
+	public void pairs() {
+		for (TemplateFormat source : TemplateFormat.values()) {
+			for (TemplateFormat target : TemplateFormat.values()) {
+				byte[] sample = TestUtils.sample(source);
+				byte[] converted = TemplateConverter.convert(sample, target);
+				assertEquals(target, TemplateFormat.identify(converted));
+				parse(target, converted);
+				TemplateSummary expected = new TemplateSummary(sample);
+				TemplateSummary actual = new TemplateSummary(converted);
+				assertEquals(expected.fingerprints.size(), actual.fingerprints.size());
+				for (int i = 0; i < expected.fingerprints.size(); ++i) {
+					assertEquals(expected.fingerprints.get(i).position, actual.fingerprints.get(i).position);
+					assertEquals(expected.fingerprints.get(i).view, actual.fingerprints.get(i).view);
+					assertEquals(expected.fingerprints.get(i).minutiaCount, actual.fingerprints.get(i).minutiaCount);
+				}
+			}
+		}
+	}
+	@Test
+	public void same() {
+		for (TemplateFormat format : TemplateFormat.values()) {
+			byte[] sample = TestUtils.sample(format);
+			assertArrayEquals(sample, TemplateConverter.convert(sample, format));
+		}
+	}
+	private static Ansi378v2009Template ansi() {
+		Ansi378v2009Template t = new Ansi378v2009Template();
+		t.sensorId = 0x123;
+		Ansi378v2009Fingerprint f = new Ansi378v2009Fingerprint();
+		f.position = Ansi378v2009Position.RIGHT_INDEX;
+		f.scanType = Ansi378v2009ScanType.LIVE_OPTICAL_CONTACT_ROLLED;
+		f.quality = 60;
+		f.width = 500;
+		f.height = 600;
+		for (int i = 0; i < 180; ++i) {
+			Ansi378v2009Minutia m = new Ansi378v2009Minutia();
+			m.type = Ansi378v2009MinutiaType.values()[i % 3];
+			m.positionX = i;
+			m.positionY = 2 * i;
+			m.angle = i;
+			m.quality = i % 2 == 0 ? 254 : i % 101;
+			f.minutiae.add(m);
+		}
+		f.coredelta = new Ansi378v2009CoreDeltaExtension();
+		Ansi378v2009Core core = new Ansi378v2009Core();
+		core.positionX = 100;
+		core.positionY = 200;
+		core.angle = 90;
+		f.coredelta.cores.add(core);
+		f.counts = new Ansi378v2009CountExtension();
+		f.counts.type = Ansi378v2009CountType.QUADRANTS;
+		Ansi378v2009CountEdge edge = new Ansi378v2009CountEdge();
+		edge.from = 1;
+		edge.to = 2;
+		edge.count = 3;
+		f.counts.edges.add(edge);
+		t.fingerprints.add(f);
+		return t;
+	}
+	@Test
+	public void iso() {
+		Ansi378v2009Template source = ansi();
+		Iso19794p2v2011Template t = new Iso19794p2v2011Template(TemplateConverter.convert(source.toByteArray(), TemplateFormat.ISO_19794_2_2011));
+		Iso19794p2v2011Fingerprint f = t.fingerprints.get(0);
+		assertEquals(0x123, f.sensorId);
+		assertEquals(Iso19794p2v2011Position.RIGHT_INDEX, f.position);
+		assertEquals(Iso19794p2v2011ScanType.LIVE_ROLLED, f.scanType);
+		assertEquals(1, f.qrecords.size());
+		assertEquals(60, f.qrecords.get(0).quality);
+		assertEquals(500, f.width);
+		assertEquals(600, f.height);
+		assertEquals(180, f.minutiae.size());
+		for (int i = 0; i < 180; ++i) {
+			Ansi378v2009Minutia expected = source.fingerprints.get(0).minutiae.get(i);
+			Iso19794p2v2011Minutia actual = f.minutiae.get(i);
+			assertEquals(expected.type.ordinal(), actual.type.ordinal());
+			assertEquals(expected.positionX, actual.positionX);
+			assertEquals(expected.positionY, actual.positionY);
+			assertEquals(Math.round(expected.angle * 256 / 180.0) % 256, actual.angle);
+			assertEquals(expected.quality, actual.quality);
+		}
+		assertEquals(128, (int)f.coredelta.cores.get(0).angle);
+		assertEquals(Iso19794p2v2011CountType.QUADRANTS, f.counts.type);
+		assertEquals(3, f.counts.edges.get(0).count);
+	}
+	@Test
+	public void legacy() {
+		Ansi378v2009Template source = ansi();
+		Iso19794p2v2005Template t = new Iso19794p2v2005Template(TemplateConverter.convert(source.toByteArray(), TemplateFormat.ISO_19794_2_2005));
+		assertEquals(500, t.width);
+		assertEquals(600, t.height);
+		Iso19794p2v2005Fingerprint f = t.fingerprints.get(0);
+		assertEquals(Iso19794p2v2005ScanType.LIVE_ROLLED, f.scanType);
+		assertEquals(60, f.quality);
+		for (int i = 0; i < 180; ++i) {
+			Ansi378v2009Minutia expected = source.fingerprints.get(0).minutiae.get(i);
+			assertEquals(expected.quality == 254 ? 0 : expected.quality, f.minutiae.get(i).quality);
+		}
+	}
+	@Test
+	public void roundtrip() {
+		Ansi378v2009Template source = ansi();
+		byte[] iso = TemplateConverter.convert(source.toByteArray(), TemplateFormat.ISO_19794_2_2011);
+		Ansi378v2009Template t = new Ansi378v2009Template(TemplateConverter.convert(iso, TemplateFormat.ANSI_378_2009));
+		for (int i = 0; i < 180; ++i) {
+			Ansi378v2009Minutia expected = source.fingerprints.get(0).minutiae.get(i);
+			Ansi378v2009Minutia actual = t.fingerprints.get(0).minutiae.get(i);
+			assertEquals(expected.positionX, actual.positionX);
+			assertEquals(expected.positionY, actual.positionY);
+			assertEquals(expected.angle, actual.angle);
+			assertEquals(expected.quality, actual.quality);
+		}
+	}
+	@Test
+	public void unrepresentable() {
+		Ansi378v2009Template t = ansi();
+		Ansi378v2009Fingerprint f = new Ansi378v2009Fingerprint();
+		f.position = Ansi378v2009Position.LEFT_INDEX;
+		f.width = 500;
+		f.height = 600;
+		f.resolutionX = 100;
+		f.resolutionY = 100;
+		t.fingerprints.add(f);
+		byte[] template = t.toByteArray();
+		assertThrows(TemplateFormatException.class, () -> TemplateConverter.convert(template, TemplateFormat.ANSI_378_2004));
+		TemplateConverter.convert(template, TemplateFormat.ISO_19794_2_2011);
+	}
+}
@@ -0,0 +1,129 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.stream.*;
+import org.junit.jupiter.api.*;
+import com.machinezoo.fingerprintio.ansi378v2004.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.iso19794p2v2011.*;
+import com.machinezoo.noexception.*;
+
+public class TemplateDiagnosticsTest {
+	/*
+	 * Reference handler that receives exceptions and counts them the same way diagnostics are expected to.
+	 */
+	private static class CollectingHandler extends ExceptionHandler {
+		final Map<TemplateRule, Long> counts = new EnumMap<>(TemplateRule.class);
+		final List<String> violations = new ArrayList<>();
+		@Override
+		public boolean handle(Throwable exception) {
+			var specific = (TemplateFormatException)exception;
+			counts.merge(specific.rule(), 1L, Long::sum);
+			violations.add(specific.rule() + " " + specific.fingerprint() + " " + specific.minutia() + " " + specific.getMessage());
+			return true;
+		}
+	}
+	@Test
+	public void counts() {
+		/*
+		 * Bogus samples fail strict parsing, so there are some violations to count.
+		 */
+		byte[] ansi = TestUtils.sample(TemplateFormat.ANSI_378_2004);
+		byte[] iso = TestUtils.sample(TemplateFormat.ISO_19794_2_2011);
+		CollectingHandler expected = new CollectingHandler();
+		TemplateDiagnostics diagnostics = new TemplateDiagnostics();
+		TestUtils.assertJsonEquals(new Ansi378v2004Template(ansi, Exceptions.silence()), new Ansi378v2004Template(ansi, diagnostics));
+		TestUtils.assertJsonEquals(new Iso19794p2v2011Template(iso, Exceptions.silence()), new Iso19794p2v2011Template(iso, diagnostics));
+		new Ansi378v2004Template(ansi, expected);
+		new Iso19794p2v2011Template(iso, expected);
+		assertFalse(expected.counts.isEmpty());
+		assertEquals(expected.counts, diagnostics.counts());
+		assertEquals(expected.counts.values().stream().mapToLong(n -> n).sum(), diagnostics.total());
+		for (TemplateRule rule : expected.counts.keySet())
+			assertEquals(expected.counts.get(rule), diagnostics.count(rule));
+		for (TemplateRule rule : TemplateRule.values())
+			if (!expected.counts.containsKey(rule))
+				assertEquals(0, diagnostics.count(rule));
+		diagnostics.clear();
+		assertEquals(0, diagnostics.total());
+		assertTrue(diagnostics.counts().isEmpty());
+	}
+	@Test
+	public void listener() {
+		byte[] ansi = TestUtils.sample(TemplateFormat.ANSI_378_2004);
+		CollectingHandler expected = new CollectingHandler();
+		new Ansi378v2004Template(ansi, expected);
+		List<String> reported = new ArrayList<>();
+		new Ansi378v2004Template(ansi, new TemplateDiagnostics((rule, fingerprint, minutia, message) -> {
+			reported.add(rule + " " + fingerprint + " " + minutia + " " + message.get());
+		}));
+		assertFalse(reported.isEmpty());
+		assertEquals(expected.violations, reported);
+	}
+	@Test
+	public void location() {
+		Ansi378v2009Template template = new Ansi378v2009Template(TestUtils.sample(TemplateFormat.ANSI_378_2009));
+		int fingerprint = template.fingerprints.size() - 1;
+		int minutia = template.fingerprints.get(fingerprint).minutiae.size() - 1;
+		/*
+		 * Find the byte holding type of the last minutia by changing the type and comparing serialized templates.
+		 * Type is stored in the top two bits of that byte. Code 11 binary is not assigned to any minutia type.
+		 */
+		template.fingerprints.get(fingerprint).minutiae.get(minutia).type = Ansi378v2009MinutiaType.ENDING;
+		byte[] serialized = template.toByteArray();
+		template.fingerprints.get(fingerprint).minutiae.get(minutia).type = Ansi378v2009MinutiaType.BIFURCATION;
+		int offset = Arrays.mismatch(serialized, template.toByteArray());
+		serialized[offset] |= (byte)0xc0;
+		List<String> reported = new ArrayList<>();
+		TemplateDiagnostics diagnostics = new TemplateDiagnostics((rule, fp, m, message) -> reported.add(rule + " " + fp + " " + m));
+		new Ansi378v2009Template(serialized, diagnostics);
+		/*
+		 * Minutia with unknown type is decoded with null type, which then fails structural validation.
+		 */
+		assertEquals(List.of(TemplateRule.CODE + " " + fingerprint + " " + minutia, TemplateRule.STRUCTURE + " -1 -1"), reported);
+		var thrown = assertThrows(TemplateFormatException.class, () -> new Ansi378v2009Template(serialized));
+		assertEquals(TemplateRule.CODE, thrown.rule());
+		assertEquals(fingerprint, thrown.fingerprint());
+		assertEquals(minutia, thrown.minutia());
+	}
+	@Test
+	public void valid() {
+		TemplateDiagnostics diagnostics = new TemplateDiagnostics();
+		new Ansi378v2009Template(TestUtils.sample(TemplateFormat.ANSI_378_2009), diagnostics);
+		assertEquals(0, diagnostics.total());
+	}
+	@Test
+	public void structure() {
+		Ansi378v2009Template template = new Ansi378v2009Template(TestUtils.sample(TemplateFormat.ANSI_378_2009));
+		template.fingerprints.get(0).quality = 200;
+		byte[] invalid = template.toByteArray(false);
+		TemplateDiagnostics diagnostics = new TemplateDiagnostics();
+		new Ansi378v2009Template(invalid, diagnostics);
+		assertEquals(1, diagnostics.total());
+		assertEquals(1, diagnostics.count(TemplateRule.STRUCTURE));
+		/*
+		 * Diagnostics must not leak into validation that runs outside of parsing.
+		 */
+		assertThrows(TemplateFormatException.class, () -> template.toByteArray());
+		assertThrows(TemplateFormatException.class, () -> new Ansi378v2009Template(invalid));
+		assertEquals(1, diagnostics.total());
+	}
+	@Test
+	public void parallel() {
+		byte[] ansi = TestUtils.sample(TemplateFormat.ANSI_378_2004);
+		TemplateDiagnostics single = new TemplateDiagnostics();
+		new Ansi378v2004Template(ansi, single);
+		TemplateDiagnostics shared = new TemplateDiagnostics();
+		IntStream.range(0, 1000).parallel().forEach(n -> new Ansi378v2004Template(ansi, shared));
+		for (Map.Entry<TemplateRule, Long> entry : single.counts().entrySet())
+			assertEquals(1000 * entry.getValue(), shared.count(entry.getKey()));
+	}
+	@Test
+	public void unrecoverable() {
+		TemplateDiagnostics diagnostics = new TemplateDiagnostics();
+		assertThrows(TemplateFormatException.class, () -> new Ansi378v2004Template(new byte[100], diagnostics));
+		assertEquals(0, diagnostics.total());
+	}
+}
@@ -2,6 +2,8 @@
 package com.machinezoo.fingerprintio;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 import com.machinezoo.fingerprintio.ansi378v2004.*;
 import com.machinezoo.fingerprintio.ansi378v2009.*;
@@ -18,4 +20,32 @@ public class TemplateFormatTest {
 		assertEquals(TemplateFormat.ISO_19794_2_2005, TemplateFormat.identify(Iso19794p2v2005TemplateTest.sample()));
 		assertEquals(TemplateFormat.ISO_19794_2_2011, TemplateFormat.identify(Iso19794p2v2011TemplateTest.sample()));
 	}
+	@Test
+	public void truncated() {
+		for (TemplateFormat format : TemplateFormat.values()) {
+			byte[] template = TestUtils.sample(format);
+			for (int length = 0; length < 16; ++length) {
+				byte[] prefix = Arrays.copyOf(template, length);
+				TemplateFormat identified = TemplateFormat.identify(prefix);
+				assertEquals(identified == TemplateFormat.ANSI_378_2004, Ansi378v2004Template.accepts(prefix));
+				assertEquals(identified == TemplateFormat.ANSI_378_2009, Ansi378v2009Template.accepts(prefix));
+				assertEquals(identified == TemplateFormat.ANSI_378_2009_AM1, Ansi378v2009Am1Template.accepts(prefix));
+				assertEquals(identified == TemplateFormat.ISO_19794_2_2005, Iso19794p2v2005Template.accepts(prefix));
+				assertEquals(identified == TemplateFormat.ISO_19794_2_2011, Iso19794p2v2011Template.accepts(prefix));
+			}
+		}
+	}
+	@Test
+	public void buffers() {
+		for (TemplateFormat format : TemplateFormat.values()) {
+			byte[] template = TestUtils.sample(format);
+			ByteBuffer slice = TestUtils.slice(template);
+			assertEquals(format, TemplateFormat.identify(slice));
+			assertEquals(8, slice.position());
+			ByteBuffer direct = TestUtils.direct(template);
+			assertEquals(format, TemplateFormat.identify(direct));
+			assertEquals(0, direct.position());
+			assertEquals(template.length, direct.limit());
+		}
+	}
 }
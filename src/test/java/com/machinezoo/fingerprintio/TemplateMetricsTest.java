@@ -0,0 +1,99 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import com.machinezoo.fingerprintio.ansi378v2004.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.noexception.*;
+
+public class TemplateMetricsTest {
+	private TemplateMetrics metrics;
+	@BeforeEach
+	public void install() {
+		metrics = new TemplateMetrics();
+		TemplateInstrumentation.install(metrics);
+	}
+	@AfterEach
+	public void uninstall() {
+		TemplateInstrumentation.install(null);
+	}
+	@Test
+	public void parse() {
+		byte[] sample = TestUtils.sample(TemplateFormat.ISO_19794_2_2005);
+		Iso19794p2v2005Template template = new Iso19794p2v2005Template(sample);
+		new Iso19794p2v2005Template(TestUtils.slice(sample), Exceptions.silence());
+		TemplateMetrics.Counters counters = metrics.parsing(TemplateFormat.ISO_19794_2_2005);
+		assertEquals(2, counters.successes());
+		assertEquals(0, counters.failures());
+		assertEquals(2 * sample.length, counters.bytes());
+		assertEquals(2 * template.fingerprints.size(), counters.fingerprints());
+		assertEquals(2 * template.fingerprints.stream().mapToInt(fp -> fp.minutiae.size()).sum(), counters.minutiae());
+		assertTrue(counters.nanos() > 0);
+		assertEquals(2, Arrays.stream(counters.latencyHistogram()).sum());
+		long[] sizes = counters.sizeHistogram();
+		assertEquals(2, sizes[64 - Long.numberOfLeadingZeros(sample.length)]);
+		assertEquals(0, metrics.parsing(TemplateFormat.ANSI_378_2009).successes());
+		assertEquals(0, metrics.serialization(TemplateFormat.ISO_19794_2_2005).successes());
+	}
+	@Test
+	public void serialize() {
+		Ansi378v2009Template template = new Ansi378v2009Template(TestUtils.sample(TemplateFormat.ANSI_378_2009));
+		byte[] serialized = template.toByteArray();
+		template.toByteArray(false);
+		TemplateMetrics.Counters counters = metrics.serialization(TemplateFormat.ANSI_378_2009);
+		assertEquals(2, counters.successes());
+		assertEquals(2 * serialized.length, counters.bytes());
+		assertEquals(2 * template.fingerprints.size(), counters.fingerprints());
+		template.fingerprints.get(0).quality = 1000;
+		assertThrows(TemplateFormatException.class, template::toByteArray);
+		assertEquals(2, counters.successes());
+		assertEquals(1, counters.failures());
+	}
+	@Test
+	public void failure() {
+		byte[] sample = TestUtils.sample(TemplateFormat.ISO_19794_2_2005);
+		assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2005Template(Arrays.copyOf(sample, 20)));
+		assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2005Template(new byte[100]));
+		TemplateMetrics.Counters counters = metrics.parsing(TemplateFormat.ISO_19794_2_2005);
+		assertEquals(0, counters.successes());
+		assertEquals(2, counters.failures());
+		assertEquals(0, counters.bytes());
+		metrics.clear();
+		assertEquals(0, counters.failures());
+		assertEquals(0, Arrays.stream(counters.latencyHistogram()).sum());
+	}
+	@Test
+	public void lenient() {
+		/*
+		 * Bogus sample fails strict parsing, so lenient parsing succeeds only by tolerating some violations.
+		 */
+		byte[] sample = TestUtils.sample(TemplateFormat.ANSI_378_2004);
+		new Ansi378v2004Template(sample, Exceptions.silence());
+		TemplateDiagnostics diagnostics = new TemplateDiagnostics();
+		new Ansi378v2004Template(sample, diagnostics);
+		TemplateMetrics.Counters counters = metrics.parsing(TemplateFormat.ANSI_378_2004);
+		assertEquals(2, counters.successes());
+		assertEquals(2, counters.tolerated());
+		assertEquals(2 * diagnostics.total(), counters.violations());
+		assertEquals(1, counters.violatedRules().size());
+		assertEquals(2, counters.violatedRules().values().iterator().next());
+		assertTrue(diagnostics.counts().containsKey(counters.violatedRules().keySet().iterator().next()));
+		new Ansi378v2009Template(TestUtils.sample(TemplateFormat.ANSI_378_2009), Exceptions.silence());
+		assertEquals(0, metrics.parsing(TemplateFormat.ANSI_378_2009).tolerated());
+		assertEquals(0, metrics.parsing(TemplateFormat.ANSI_378_2009).violations());
+		metrics.clear();
+		assertEquals(0, counters.tolerated());
+		assertTrue(counters.violatedRules().isEmpty());
+	}
+	@Test
+	public void disabled() {
+		TemplateInstrumentation.install(null);
+		assertNull(TemplateInstrumentation.installed());
+		new Iso19794p2v2005Template(TestUtils.sample(TemplateFormat.ISO_19794_2_2005)).toByteArray();
+		assertEquals(0, metrics.parsing(TemplateFormat.ISO_19794_2_2005).successes());
+		assertEquals(0, metrics.serialization(TemplateFormat.ISO_19794_2_2005).successes());
+	}
+}
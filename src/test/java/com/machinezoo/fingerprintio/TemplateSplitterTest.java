@@ -0,0 +1,85 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static java.util.stream.Collectors.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+public class TemplateSplitterTest {
+	/*
+	 * Some samples have incorrect length field. Canonicalization fixes it.
+	 */
+	private static byte[] sample(TemplateFormat format) {
+		return TemplateCanonicalizer.canonicalize(TestUtils.sample(format));
+	}
+	private static List<byte[]> templates() {
+		List<byte[]> templates = new ArrayList<>();
+		for (int i = 0; i < 3; ++i)
+			for (TemplateFormat format : TemplateFormat.values())
+				templates.add(sample(format));
+		/*
+		 * ANSI 378-2004 with 6-byte length field.
+		 */
+		byte[] sample = sample(TemplateFormat.ANSI_378_2004);
+		ByteBuffer extended = ByteBuffer.allocate(sample.length + 4);
+		extended.put(sample, 0, 8);
+		extended.putShort((short)0);
+		extended.putInt(sample.length + 4);
+		extended.put(sample, 10, sample.length - 10);
+		templates.add(extended.array());
+		return templates;
+	}
+	private static byte[] concat(List<byte[]> templates) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for (byte[] template : templates)
+			stream.writeBytes(template);
+		return stream.toByteArray();
+	}
+	private static void assertSplit(List<byte[]> expected, List<byte[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i)
+			assertArrayEquals(expected.get(i), actual.get(i));
+	}
+	@Test
+	public void stream() {
+		List<byte[]> templates = templates();
+		assertSplit(templates, TemplateSplitter.split(new ByteArrayInputStream(concat(templates))).collect(toList()));
+		assertEquals(0, TemplateSplitter.split(new ByteArrayInputStream(new byte[0])).count());
+	}
+	@Test
+	public void channel() {
+		List<byte[]> templates = templates();
+		ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(concat(templates)));
+		assertSplit(templates, TemplateSplitter.split(channel).collect(toList()));
+		byte[] sample = sample(TemplateFormat.ISO_19794_2_2005);
+		assertThrows(TemplateFormatException.class, () -> new TemplateSplitter(Channels.newChannel(new ByteArrayInputStream(sample)), sample.length - 1).next());
+		assertArrayEquals(sample, new TemplateSplitter(Channels.newChannel(new ByteArrayInputStream(sample)), sample.length).next());
+	}
+	@Test
+	public void bounded() {
+		List<byte[]> templates = templates();
+		ByteArrayInputStream stream = new ByteArrayInputStream(concat(templates));
+		TemplateSplitter splitter = new TemplateSplitter(stream);
+		assertArrayEquals(templates.get(0), splitter.next());
+		assertEquals(concat(templates).length - templates.get(0).length, stream.available());
+		assertTrue(splitter.hasNext());
+		assertTrue(splitter.hasNext());
+		assertEquals(concat(templates).length - templates.get(0).length - templates.get(1).length, stream.available());
+	}
+	@Test
+	public void malformed() {
+		byte[] sample = sample(TemplateFormat.ISO_19794_2_2005);
+		assertThrows(TemplateFormatException.class, () -> TemplateSplitter.split(new ByteArrayInputStream(Arrays.copyOf(sample, sample.length - 1))).count());
+		assertThrows(TemplateFormatException.class, () -> TemplateSplitter.split(new ByteArrayInputStream(Arrays.copyOf(sample, 5))).count());
+		assertThrows(TemplateFormatException.class, () -> TemplateSplitter.split(new ByteArrayInputStream(new byte[100])).count());
+		assertThrows(TemplateFormatException.class, () -> new TemplateSplitter(new ByteArrayInputStream(sample), sample.length - 1).next());
+		assertArrayEquals(sample, new TemplateSplitter(new ByteArrayInputStream(sample), sample.length).next());
+		TemplateSplitter empty = new TemplateSplitter(new ByteArrayInputStream(new byte[0]));
+		assertFalse(empty.hasNext());
+		assertThrows(NoSuchElementException.class, empty::next);
+	}
+}
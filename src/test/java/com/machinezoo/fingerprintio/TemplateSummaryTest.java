@@ -0,0 +1,107 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import com.machinezoo.fingerprintio.ansi378v2004.*;
+import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.ansi378v2009am1.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.fingerprintio.iso19794p2v2011.*;
+import com.machinezoo.noexception.*;
+
+public class TemplateSummaryTest {
+	private static void assertFingerprint(FingerprintSummary fp, Enum<?> position, int view, int quality, int minutiaCount, int width, int height) {
+		assertEquals(position.ordinal(), fp.position);
+		assertEquals(view, fp.view);
+		assertEquals(quality, fp.quality);
+		assertEquals(minutiaCount, fp.minutiaCount);
+		assertEquals(width, fp.width);
+		assertEquals(height, fp.height);
+	}
+	@Test
+	public void ansi378v2004() {
+		TemplateSummary summary = new TemplateSummary(Ansi378v2004TemplateTest.sampleWithFixedVersion());
+		Ansi378v2004Template t = new Ansi378v2004Template(Ansi378v2004TemplateTest.sampleWithFixedVersion(), Exceptions.silence());
+		assertEquals(TemplateFormat.ANSI_378_2004, summary.format);
+		assertEquals(t.vendorId, summary.vendorId);
+		assertEquals(t.sensorId, summary.sensorId);
+		assertEquals(t.fingerprints.size(), summary.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2004Fingerprint fp = t.fingerprints.get(i);
+			assertFingerprint(summary.fingerprints.get(i), fp.position, fp.view, fp.quality, fp.minutiae.size(), t.width, t.height);
+		}
+	}
+	@Test
+	public void ansi378v2009() {
+		TemplateSummary summary = new TemplateSummary(Ansi378v2009TemplateTest.sample());
+		Ansi378v2009Template t = new Ansi378v2009Template(Ansi378v2009TemplateTest.sample());
+		assertEquals(TemplateFormat.ANSI_378_2009, summary.format);
+		assertEquals(t.vendorId, summary.vendorId);
+		assertEquals(t.sensorId, summary.sensorId);
+		assertEquals(t.fingerprints.size(), summary.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2009Fingerprint fp = t.fingerprints.get(i);
+			assertFingerprint(summary.fingerprints.get(i), fp.position, fp.view, fp.quality, fp.minutiae.size(), fp.width, fp.height);
+		}
+	}
+	@Test
+	public void ansi378v2009am1() {
+		TemplateSummary summary = new TemplateSummary(Ansi378v2009Am1TemplateTest.sample());
+		Ansi378v2009Am1Template t = new Ansi378v2009Am1Template(Ansi378v2009Am1TemplateTest.sample());
+		assertEquals(TemplateFormat.ANSI_378_2009_AM1, summary.format);
+		assertEquals(t.vendorId, summary.vendorId);
+		assertEquals(t.sensorId, summary.sensorId);
+		assertEquals(t.fingerprints.size(), summary.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2009Am1Fingerprint fp = t.fingerprints.get(i);
+			assertFingerprint(summary.fingerprints.get(i), fp.position, fp.view, fp.quality, fp.minutiae.size(), fp.width, fp.height);
+		}
+	}
+	@Test
+	public void iso19794p2v2005() {
+		TemplateSummary summary = new TemplateSummary(Iso19794p2v2005TemplateTest.sample());
+		Iso19794p2v2005Template t = new Iso19794p2v2005Template(Iso19794p2v2005TemplateTest.sample());
+		assertEquals(TemplateFormat.ISO_19794_2_2005, summary.format);
+		assertEquals(t.sensorId, summary.sensorId);
+		assertEquals(t.fingerprints.size(), summary.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Iso19794p2v2005Fingerprint fp = t.fingerprints.get(i);
+			assertFingerprint(summary.fingerprints.get(i), fp.position, fp.view, fp.quality, fp.minutiae.size(), t.width, t.height);
+		}
+	}
+	@Test
+	public void iso19794p2v2011() {
+		TemplateSummary summary = new TemplateSummary(Iso19794p2v2011TemplateTest.sample());
+		Iso19794p2v2011Template t = new Iso19794p2v2011Template(Iso19794p2v2011TemplateTest.sample(), Exceptions.silence());
+		assertEquals(TemplateFormat.ISO_19794_2_2011, summary.format);
+		assertEquals(t.fingerprints.get(0).sensorVendor, summary.vendorId);
+		assertEquals(t.fingerprints.get(0).sensorId, summary.sensorId);
+		assertEquals(t.fingerprints.size(), summary.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Iso19794p2v2011Fingerprint fp = t.fingerprints.get(i);
+			int quality = fp.qrecords.isEmpty() ? 255 : fp.qrecords.get(0).quality;
+			assertFingerprint(summary.fingerprints.get(i), fp.position, fp.view, quality, fp.minutiae.size(), fp.width, fp.height);
+		}
+	}
+	@Test
+	public void buffer() {
+		for (TemplateFormat format : TemplateFormat.values()) {
+			byte[] template = TestUtils.sample(format);
+			ByteBuffer slice = TestUtils.slice(template);
+			TemplateSummary summary = new TemplateSummary(format, slice);
+			assertEquals(new TemplateSummary(template).fingerprints.size(), summary.fingerprints.size());
+			assertEquals(8, slice.position());
+		}
+	}
+	@Test
+	public void rejected() {
+		assertThrows(TemplateFormatException.class, () -> new TemplateSummary(new byte[20]));
+		for (TemplateFormat format : TemplateFormat.values()) {
+			byte[] template = TestUtils.sample(format);
+			assertThrows(TemplateFormatException.class, () -> new TemplateSummary(format, ByteBuffer.wrap(Arrays.copyOf(template, template.length - 1))));
+		}
+	}
+}
@@ -3,13 +3,17 @@ package com.machinezoo.fingerprintio;
 
 import static org.junit.jupiter.api.Assertions.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.nio.charset.*;
 import java.nio.file.*;
+import java.util.*;
 import org.apache.commons.io.*;
 import com.fasterxml.jackson.databind.*;
 import com.machinezoo.fingerprintio.ansi378v2004.*;
 import com.machinezoo.fingerprintio.ansi378v2009.*;
 import com.machinezoo.fingerprintio.ansi378v2009am1.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.iso19794p2v2005.*;
 import com.machinezoo.fingerprintio.iso19794p2v2011.*;
 import com.machinezoo.noexception.*;
@@ -37,6 +41,23 @@ public class TestUtils {
 			Exceptions.sneak().run(() -> Files.createDirectories(path));
 		return path;
 	}
+	/*
+	 * Compares objects that have no equals() by comparing their JSON serialization.
+	 */
+	public static void assertJsonEquals(Object expected, Object actual) {
+		ObjectMapper mapper = new ObjectMapper();
+		assertEquals(mapper.valueToTree(expected), mapper.<JsonNode>valueToTree(actual));
+	}
+	public static void assertCompactEquals(CompactMinutiae expected, CompactMinutiae actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			assertEquals(expected.type(i), actual.type(i));
+			assertEquals(expected.positionX(i), actual.positionX(i));
+			assertEquals(expected.positionY(i), actual.positionY(i));
+			assertEquals(expected.angle(i), actual.angle(i));
+			assertEquals(expected.quality(i), actual.quality(i));
+		}
+	}
 	public static void compareJson(Class<?> clazz, String filename, Object template) {
 		Exceptions.sneak().run(() -> {
 			ObjectMapper mapper = new ObjectMapper()
@@ -52,6 +73,53 @@ public class TestUtils {
 			assertEquals(stored, fresh);
 		});
 	}
+	/*
+	 * Places the template in the middle of a larger array, so that parsers are forced to respect buffer offsets.
+	 */
+	public static ByteBuffer slice(byte[] template) {
+		byte[] padded = new byte[template.length + 16];
+		Arrays.fill(padded, (byte)0xff);
+		System.arraycopy(template, 0, padded, 8, template.length);
+		return ByteBuffer.wrap(padded, 8, template.length);
+	}
+	/*
+	 * Direct buffers have no backing array, which exercises the slower in-place path.
+	 */
+	public static ByteBuffer direct(byte[] template) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(template.length);
+		buffer.put(template);
+		buffer.flip();
+		return buffer;
+	}
+	public interface Sink<T> {
+		void write(T sink) throws IOException;
+	}
+	/*
+	 * Checks that serialization into all supported sinks produces the same bytes as toByteArray().
+	 */
+	public static void sinks(byte[] expected, Sink<ByteBuffer> buffer, Sink<OutputStream> stream, Sink<WritableByteChannel> channel) {
+		Exceptions.sneak().run(() -> {
+			ByteBuffer heap = ByteBuffer.allocate(expected.length + 16);
+			heap.position(8);
+			buffer.write(heap.slice());
+			buffer.write(heap);
+			assertEquals(8 + expected.length, heap.position());
+			assertArrayEquals(expected, Arrays.copyOfRange(heap.array(), 8, 8 + expected.length));
+			ByteBuffer direct = ByteBuffer.allocateDirect(expected.length);
+			buffer.write(direct);
+			assertEquals(expected.length, direct.position());
+			byte[] copied = new byte[expected.length];
+			direct.flip().get(copied);
+			assertArrayEquals(expected, copied);
+			assertThrows(BufferOverflowException.class, () -> buffer.write(ByteBuffer.allocate(expected.length - 1)));
+			ByteArrayOutputStream collected = new ByteArrayOutputStream();
+			stream.write(collected);
+			assertArrayEquals(expected, collected.toByteArray());
+			collected = new ByteArrayOutputStream();
+			channel.write(Channels.newChannel(collected));
+			assertArrayEquals(expected, collected.toByteArray());
+		});
+	}
 	public static byte[] sample(TemplateFormat format) {
 		switch (format) {
 		case ANSI_378_2004:
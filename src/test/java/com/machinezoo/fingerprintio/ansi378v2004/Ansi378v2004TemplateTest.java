@@ -2,8 +2,11 @@
 package com.machinezoo.fingerprintio.ansi378v2004;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.noexception.*;
 
 public class Ansi378v2004TemplateTest {
@@ -179,6 +182,198 @@ public class Ansi378v2004TemplateTest {
 		assertNotNull(fb.counts);
 	}
 	@Test
+	public void buffer() {
+		byte[] template = sampleWithFixedVersion();
+		ByteBuffer slice = TestUtils.slice(template);
+		assertTrue(Ansi378v2004Template.accepts(slice));
+		TestUtils.compareJson(Ansi378v2004TemplateTest.class, "ansi378v2004-sample.json", new Ansi378v2004Template(slice, Exceptions.silence()));
+		ByteBuffer direct = TestUtils.direct(template);
+		assertTrue(Ansi378v2004Template.accepts(direct));
+		TestUtils.compareJson(Ansi378v2004TemplateTest.class, "ansi378v2004-sample.json", new Ansi378v2004Template(direct, Exceptions.silence()));
+		assertEquals(0, direct.position());
+	}
+	@Test
+	public void writeTo() {
+		/*
+		 * Make the template larger than the internal chunk used when streaming, so that chunk flushing is exercised.
+		 */
+		Ansi378v2004Template t = new Ansi378v2004Template();
+		t.width = 600;
+		t.height = 400;
+		t.resolutionX = 200;
+		t.resolutionY = 180;
+		for (int i = 1; i <= 10; ++i) {
+			Ansi378v2004Fingerprint f = new Ansi378v2004Fingerprint();
+			f.position = Ansi378v2004Position.values()[i];
+			for (int j = 0; j < 200; ++j) {
+				Ansi378v2004Minutia m = new Ansi378v2004Minutia();
+				m.positionX = 3 * j;
+				m.positionY = 2 * j;
+				m.angle = j % 180;
+				f.minutiae.add(m);
+			}
+			t.fingerprints.add(f);
+		}
+		byte[] expected = t.toByteArray();
+		assertTrue(expected.length > 10_000);
+		TestUtils.sinks(expected, t::writeTo, t::writeTo, t::writeTo);
+	}
+	@Test
+	public void encoder() {
+		Ansi378v2004Template t = new Ansi378v2004Template();
+		t.width = 600;
+		t.height = 400;
+		t.resolutionX = 200;
+		t.resolutionY = 180;
+		t.sensorCertified = true;
+		t.sensorId = 0x789;
+		t.vendorId = 0x5678;
+		t.subformat = 0x1234;
+		Ansi378v2004Fingerprint f = new Ansi378v2004Fingerprint();
+		f.position = Ansi378v2004Position.LEFT_RING;
+		f.scanType = Ansi378v2004ScanType.NONLIVE_ROLLED;
+		f.quality = 45;
+		for (int i = 0; i < 3; ++i) {
+			Ansi378v2004Minutia m = new Ansi378v2004Minutia();
+			m.type = Ansi378v2004MinutiaType.values()[i];
+			m.positionX = 100 * i;
+			m.positionY = 50 * i;
+			m.angle = 60 * i;
+			m.quality = 30 * i;
+			f.minutiae.add(m);
+		}
+		f.counts = new Ansi378v2004CountExtension();
+		Ansi378v2004CountEdge e = new Ansi378v2004CountEdge();
+		e.from = 0;
+		e.to = 2;
+		e.count = 7;
+		f.counts.edges.add(e);
+		f.coredelta = new Ansi378v2004CoreDeltaExtension();
+		Ansi378v2004Core c = new Ansi378v2004Core();
+		c.positionX = 123;
+		c.positionY = 234;
+		f.coredelta.cores.add(c);
+		Ansi378v2004Extension x = new Ansi378v2004Extension();
+		x.type = 0x4455;
+		x.data = new byte[] { 1, 2, 3 };
+		f.extensions.add(x);
+		t.fingerprints.add(f);
+		f = new Ansi378v2004Fingerprint();
+		f.position = Ansi378v2004Position.LEFT_RING;
+		f.view = 1;
+		t.fingerprints.add(f);
+		ByteBuffer buffer = ByteBuffer.allocate(1000);
+		buffer.position(10);
+		Ansi378v2004TemplateEncoder encoder = new Ansi378v2004TemplateEncoder();
+		encoder.beginTemplate(buffer, t.vendorId, t.subformat, t.sensorCertified, t.sensorId, t.width, t.height, t.resolutionX, t.resolutionY);
+		for (Ansi378v2004Fingerprint fp : t.fingerprints) {
+			encoder.beginFingerprint(fp.position, fp.view, fp.scanType, fp.quality);
+			for (Ansi378v2004Minutia m : fp.minutiae)
+				encoder.addMinutia(m.type, m.positionX, m.positionY, m.angle, m.quality);
+			if (fp.counts != null)
+				encoder.addCounts(fp.counts);
+			if (fp.coredelta != null)
+				encoder.addCoreDelta(fp.coredelta);
+			for (Ansi378v2004Extension ext : fp.extensions)
+				encoder.addExtension(ext);
+		}
+		byte[] expected = t.toByteArray();
+		assertEquals(expected.length, encoder.finish());
+		assertEquals(10 + expected.length, buffer.position());
+		assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 10, buffer.position()));
+		encoder.beginTemplate(buffer, t.vendorId, t.subformat, t.sensorCertified, t.sensorId, t.width, t.height, t.resolutionX, t.resolutionY);
+		assertThrows(TemplateFormatException.class, () -> encoder.beginFingerprint(Ansi378v2004Position.LEFT_RING, 1, Ansi378v2004ScanType.LIVE_PLAIN, 100));
+		encoder.beginTemplate(buffer, t.vendorId, t.subformat, t.sensorCertified, t.sensorId, t.width, t.height, t.resolutionX, t.resolutionY);
+		assertThrows(IllegalStateException.class, () -> encoder.addMinutia(Ansi378v2004MinutiaType.ENDING, 1, 1, 0, 0));
+		encoder.beginFingerprint(Ansi378v2004Position.LEFT_RING, 0, Ansi378v2004ScanType.LIVE_PLAIN, 100);
+		assertThrows(TemplateFormatException.class, () -> encoder.addMinutia(Ansi378v2004MinutiaType.ENDING, 600, 1, 0, 0));
+		assertThrows(TemplateFormatException.class, () -> encoder.addMinutia(Ansi378v2004MinutiaType.ENDING, 1, 1, 180, 0));
+		encoder.addExtension(x);
+		assertThrows(IllegalStateException.class, () -> encoder.addMinutia(Ansi378v2004MinutiaType.ENDING, 1, 1, 0, 0));
+		assertThrows(BufferOverflowException.class, () -> encoder.beginTemplate(ByteBuffer.allocate(20), 1, 0, false, 0, 1, 1, 1, 1));
+	}
+	@Test
+	public void encoderLarge() {
+		/*
+		 * Template of 64KB or more needs 6-byte length field, which the encoder widens after the fact.
+		 */
+		Ansi378v2004Template t = new Ansi378v2004Template();
+		t.width = 600;
+		t.height = 400;
+		for (int i = 0; i < 44; ++i) {
+			Ansi378v2004Fingerprint f = new Ansi378v2004Fingerprint();
+			f.position = Ansi378v2004Position.values()[i % 11];
+			f.view = i / 11;
+			for (int j = 0; j < 255; ++j) {
+				Ansi378v2004Minutia m = new Ansi378v2004Minutia();
+				m.positionX = 2 * j;
+				m.positionY = j;
+				m.angle = j % 180;
+				f.minutiae.add(m);
+			}
+			t.fingerprints.add(f);
+		}
+		byte[] expected = t.toByteArray();
+		assertTrue(expected.length > 0x10000);
+		ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+		Ansi378v2004TemplateEncoder encoder = new Ansi378v2004TemplateEncoder();
+		encoder.beginTemplate(buffer, t.vendorId, t.subformat, t.sensorCertified, t.sensorId, t.width, t.height, t.resolutionX, t.resolutionY);
+		for (Ansi378v2004Fingerprint fp : t.fingerprints) {
+			encoder.beginFingerprint(fp.position, fp.view, fp.scanType, fp.quality);
+			for (Ansi378v2004Minutia m : fp.minutiae)
+				encoder.addMinutia(m.type, m.positionX, m.positionY, m.angle, m.quality);
+		}
+		assertEquals(expected.length, encoder.finish());
+		assertArrayEquals(expected, buffer.array());
+		TestUtils.assertJsonEquals(t, new Ansi378v2004Template(buffer.array()));
+	}
+	@Test
+	public void view() {
+		Ansi378v2004Template t = decode();
+		Ansi378v2004TemplateView v = new Ansi378v2004TemplateView(ByteBuffer.wrap(sampleWithFixedVersion()), Exceptions.silence());
+		assertEquals(t.vendorId, v.vendorId);
+		assertEquals(t.subformat, v.subformat);
+		assertEquals(t.sensorCertified, v.sensorCertified);
+		assertEquals(t.sensorId, v.sensorId);
+		assertEquals(t.width, v.width);
+		assertEquals(t.height, v.height);
+		assertEquals(t.resolutionX, v.resolutionX);
+		assertEquals(t.resolutionY, v.resolutionY);
+		assertEquals(t.fingerprints.size(), v.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2004Fingerprint f = t.fingerprints.get(i);
+			Ansi378v2004FingerprintView fv = v.fingerprints.get(i);
+			assertEquals(f.position, fv.position);
+			assertEquals(f.view, fv.view);
+			assertEquals(f.scanType, fv.scanType);
+			assertEquals(f.quality, fv.quality);
+			assertEquals(f.minutiae.size(), fv.minutiaCount);
+			TestUtils.assertJsonEquals(f, fv.decode());
+			assertSame(fv.decode(), fv.decode());
+		}
+	}
+	@Test
+	public void compact() {
+		Ansi378v2004Template t = decode();
+		Ansi378v2004TemplateView v = new Ansi378v2004TemplateView(ByteBuffer.wrap(sampleWithFixedVersion()), Exceptions.silence());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2004Fingerprint fp = t.fingerprints.get(i);
+			CompactMinutiae compact = fp.compactMinutiae();
+			assertEquals(fp.minutiae.size(), compact.size());
+			TestUtils.assertCompactEquals(compact, v.fingerprints.get(i).compactMinutiae());
+			Ansi378v2004Fingerprint expanded = new Ansi378v2004Fingerprint();
+			expanded.expandMinutiae(compact);
+			TestUtils.assertJsonEquals(fp.minutiae, expanded.minutiae);
+		}
+	}
+	@Test
+	public void unvalidated() {
+		Ansi378v2004Template t = decode();
+		assertThrows(TemplateFormatException.class, () -> t.toByteArray());
+		TestUtils.assertJsonEquals(t, new Ansi378v2004Template(t.toByteArray(false), Exceptions.silence()));
+		TestUtils.sinks(t.toByteArray(false), b -> t.writeTo(b, false), o -> t.writeTo(o, false), c -> t.writeTo(c, false));
+	}
+	@Test
 	public void accepts() {
 		for (TemplateFormat format : TemplateFormat.values()) {
 			byte[] template = TestUtils.sample(format);
@@ -2,9 +2,12 @@
 package com.machinezoo.fingerprintio.ansi378v2009;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.ansi378v2009am1.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.noexception.*;
 
 public class Ansi378v2009TemplateTest {
@@ -218,6 +221,199 @@ public class Ansi378v2009TemplateTest {
 		assertArrayEquals(original, roundtripped);
 	}
 	@Test
+	public void encoder() {
+		Ansi378v2009Template t = decode();
+		byte[] expected = t.toByteArray();
+		ByteBuffer buffer = ByteBuffer.allocate(expected.length + 10);
+		buffer.position(10);
+		Ansi378v2009TemplateEncoder encoder = new Ansi378v2009TemplateEncoder();
+		encoder.beginTemplate(buffer, t.vendorId, t.subformat, t.sensorCertified, t.sensorId);
+		for (Ansi378v2009Fingerprint fp : t.fingerprints) {
+			encoder.beginFingerprint(fp.position, fp.view, fp.scanType, fp.quality, fp.qualityVendorId, fp.qualityAlgorithmId, fp.width, fp.height, fp.resolutionX, fp.resolutionY);
+			for (Ansi378v2009Minutia m : fp.minutiae)
+				encoder.addMinutia(m.type, m.positionX, m.positionY, m.angle, m.quality);
+			if (fp.counts != null)
+				encoder.addCounts(fp.counts);
+			if (fp.coredelta != null)
+				encoder.addCoreDelta(fp.coredelta);
+			for (Ansi378v2009Extension ext : fp.extensions)
+				encoder.addExtension(ext);
+		}
+		assertEquals(expected.length, encoder.finish());
+		assertEquals(buffer.capacity(), buffer.position());
+		assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 10, buffer.position()));
+		/*
+		 * All 16 views are accepted, but fingerprints with the same position must be listed together.
+		 */
+		buffer.clear();
+		encoder.beginTemplate(buffer, 1, 0, false, 0);
+		for (int view = 0; view < 16; ++view)
+			encoder.beginFingerprint(Ansi378v2009Position.LEFT_RING, view, Ansi378v2009ScanType.LIVE_PLAIN, 100, 1, 0, 100, 100, 197, 197);
+		assertThrows(TemplateFormatException.class, () -> encoder.beginFingerprint(Ansi378v2009Position.LEFT_RING, 16, Ansi378v2009ScanType.LIVE_PLAIN, 100, 1, 0, 100, 100, 197, 197));
+		encoder.beginFingerprint(Ansi378v2009Position.RIGHT_THUMB, 0, Ansi378v2009ScanType.LIVE_PLAIN, 100, 1, 0, 100, 100, 197, 197);
+		assertThrows(TemplateFormatException.class, () -> encoder.beginFingerprint(Ansi378v2009Position.RIGHT_THUMB, 2, Ansi378v2009ScanType.LIVE_PLAIN, 100, 1, 0, 100, 100, 197, 197));
+		encoder.beginFingerprint(Ansi378v2009Position.LEFT_INDEX, 0, Ansi378v2009ScanType.LIVE_PLAIN, 100, 1, 0, 100, 100, 197, 197);
+		assertThrows(TemplateFormatException.class, () -> encoder.beginFingerprint(Ansi378v2009Position.RIGHT_THUMB, 1, Ansi378v2009ScanType.LIVE_PLAIN, 100, 1, 0, 100, 100, 197, 197));
+		encoder.finish();
+		Ansi378v2009Template views = new Ansi378v2009Template(Arrays.copyOf(buffer.array(), buffer.position()));
+		assertEquals(18, views.fingerprints.size());
+		assertEquals(15, views.fingerprints.get(15).view);
+	}
+	@Test
+	public void buffer() {
+		byte[] template = sample();
+		ByteBuffer slice = TestUtils.slice(template);
+		assertTrue(Ansi378v2009Template.accepts(slice));
+		TestUtils.compareJson(Ansi378v2009TemplateTest.class, "ansi378v2009-sample.json", new Ansi378v2009Template(slice));
+		ByteBuffer direct = TestUtils.direct(template);
+		assertTrue(Ansi378v2009Template.accepts(direct));
+		TestUtils.compareJson(Ansi378v2009TemplateTest.class, "ansi378v2009-sample.json", new Ansi378v2009Template(direct));
+		assertEquals(0, direct.position());
+	}
+	@Test
+	public void writeTo() {
+		/*
+		 * Make the template larger than the internal chunk used when streaming, so that chunk flushing is exercised.
+		 */
+		Ansi378v2009Template t = new Ansi378v2009Template();
+		for (int i = 1; i <= 10; ++i) {
+			Ansi378v2009Fingerprint f = new Ansi378v2009Fingerprint();
+			f.position = Ansi378v2009Position.values()[i];
+			f.width = 600;
+			f.height = 400;
+			for (int j = 0; j < 200; ++j) {
+				Ansi378v2009Minutia m = new Ansi378v2009Minutia();
+				m.positionX = 3 * j;
+				m.positionY = 2 * j;
+				m.angle = j % 180;
+				f.minutiae.add(m);
+			}
+			t.fingerprints.add(f);
+		}
+		byte[] expected = t.toByteArray();
+		assertTrue(expected.length > 10_000);
+		TestUtils.sinks(expected, t::writeTo, t::writeTo, t::writeTo);
+	}
+	@Test
+	public void view() {
+		Ansi378v2009Template t = decode();
+		Ansi378v2009TemplateView v = new Ansi378v2009TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		assertEquals(t.vendorId, v.vendorId);
+		assertEquals(t.subformat, v.subformat);
+		assertEquals(t.sensorCertified, v.sensorCertified);
+		assertEquals(t.sensorId, v.sensorId);
+		assertEquals(t.fingerprints.size(), v.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2009Fingerprint f = t.fingerprints.get(i);
+			Ansi378v2009FingerprintView fv = v.fingerprints.get(i);
+			assertEquals(f.position, fv.position);
+			assertEquals(f.view, fv.view);
+			assertEquals(f.scanType, fv.scanType);
+			assertEquals(f.quality, fv.quality);
+			assertEquals(f.qualityVendorId, fv.qualityVendorId);
+			assertEquals(f.qualityAlgorithmId, fv.qualityAlgorithmId);
+			assertEquals(f.width, fv.width);
+			assertEquals(f.height, fv.height);
+			assertEquals(f.resolutionX, fv.resolutionX);
+			assertEquals(f.resolutionY, fv.resolutionY);
+			assertEquals(f.minutiae.size(), fv.minutiaCount);
+			TestUtils.assertJsonEquals(f, fv.decode());
+			assertSame(fv.decode(), fv.decode());
+		}
+	}
+	@Test
+	public void compact() {
+		Ansi378v2009Template t = decode();
+		Ansi378v2009TemplateView v = new Ansi378v2009TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2009Fingerprint fp = t.fingerprints.get(i);
+			CompactMinutiae compact = fp.compactMinutiae();
+			assertEquals(fp.minutiae.size(), compact.size());
+			TestUtils.assertCompactEquals(compact, v.fingerprints.get(i).compactMinutiae());
+			Ansi378v2009Fingerprint expanded = new Ansi378v2009Fingerprint();
+			expanded.expandMinutiae(compact);
+			TestUtils.assertJsonEquals(fp.minutiae, expanded.minutiae);
+		}
+	}
+	@Test
+	public void grid() {
+		for (Ansi378v2009Fingerprint fp : decode().fingerprints) {
+			assertFalse(fp.minutiae.isEmpty());
+			MinutiaGrid grid = fp.minutiaGrid();
+			assertEquals(fp.minutiae.size(), grid.size());
+			for (int radius : new int[] { 0, 10, 50, 1000 }) {
+				for (Ansi378v2009Minutia center : fp.minutiae) {
+					int expected = 0;
+					for (Ansi378v2009Minutia m : fp.minutiae) {
+						long dx = m.positionX - center.positionX;
+						long dy = m.positionY - center.positionY;
+						if (dx * dx + dy * dy <= (long)radius * radius)
+							++expected;
+					}
+					assertEquals(expected, grid.countWithinRadius(center.positionX, center.positionY, radius));
+					int[] found = new int[1];
+					grid.forEachWithinRadius(center.positionX, center.positionY, radius, i -> ++found[0]);
+					assertEquals(expected, found[0]);
+				}
+			}
+			int left = fp.width / 4, top = fp.height / 4, right = 3 * fp.width / 4, bottom = 3 * fp.height / 4;
+			int inside = 0;
+			for (Ansi378v2009Minutia m : fp.minutiae)
+				if (m.positionX >= left && m.positionX < right && m.positionY >= top && m.positionY < bottom)
+					++inside;
+			assertEquals(inside, grid.countInRectangle(left, top, right, bottom));
+			int[] found = new int[1];
+			grid.forEachInRectangle(left, top, right, bottom, i -> {
+				Ansi378v2009Minutia m = fp.minutiae.get(i);
+				assertTrue(m.positionX >= left && m.positionX < right && m.positionY >= top && m.positionY < bottom);
+				++found[0];
+			});
+			assertEquals(inside, found[0]);
+			assertEquals(fp.minutiae.size(), grid.countInRectangle(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2));
+			assertEquals(fp.minutiae.size(), grid.countWithinRadius(0, 0, Integer.MAX_VALUE));
+			assertEquals(fp.minutiae.size(), grid.countWithinRadius(Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2, Integer.MAX_VALUE));
+			assertEquals(0, grid.countWithinRadius(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE));
+			int[] all = new int[1];
+			grid.forEachWithinRadius(Integer.MAX_VALUE, 0, Integer.MAX_VALUE, i -> ++all[0]);
+			assertEquals(fp.minutiae.size(), all[0]);
+		}
+	}
+	private static void views(String error, int... pairs) {
+		Ansi378v2009Template t = new Ansi378v2009Template();
+		for (int i = 0; i < pairs.length; i += 2) {
+			Ansi378v2009Fingerprint f = new Ansi378v2009Fingerprint();
+			f.position = Ansi378v2009Position.values()[pairs[i]];
+			f.view = pairs[i + 1];
+			f.width = 400;
+			f.height = 500;
+			t.fingerprints.add(f);
+		}
+		if (error == null)
+			new Ansi378v2009Template(t.toByteArray());
+		else
+			assertTrue(assertThrows(TemplateFormatException.class, t::toByteArray).getMessage().contains(error));
+	}
+	@Test
+	public void views() {
+		views(null, 1, 0, 1, 1, 2, 0);
+		views(null, 2, 0, 1, 0, 1, 1, 1, 2);
+		views("unique", 1, 0, 1, 0);
+		views("contiguously", 1, 1);
+		views("contiguously", 1, 0, 1, 2);
+		views("sorted", 1, 1, 1, 0);
+		views("together", 1, 0, 2, 0, 1, 1);
+		views(null, 1, 0, 1, 1, 1, 2, 1, 3, 1, 4, 1, 5, 1, 6, 1, 7, 1, 8, 1, 9, 1, 10, 1, 11, 1, 12, 1, 13, 1, 14, 1, 15);
+	}
+	@Test
+	public void unvalidated() {
+		Ansi378v2009Template t = decode();
+		assertArrayEquals(t.toByteArray(), t.toByteArray(false));
+		t.fingerprints.get(0).quality = 200;
+		assertThrows(TemplateFormatException.class, () -> t.toByteArray());
+		assertEquals(200, new Ansi378v2009Template(t.toByteArray(false), Exceptions.silence()).fingerprints.get(0).quality);
+		TestUtils.sinks(t.toByteArray(false), b -> t.writeTo(b, false), o -> t.writeTo(o, false), c -> t.writeTo(c, false));
+	}
+	@Test
 	public void accepts() {
 		for (TemplateFormat format : TemplateFormat.values()) {
 			byte[] template = TestUtils.sample(format);
@@ -226,6 +422,43 @@ public class Ansi378v2009TemplateTest {
 				assertThrows(TemplateFormatException.class, () -> new Ansi378v2009Template(template, Exceptions.silence()));
 		}
 	}
+	@Test
+	public void parse() {
+		Ansi378v2009Template expected = decode();
+		Ansi378v2009Template t = decode();
+		Ansi378v2009Fingerprint fp = t.fingerprints.get(0);
+		Ansi378v2009Minutia minutia = fp.minutiae.get(0);
+		fp.minutiae.add(new Ansi378v2009Minutia());
+		fp.extensions.add(new Ansi378v2009Extension());
+		t.fingerprints.add(new Ansi378v2009Fingerprint());
+		t.parse(sample(), Exceptions.propagate());
+		TestUtils.assertJsonEquals(expected, t);
+		assertSame(fp, t.fingerprints.get(0));
+		assertSame(minutia, fp.minutiae.get(0));
+		t.fingerprints.remove(t.fingerprints.size() - 1);
+		fp.minutiae.clear();
+		t.parse(ByteBuffer.wrap(sample()), Exceptions.propagate());
+		TestUtils.assertJsonEquals(expected, t);
+	}
+	@Test
+	public void parseImmutable() {
+		Ansi378v2009Template expected = decode();
+		Ansi378v2009Template t = decode();
+		/*
+		 * Application may assign lists that cannot be modified. Parser must replace them instead of failing.
+		 */
+		Ansi378v2009Fingerprint fp = t.fingerprints.get(0);
+		fp.minutiae = List.of();
+		fp.extensions = Collections.unmodifiableList(new ArrayList<>(List.of(new Ansi378v2009Extension())));
+		t.fingerprints = List.of(fp, new Ansi378v2009Fingerprint());
+		t.parse(sample(), Exceptions.propagate());
+		TestUtils.assertJsonEquals(expected, t);
+		/*
+		 * Replacement lists are mutable, so the application can keep editing the template.
+		 */
+		t.fingerprints.add(new Ansi378v2009Fingerprint());
+		t.fingerprints.get(0).minutiae.clear();
+	}
 	private Ansi378v2009Template decode() {
 		byte[] bytes = sample();
 		assertTrue(Ansi378v2009Template.accepts(bytes));
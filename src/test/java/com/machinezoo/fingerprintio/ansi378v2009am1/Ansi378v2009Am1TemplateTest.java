@@ -2,9 +2,12 @@
 package com.machinezoo.fingerprintio.ansi378v2009am1;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 import com.machinezoo.fingerprintio.*;
 import com.machinezoo.fingerprintio.ansi378v2009.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.noexception.*;
 
 public class Ansi378v2009Am1TemplateTest {
@@ -213,6 +216,129 @@ public class Ansi378v2009Am1TemplateTest {
 		assertArrayEquals(original, roundtripped);
 	}
 	@Test
+	public void encoder() {
+		Ansi378v2009Am1Template t = decode();
+		byte[] expected = t.toByteArray();
+		ByteBuffer buffer = ByteBuffer.allocate(expected.length + 10);
+		buffer.position(10);
+		Ansi378v2009Am1TemplateEncoder encoder = new Ansi378v2009Am1TemplateEncoder();
+		encoder.beginTemplate(buffer, t.vendorId, t.subformat, t.sensorCertified, t.sensorId);
+		for (Ansi378v2009Am1Fingerprint fp : t.fingerprints) {
+			encoder.beginFingerprint(fp.position, fp.view, fp.scanType, fp.quality, fp.qualityVendorId, fp.qualityAlgorithmId, fp.width, fp.height, fp.resolutionX, fp.resolutionY);
+			for (Ansi378v2009Am1Minutia m : fp.minutiae)
+				encoder.addMinutia(m.type, m.positionX, m.positionY, m.angle, m.quality);
+			if (fp.counts != null)
+				encoder.addCounts(fp.counts);
+			if (fp.coredelta != null)
+				encoder.addCoreDelta(fp.coredelta);
+			for (Ansi378v2009Am1Extension ext : fp.extensions)
+				encoder.addExtension(ext);
+		}
+		assertEquals(expected.length, encoder.finish());
+		assertEquals(buffer.capacity(), buffer.position());
+		assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 10, buffer.position()));
+		buffer.clear();
+		encoder.beginTemplate(buffer, 1, 0, false, 0);
+		assertThrows(TemplateFormatException.class, encoder::finish);
+	}
+	@Test
+	public void buffer() {
+		byte[] template = sample();
+		ByteBuffer slice = TestUtils.slice(template);
+		assertTrue(Ansi378v2009Am1Template.accepts(slice));
+		TestUtils.compareJson(Ansi378v2009Am1TemplateTest.class, "ansi378v2009am1-sample.json", new Ansi378v2009Am1Template(slice));
+		ByteBuffer direct = TestUtils.direct(template);
+		assertTrue(Ansi378v2009Am1Template.accepts(direct));
+		TestUtils.compareJson(Ansi378v2009Am1TemplateTest.class, "ansi378v2009am1-sample.json", new Ansi378v2009Am1Template(direct));
+		assertEquals(0, direct.position());
+	}
+	@Test
+	public void writeTo() {
+		/*
+		 * Make the template larger than the internal chunk used when streaming, so that chunk flushing is exercised.
+		 */
+		Ansi378v2009Am1Template t = new Ansi378v2009Am1Template();
+		for (int i = 1; i <= 10; ++i) {
+			Ansi378v2009Am1Fingerprint f = new Ansi378v2009Am1Fingerprint();
+			f.position = Ansi378v2009Am1Position.values()[i];
+			f.width = 600;
+			f.height = 400;
+			for (int j = 0; j < 200; ++j) {
+				Ansi378v2009Am1Minutia m = new Ansi378v2009Am1Minutia();
+				m.positionX = 3 * j;
+				m.positionY = 2 * j;
+				m.angle = j % 180;
+				f.minutiae.add(m);
+			}
+			t.fingerprints.add(f);
+		}
+		byte[] expected = t.toByteArray();
+		assertTrue(expected.length > 10_000);
+		TestUtils.sinks(expected, t::writeTo, t::writeTo, t::writeTo);
+	}
+	@Test
+	public void view() {
+		Ansi378v2009Am1Template t = decode();
+		Ansi378v2009Am1TemplateView v = new Ansi378v2009Am1TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		assertEquals(t.vendorId, v.vendorId);
+		assertEquals(t.subformat, v.subformat);
+		assertEquals(t.sensorCertified, v.sensorCertified);
+		assertEquals(t.sensorId, v.sensorId);
+		assertEquals(t.fingerprints.size(), v.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2009Am1Fingerprint f = t.fingerprints.get(i);
+			Ansi378v2009Am1FingerprintView fv = v.fingerprints.get(i);
+			assertEquals(f.position, fv.position);
+			assertEquals(f.view, fv.view);
+			assertEquals(f.scanType, fv.scanType);
+			assertEquals(f.quality, fv.quality);
+			assertEquals(f.qualityVendorId, fv.qualityVendorId);
+			assertEquals(f.qualityAlgorithmId, fv.qualityAlgorithmId);
+			assertEquals(f.width, fv.width);
+			assertEquals(f.height, fv.height);
+			assertEquals(f.resolutionX, fv.resolutionX);
+			assertEquals(f.resolutionY, fv.resolutionY);
+			assertEquals(f.minutiae.size(), fv.minutiaCount);
+			TestUtils.assertJsonEquals(f, fv.decode());
+			assertSame(fv.decode(), fv.decode());
+		}
+	}
+	@Test
+	public void compact() {
+		Ansi378v2009Am1Template t = decode();
+		Ansi378v2009Am1TemplateView v = new Ansi378v2009Am1TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Ansi378v2009Am1Fingerprint fp = t.fingerprints.get(i);
+			CompactMinutiae compact = fp.compactMinutiae();
+			assertEquals(fp.minutiae.size(), compact.size());
+			TestUtils.assertCompactEquals(compact, v.fingerprints.get(i).compactMinutiae());
+			Ansi378v2009Am1Fingerprint expanded = new Ansi378v2009Am1Fingerprint();
+			expanded.expandMinutiae(compact);
+			TestUtils.assertJsonEquals(fp.minutiae, expanded.minutiae);
+		}
+	}
+	@Test
+	public void multifinger() {
+		Ansi378v2009Am1Template t = new Ansi378v2009Am1Template();
+		Ansi378v2009Am1Fingerprint f = new Ansi378v2009Am1Fingerprint();
+		f.position = Ansi378v2009Am1Position.RIGHT_INDEX_TO_LITTLE;
+		f.width = 400;
+		f.height = 500;
+		t.fingerprints.add(f);
+		byte[] template = t.toByteArray();
+		assertEquals(13, new TemplateSummary(template).fingerprints.get(0).position);
+		assertEquals(Ansi378v2009Am1Position.RIGHT_INDEX_TO_LITTLE, new Ansi378v2009Am1Template(template).fingerprints.get(0).position);
+	}
+	@Test
+	public void unvalidated() {
+		Ansi378v2009Am1Template t = decode();
+		assertArrayEquals(t.toByteArray(), t.toByteArray(false));
+		t.fingerprints.get(0).quality = 200;
+		assertThrows(TemplateFormatException.class, () -> t.toByteArray());
+		assertEquals(200, new Ansi378v2009Am1Template(t.toByteArray(false), Exceptions.silence()).fingerprints.get(0).quality);
+		TestUtils.sinks(t.toByteArray(false), b -> t.writeTo(b, false), o -> t.writeTo(o, false), c -> t.writeTo(c, false));
+	}
+	@Test
 	public void accepts() {
 		for (TemplateFormat format : TemplateFormat.values()) {
 			byte[] template = TestUtils.sample(format);
@@ -2,8 +2,11 @@
 package com.machinezoo.fingerprintio.iso19794p2v2005;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.noexception.*;
 
 public class Iso19794p2v2005TemplateTest {
@@ -65,7 +68,7 @@ public class Iso19794p2v2005TemplateTest {
 		zx.zoneWidth = 200;
 		zx.zoneHeight = 200;
 		zx.bits = 3;
-		zx.quality = new int[] { 1, 2, 3, 4, 5, 6 };
+		zx.pack(new int[] { 1, 2, 3, 4, 5, 6 });
 		Iso19794p2v2005Extension x = new Iso19794p2v2005Extension();
 		x.type = 0x4455;
 		x.data = new byte[] { 1, 2, 3 };
@@ -136,8 +139,9 @@ public class Iso19794p2v2005TemplateTest {
 		assertEquals(200, zq.zoneWidth);
 		assertEquals(200, zq.zoneHeight);
 		assertEquals(3, zq.bits);
-		assertEquals(6, zq.quality.length);
-		assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6 }, zq.quality);
+		assertEquals(3, zq.quality.length);
+		assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6 }, zq.unpack(600, 400));
+		assertEquals(6, zq.quality(2, 1, 600, 400));
 		assertEquals(1, fa.extensions.size());
 		Iso19794p2v2005Extension ex = fa.extensions.get(0);
 		assertEquals(0x4455, ex.type);
@@ -198,6 +202,189 @@ public class Iso19794p2v2005TemplateTest {
 		assertArrayEquals(original, roundtripped);
 	}
 	@Test
+	public void encoder() {
+		byte[] original = sample();
+		Iso19794p2v2005Template t = new Iso19794p2v2005Template(original);
+		ByteBuffer buffer = ByteBuffer.allocate(original.length + 10);
+		buffer.position(10);
+		Iso19794p2v2005TemplateEncoder encoder = new Iso19794p2v2005TemplateEncoder();
+		encoder.beginTemplate(buffer, t.sensorCertified, t.sensorId, t.width, t.height, t.resolutionX, t.resolutionY);
+		for (Iso19794p2v2005Fingerprint fp : t.fingerprints) {
+			encoder.beginFingerprint(fp.position, fp.view, fp.scanType, fp.quality);
+			for (Iso19794p2v2005Minutia m : fp.minutiae)
+				encoder.addMinutia(m.type, m.positionX, m.positionY, m.angle, m.quality);
+			if (fp.counts != null)
+				encoder.addCounts(fp.counts);
+			if (fp.coredelta != null)
+				encoder.addCoreDelta(fp.coredelta);
+			if (fp.zones != null)
+				encoder.addZones(fp.zones);
+			for (Iso19794p2v2005Extension ext : fp.extensions)
+				encoder.addExtension(ext);
+		}
+		assertEquals(original.length, encoder.finish());
+		assertEquals(buffer.capacity(), buffer.position());
+		assertArrayEquals(original, Arrays.copyOfRange(buffer.array(), 10, buffer.position()));
+		buffer.position(0);
+		encoder.beginTemplate(buffer, t.sensorCertified, t.sensorId, t.width, t.height, t.resolutionX, t.resolutionY);
+		encoder.beginFingerprint(Iso19794p2v2005Position.LEFT_RING, 0, Iso19794p2v2005ScanType.LIVE_PLAIN, 100);
+		encoder.addMinutia(Iso19794p2v2005MinutiaType.ENDING, 1, 1, 255, 0);
+		assertThrows(TemplateFormatException.class, () -> encoder.addMinutia(Iso19794p2v2005MinutiaType.ENDING, 1, 1, 256, 0));
+		assertThrows(TemplateFormatException.class, () -> encoder.beginFingerprint(Iso19794p2v2005Position.LEFT_RING, 0, Iso19794p2v2005ScanType.LIVE_PLAIN, 100));
+		assertThrows(TemplateFormatException.class, () -> encoder.beginTemplate(buffer, false, 0, 100, 100, 98, 98));
+	}
+	@Test
+	public void buffer() {
+		byte[] template = sample();
+		ByteBuffer slice = TestUtils.slice(template);
+		assertTrue(Iso19794p2v2005Template.accepts(slice));
+		TestUtils.compareJson(Iso19794p2v2005TemplateTest.class, "iso19794p2v2005-sample.json", new Iso19794p2v2005Template(slice));
+		ByteBuffer direct = TestUtils.direct(template);
+		assertTrue(Iso19794p2v2005Template.accepts(direct));
+		TestUtils.compareJson(Iso19794p2v2005TemplateTest.class, "iso19794p2v2005-sample.json", new Iso19794p2v2005Template(direct));
+		assertEquals(0, direct.position());
+	}
+	@Test
+	public void writeTo() {
+		/*
+		 * Make the template larger than the internal chunk used when streaming, so that chunk flushing is exercised.
+		 */
+		Iso19794p2v2005Template t = new Iso19794p2v2005Template();
+		t.width = 600;
+		t.height = 400;
+		t.resolutionX = 200;
+		t.resolutionY = 180;
+		for (int i = 1; i <= 10; ++i) {
+			Iso19794p2v2005Fingerprint f = new Iso19794p2v2005Fingerprint();
+			f.position = Iso19794p2v2005Position.values()[i];
+			for (int j = 0; j < 200; ++j) {
+				Iso19794p2v2005Minutia m = new Iso19794p2v2005Minutia();
+				m.positionX = 3 * j;
+				m.positionY = 2 * j;
+				m.angle = j % 180;
+				f.minutiae.add(m);
+			}
+			t.fingerprints.add(f);
+		}
+		byte[] expected = t.toByteArray();
+		assertTrue(expected.length > 10_000);
+		TestUtils.sinks(expected, t::writeTo, t::writeTo, t::writeTo);
+	}
+	@Test
+	public void view() {
+		Iso19794p2v2005Template t = decode();
+		Iso19794p2v2005TemplateView v = new Iso19794p2v2005TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		assertEquals(t.sensorCertified, v.sensorCertified);
+		assertEquals(t.sensorId, v.sensorId);
+		assertEquals(t.width, v.width);
+		assertEquals(t.height, v.height);
+		assertEquals(t.resolutionX, v.resolutionX);
+		assertEquals(t.resolutionY, v.resolutionY);
+		assertEquals(t.fingerprints.size(), v.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Iso19794p2v2005Fingerprint f = t.fingerprints.get(i);
+			Iso19794p2v2005FingerprintView fv = v.fingerprints.get(i);
+			assertEquals(f.position, fv.position);
+			assertEquals(f.view, fv.view);
+			assertEquals(f.scanType, fv.scanType);
+			assertEquals(f.quality, fv.quality);
+			assertEquals(f.minutiae.size(), fv.minutiaCount);
+			TestUtils.assertJsonEquals(f, fv.decode());
+			assertSame(fv.decode(), fv.decode());
+		}
+	}
+	@Test
+	public void compact() {
+		Iso19794p2v2005Template t = decode();
+		Iso19794p2v2005TemplateView v = new Iso19794p2v2005TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Iso19794p2v2005Fingerprint fp = t.fingerprints.get(i);
+			CompactMinutiae compact = fp.compactMinutiae();
+			assertEquals(fp.minutiae.size(), compact.size());
+			TestUtils.assertCompactEquals(compact, v.fingerprints.get(i).compactMinutiae());
+			Iso19794p2v2005Fingerprint expanded = new Iso19794p2v2005Fingerprint();
+			expanded.expandMinutiae(compact);
+			TestUtils.assertJsonEquals(fp.minutiae, expanded.minutiae);
+		}
+	}
+	private static void views(String error, int... pairs) {
+		Iso19794p2v2005Template t = new Iso19794p2v2005Template();
+		t.width = 400;
+		t.height = 500;
+		for (int i = 0; i < pairs.length; i += 2) {
+			Iso19794p2v2005Fingerprint f = new Iso19794p2v2005Fingerprint();
+			f.position = Iso19794p2v2005Position.values()[pairs[i]];
+			f.view = pairs[i + 1];
+			t.fingerprints.add(f);
+		}
+		if (error == null)
+			new Iso19794p2v2005Template(t.toByteArray());
+		else
+			assertTrue(assertThrows(TemplateFormatException.class, t::toByteArray).getMessage().contains(error));
+	}
+	@Test
+	public void edges() {
+		Iso19794p2v2005Template t = new Iso19794p2v2005Template();
+		t.width = 600;
+		t.height = 400;
+		Iso19794p2v2005Fingerprint f = new Iso19794p2v2005Fingerprint();
+		f.position = Iso19794p2v2005Position.LEFT_RING;
+		for (int i = 0; i < 3; ++i)
+			f.minutiae.add(new Iso19794p2v2005Minutia());
+		f.counts = new Iso19794p2v2005CountExtension();
+		int[][] edges = { { 2, 0, 7 }, { 0, 1, 3 }, { 2, 1, 5 }, { 1, 0, 0 } };
+		for (int[] edge : edges) {
+			Iso19794p2v2005CountEdge e = new Iso19794p2v2005CountEdge();
+			e.from = edge[0];
+			e.to = edge[1];
+			e.count = edge[2];
+			f.counts.edges.add(e);
+		}
+		t.fingerprints.add(f);
+		RidgeCountGraph graph = f.counts.compactEdges(3);
+		assertEquals(3, graph.size());
+		assertEquals(4, graph.edgeCount());
+		assertEquals(1, graph.degree(0));
+		assertEquals(1, graph.degree(1));
+		assertEquals(2, graph.degree(2));
+		assertEquals(1, graph.to(graph.first(0)));
+		assertEquals(3, graph.count(graph.first(0)));
+		assertEquals(0, graph.count(graph.first(1)));
+		assertEquals(0, graph.to(graph.first(2)));
+		assertEquals(7, graph.count(graph.first(2)));
+		assertEquals(1, graph.to(graph.first(2) + 1));
+		assertEquals(5, graph.count(graph.first(2) + 1));
+		assertEquals(4, graph.first(3));
+		Iso19794p2v2005TemplateView v = new Iso19794p2v2005TemplateView(ByteBuffer.wrap(t.toByteArray()), Exceptions.propagate());
+		RidgeCountGraph viewed = v.fingerprints.get(0).compactEdges();
+		assertArrayEquals(graph.toByteArray(), viewed.toByteArray());
+		Iso19794p2v2005CountExtension expanded = new Iso19794p2v2005CountExtension();
+		expanded.expandEdges(viewed);
+		f.counts.edges.sort(Comparator.comparingInt(e -> e.from));
+		TestUtils.assertJsonEquals(f.counts.edges, expanded.edges);
+		f.counts = null;
+		assertNull(new Iso19794p2v2005TemplateView(ByteBuffer.wrap(t.toByteArray()), Exceptions.propagate()).fingerprints.get(0).compactEdges());
+	}
+	@Test
+	public void views() {
+		views(null, 1, 0, 1, 1, 2, 0);
+		views(null, 1, 0, 2, 0, 1, 1);
+		views("unique", 1, 0, 1, 0);
+		views("contiguously", 1, 1);
+		views("contiguously", 1, 0, 2, 0, 1, 2);
+		views("sorted", 1, 1, 2, 0, 1, 0);
+		views(null, 1, 0, 1, 1, 1, 2, 1, 3, 1, 4, 1, 5, 1, 6, 1, 7, 1, 8, 1, 9, 1, 10, 1, 11, 1, 12, 1, 13, 1, 14, 1, 15);
+	}
+	@Test
+	public void unvalidated() {
+		Iso19794p2v2005Template t = decode();
+		assertArrayEquals(t.toByteArray(), t.toByteArray(false));
+		t.fingerprints.get(0).quality = 200;
+		assertThrows(TemplateFormatException.class, () -> t.toByteArray());
+		assertEquals(200, new Iso19794p2v2005Template(t.toByteArray(false), Exceptions.silence()).fingerprints.get(0).quality);
+		TestUtils.sinks(t.toByteArray(false), b -> t.writeTo(b, false), o -> t.writeTo(o, false), c -> t.writeTo(c, false));
+	}
+	@Test
 	public void accepts() {
 		for (TemplateFormat format : TemplateFormat.values()) {
 			byte[] template = TestUtils.sample(format);
@@ -206,7 +393,35 @@ public class Iso19794p2v2005TemplateTest {
 				assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2005Template(template, Exceptions.silence()));
 		}
 	}
-	private Iso19794p2v2005Template decode() {
+	@Test
+	public void zonal() {
+		Iso19794p2v2005ZonalExtension zx = new Iso19794p2v2005ZonalExtension();
+		zx.zoneWidth = 10;
+		zx.zoneHeight = 10;
+		for (int bits = 1; bits <= 8; ++bits) {
+			int[] zones = new int[13];
+			for (int i = 0; i < zones.length; ++i)
+				zones[i] = (i * 37 + 5) & ((1 << bits) - 1);
+			zx.bits = bits;
+			zx.pack(zones);
+			assertEquals((zones.length * bits + 7) / 8, zx.quality.length);
+			assertArrayEquals(zones, zx.unpack(130, 10));
+			assertEquals(zones[5], zx.quality(1, 1, 40, 30));
+			assertThrows(IndexOutOfBoundsException.class, () -> zx.quality(4, 0, 40, 30));
+			assertThrows(IndexOutOfBoundsException.class, () -> zx.quality(0, 3, 40, 30));
+			assertThrows(TemplateFormatException.class, () -> zx.unpack(130, 20));
+			assertThrows(TemplateFormatException.class, () -> zx.pack(new int[] { 1 << zx.bits }));
+		}
+		for (int bits : new int[] { 0, 9 }) {
+			zx.bits = bits;
+			assertThrows(TemplateFormatException.class, () -> zx.unpack(130, 10));
+			assertThrows(TemplateFormatException.class, () -> zx.quality(0, 0, 130, 10));
+		}
+		zx.bits = 8;
+		zx.zoneWidth = 0;
+		assertThrows(TemplateFormatException.class, () -> zx.unpack(130, 10));
+	}
+	public static Iso19794p2v2005Template decode() {
 		byte[] bytes = sample();
 		assertTrue(Iso19794p2v2005Template.accepts(bytes));
 		return new Iso19794p2v2005Template(bytes);
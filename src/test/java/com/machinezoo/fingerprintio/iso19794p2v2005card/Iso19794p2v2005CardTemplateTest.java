@@ -0,0 +1,91 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.iso19794p2v2005card;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.iso19794p2v2005.*;
+import com.machinezoo.noexception.*;
+
+public class Iso19794p2v2005CardTemplateTest {
+	private static Iso19794p2v2005CardMinutia minutia(Iso19794p2v2005CardMinutiaType type, int x, int y, int angle) {
+		Iso19794p2v2005CardMinutia m = new Iso19794p2v2005CardMinutia();
+		m.type = type;
+		m.positionX = x;
+		m.positionY = y;
+		m.angle = angle;
+		return m;
+	}
+	@Test
+	public void normal() {
+		Iso19794p2v2005CardTemplate t = new Iso19794p2v2005CardTemplate();
+		t.minutiae.add(minutia(Iso19794p2v2005CardMinutiaType.ENDING, 1234, 2345, 200));
+		t.minutiae.add(minutia(Iso19794p2v2005CardMinutiaType.BIFURCATION, 0x3fff, 0, 0));
+		byte[] serialized = t.toByteArray();
+		assertArrayEquals(new byte[] { 0x44, (byte)0xd2, 0x09, 0x29, (byte)200, (byte)0xbf, (byte)0xff, 0, 0, 0 }, serialized);
+		TestUtils.assertJsonEquals(t, new Iso19794p2v2005CardTemplate(serialized, Iso19794p2v2005CardFormat.NORMAL));
+	}
+	@Test
+	public void compact() {
+		Iso19794p2v2005CardTemplate t = new Iso19794p2v2005CardTemplate();
+		t.format = Iso19794p2v2005CardFormat.COMPACT;
+		t.minutiae.add(minutia(Iso19794p2v2005CardMinutiaType.ENDING, 123, 234, 50));
+		t.minutiae.add(minutia(Iso19794p2v2005CardMinutiaType.OTHER, 255, 0, 63));
+		byte[] serialized = t.toByteArray();
+		assertArrayEquals(new byte[] { 123, (byte)234, 0x40 | 50, (byte)255, 0, 63 }, serialized);
+		TestUtils.assertJsonEquals(t, new Iso19794p2v2005CardTemplate(serialized, Iso19794p2v2005CardFormat.COMPACT));
+		t.minutiae.get(0).angle = 64;
+		assertThrows(TemplateFormatException.class, t::toByteArray);
+		t.minutiae.get(0).angle = 0;
+		t.minutiae.get(0).positionX = 256;
+		assertThrows(TemplateFormatException.class, t::toByteArray);
+	}
+	@Test
+	public void offcard() {
+		Iso19794p2v2005Template offcard = Iso19794p2v2005TemplateTest.decode();
+		Iso19794p2v2005Fingerprint fp = offcard.fingerprints.get(0);
+		for (Iso19794p2v2005CardFormat format : Iso19794p2v2005CardFormat.values()) {
+			Iso19794p2v2005CardTemplate t = new Iso19794p2v2005CardTemplate(offcard, 0, format);
+			assertSame(format, t.format);
+			assertEquals(fp.minutiae.size(), t.minutiae.size());
+			byte[] serialized = t.toByteArray();
+			assertEquals(format == Iso19794p2v2005CardFormat.NORMAL ? 5 : 3, serialized.length / fp.minutiae.size());
+			TestUtils.assertJsonEquals(t, new Iso19794p2v2005CardTemplate(serialized, format));
+		}
+		/*
+		 * Sample has pixel density 197 pixels/cm. Minutia at X 100 and Y 14 with angle 80 (112 degrees).
+		 */
+		Iso19794p2v2005CardMinutia normal = new Iso19794p2v2005CardTemplate(offcard, 0, Iso19794p2v2005CardFormat.NORMAL).minutiae.get(0);
+		assertSame(Iso19794p2v2005CardMinutiaType.ENDING, normal.type);
+		assertEquals(Math.round(100 * 1000 / 197.0), normal.positionX);
+		assertEquals(Math.round(14 * 1000 / 197.0), normal.positionY);
+		assertEquals(fp.minutiae.get(0).angle, normal.angle);
+		Iso19794p2v2005CardMinutia compact = new Iso19794p2v2005CardTemplate(offcard, 0, Iso19794p2v2005CardFormat.COMPACT).minutiae.get(0);
+		assertEquals(Math.round(100 * 100 / 197.0), compact.positionX);
+		assertEquals(Math.round(14 * 100 / 197.0), compact.positionY);
+		assertEquals(Math.round(fp.minutiae.get(0).angle / 4.0) % 64, compact.angle);
+		/*
+		 * Compact coordinates cannot reach past 25.5mm, which is 502 pixels at 197 pixels/cm.
+		 */
+		fp.minutiae.get(0).positionX = 511;
+		new Iso19794p2v2005CardTemplate(offcard, 0, Iso19794p2v2005CardFormat.NORMAL);
+		assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2005CardTemplate(offcard, 0, Iso19794p2v2005CardFormat.COMPACT));
+	}
+	@Test
+	public void malformed() {
+		byte[] partial = new byte[] { 1, 2, 3, 4 };
+		assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2005CardTemplate(partial, Iso19794p2v2005CardFormat.COMPACT));
+		assertEquals(1, new Iso19794p2v2005CardTemplate(partial, Iso19794p2v2005CardFormat.COMPACT, Exceptions.silence()).minutiae.size());
+		byte[] type = new byte[] { 10, 20, (byte)0xc0 };
+		assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2005CardTemplate(type, Iso19794p2v2005CardFormat.COMPACT));
+		assertEquals(0, new Iso19794p2v2005CardTemplate(new byte[0], Iso19794p2v2005CardFormat.NORMAL).minutiae.size());
+		/*
+		 * Reserved bits in Y position of the second minutia.
+		 */
+		byte[] reserved = new byte[] { 0x44, (byte)0xd2, 0x09, 0x29, (byte)200, (byte)0xbf, (byte)0xff, (byte)0x80, 0, 0 };
+		var exception = assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2005CardTemplate(reserved, Iso19794p2v2005CardFormat.NORMAL));
+		assertEquals(TemplateRule.RESERVED, exception.rule());
+		assertEquals(1, exception.minutia());
+		assertEquals(0, new Iso19794p2v2005CardTemplate(reserved, Iso19794p2v2005CardFormat.NORMAL, Exceptions.silence()).minutiae.get(1).positionY);
+	}
+}
@@ -2,8 +2,11 @@
 package com.machinezoo.fingerprintio.iso19794p2v2011;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.nio.*;
+import java.util.*;
 import org.junit.jupiter.api.*;
 import com.machinezoo.fingerprintio.*;
+import com.machinezoo.fingerprintio.common.*;
 import com.machinezoo.fingerprintio.iso19794p1v2011.*;
 import com.machinezoo.noexception.*;
 
@@ -85,7 +88,7 @@ public class Iso19794p2v2011TemplateTest {
 		zx.zoneWidth = 200;
 		zx.zoneHeight = 200;
 		zx.bits = 3;
-		zx.quality = new int[] { 1, 2, 3, 4, 5, 6 };
+		zx.pack(new int[] { 1, 2, 3, 4, 5, 6 });
 		Iso19794p2v2011Extension x = new Iso19794p2v2011Extension();
 		x.type = 0x4455;
 		x.data = new byte[] { 1, 2, 3 };
@@ -179,8 +182,9 @@ public class Iso19794p2v2011TemplateTest {
 		assertEquals(200, zx.zoneWidth);
 		assertEquals(200, zx.zoneHeight);
 		assertEquals(3, zx.bits);
-		assertEquals(6, zx.quality.length);
-		assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6 }, zx.quality);
+		assertEquals(3, zx.quality.length);
+		assertArrayEquals(new int[] { 1, 2, 3, 4, 5, 6 }, zx.unpack(600, 400));
+		assertEquals(6, zx.quality(2, 1, 600, 400));
 		assertEquals(1, f.extensions.size());
 		Iso19794p2v2011Extension ex = f.extensions.get(0);
 		assertEquals(0x4455, ex.type);
@@ -247,6 +251,229 @@ public class Iso19794p2v2011TemplateTest {
 		assertArrayEquals(new byte[] { 0x01, 0x44, (byte)0xBC, 0x36, 0x21, 0x43 }, f.extensions.get(0).data);
 	}
 	@Test
+	public void encoder() {
+		Iso19794p2v2011Template t = new Iso19794p2v2011Template();
+		Iso19794p2v2011Fingerprint f = new Iso19794p2v2011Fingerprint();
+		f.datetime.year = 2011;
+		f.datetime.month = 3;
+		f.datetime.day = 17;
+		f.sensorVendor = 0x1234;
+		f.width = 600;
+		f.height = 400;
+		f.position = Iso19794p2v2011Position.LEFT_RING;
+		Iso19794p2v2011Certificate ct = new Iso19794p2v2011Certificate();
+		ct.authority = 0x1234;
+		ct.scheme = Iso19794p2v2011CertificationScheme.IMAGE_QUALITY_FOR_VERIFICATION;
+		f.certificates.add(ct);
+		Iso19794p1v2011Quality qr = new Iso19794p1v2011Quality();
+		qr.vendor = 0x5432;
+		qr.quality = 55;
+		f.qrecords.add(qr);
+		for (int i = 0; i < 3; ++i) {
+			Iso19794p2v2011Minutia m = new Iso19794p2v2011Minutia();
+			m.type = Iso19794p2v2011MinutiaType.values()[i];
+			m.positionX = 100 * i;
+			m.positionY = 50 * i;
+			m.angle = 60 * i;
+			m.quality = 30 * i;
+			f.minutiae.add(m);
+		}
+		f.counts = new Iso19794p2v2011CountExtension();
+		Iso19794p2v2011CountEdge e = new Iso19794p2v2011CountEdge();
+		e.from = 0;
+		e.to = 2;
+		e.count = 7;
+		f.counts.edges.add(e);
+		f.coredelta = new Iso19794p2v2011CoreDeltaExtension();
+		Iso19794p2v2011Core c = new Iso19794p2v2011Core();
+		c.positionX = 123;
+		c.positionY = 234;
+		f.coredelta.cores.add(c);
+		f.zones = new Iso19794p2v2011ZonalExtension();
+		f.zones.zoneWidth = 200;
+		f.zones.zoneHeight = 200;
+		f.zones.bits = 3;
+		f.zones.pack(new int[] { 1, 2, 3, 4, 5, 6 });
+		Iso19794p2v2011Extension x = new Iso19794p2v2011Extension();
+		x.type = 0x4455;
+		x.data = new byte[] { 1, 2, 3 };
+		f.extensions.add(x);
+		t.fingerprints.add(f);
+		f = new Iso19794p2v2011Fingerprint();
+		f.width = 500;
+		f.height = 500;
+		f.position = Iso19794p2v2011Position.LEFT_RING;
+		f.view = 1;
+		f.minutiae.add(new Iso19794p2v2011Minutia());
+		t.fingerprints.add(f);
+		byte[] expected = t.toByteArray();
+		ByteBuffer buffer = ByteBuffer.allocate(expected.length + 10);
+		buffer.position(10);
+		Iso19794p2v2011TemplateEncoder encoder = new Iso19794p2v2011TemplateEncoder();
+		encoder.beginTemplate(buffer);
+		for (Iso19794p2v2011Fingerprint fp : t.fingerprints) {
+			encoder.beginFingerprint(fp, fp.minutiae.stream().anyMatch(m -> m.quality != 254));
+			for (Iso19794p2v2011Minutia m : fp.minutiae)
+				encoder.addMinutia(m.type, m.positionX, m.positionY, m.angle, m.quality);
+			if (fp.counts != null)
+				encoder.addCounts(fp.counts);
+			if (fp.coredelta != null)
+				encoder.addCoreDelta(fp.coredelta);
+			if (fp.zones != null)
+				encoder.addZones(fp.zones);
+			for (Iso19794p2v2011Extension ext : fp.extensions)
+				encoder.addExtension(ext);
+		}
+		assertEquals(expected.length, encoder.finish());
+		assertEquals(buffer.capacity(), buffer.position());
+		assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 10, buffer.position()));
+		buffer.clear();
+		encoder.beginTemplate(buffer);
+		assertThrows(TemplateFormatException.class, encoder::finish);
+		encoder.beginTemplate(buffer);
+		f.view = 0;
+		encoder.beginFingerprint(f, false);
+		assertThrows(TemplateFormatException.class, () -> encoder.addMinutia(Iso19794p2v2011MinutiaType.ENDING, 1, 1, 0, 50));
+		assertThrows(TemplateFormatException.class, encoder::finish);
+	}
+	@Test
+	public void buffer() {
+		byte[] template = sample();
+		ByteBuffer slice = TestUtils.slice(template);
+		assertTrue(Iso19794p2v2011Template.accepts(slice));
+		TestUtils.compareJson(Iso19794p2v2011TemplateTest.class, "iso19794p2v2011-sample.json", new Iso19794p2v2011Template(slice, Exceptions.silence()));
+		ByteBuffer direct = TestUtils.direct(template);
+		assertTrue(Iso19794p2v2011Template.accepts(direct));
+		TestUtils.compareJson(Iso19794p2v2011TemplateTest.class, "iso19794p2v2011-sample.json", new Iso19794p2v2011Template(direct, Exceptions.silence()));
+		assertEquals(0, direct.position());
+	}
+	@Test
+	public void writeTo() {
+		/*
+		 * Make the template larger than the internal chunk used when streaming, so that chunk flushing is exercised.
+		 */
+		Iso19794p2v2011Template t = new Iso19794p2v2011Template();
+		for (int i = 1; i <= 10; ++i) {
+			Iso19794p2v2011Fingerprint f = new Iso19794p2v2011Fingerprint();
+			f.position = Iso19794p2v2011Position.values()[i];
+			f.width = 600;
+			f.height = 400;
+			for (int j = 0; j < 200; ++j) {
+				Iso19794p2v2011Minutia m = new Iso19794p2v2011Minutia();
+				m.positionX = 3 * j;
+				m.positionY = 2 * j;
+				m.angle = j % 180;
+				f.minutiae.add(m);
+			}
+			t.fingerprints.add(f);
+		}
+		byte[] expected = t.toByteArray();
+		assertTrue(expected.length > 10_000);
+		TestUtils.sinks(expected, t::writeTo, t::writeTo, t::writeTo);
+	}
+	@Test
+	public void view() {
+		Iso19794p2v2011Template t = decode();
+		Iso19794p2v2011TemplateView v = new Iso19794p2v2011TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		assertEquals(t.fingerprints.size(), v.fingerprints.size());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Iso19794p2v2011Fingerprint f = t.fingerprints.get(i);
+			Iso19794p2v2011FingerprintView fv = v.fingerprints.get(i);
+			assertEquals(f.sensorType, fv.sensorType);
+			assertEquals(f.sensorVendor, fv.sensorVendor);
+			assertEquals(f.sensorId, fv.sensorId);
+			assertEquals(f.position, fv.position);
+			assertEquals(f.view, fv.view);
+			assertEquals(f.resolutionX, fv.resolutionX);
+			assertEquals(f.resolutionY, fv.resolutionY);
+			assertEquals(f.scanType, fv.scanType);
+			assertEquals(f.width, fv.width);
+			assertEquals(f.height, fv.height);
+			assertEquals(f.endingType, fv.endingType);
+			TestUtils.assertJsonEquals(f.datetime, fv.datetime);
+			assertEquals(f.minutiae.size(), fv.minutiaCount);
+			TestUtils.assertJsonEquals(f, fv.decode());
+			assertSame(fv.decode(), fv.decode());
+		}
+	}
+	@Test
+	public void compact() {
+		Iso19794p2v2011Template t = decode();
+		Iso19794p2v2011TemplateView v = new Iso19794p2v2011TemplateView(ByteBuffer.wrap(sample()), Exceptions.silence());
+		for (int i = 0; i < t.fingerprints.size(); ++i) {
+			Iso19794p2v2011Fingerprint fp = t.fingerprints.get(i);
+			CompactMinutiae compact = fp.compactMinutiae();
+			assertEquals(fp.minutiae.size(), compact.size());
+			TestUtils.assertCompactEquals(compact, v.fingerprints.get(i).compactMinutiae());
+			Iso19794p2v2011Fingerprint expanded = new Iso19794p2v2011Fingerprint();
+			expanded.expandMinutiae(compact);
+			TestUtils.assertJsonEquals(fp.minutiae, expanded.minutiae);
+		}
+	}
+	@Test
+	public void edges() {
+		Iso19794p2v2011Template t = new Iso19794p2v2011Template();
+		Iso19794p2v2011Fingerprint f = new Iso19794p2v2011Fingerprint();
+		f.position = Iso19794p2v2011Position.LEFT_RING;
+		f.width = 600;
+		f.height = 400;
+		for (int i = 0; i < 3; ++i)
+			f.minutiae.add(new Iso19794p2v2011Minutia());
+		f.counts = new Iso19794p2v2011CountExtension();
+		int[][] edges = { { 2, 0, 7 }, { 0, 1, 3 }, { 2, 1, 5 }, { 1, 0xff, 0xff } };
+		for (int[] edge : edges) {
+			Iso19794p2v2011CountEdge e = new Iso19794p2v2011CountEdge();
+			e.from = edge[0];
+			e.to = edge[1];
+			e.count = edge[2];
+			f.counts.edges.add(e);
+		}
+		t.fingerprints.add(f);
+		RidgeCountGraph graph = f.counts.compactEdges(3);
+		assertEquals(3, graph.size());
+		assertEquals(4, graph.edgeCount());
+		assertEquals(1, graph.degree(0));
+		assertEquals(1, graph.degree(1));
+		assertEquals(2, graph.degree(2));
+		assertEquals(1, graph.to(graph.first(0)));
+		assertEquals(3, graph.count(graph.first(0)));
+		assertEquals(0xff, graph.to(graph.first(1)));
+		assertEquals(0, graph.to(graph.first(2)));
+		assertEquals(7, graph.count(graph.first(2)));
+		assertEquals(1, graph.to(graph.first(2) + 1));
+		assertEquals(5, graph.count(graph.first(2) + 1));
+		assertEquals(4, graph.first(3));
+		Iso19794p2v2011TemplateView v = new Iso19794p2v2011TemplateView(ByteBuffer.wrap(t.toByteArray()), Exceptions.propagate());
+		RidgeCountGraph viewed = v.fingerprints.get(0).compactEdges();
+		assertArrayEquals(graph.toByteArray(), viewed.toByteArray());
+		Iso19794p2v2011CountExtension expanded = new Iso19794p2v2011CountExtension();
+		expanded.expandEdges(viewed);
+		f.counts.edges.sort(Comparator.comparingInt(e -> e.from));
+		TestUtils.assertJsonEquals(f.counts.edges, expanded.edges);
+		f.counts = null;
+		assertNull(new Iso19794p2v2011TemplateView(ByteBuffer.wrap(t.toByteArray()), Exceptions.propagate()).fingerprints.get(0).compactEdges());
+	}
+	@Test
+	public void multifinger() {
+		Iso19794p2v2011Template t = new Iso19794p2v2011Template();
+		Iso19794p2v2011Fingerprint f = new Iso19794p2v2011Fingerprint();
+		f.position = Iso19794p2v2011Position.RIGHT_INDEX_TO_LITTLE;
+		f.width = 400;
+		f.height = 500;
+		f.minutiae.add(new Iso19794p2v2011Minutia());
+		t.fingerprints.add(f);
+		byte[] template = t.toByteArray();
+		assertEquals(13, new TemplateSummary(template).fingerprints.get(0).position);
+		assertEquals(Iso19794p2v2011Position.RIGHT_INDEX_TO_LITTLE, new Iso19794p2v2011Template(template).fingerprints.get(0).position);
+	}
+	@Test
+	public void unvalidated() {
+		Iso19794p2v2011Template t = decode();
+		assertThrows(TemplateFormatException.class, () -> t.toByteArray());
+		TestUtils.assertJsonEquals(t, new Iso19794p2v2011Template(t.toByteArray(false), Exceptions.silence()));
+		TestUtils.sinks(t.toByteArray(false), b -> t.writeTo(b, false), o -> t.writeTo(o, false), c -> t.writeTo(c, false));
+	}
+	@Test
 	public void accepts() {
 		for (TemplateFormat format : TemplateFormat.values()) {
 			byte[] template = TestUtils.sample(format);
@@ -255,6 +482,43 @@ public class Iso19794p2v2011TemplateTest {
 				assertThrows(TemplateFormatException.class, () -> new Iso19794p2v2011Template(template, Exceptions.silence()));
 		}
 	}
+	@Test
+	public void parse() {
+		Iso19794p2v2011Template expected = decode();
+		Iso19794p2v2011Template t = decode();
+		Iso19794p2v2011Fingerprint fp = t.fingerprints.get(0);
+		Iso19794p2v2011Minutia minutia = fp.minutiae.get(0);
+		fp.minutiae.add(new Iso19794p2v2011Minutia());
+		fp.extensions.add(new Iso19794p2v2011Extension());
+		t.fingerprints.add(new Iso19794p2v2011Fingerprint());
+		t.parse(sample(), Exceptions.silence());
+		TestUtils.assertJsonEquals(expected, t);
+		assertSame(fp, t.fingerprints.get(0));
+		assertSame(minutia, fp.minutiae.get(0));
+		t.fingerprints.remove(t.fingerprints.size() - 1);
+		fp.minutiae.clear();
+		t.parse(ByteBuffer.wrap(sample()), Exceptions.silence());
+		TestUtils.assertJsonEquals(expected, t);
+	}
+	@Test
+	public void parseImmutable() {
+		Iso19794p2v2011Template expected = decode();
+		Iso19794p2v2011Template t = decode();
+		/*
+		 * Application may assign lists that cannot be modified. Parser must replace them instead of failing.
+		 */
+		Iso19794p2v2011Fingerprint fp = t.fingerprints.get(0);
+		fp.minutiae = List.of();
+		fp.extensions = Collections.unmodifiableList(new ArrayList<>(List.of(new Iso19794p2v2011Extension())));
+		t.fingerprints = List.of(fp, new Iso19794p2v2011Fingerprint());
+		t.parse(sample(), Exceptions.silence());
+		TestUtils.assertJsonEquals(expected, t);
+		/*
+		 * Replacement lists are mutable, so the application can keep editing the template.
+		 */
+		t.fingerprints.add(new Iso19794p2v2011Fingerprint());
+		t.fingerprints.get(0).minutiae.clear();
+	}
 	private Iso19794p2v2011Template decode() {
 		byte[] bytes = sample();
 		assertTrue(Iso19794p2v2011Template.accepts(bytes));
@@ -0,0 +1,54 @@
+// Part of FingerprintIO: https://fingerprintio.machinezoo.com
+package com.machinezoo.fingerprintio.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+public class TemplateWriterTest {
+	@Test
+	public void undersized() {
+		/*
+		 * Capacity is deliberately too low, so that every kind of write has to grow the array.
+		 */
+		TemplateWriter out = new TemplateWriter(1);
+		out.writeByte(1);
+		out.writeByte(2);
+		out.writeShort(0x0304);
+		out.writeInt(0x05060708);
+		out.write(new byte[] { 9, 10, 11, 12, 13, 14, 15, 16, 17 });
+		out.write(new byte[] { 0, 18, 0 }, 1, 1);
+		out.writeByte(19);
+		assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19 }, out.toByteArray());
+	}
+	@Test
+	public void copy() {
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (byte)i;
+		TemplateReader in = new TemplateReader(data);
+		in.skip(10);
+		TemplateWriter out = new TemplateWriter(1);
+		out.write(in, 50);
+		assertArrayEquals(Arrays.copyOfRange(data, 10, 60), out.toByteArray());
+		/*
+		 * Stream output is chunked. Copy spans several chunks.
+		 */
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		TemplateWriter chunked = new TemplateWriter(stream, 16);
+		chunked.writeByte(0xff);
+		chunked.write(in, 40);
+		chunked.flush();
+		byte[] expected = new byte[41];
+		expected[0] = (byte)0xff;
+		System.arraycopy(data, 60, expected, 1, 40);
+		assertArrayEquals(expected, stream.toByteArray());
+		/*
+		 * Truncated input is rejected before anything is written.
+		 */
+		TemplateWriter truncated = new TemplateWriter(1);
+		assertThrows(TemplateEofException.class, () -> truncated.write(in, 1));
+		assertEquals(0, truncated.size());
+	}
+}